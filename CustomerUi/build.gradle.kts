@@ -19,7 +19,7 @@ dependencies {
     testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine:5.9.1")
     testImplementation("org.junit.jupiter:junit-jupiter-api:5.8.1")
     testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine:5.8.1")
-    testImplementation("org.mockito:mockito-core:4.3.1")
+    testImplementation("org.mockito:mockito-core:5.5.0")
 
 }
 
@@ -41,4 +41,6 @@ tasks.withType<JavaCompile> {
 // ✅ Enable JUnit 5 for testing
 tasks.withType<Test> {
     useJUnitPlatform()
+    // Messaging runs against the embedded broker unless -Prabbitmq.transport=amqp is given
+    systemProperty("rabbitmq.transport", findProperty("rabbitmq.transport") ?: "inprocess")
 }
\ No newline at end of file
@@ -2,11 +2,10 @@ package com.example.customerui;
 
 import com.example.queries.ParkingService;
 import com.example.recommender.ConsensusProtocol;
-import com.example.recommender.ElectionManager;
-import com.example.recommender.RaftNode;
+import com.example.recommender.RankedCandidate;
 import com.example.recommender.RecommendationResponse;
+import com.example.recommender.RecommenderClient;
 import com.example.shared.models.ParkingEvent;
-import com.example.shared.utils.RabbitMQUtil;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -15,6 +14,7 @@ import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Controller class for the Customer UI in the Mulligan Parking System.
@@ -55,6 +55,17 @@ public class CustomerController {
     @FXML
     private TableColumn<ParkingEvent, String> startTimeColumn1;
 
+    // רשימת URI של ה-Nodes ב-RabbitMQ
+    private static final List<String> NODE_URIS = List.of(
+            "amqp://100.85.154.51",
+            "amqp://100.76.110.20",
+            "amqp://100.78.144.87"
+    );
+    private static final String NODE_DB_URL = "jdbc:mysql://%s:3306/muligansystem";
+
+    // Connections, election and reply queue of the recommender, shared by every request of this process
+    private static RecommenderClient recommender;
+
     private final ParkingService parkingService = new ParkingService();
     private int customerID;
     private int vehicleId;
@@ -165,6 +176,8 @@ public class CustomerController {
 
     /**
      * Requests a parking recommendation using a consensus-based approach among available RabbitMQ nodes.
+     * The request runs in the background: the first node's candidates are shown as soon as they
+     * arrive, and replaced by the consensus once a majority agrees on the top choice.
      */
     @FXML
     public void recommendParking() {
@@ -182,67 +195,63 @@ public class CustomerController {
             return;
         }
 
-        // רשימת URI של ה-Nodes ב-RabbitMQ
-        List<String> nodeUris = Arrays.asList(
-                "amqp://100.85.154.51",
-                "amqp://100.76.110.20",
-                "amqp://100.78.144.87"
-        );
-        String nodeDbUrl  = "jdbc:mysql://%s:3306/muligansystem";
-
-
-        // ElectionManager (אם תרצה להשתמש בו למנהיג בלבד)
-        ElectionManager electionManager = new ElectionManager(nodeUris);
-        String leaderNode = electionManager.getLeader();
-
-        // יצירת RabbitMQUtil + RaftNode לכל Node
-        List<RabbitMQUtil> rabbitMQs = new ArrayList<>();
-        List<RaftNode> raftNodes = new ArrayList<>();
-        for (String uri : nodeUris) {
-            RabbitMQUtil rmq = new RabbitMQUtil(uri);
-            if(rmq.getConnectedServer() == null)
-                continue;
-            rabbitMQs.add(rmq);
-
-            // הגדרות DB (אפשר שונות לכל Node)
-            String dbUrl = String.format(nodeDbUrl, uri.replace("amqp://", ""));
-            String dbUser = "root";
-            String dbPass = "root";
-
-            RaftNode node = new RaftNode(uri, rmq, dbUrl, dbUser, dbPass);
-            raftNodes.add(node);
-        }
-
-        // יצירת אובייקט פרוטוקול הקונצנזוס
-        ConsensusProtocol protocol = new ConsensusProtocol(raftNodes, rabbitMQs);
-
-        // שליחה "בקשה" לכל צומת לחשב את ההמלצה ולפרסם ל-recommendationResponsesQueue
-        protocol.sendRecommendationRequest(requestedSpaceID);
-
-        // איסוף התגובות
-        List<RecommendationResponse> responses = protocol.collectResponses();
-        for (RabbitMQUtil rabbitMQUtil : rabbitMQs) {
-            if(rabbitMQUtil.getConnectedServer()!=null)
-            {
-                rabbitMQUtil.purgeQueue("recommendationResponsesQueue");
-
+        showMessage("Looking for parking near space " + requestedSpaceID + "...");
+        Thread request = new Thread(() -> {
+            boolean[] shown = {false}; // Only the first node's candidates, until the consensus
+            Consumer<RecommendationResponse> onVote = vote -> {
+                if (!shown[0] && !vote.getRanking().isEmpty()) {
+                    shown[0] = true;
+                    showMessage("Suggested (awaiting consensus): \n" + describe(vote.getRanking()));
+                }
+            };
+
+            // הלקוח של המערכת הממליצה נשמר בין בקשות: חיבורים, מנהיג ותור תשובות חמים
+            String finalRec = getRecommender().recommend(requestedSpaceID, ConsensusProtocol.DEFAULT_DEADLINE_MS, onVote);
+
+            // הצגת תוצאה
+            if (finalRec != null) {
+                showMessage("Parking Recommendation: \n" + describe(RankedCandidate.parseRanking(finalRec)));
+            } else {
+                showMessage("No consensus reached");
             }
-        }
-
-        // חישוב Majority Vote
-        String finalRec = protocol.getConsensusDecision(responses);
+        }, "recommendation-request");
+        request.setDaemon(true);
+        request.start();
+    }
 
-        // הצגת תוצאה
-        if (finalRec != null) {
-            showMessage("Parking Recommendation: \n" + finalRec);
-        } else {
-            showMessage("No consensus reached");
+    /**
+     * Describes a ranking for the customer: the top choice, then the alternates.
+     */
+    private static String describe(List<RankedCandidate> ranking) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < ranking.size(); i++) {
+            RankedCandidate candidate = ranking.get(i);
+            text.append(i == 0 ? "Space " : "Alternative: space ").append(candidate.spaceId())
+                    .append(" (").append(candidate.citations()).append(" citations, distance ")
+                    .append(candidate.distance()).append(")\n");
         }
+        return text.toString();
+    }
 
+    /**
+     * Returns the process-wide recommender client, connecting to the nodes on first use.
+     *
+     * @return The client.
+     */
+    private static synchronized RecommenderClient getRecommender() {
+        if (recommender == null) {
+            recommender = new RecommenderClient(NODE_URIS, NODE_DB_URL, "root", "root");
+        }
+        return recommender;
+    }
 
-        // סגירה
-        for (RabbitMQUtil rmq : rabbitMQs) {
-            rmq.closeConnection();
+    /**
+     * Closes the recommender client, if it was started. Called when the application exits.
+     */
+    static synchronized void closeRecommender() {
+        if (recommender != null) {
+            recommender.close();
+            recommender = null;
         }
     }
 
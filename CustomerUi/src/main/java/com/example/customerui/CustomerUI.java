@@ -71,6 +71,14 @@ public class CustomerUI extends Application {
         primaryStage.show();
     }
 
+    /**
+     * Called when the application exits: closes the recommender client's connections.
+     */
+    @Override
+    public void stop() {
+        CustomerController.closeRecommender();
+    }
+
     /**
      * The main method for launching the JavaFX application.
      *
@@ -0,0 +1,21 @@
+plugins {
+    id("java")
+}
+
+group = "com.example"
+version = "1.0"
+
+repositories {
+    mavenCentral()
+}
+
+dependencies {
+    implementation(project(":Shared"))  // DatabaseUtil and the schema version
+    implementation(project(":Queries")) // The services' hot queries, for the index check
+}
+
+tasks.test {
+    useJUnitPlatform()
+}
+
+// Run with: gradle :Database:run --args="status" (or "migrate", "migrate --offline", "check")
@@ -0,0 +1,99 @@
+package com.example.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks with EXPLAIN that each hot query is served by an index rather than a table scan.
+ *
+ * A query passes when every table it reads is accessed through a key. A full scan is accepted
+ * only for small lookup tables (such as zones), whose estimated rows do not exceed
+ * {@code schema.check.smallTableRows} (100). Parameters are bound to sample values picked from
+ * the column they are compared with (a timestamp for time columns, 1 otherwise), so the plan is
+ * that of a real call.
+ */
+public final class IndexUsageCheck {
+
+    private static final long SMALL_TABLE_ROWS = Long.getLong("schema.check.smallTableRows", 100);
+
+    // The column in front of each "?", e.g. "pe.EndTime = ?"
+    private static final Pattern PARAMETER = Pattern.compile("(\\w+)\\s*(?:=|<|>|<=|>=)\\s*\\?|\\?");
+
+    /**
+     * The plan of one query.
+     *
+     * @param name       The query's name, e.g. "ParkingService.getVehicleNumber".
+     * @param usesIndex  Whether every table access uses a key (or is a small lookup table).
+     * @param plan       One line per plan row: table, access type, key and estimated rows.
+     */
+    public record Result(String name, boolean usesIndex, List<String> plan) {
+    }
+
+    private IndexUsageCheck() {
+    }
+
+    /**
+     * Explains each query.
+     *
+     * @param conn    An open connection.
+     * @param queries The queries by name.
+     * @return The results, in the order of the queries.
+     * @throws SQLException If a query cannot be explained.
+     */
+    public static List<Result> run(Connection conn, Map<String, String> queries) throws SQLException {
+        List<Result> results = new ArrayList<>();
+        for (Map.Entry<String, String> query : queries.entrySet()) {
+            results.add(explain(conn, query.getKey(), query.getValue()));
+        }
+        return results;
+    }
+
+    private static Result explain(Connection conn, String name, String sql) throws SQLException {
+        List<String> plan = new ArrayList<>();
+        boolean usesIndex = true;
+        try (PreparedStatement stmt = conn.prepareStatement("EXPLAIN " + sql)) {
+            List<String> samples = sampleParameters(sql);
+            for (int i = 0; i < samples.size(); i++) {
+                stmt.setString(i + 1, samples.get(i));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String table = rs.getString("table");
+                    if (table == null) {
+                        continue; // e.g. "No tables used"
+                    }
+                    String type = rs.getString("type");
+                    String key = rs.getString("key");
+                    long rows = rs.getLong("rows");
+                    boolean scan = key == null || "ALL".equals(type) || "index".equals(type);
+                    if (scan && rows > SMALL_TABLE_ROWS) {
+                        usesIndex = false;
+                    }
+                    plan.add(table + " " + type + " key=" + key + " rows=" + rows + (scan ? " (scan)" : ""));
+                }
+            }
+        }
+        return new Result(name, usesIndex, plan);
+    }
+
+    /**
+     * Picks a value for each parameter from the column it is compared with.
+     */
+    private static List<String> sampleParameters(String sql) {
+        List<String> samples = new ArrayList<>();
+        Matcher m = PARAMETER.matcher(sql);
+        while (m.find()) {
+            String column = m.group(1);
+            boolean time = column != null && (column.endsWith("Time") || column.endsWith("At"));
+            samples.add(time ? "2025-01-01 12:00:00" : "1");
+        }
+        return samples;
+    }
+}
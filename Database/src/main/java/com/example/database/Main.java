@@ -0,0 +1,108 @@
+package com.example.database;
+
+import com.example.queries.PEOService;
+import com.example.queries.ParkingService;
+import com.example.shared.utils.DatabaseUtil;
+import com.example.shared.utils.Deadline;
+import com.example.shared.utils.SchemaVersion;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command line of the schema migrations.
+ *
+ * Usage:
+ * - {@code status}: the schema version and the pending migrations;
+ * - {@code migrate [version]}: applies the pending online migrations (up to a version);
+ * - {@code migrate --offline [version]}: also applies offline ones, for a maintenance window;
+ * - {@code check}: explains the hot queries of the services and fails if one scans a table.
+ */
+public class Main {
+
+    /**
+     * Migration statements run for as long as the largest table needs.
+     */
+    private static final long STATEMENT_DEADLINE_MS = Long.getLong("schema.deadlineMs", 3_600_000);
+
+    /**
+     * Runs a command.
+     *
+     * @param args The command and its options.
+     */
+    public static void main(String[] args) {
+        // DDL and backfill batches are slow by nature; they must not open this process's write circuit
+        if (System.getProperty("db.write.breakerLatencyMs") == null) {
+            System.setProperty("db.write.breakerLatencyMs", String.valueOf(STATEMENT_DEADLINE_MS));
+        }
+        String command = args.length > 0 ? args[0] : "status";
+        boolean ok;
+        try {
+            ok = Deadline.call(STATEMENT_DEADLINE_MS, () -> {
+                try (Connection conn = DatabaseUtil.connect()) {
+                    return switch (command) {
+                        case "status" -> status(conn);
+                        case "migrate" -> migrate(conn, args);
+                        case "check" -> check(conn);
+                        default -> {
+                            System.err.println("❌ Unknown command " + command + "; use status, migrate [--offline] [version] or check.");
+                            yield false;
+                        }
+                    };
+                }
+            });
+        } catch (SQLException e) {
+            System.err.println("❌ " + command + " failed: " + e.getMessage());
+            ok = false;
+        } finally {
+            DatabaseUtil.close();
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static boolean status(Connection conn) throws SQLException {
+        System.out.println("Schema version: " + SchemaVersion.read(conn));
+        List<Migration> pending = new SchemaMigrator(Migrations.all()).pending(conn);
+        for (Migration migration : pending) {
+            System.out.println("Pending " + migration.version() + (migration.online() ? "" : " (offline)")
+                    + ": " + migration.description());
+        }
+        if (pending.isEmpty()) {
+            System.out.println("No pending migrations.");
+        }
+        return true;
+    }
+
+    private static boolean migrate(Connection conn, String[] args) throws SQLException {
+        boolean offline = false;
+        int target = Integer.MAX_VALUE;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--offline")) {
+                offline = true;
+            } else {
+                target = Integer.parseInt(args[i]);
+            }
+        }
+        int version = new SchemaMigrator(Migrations.all()).migrate(conn, target, offline);
+        System.out.println("Schema version: " + version);
+        return true;
+    }
+
+    private static boolean check(Connection conn) throws SQLException {
+        Map<String, String> queries = new LinkedHashMap<>(ParkingService.hotQueries());
+        queries.putAll(PEOService.hotQueries());
+        boolean ok = true;
+        for (IndexUsageCheck.Result result : IndexUsageCheck.run(conn, queries)) {
+            if (result.usesIndex()) {
+                System.out.println(result.name() + ": " + String.join("; ", result.plan()));
+            } else {
+                System.err.println("❌ " + result.name() + " scans a table: " + String.join("; ", result.plan()));
+                ok = false;
+            }
+        }
+        return ok;
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * One versioned change of the database schema.
+ *
+ * NDB Cluster commits every DDL statement on its own, so a migration cannot be rolled back as a
+ * whole: each step checks what is already in place and only does what is missing, and a failed
+ * migration can simply be run again.
+ *
+ * @param version     The version the schema has once the migration is applied; versions are applied in order.
+ * @param description What the migration does, recorded in the SchemaVersion table.
+ * @param online      Whether it runs while the services keep serving; offline migrations need a quiet window.
+ * @param step        The change itself.
+ */
+public record Migration(int version, String description, boolean online, Step step) {
+
+    /**
+     * The change made by a migration.
+     */
+    @FunctionalInterface
+    public interface Step {
+        /**
+         * Applies the change, skipping whatever is already in place.
+         *
+         * @param conn An open connection in auto-commit mode.
+         * @throws SQLException If a statement fails.
+         */
+        void apply(Connection conn) throws SQLException;
+    }
+}
@@ -0,0 +1,389 @@
+package com.example.database;
+
+import com.example.shared.utils.SchemaVersion;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The schema migrations of the parking database, in order.
+ *
+ * The shipped NDB tables only have primary keys, and {@code parkingspaces.Occupied},
+ * {@code parkingevents.StartTime} and {@code parkingevents.EndTime} are varchar columns. The
+ * migrations add the secondary indexes the hot queries need and convert the columns to native
+ * types without stopping the services (expand, dual-write, backfill, contract):
+ * 1. create the tables of the transactional outbox, which the services need before anything else;
+ * 2. add the coordinate columns {@code parkingspaces(Latitude, Longitude)} of the recommender's
+ *    space index;
+ * 3. index {@code vehicles(CustomerID)};
+ * 4. add the native shadow columns {@code OccupiedFlag}, {@code StartAt} and {@code EndAt}; from
+ *    this version on the services write them together with the legacy columns;
+ * 5. once every running service reports version 4 in {@code SchemaWriters}, copy the legacy
+ *    values into the shadow columns in primary-key batches, then verify them;
+ * 6. index {@code parkingevents(VehicleID, EndTime, StartTime, SpaceID, TotalCost)}, which covers
+ *    the completed-events query (it filters, sorts and selects only these columns), and
+ *    {@code parkingspaces(ZoneID, Occupied)}, the columns the occupancy queries filter on;
+ * 7. (offline) drop the legacy columns and give the native ones their names, then build the
+ *    indexes of version 6 again over the native columns. NDB copies the table for this, so it
+ *    needs a quiet window.
+ * 8. (offline) partition parkingspaces and parkingevents by ZoneID, like zones (whose primary key
+ *    is its ZoneID), so a zone's row, spaces and events share a partition and a start or stop
+ *    commits on one node group. NDB requires the partitioning column in the primary key, so the
+ *    keys become (SpaceID, ZoneID) and (EventID, ZoneID), with unique indexes keeping SpaceID and
+ *    EventID unique; parkingevents gets a ZoneID column first.
+ * Version numbers 1, 2, 4, 7 and 8 are the phases {@link SchemaVersion} reports to the services.
+ */
+public final class Migrations {
+
+    private static final int BACKFILL_BATCH = Integer.getInteger("schema.backfillBatch", 1000);
+
+    // The indexes of the hot queries (version 6), over the same column names before and after the swap
+    private static final String EVENTS_INDEX = "idx_parkingevents_vehicle_end";
+    private static final String EVENTS_INDEX_COLUMNS = "VehicleID, EndTime, StartTime, SpaceID, TotalCost";
+    private static final String SPACES_INDEX = "idx_parkingspaces_zone_occupied";
+    private static final String SPACES_INDEX_COLUMNS = "ZoneID, Occupied";
+
+    // A process that reported longer ago than this re-reads the version before its next write
+    private static final long WRITER_WINDOW_MS = 2 * SchemaVersion.REFRESH_MS;
+    private static final long WRITER_WAIT_MS = Long.getLong("schema.writerWaitMs", 10 * WRITER_WINDOW_MS);
+
+    // The version each service process last read, see SchemaVersion.refresh()
+    private static final String CREATE_WRITERS_TABLE = """
+            CREATE TABLE IF NOT EXISTS SchemaWriters (
+                Writer VARCHAR(64) NOT NULL,
+                Version INT NOT NULL,
+                SeenAt DATETIME(3) NOT NULL,
+                PRIMARY KEY (Writer)
+            ) ENGINE=ndbcluster DEFAULT CHARSET=utf8mb4
+            """;
+
+    private static final String SELECT_LAGGING_WRITERS = """
+            SELECT Writer, Version FROM SchemaWriters
+            WHERE Version < ? AND SeenAt > TIMESTAMPADD(MICROSECOND, ?, NOW(3))
+            """;
+
+    private static final String CREATE_OUTBOX_TABLE = """
+            CREATE TABLE IF NOT EXISTS OutboxMessages (
+                OutboxID BIGINT NOT NULL AUTO_INCREMENT,
+                QueueName VARCHAR(64) NOT NULL,
+                PartitionKey VARCHAR(64) NOT NULL,
+                Seq BIGINT NOT NULL,
+                Payload VARCHAR(1024) NOT NULL,
+                CreatedAt BIGINT NOT NULL,
+                PRIMARY KEY (OutboxID),
+                KEY idx_outbox_partition_seq (PartitionKey, Seq)
+            ) ENGINE=ndbcluster DEFAULT CHARSET=utf8mb4
+            """;
+
+    private static final String CREATE_SEQUENCE_TABLE = """
+            CREATE TABLE IF NOT EXISTS OutboxSequence (
+                PartitionKey VARCHAR(64) NOT NULL,
+                NextSeq BIGINT NOT NULL,
+                PRIMARY KEY (PartitionKey)
+            ) ENGINE=ndbcluster DEFAULT CHARSET=utf8mb4
+            """;
+
+    private static final String CREATE_CURSOR_TABLE = """
+            CREATE TABLE IF NOT EXISTS OutboxCursor (
+                PartitionKey VARCHAR(64) NOT NULL,
+                NextSeq BIGINT NOT NULL,
+                PRIMARY KEY (PartitionKey)
+            ) ENGINE=ndbcluster DEFAULT CHARSET=utf8mb4
+            """;
+
+    private static final String CREATE_LEASE_TABLE = """
+            CREATE TABLE IF NOT EXISTS OutboxRelayLease (
+                LeaseID INT NOT NULL,
+                Owner VARCHAR(64) NOT NULL,
+                LeaseUntil BIGINT NOT NULL,
+                PRIMARY KEY (LeaseID)
+            ) ENGINE=ndbcluster DEFAULT CHARSET=utf8mb4
+            """;
+
+    private Migrations() {
+    }
+
+    /**
+     * Returns every migration, in version order.
+     *
+     * @return The migrations.
+     */
+    public static List<Migration> all() {
+        return List.of(
+                new Migration(SchemaVersion.OUTBOX_TABLES, "Create the outbox tables", true, Migrations::createOutboxTables),
+                new Migration(SchemaVersion.SPACE_COORDINATES, "Add parkingspaces(Latitude, Longitude)",
+                        true, Migrations::addSpaceCoordinates),
+                new Migration(3, "Index vehicles(CustomerID)", true, Migrations::indexVehicleOwner),
+                new Migration(SchemaVersion.NATIVE_COLUMNS_ADDED, "Add native Occupied/StartTime/EndTime shadow columns",
+                        true, Migrations::addShadowColumns),
+                new Migration(5, "Backfill and verify the shadow columns", true, Migrations::backfillShadowColumns),
+                new Migration(6, "Index parkingevents(VehicleID, EndTime, StartTime, SpaceID, TotalCost) and "
+                        + "parkingspaces(ZoneID, Occupied)",
+                        true, Migrations::indexHotColumns),
+                new Migration(SchemaVersion.NATIVE_COLUMNS_SWAPPED, "Replace the varchar columns with the native ones",
+                        false, Migrations::swapColumns),
+                new Migration(SchemaVersion.ZONE_PARTITIONED, "Partition parkingspaces and parkingevents by ZoneID",
+                        false, Migrations::partitionByZone));
+    }
+
+    /**
+     * Version 1: the outbox of {@link com.example.shared.utils.TransactionalOutbox}. Every message
+     * gets the next number of its partition key's sequence, so the relay can publish each zone's
+     * messages in commit order, reading them from the key's cursor on through the (PartitionKey, Seq)
+     * index. The SchemaWriters table comes first, so the services report their version from the start.
+     */
+    private static void createOutboxTables(Connection conn) throws SQLException {
+        execute(conn, CREATE_WRITERS_TABLE);
+        execute(conn, CREATE_OUTBOX_TABLE);
+        execute(conn, CREATE_SEQUENCE_TABLE);
+        execute(conn, CREATE_CURSOR_TABLE);
+        execute(conn, CREATE_LEASE_TABLE);
+        execute(conn, "INSERT IGNORE INTO OutboxRelayLease (LeaseID, Owner, LeaseUntil) VALUES (1, '', 0)");
+    }
+
+    /**
+     * Version 2: the coordinates of the spaces, nullable since spaces without them are recommended
+     * by zone. Dynamic columns, added in place.
+     */
+    private static void addSpaceCoordinates(Connection conn) throws SQLException {
+        if (!SchemaMigrator.columnExists(conn, "parkingspaces", "Latitude")) {
+            execute(conn, "ALTER TABLE parkingspaces ADD COLUMN Latitude DOUBLE NULL COLUMN_FORMAT DYNAMIC, "
+                    + "ADD COLUMN Longitude DOUBLE NULL COLUMN_FORMAT DYNAMIC, ALGORITHM=INPLACE");
+        }
+    }
+
+    /**
+     * Version 3: the customer's vehicle lookup.
+     */
+    private static void indexVehicleOwner(Connection conn) throws SQLException {
+        addIndex(conn, "vehicles", "idx_vehicles_customer", "CustomerID");
+    }
+
+    /**
+     * Version 4: nullable dynamic columns, which NDB adds in place without copying the table. The
+     * SchemaWriters table is created here as well for databases migrated past version 1 before it existed.
+     */
+    private static void addShadowColumns(Connection conn) throws SQLException {
+        execute(conn, CREATE_WRITERS_TABLE);
+        if (!SchemaMigrator.columnExists(conn, "parkingspaces", "OccupiedFlag")) {
+            execute(conn, "ALTER TABLE parkingspaces ADD COLUMN OccupiedFlag BOOLEAN NULL COLUMN_FORMAT DYNAMIC, "
+                    + "ALGORITHM=INPLACE");
+        }
+        if (!SchemaMigrator.columnExists(conn, "parkingevents", "StartAt")) {
+            execute(conn, "ALTER TABLE parkingevents ADD COLUMN StartAt DATETIME NULL COLUMN_FORMAT DYNAMIC, "
+                    + "ADD COLUMN EndAt DATETIME NULL COLUMN_FORMAT DYNAMIC, ALGORITHM=INPLACE");
+        }
+    }
+
+    /**
+     * Version 5: waits until every service writes both columns, copies the legacy values, and fails
+     * (to be run again) if any row still differs.
+     */
+    private static void backfillShadowColumns(Connection conn) throws SQLException {
+        awaitWriters(conn, SchemaVersion.NATIVE_COLUMNS_ADDED);
+        backfill(conn);
+        long differing = count(conn, "SELECT COUNT(*) FROM parkingspaces WHERE NOT (OccupiedFlag <=> (Occupied = '1'))")
+                + count(conn, "SELECT COUNT(*) FROM parkingevents "
+                + "WHERE NOT (StartAt <=> CAST(StartTime AS DATETIME)) OR NOT (EndAt <=> CAST(EndTime AS DATETIME))");
+        if (differing > 0) {
+            throw new SQLException(differing + " rows differ from their shadow columns; a service may not be "
+                    + "writing both yet. Run the migration again.");
+        }
+    }
+
+    /**
+     * Waits until no service process can still write with a version older than the given one. A
+     * process reports the version it read to SchemaWriters each time it reads it, at least every
+     * {@code schema.refreshMs} while it writes, so it is done once its report is new enough; a
+     * process that has not reported for two refresh intervals (or not since the version was
+     * applied) re-reads the version before its next write. The services must not use a longer
+     * {@code schema.refreshMs} than this process.
+     *
+     * @throws SQLException If processes still report an older version after {@code schema.writerWaitMs}.
+     */
+    private static void awaitWriters(Connection conn, int version) throws SQLException {
+        long appliedAt;
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT AppliedAt FROM SchemaVersion WHERE Version = ?")) {
+            stmt.setInt(1, version);
+            try (ResultSet rs = stmt.executeQuery()) {
+                appliedAt = rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+        long giveUpAt = System.currentTimeMillis() + WRITER_WAIT_MS;
+        while (true) {
+            List<String> lagging = laggingWriters(conn, version);
+            long settledIn = appliedAt + WRITER_WINDOW_MS - System.currentTimeMillis();
+            if (lagging.isEmpty() && settledIn <= 0) {
+                return;
+            }
+            if (System.currentTimeMillis() > giveUpAt) {
+                throw new SQLException("Service processes still use a schema version older than " + version + ": "
+                        + lagging + "; they may be stuck reading it. Run the migration again.");
+            }
+            System.out.println(lagging.isEmpty()
+                    ? "Waiting " + settledIn + " ms for the services that have not reported since version " + version + "..."
+                    : "Waiting for " + lagging.size() + " service processes to read version " + version + ": " + lagging);
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for the services", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the processes that reported an older version within the last two refresh intervals,
+     * as "writer (version)".
+     */
+    private static List<String> laggingWriters(Connection conn, int version) throws SQLException {
+        List<String> lagging = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT_LAGGING_WRITERS)) {
+            stmt.setInt(1, version);
+            stmt.setLong(2, -WRITER_WINDOW_MS * 1000);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    lagging.add(rs.getString("Writer") + " (" + rs.getInt("Version") + ")");
+                }
+            }
+        }
+        return lagging;
+    }
+
+    /**
+     * Version 6: the indexes of the hot queries, built online over the columns the queries use
+     * now (the legacy ones until the swap), so they pay off at once.
+     */
+    private static void indexHotColumns(Connection conn) throws SQLException {
+        addIndex(conn, "parkingevents", EVENTS_INDEX, EVENTS_INDEX_COLUMNS);
+        addIndex(conn, "parkingspaces", SPACES_INDEX, SPACES_INDEX_COLUMNS);
+    }
+
+    /**
+     * Version 7: a last backfill for writes made since version 5, then the swap. Dropping a column
+     * also drops it from the indexes of version 6, so they are dropped with the legacy columns and
+     * built again over the native ones.
+     */
+    private static void swapColumns(Connection conn) throws SQLException {
+        backfill(conn);
+        if (SchemaMigrator.columnExists(conn, "parkingspaces", "OccupiedFlag")) {
+            execute(conn, "ALTER TABLE parkingspaces " + dropIndexClause(conn, "parkingspaces", SPACES_INDEX)
+                    + "DROP COLUMN Occupied, CHANGE COLUMN OccupiedFlag Occupied BOOLEAN NULL");
+        }
+        if (SchemaMigrator.columnExists(conn, "parkingevents", "StartAt")) {
+            execute(conn, "ALTER TABLE parkingevents " + dropIndexClause(conn, "parkingevents", EVENTS_INDEX)
+                    + "DROP COLUMN StartTime, DROP COLUMN EndTime, "
+                    + "CHANGE COLUMN StartAt StartTime DATETIME NOT NULL, CHANGE COLUMN EndAt EndTime DATETIME NULL");
+        }
+        indexHotColumns(conn); // Skips the indexes when a previous run already built them again
+    }
+
+    /**
+     * Returns "DROP INDEX name, " if the table has the index, otherwise nothing.
+     */
+    private static String dropIndexClause(Connection conn, String table, String index) throws SQLException {
+        return SchemaMigrator.indexExists(conn, table, index) ? "DROP INDEX " + index + ", " : "";
+    }
+
+    /**
+     * Version 8: colocates each zone's spaces and events with its zones row.
+     */
+    private static void partitionByZone(Connection conn) throws SQLException {
+        if (!SchemaMigrator.columnExists(conn, "parkingevents", "ZoneID")) {
+            execute(conn, "ALTER TABLE parkingevents ADD COLUMN ZoneID INT NULL COLUMN_FORMAT DYNAMIC, ALGORITHM=INPLACE");
+        }
+        backfill(conn, "parkingevents", "EventID",
+                "ZoneID = (SELECT ps.ZoneID FROM parkingspaces ps WHERE ps.SpaceID = parkingevents.SpaceID)");
+        long orphans = count(conn, "SELECT COUNT(*) FROM parkingevents WHERE ZoneID IS NULL");
+        if (orphans > 0) {
+            throw new SQLException(orphans + " parking events refer to unknown spaces and have no zone; "
+                    + "fix or remove them and run the migration again.");
+        }
+        if (!partitionedByZone(conn, "parkingevents")) {
+            execute(conn, "ALTER TABLE parkingevents MODIFY COLUMN ZoneID INT NOT NULL, "
+                    + "DROP PRIMARY KEY, ADD PRIMARY KEY (EventID, ZoneID), "
+                    + "ADD UNIQUE KEY uq_parkingevents_event (EventID) "
+                    + "PARTITION BY KEY (ZoneID)");
+        }
+        if (!partitionedByZone(conn, "parkingspaces")) {
+            execute(conn, "ALTER TABLE parkingspaces "
+                    + "DROP PRIMARY KEY, ADD PRIMARY KEY (SpaceID, ZoneID), "
+                    + "ADD UNIQUE KEY uq_parkingspaces_space (SpaceID) "
+                    + "PARTITION BY KEY (ZoneID)");
+        }
+    }
+
+    /**
+     * Checks whether a table is already partitioned by ZoneID.
+     */
+    private static boolean partitionedByZone(Connection conn, String table) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT PARTITION_EXPRESSION FROM information_schema.PARTITIONS "
+                + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? LIMIT 1")) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                String expression = rs.next() ? rs.getString(1) : null;
+                return expression != null && expression.contains("ZoneID");
+            }
+        }
+    }
+
+    /**
+     * Copies the legacy values into the shadow columns, one primary-key range per transaction so
+     * no batch exceeds NDB's transaction limits.
+     */
+    private static void backfill(Connection conn) throws SQLException {
+        if (SchemaMigrator.columnExists(conn, "parkingspaces", "OccupiedFlag")) {
+            backfill(conn, "parkingspaces", "SpaceID", "OccupiedFlag = (Occupied = '1')");
+        }
+        if (SchemaMigrator.columnExists(conn, "parkingevents", "StartAt")) {
+            backfill(conn, "parkingevents", "EventID", "StartAt = StartTime, EndAt = EndTime");
+        }
+    }
+
+    private static void backfill(Connection conn, String table, String key, String assignments) throws SQLException {
+        long min;
+        long max;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MIN(" + key + "), MAX(" + key + ") FROM " + table)) {
+            rs.next();
+            min = rs.getLong(1);
+            max = rs.getLong(2);
+            if (rs.wasNull()) {
+                return; // Empty table
+            }
+        }
+        long rows = 0;
+        String sql = "UPDATE " + table + " SET " + assignments + " WHERE " + key + " >= ? AND " + key + " < ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (long from = min; from <= max; from += BACKFILL_BATCH) {
+                stmt.setLong(1, from);
+                stmt.setLong(2, from + BACKFILL_BATCH);
+                rows += stmt.executeUpdate();
+            }
+        }
+        System.out.println("Backfilled " + rows + " rows of " + table + ".");
+    }
+
+    private static void addIndex(Connection conn, String table, String index, String columns) throws SQLException {
+        if (!SchemaMigrator.indexExists(conn, table, index)) {
+            execute(conn, "ALTER TABLE " + table + " ADD INDEX " + index + " (" + columns + "), ALGORITHM=INPLACE");
+        }
+    }
+
+    private static void execute(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private static long count(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
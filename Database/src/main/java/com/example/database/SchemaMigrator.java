@@ -0,0 +1,145 @@
+package com.example.database;
+
+import com.example.shared.utils.SchemaVersion;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies the pending {@link Migration}s in version order and records each one in the
+ * SchemaVersion table, which the services read through {@link SchemaVersion}.
+ *
+ * Online migrations run while the services keep serving. The migrator stops before the first
+ * offline one unless it is allowed to run them, so the online part of an upgrade can be rolled out
+ * at any time and the rest in a maintenance window. Run one migrator at a time; since every step
+ * skips what is already in place, a run that failed halfway can be repeated.
+ */
+public class SchemaMigrator {
+
+    private static final String CREATE_VERSION_TABLE = """
+            CREATE TABLE IF NOT EXISTS SchemaVersion (
+                Version INT NOT NULL,
+                Description VARCHAR(255) NOT NULL,
+                AppliedAt BIGINT NOT NULL,
+                PRIMARY KEY (Version)
+            ) ENGINE=ndbcluster DEFAULT CHARSET=utf8mb4
+            """;
+
+    private static final String RECORD_VERSION =
+            "INSERT INTO SchemaVersion (Version, Description, AppliedAt) VALUES (?, ?, ?)";
+
+    private final List<Migration> migrations;
+
+    /**
+     * Creates a migrator for the given migrations.
+     *
+     * @param migrations The migrations, in ascending version order.
+     */
+    public SchemaMigrator(List<Migration> migrations) {
+        for (int i = 1; i < migrations.size(); i++) {
+            if (migrations.get(i).version() <= migrations.get(i - 1).version()) {
+                throw new IllegalArgumentException("Migrations out of order at version " + migrations.get(i).version());
+            }
+        }
+        this.migrations = List.copyOf(migrations);
+    }
+
+    /**
+     * Returns the migrations not applied yet.
+     *
+     * @param conn An open connection.
+     * @return The pending migrations, in order.
+     * @throws SQLException If the version cannot be read.
+     */
+    public List<Migration> pending(Connection conn) throws SQLException {
+        int current = SchemaVersion.read(conn);
+        List<Migration> pending = new ArrayList<>();
+        for (Migration migration : migrations) {
+            if (migration.version() > current) {
+                pending.add(migration);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Applies the pending migrations up to a target version.
+     *
+     * @param conn          An open connection in auto-commit mode.
+     * @param targetVersion The last version to apply.
+     * @param allowOffline  Whether offline migrations may run; if not, the run stops before the first one.
+     * @return The version the schema has afterwards.
+     * @throws SQLException If a migration fails; the versions before it stay applied.
+     */
+    public int migrate(Connection conn, int targetVersion, boolean allowOffline) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(CREATE_VERSION_TABLE);
+        }
+        int version = SchemaVersion.read(conn);
+        for (Migration migration : pending(conn)) {
+            if (migration.version() > targetVersion) {
+                break;
+            }
+            if (!migration.online() && !allowOffline) {
+                System.out.println("Stopping before offline migration " + migration.version() + " ("
+                        + migration.description() + "); run it in a maintenance window with --offline.");
+                break;
+            }
+            System.out.println("Applying migration " + migration.version() + ": " + migration.description());
+            long start = System.currentTimeMillis();
+            migration.step().apply(conn);
+            try (PreparedStatement stmt = conn.prepareStatement(RECORD_VERSION)) {
+                stmt.setInt(1, migration.version());
+                stmt.setString(2, migration.description());
+                stmt.setLong(3, System.currentTimeMillis());
+                stmt.executeUpdate();
+            }
+            version = migration.version();
+            System.out.println("Applied migration " + version + " in " + (System.currentTimeMillis() - start) + " ms.");
+        }
+        return version;
+    }
+
+    /**
+     * Checks whether a table has a column.
+     *
+     * @param conn   An open connection.
+     * @param table  The table name.
+     * @param column The column name.
+     * @return True if the column exists.
+     * @throws SQLException If the metadata cannot be read.
+     */
+    static boolean columnExists(Connection conn, String table, String column) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        try (ResultSet rs = meta.getColumns(conn.getCatalog(), null, table, column)) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * Checks whether a table has an index.
+     *
+     * @param conn  An open connection.
+     * @param table The table name.
+     * @param index The index name.
+     * @return True if the index exists.
+     * @throws SQLException If the metadata cannot be read.
+     */
+    static boolean indexExists(Connection conn, String table, String index) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        try (ResultSet rs = meta.getIndexInfo(conn.getCatalog(), null, table, false, true)) {
+            while (rs.next()) {
+                if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
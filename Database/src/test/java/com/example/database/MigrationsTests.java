@@ -0,0 +1,187 @@
+package com.example.database;
+
+import com.example.shared.utils.SchemaVersion;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for Migrations.
+ * This class tests the zone partitioning of version 8: the ZoneID column is added and backfilled
+ * before the tables are partitioned, events without a zone stop it before anything is
+ * repartitioned, and a rerun only does what is missing. The schema is a stand-in that applies the
+ * migration's DDL to a few flags and records every statement.
+ */
+class MigrationsTests {
+
+    /**
+     * The parts of the schema the migration looks at, and the statements it ran.
+     */
+    private static final class Schema {
+        final Set<String> columns = new HashSet<>();     // "table.column"
+        final Set<String> partitioned = new HashSet<>(); // Tables partitioned by ZoneID
+        final List<String> statements = new ArrayList<>();
+        Long firstEventId;                               // Null: no events
+        long lastEventId;
+        long eventsWithoutZone;
+
+        Connection connect() {
+            DatabaseMetaData meta = proxy(DatabaseMetaData.class, (name, args) -> name.equals("getColumns")
+                    ? rows(columns.contains(args[2] + "." + args[3]) ? 1 : 0, null, null) : null);
+            return proxy(Connection.class, (name, args) -> switch (name) {
+                case "getMetaData" -> meta;
+                case "getCatalog" -> "muligansystem";
+                case "createStatement" -> statement();
+                case "prepareStatement" -> prepared((String) args[0]);
+                default -> null;
+            });
+        }
+
+        private Statement statement() {
+            return proxy(Statement.class, (name, args) -> switch (name) {
+                case "execute" -> {
+                    String sql = (String) args[0];
+                    statements.add(sql);
+                    if (sql.contains("ADD COLUMN ZoneID")) {
+                        columns.add("parkingevents.ZoneID");
+                    }
+                    if (sql.contains("PARTITION BY KEY (ZoneID)")) {
+                        partitioned.add(sql.split(" ")[2]);
+                    }
+                    yield false;
+                }
+                case "executeQuery" -> {
+                    String sql = (String) args[0];
+                    if (sql.startsWith("SELECT MIN(EventID)")) {
+                        yield rows(1, firstEventId, firstEventId == null ? null : lastEventId);
+                    }
+                    yield rows(1, eventsWithoutZone, null); // The COUNT(*)
+                }
+                default -> null;
+            });
+        }
+
+        private PreparedStatement prepared(String sql) {
+            Object[] params = new Object[3];
+            return proxy(PreparedStatement.class, (name, args) -> switch (name) {
+                case "setString", "setLong" -> params[(Integer) args[0]] = args[1];
+                case "executeQuery" -> {
+                    boolean zoned = partitioned.contains((String) params[1]);
+                    yield rows(zoned ? 1 : 0, zoned ? "`ZoneID`" : null, null);
+                }
+                case "executeUpdate" -> {
+                    statements.add(sql + " [" + params[1] + ", " + params[2] + ")");
+                    yield 1;
+                }
+                default -> null;
+            });
+        }
+    }
+
+    /**
+     * A result of the given number of rows, each with the given first and second column.
+     */
+    private static ResultSet rows(int count, Object first, Object second) {
+        int[] read = new int[1];
+        Object[] last = new Object[1];
+        return proxy(ResultSet.class, (name, args) -> switch (name) {
+            case "next" -> read[0]++ < count;
+            case "getLong" -> {
+                last[0] = (Integer) args[0] == 1 ? first : second;
+                yield last[0] == null ? 0L : ((Number) last[0]).longValue();
+            }
+            case "getString" -> first;
+            case "wasNull" -> last[0] == null;
+            default -> null;
+        });
+    }
+
+    private interface Handler {
+        Object invoke(String name, Object[] args);
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (self, method, args) -> handler.invoke(method.getName(), args)));
+    }
+
+    private static Migration zonePartitioning() {
+        return Migrations.all().stream()
+                .filter(m -> m.version() == SchemaVersion.ZONE_PARTITIONED)
+                .findFirst().orElseThrow();
+    }
+
+    private static List<String> ddl(Schema schema) {
+        return schema.statements.stream().filter(sql -> sql.startsWith("ALTER")).toList();
+    }
+
+    /**
+     * Tests that the ZoneID column is added and backfilled in key ranges before either table is
+     * partitioned, and that the migration needs a quiet window.
+     */
+    @Test
+    void partitionByZone_backfillsBeforePartitioning() throws Exception {
+        Schema schema = new Schema();
+        schema.firstEventId = 1L;
+        schema.lastEventId = 2500;
+
+        Migration migration = zonePartitioning();
+        assertFalse(migration.online());
+        migration.step().apply(schema.connect());
+
+        assertEquals(6, schema.statements.size(), String.join("\n", schema.statements));
+        assertTrue(schema.statements.get(0).contains("ADD COLUMN ZoneID"));
+        for (int i = 1; i <= 3; i++) {
+            assertTrue(schema.statements.get(i).startsWith("UPDATE parkingevents SET ZoneID"), schema.statements.get(i));
+        }
+        assertTrue(schema.statements.get(3).endsWith("[2001, 3001)"), "The last events were not backfilled.");
+        assertTrue(schema.statements.get(4).startsWith("ALTER TABLE parkingevents MODIFY COLUMN ZoneID INT NOT NULL"));
+        assertEquals(Set.of("parkingevents", "parkingspaces"), schema.partitioned);
+        assertTrue(ddl(schema).get(2).contains("ADD PRIMARY KEY (SpaceID, ZoneID)"));
+    }
+
+    /**
+     * Tests that events whose space is unknown stop the migration before a table is repartitioned,
+     * and that the column added so far is kept for the rerun.
+     */
+    @Test
+    void partitionByZone_stopsOnEventsWithoutZone() {
+        Schema schema = new Schema();
+        schema.firstEventId = 1L;
+        schema.lastEventId = 10;
+        schema.eventsWithoutZone = 3;
+
+        SQLException e = assertThrows(SQLException.class, () -> zonePartitioning().step().apply(schema.connect()));
+        assertTrue(e.getMessage().startsWith("3 parking events"), e.getMessage());
+        assertEquals(Set.of(), schema.partitioned);
+        assertTrue(schema.columns.contains("parkingevents.ZoneID"));
+    }
+
+    /**
+     * Tests that a rerun after a migration that stopped half way only partitions what is left.
+     */
+    @Test
+    void partitionByZone_rerunDoesOnlyWhatIsMissing() throws Exception {
+        Schema schema = new Schema();
+        schema.columns.add("parkingevents.ZoneID");
+        schema.partitioned.add("parkingevents");
+
+        zonePartitioning().step().apply(schema.connect()); // No events: nothing to backfill
+
+        assertEquals(1, ddl(schema).size(), String.join("\n", schema.statements));
+        assertTrue(ddl(schema).get(0).startsWith("ALTER TABLE parkingspaces"));
+        assertEquals(1, schema.statements.size());
+    }
+}
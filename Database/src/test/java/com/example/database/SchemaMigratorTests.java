@@ -0,0 +1,123 @@
+package com.example.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SchemaMigrator.
+ * This class tests that migrations must be in version order, that they are applied in that order
+ * from the recorded version on, and that a run stops before the target and before offline steps.
+ * The database is a stand-in that only keeps the SchemaVersion rows.
+ */
+class SchemaMigratorTests {
+
+    private final List<Integer> recorded = new ArrayList<>();
+    private final List<Integer> applied = new ArrayList<>();
+
+    /**
+     * Returns a connection whose SchemaVersion table holds the recorded versions. Statements other
+     * than reading the version and recording one do nothing.
+     */
+    private Connection connection() {
+        Statement statement = proxy(Statement.class, (name, args) -> switch (name) {
+            case "executeQuery" -> resultSet(recorded.stream().mapToInt(Integer::intValue).max().orElse(0));
+            case "execute" -> false;
+            default -> null;
+        });
+        int[] version = new int[1];
+        PreparedStatement record = proxy(PreparedStatement.class, (name, args) -> switch (name) {
+            case "setInt" -> version[0] = (Integer) args[1];
+            case "executeUpdate" -> recorded.add(version[0]) ? 1 : 0;
+            default -> null;
+        });
+        return proxy(Connection.class, (name, args) -> switch (name) {
+            case "createStatement" -> statement;
+            case "prepareStatement" -> record;
+            default -> null;
+        });
+    }
+
+    private static ResultSet resultSet(int maxVersion) {
+        boolean[] read = new boolean[1];
+        return proxy(ResultSet.class, (name, args) -> switch (name) {
+            case "next" -> !read[0] && (read[0] = true);
+            case "getInt" -> maxVersion;
+            default -> null;
+        });
+    }
+
+    private interface Handler {
+        Object invoke(String name, Object[] args);
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (self, method, args) -> handler.invoke(method.getName(), args)));
+    }
+
+    private Migration migration(int version, boolean online) {
+        return new Migration(version, "Step " + version, online, conn -> applied.add(version));
+    }
+
+    /**
+     * Tests that migrations out of version order, or with a repeated version, are refused.
+     */
+    @Test
+    void constructor_rejectsOutOfOrderVersions() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new SchemaMigrator(List.of(migration(1, true), migration(3, true), migration(2, true))));
+        assertThrows(IllegalArgumentException.class,
+                () -> new SchemaMigrator(List.of(migration(1, true), migration(1, true))));
+        assertDoesNotThrow(() -> new SchemaMigrator(List.of(migration(1, true), migration(5, true))));
+    }
+
+    /**
+     * Tests that the shipped migrations are in order.
+     */
+    @Test
+    void constructor_acceptsShippedMigrations() {
+        assertDoesNotThrow(() -> new SchemaMigrator(Migrations.all()));
+    }
+
+    /**
+     * Tests that only the migrations after the recorded version are applied, in order, and each
+     * recorded right after it ran.
+     */
+    @Test
+    void migrate_appliesPendingInOrder() throws Exception {
+        SchemaMigrator migrator = new SchemaMigrator(List.of(migration(1, true), migration(2, true), migration(4, true)));
+        recorded.add(1);
+
+        assertEquals(List.of(2, 4), migrator.pending(connection()).stream().map(Migration::version).toList());
+        assertEquals(4, migrator.migrate(connection(), Integer.MAX_VALUE, false));
+        assertEquals(List.of(2, 4), applied);
+        assertEquals(List.of(1, 2, 4), recorded);
+        assertEquals(List.of(), migrator.pending(connection()));
+    }
+
+    /**
+     * Tests that a run stops at the target version, and before an offline migration unless
+     * offline migrations are allowed.
+     */
+    @Test
+    void migrate_stopsAtTargetAndBeforeOffline() throws Exception {
+        SchemaMigrator migrator = new SchemaMigrator(
+                List.of(migration(1, true), migration(2, true), migration(3, false), migration(4, true)));
+
+        assertEquals(1, migrator.migrate(connection(), 1, true));
+        assertEquals(2, migrator.migrate(connection(), Integer.MAX_VALUE, false), "3 is offline.");
+        assertEquals(List.of(1, 2), applied, "Online migrations after an offline one wait for it.");
+        assertEquals(4, migrator.migrate(connection(), Integer.MAX_VALUE, true));
+        assertEquals(List.of(1, 2, 3, 4), applied);
+        assertEquals(List.of(1, 2, 3, 4), recorded);
+    }
+}
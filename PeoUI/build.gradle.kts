@@ -39,4 +39,6 @@ tasks.withType<JavaCompile> {
 // ✅ Enable JUnit 5 for testing
 tasks.withType<Test> {
     useJUnitPlatform()
+    // Messaging runs against the embedded broker unless -Prabbitmq.transport=amqp is given
+    systemProperty("rabbitmq.transport", findProperty("rabbitmq.transport") ?: "inprocess")
 }
\ No newline at end of file
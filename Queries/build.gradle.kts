@@ -1,5 +1,6 @@
 plugins {
     id("java") // Apply the Java plugin
+    id("me.champeau.jmh") version "0.7.2" // JMH benchmarks (src/jmh/java)
 }
 
 repositories {
@@ -12,6 +13,12 @@ dependencies {
     implementation("org.xerial:sqlite-jdbc:3.41.2.2") // SQLite dependency
 }
 
+// Run with: gradle :Queries:jmh (the benchmarks need a reachable RabbitMQ node),
+// or gradle :Queries:jmh -Prabbitmq.transport=inprocess to run them against the embedded broker
+jmh {
+    jmhVersion.set("1.37")
+    jvmArgsAppend.add("-Drabbitmq.transport=" + (findProperty("rabbitmq.transport") ?: "amqp"))
+}
 
 tasks.withType<JavaCompile> {
     modularity.inferModulePath.set(false)
@@ -0,0 +1,113 @@
+package com.example.queries;
+
+import com.example.shared.models.Citation;
+import com.example.shared.utils.BrokerTransport;
+import com.example.shared.utils.LegacyMessageCursor;
+import com.example.shared.utils.RabbitMQUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Report build time against history size, with the history kept in a quorum queue
+ * (fetch-and-republish) versus a stream (non-destructive offset reads).
+ *
+ * Needs a reachable RabbitMQ node: {@code -Dbench.rabbitmq.uri=amqp://host} (defaults to the first
+ * cluster node), or runs against the embedded broker with {@code -Drabbitmq.transport=inprocess}.
+ * The benchmark uses its own queues, so it does not touch the real history.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HistoryReportBenchmark {
+
+    private static final String QUORUM_QUEUE = "bench.history.quorum";
+    private static final String STREAM_QUEUE = "bench.history.stream";
+
+    @Param({"1000", "10000", "100000"})
+    public int historySize;
+
+    private RabbitMQUtil rabbitMQUtil;
+    private long streamEndOffset;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        String uri = System.getProperty("bench.rabbitmq.uri", "amqp://100.85.154.51");
+
+        BrokerTransport.BrokerConnection connection = RabbitMQUtil.getTransport().connect(uri);
+        try {
+            BrokerTransport.BrokerChannel channel = connection.createChannel();
+            declareFresh(channel, QUORUM_QUEUE, "quorum");
+            declareFresh(channel, STREAM_QUEUE, "stream");
+
+            channel.confirmSelect();
+            for (int i = 0; i < historySize; i++) {
+                byte[] body = String.format(
+                        "VehicleID: %d, SpaceID: %d, ParkingZone: Zone %d, inspectionTimes: 2025-01-29 15:28:11, totalCost: %.2f",
+                        200 + i % 500, i % 2000, i % 20, 100 + i % 900 / 10.0
+                ).getBytes(StandardCharsets.UTF_8);
+                channel.basicPublish("", QUORUM_QUEUE, body);
+                channel.basicPublish("", STREAM_QUEUE, body);
+            }
+            channel.waitForConfirmsOrDie(60_000);
+        } finally {
+            connection.close();
+        }
+
+        rabbitMQUtil = new RabbitMQUtil(uri);
+        streamEndOffset = rabbitMQUtil.readStream(STREAM_QUEUE, 0).nextOffset();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        rabbitMQUtil.closeConnection();
+    }
+
+    /** Full report from a quorum queue: drain, ack, republish. */
+    @Benchmark
+    public List<Citation> quorumFullReport() {
+        return parse(rabbitMQUtil.fetchAndRepublishMessageBodies(QUORUM_QUEUE));
+    }
+
+    /** Full report from a stream: replay from offset 0, nothing is removed. */
+    @Benchmark
+    public List<Citation> streamFullReport() {
+        return parse(rabbitMQUtil.readStream(STREAM_QUEUE, 0).bodies());
+    }
+
+    /** Incremental report from a stream: resume at the stored offset, nothing new to read. */
+    @Benchmark
+    public List<Citation> streamIncrementalReport() {
+        return parse(rabbitMQUtil.readStream(STREAM_QUEUE, streamEndOffset).bodies());
+    }
+
+    private static List<Citation> parse(List<byte[]> bodies) {
+        List<Citation> citations = new ArrayList<>(bodies.size());
+        LegacyMessageCursor cursor = new LegacyMessageCursor();
+        for (byte[] body : bodies) {
+            cursor.reset(body);
+            String vehicleId = cursor.next() ? cursor.valueAsString() : null;
+            String spaceId = cursor.next() ? cursor.valueAsString() : null;
+            String zone = cursor.next() ? cursor.valueAsString() : null;
+            String time = cursor.next() ? cursor.valueAsString() : null;
+            double cost = cursor.next() ? cursor.valueAsDouble() : 0;
+            citations.add(new Citation(vehicleId, spaceId, zone, time, cost));
+        }
+        return citations;
+    }
+
+    private static void declareFresh(BrokerTransport.BrokerChannel channel, String queue, String type) throws Exception {
+        channel.queueDelete(queue);
+        Map<String, Object> args = new HashMap<>();
+        args.put("x-queue-type", type);
+        channel.queueDeclare(queue, args);
+    }
+}
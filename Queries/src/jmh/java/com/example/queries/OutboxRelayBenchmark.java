@@ -0,0 +1,129 @@
+package com.example.queries;
+
+import com.example.shared.utils.DatabaseUtil;
+import com.example.shared.utils.OutboxRelay;
+import com.example.shared.utils.RabbitMQUtil;
+import com.example.shared.utils.SchemaVersion;
+import com.example.shared.utils.TransactionalOutbox;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and lag of the {@link OutboxRelay} while the services write to the outbox.
+ *
+ * Eight writer threads each commit one outbox message per operation, keyed by a random one of
+ * {@code zones} zones, the way a start or stop does; one thread runs the relay. The relay's
+ * {@code rows} counter is the rate of rows published and deleted, and {@code lagMs} the highest
+ * age of a batch's oldest row (commit to broker confirm) seen in the iteration. Before the run
+ * {@code backlog} rows are written, as after a broker outage: the iterations until they are worked
+ * off show how fast the relay catches up with a full table, and how long its lag stays high.
+ *
+ * Needs a MySQL migrated by the Database module (the outbox tables):
+ * {@code -Ddb.write.url=jdbc:mysql://host/muligansystem} (defaults to the cluster), and a broker,
+ * or {@code -Prabbitmq.transport=inprocess}. No other relay may hold the lease, so the services
+ * must not run against the same database. The messages go to the queue {@code bench.outbox}; the
+ * outbox rows of other queues are left alone, but are relayed by the benchmark's relay as well.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OutboxRelayBenchmark {
+
+    private static final String QUEUE = "bench.outbox";
+
+    @Param({"1", "64"})
+    public int zones;
+
+    @Param({"0", "100000"})
+    public int backlog;
+
+    private RabbitMQUtil rabbitMQUtil;
+    private OutboxRelay relay;
+
+    /** The relay's results, reported as rates. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Relayed {
+        public long rows;
+    }
+
+    /** The relay's lag: the highest seen in the iteration. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Lag {
+        public long lagMs;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            lagMs = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        SchemaVersion.require(SchemaVersion.OUTBOX_TABLES, "The outbox benchmark");
+        try (Connection conn = DatabaseUtil.connect(); Statement stmt = conn.createStatement()) {
+            conn.setAutoCommit(false);
+            for (int i = 0; i < backlog; i++) {
+                TransactionalOutbox.enqueue(conn, QUEUE, String.valueOf(i % zones), "backlog " + i);
+                if (i % 1000 == 999) {
+                    conn.commit();
+                }
+            }
+            conn.commit();
+            conn.setAutoCommit(true);
+            stmt.execute("UPDATE OutboxRelayLease SET Owner = '', LeaseUntil = 0 WHERE LeaseID = 1");
+        }
+        rabbitMQUtil = new RabbitMQUtil();
+        relay = new OutboxRelay(rabbitMQUtil);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        while (relay.relayOnce() > 0) {
+            // Leave no rows of the benchmark behind
+        }
+        rabbitMQUtil.closeConnection();
+    }
+
+    /** One committed outbox message, like the one of a start or stop. */
+    @Benchmark
+    @Group("outbox")
+    @GroupThreads(8)
+    public void write() throws SQLException {
+        String zone = String.valueOf(ThreadLocalRandom.current().nextInt(zones));
+        try (Connection conn = DatabaseUtil.connect()) {
+            conn.setAutoCommit(false);
+            try {
+                TransactionalOutbox.enqueue(conn, QUEUE, zone, "event in zone " + zone);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /** One pass of the relay: read, publish with confirms, delete. */
+    @Benchmark
+    @Group("outbox")
+    @GroupThreads(1)
+    public int relay(Relayed relayed, Lag lag) throws SQLException {
+        int rows = relay.relayOnce();
+        relayed.rows += rows;
+        if (rows > 0) {
+            lag.lagMs = Math.max(lag.lagMs, relay.getLastLagMs());
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.queries;
+
+import com.example.shared.utils.DatabaseUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write latency under a heavy read load, with the reads in the write pool (one shared pool, as
+ * before) versus in their own read pool.
+ *
+ * Sixteen threads read parking history (the {@code getParkingcompletedEvents} query without the
+ * vehicle filter) while two threads run small claim writes; the sample mode reports the writes'
+ * p99. With {@code split=false} the readers borrow from {@link DatabaseUtil#connect()} and the
+ * writers queue behind them for connections; with {@code split=true} they use
+ * {@link DatabaseUtil#connectForRead()}.
+ *
+ * Needs a reachable MySQL with the system's schema: {@code -Ddb.write.url=jdbc:mysql://host/muligansystem}
+ * (defaults to the cluster). The writes go to a table of their own, {@code bench_claims}.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReadWriteSplitBenchmark {
+
+    private static final String HISTORY_QUERY = """
+            SELECT SpaceID, StartTime, EndTime, TotalCost
+            FROM ParkingEvents
+            WHERE EndTime IS NOT NULL
+            ORDER BY StartTime DESC
+            LIMIT 5000
+            """;
+
+    private static final String CLAIM_WRITE =
+            "INSERT INTO bench_claims (SpaceID, Claims) VALUES (?, 1) ON DUPLICATE KEY UPDATE Claims = Claims + 1";
+
+    @Param({"false", "true"})
+    public boolean split;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        try (Connection conn = DatabaseUtil.connect(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS bench_claims (SpaceID INT PRIMARY KEY, Claims INT NOT NULL)");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Connection conn = DatabaseUtil.connect(); Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS bench_claims");
+        }
+    }
+
+    /** A heavy history read. */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(16)
+    public int historyRead() throws SQLException {
+        int rows = 0;
+        try (Connection conn = split ? DatabaseUtil.connectForRead() : DatabaseUtil.connect();
+             PreparedStatement stmt = conn.prepareStatement(HISTORY_QUERY);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    /** A latency-critical claim write; its p99 is the result that matters. */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public int claimWrite() throws SQLException {
+        try (Connection conn = DatabaseUtil.connect();
+             PreparedStatement stmt = conn.prepareStatement(CLAIM_WRITE)) {
+            stmt.setInt(1, ThreadLocalRandom.current().nextInt(1000));
+            return stmt.executeUpdate();
+        }
+    }
+}
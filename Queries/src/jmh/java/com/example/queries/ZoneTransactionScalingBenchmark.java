@@ -0,0 +1,123 @@
+package com.example.queries;
+
+import com.example.shared.utils.DatabaseUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Throughput of parking-start transactions with the tables partitioned by primary key (as
+ * shipped) versus by zone, with and without the transaction coordinator hint of
+ * {@link DatabaseUtil#beginZoneTransaction}.
+ *
+ * Each operation is one transaction shaped like a start: validate the space, mark it occupied and
+ * insert the event. With {@code layout=primaryKey} the space and the event hash to unrelated
+ * partitions and the commit spans node groups; with {@code layout=zone} both live in the zone's
+ * partition, and with {@code hint=true} the coordinator runs on the node that owns it.
+ *
+ * Scaling is measured by running the benchmark against the same cluster with more data nodes
+ * (e.g. 2, 4 and 8 in node groups of two); the setup prints the number of data nodes so the runs
+ * can be told apart. Needs an NDB cluster: {@code -Ddb.write.url=jdbc:mysql://host/muligansystem}
+ * (defaults to the cluster), and {@code -Ddb.write.poolSize=32} so the pool does not cap the 32
+ * threads. The benchmark uses tables of its own, {@code bench_spaces} and {@code bench_events}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 20)
+@Fork(1)
+@Threads(32)
+@State(Scope.Benchmark)
+public class ZoneTransactionScalingBenchmark {
+
+    private static final int ZONES = 64;
+    private static final int SPACES_PER_ZONE = 50;
+
+    @Param({"primaryKey", "zone"})
+    public String layout;
+
+    @Param({"false", "true"})
+    public boolean hint;
+
+    private final AtomicInteger nextEventId = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        boolean zoned = layout.equals("zone");
+        try (Connection conn = DatabaseUtil.connect(); Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS bench_spaces, bench_events");
+            stmt.execute("CREATE TABLE bench_spaces (SpaceID INT NOT NULL, ZoneID INT NOT NULL, "
+                    + "Occupied TINYINT NOT NULL DEFAULT 0, "
+                    + (zoned ? "PRIMARY KEY (SpaceID, ZoneID), UNIQUE KEY (SpaceID)" : "PRIMARY KEY (SpaceID)")
+                    + ") ENGINE=ndbcluster" + (zoned ? " PARTITION BY KEY (ZoneID)" : ""));
+            stmt.execute("CREATE TABLE bench_events (EventID INT NOT NULL, ZoneID INT NOT NULL, SpaceID INT NOT NULL, "
+                    + "VehicleID INT NOT NULL, StartTime DATETIME NOT NULL, "
+                    + (zoned ? "PRIMARY KEY (EventID, ZoneID)" : "PRIMARY KEY (EventID)")
+                    + ") ENGINE=ndbcluster" + (zoned ? " PARTITION BY KEY (ZoneID)" : ""));
+            StringBuilder insert = new StringBuilder("INSERT INTO bench_spaces (SpaceID, ZoneID) VALUES ");
+            for (int space = 0; space < ZONES * SPACES_PER_ZONE; space++) {
+                insert.append(space == 0 ? "" : ",").append('(').append(space).append(',').append(space / SPACES_PER_ZONE).append(')');
+            }
+            stmt.execute(insert.toString());
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM ndbinfo.nodes")) {
+                rs.next();
+                System.out.println("Data nodes: " + rs.getInt(1) + ", layout=" + layout + ", hint=" + hint);
+            }
+        }
+        nextEventId.set(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Connection conn = DatabaseUtil.connect(); Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS bench_spaces, bench_events");
+        }
+    }
+
+    /** One start-like transaction on a random space. */
+    @Benchmark
+    public int startTransaction() throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int space = random.nextInt(ZONES * SPACES_PER_ZONE);
+        int zone = space / SPACES_PER_ZONE;
+        try (Connection conn = DatabaseUtil.connect()) {
+            DatabaseUtil.beginZoneTransaction(conn, hint ? String.valueOf(zone) : null);
+            try {
+                try (PreparedStatement stmt = conn.prepareStatement("SELECT Occupied FROM bench_spaces WHERE SpaceID = ?")) {
+                    stmt.setInt(1, space);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        rs.next();
+                    }
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "UPDATE bench_spaces SET Occupied = 1 - Occupied WHERE SpaceID = ? AND ZoneID = ?")) {
+                    stmt.setInt(1, space);
+                    stmt.setInt(2, zone);
+                    stmt.executeUpdate();
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "INSERT INTO bench_events (EventID, ZoneID, SpaceID, VehicleID, StartTime) VALUES (?, ?, ?, ?, NOW())")) {
+                    stmt.setInt(1, nextEventId.incrementAndGet());
+                    stmt.setInt(2, zone);
+                    stmt.setInt(3, space);
+                    stmt.setInt(4, random.nextInt(100_000));
+                    stmt.executeUpdate();
+                }
+                conn.commit();
+                return space;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+}
@@ -4,8 +4,10 @@ package com.example.queries;
 
 import com.example.shared.models.Citation;
 import com.example.shared.models.Transaction;
+import com.example.shared.utils.LegacyMessageCursor;
 import com.example.shared.utils.RabbitMQUtil;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -15,77 +17,151 @@ import java.util.List;
  * by consuming messages from RabbitMQ queues and parsing the data into model objects.
  * The service interacts with {@link RabbitMQUtil} for message consumption and parses
  * messages into {@link Transaction} and {@link Citation} objects.
+ * In stream mode the service keeps the last {@code mo.historyLimit} transactions and citations it
+ * has read, and each report shows those; older entries stay in the stream.
  * @version 7
  */
 public class MunicipalityOfficerService {
 
+    /** The number of transactions and of citations kept for the reports (stream mode only) */
+    private static final int HISTORY_LIMIT = Math.max(1, Integer.getInteger("mo.historyLimit", 10_000));
+
     /** Utility class for interacting with RabbitMQ */
     private final RabbitMQUtil rabbitMQUtil = new RabbitMQUtil();
 
+    /** The latest transactions read and the stream offset of each partition to resume from (stream mode only) */
+    private final ArrayDeque<Transaction> transactionHistory = new ArrayDeque<>();
+    private final long[] transactionOffsets = new long[RabbitMQUtil.partitionQueues("transactionsQueue").size()];
+
+    /** The latest citations read and the stream offset of each partition to resume from (stream mode only) */
+    private final ArrayDeque<Citation> citationHistory = new ArrayDeque<>();
+    private final long[] citationOffsets = new long[RabbitMQUtil.partitionQueues("citationsQueue").size()];
+
     /**
      * Generates a report of all transactions by consuming messages from the "transactionsQueue".
      * Parses each message into a {@link Transaction} object and returns a list of transactions.
+     * In stream mode only messages published since the previous report are read, with the
+     * partitions of a partitioned queue read in parallel, and the report holds the latest
+     * {@code mo.historyLimit} transactions.
      *
      * @return a list of transactions parsed from the messages
      */
-    public ArrayList<Transaction> generateTransactionReport() {
-        List<String> messages = rabbitMQUtil.fetchAndRepublishMessagesCitation("transactionsQueue");
-        ArrayList<Transaction> transactions = new ArrayList<>();
-        for (String message : messages) {
-            Transaction transaction = parseTransactionMessage(message);
+    public synchronized ArrayList<Transaction> generateTransactionReport() {
+        if (RabbitMQUtil.isStreamMode()) {
+            List<RabbitMQUtil.HistoryBatch> batches = rabbitMQUtil.readPartitions("transactionsQueue", transactionOffsets);
+            LegacyMessageCursor cursor = new LegacyMessageCursor();
+            for (int p = 0; p < batches.size(); p++) {
+                for (byte[] message : batches.get(p).bodies()) {
+                    remember(transactionHistory, parseTransactionMessage(cursor.reset(message)));
+                }
+                transactionOffsets[p] = batches.get(p).nextOffset();
+            }
+            return new ArrayList<>(transactionHistory);
+        }
+
+        List<byte[]> messages = rabbitMQUtil.fetchAndRepublishMessageBodies("transactionsQueue");
+        ArrayList<Transaction> transactions = new ArrayList<>(messages.size());
+        LegacyMessageCursor cursor = new LegacyMessageCursor();
+        for (byte[] message : messages) {
+            Transaction transaction = parseTransactionMessage(cursor.reset(message));
             transactions.add(transaction);
         }
         return transactions;
     }
 
     /**
-     * Parses a message string into a {@link Transaction} object.
+     * Adds an entry to a history, dropping the oldest one once the history holds {@code mo.historyLimit}.
+     *
+     * @param history the history
+     * @param entry   the entry read last
+     * @param <T>     the type of the entries
+     */
+    private static <T> void remember(ArrayDeque<T> history, T entry) {
+        if (history.size() >= HISTORY_LIMIT) {
+            history.removeFirst();
+        }
+        history.addLast(entry);
+    }
+
+    /**
+     * Parses a raw message body into a {@link Transaction} object.
+     * Fields are read in place, in the order they are written by the parking service.
      *
-     * @param message the message string to parse
+     * @param cursor a cursor positioned at the start of the message
      * @return a {@link Transaction} object with data from the message
      */
-    private Transaction parseTransactionMessage(String message) {
-        String[] parts = message.split(", ");
+    private Transaction parseTransactionMessage(LegacyMessageCursor cursor) {
         return new Transaction(
-                parts[0].split(": ")[1], // VehicleID
-                parts[1].split(": ")[1], // ZoneName
-                parts[2].split(": ")[1], // SpaceID
-                parts[3].split(": ")[1], // StartTime
-                parts[4].split(": ")[1], // EndTime
-                parts[5].split(": ")[1]  // TotalCost
+                nextValue(cursor), // VehicleID
+                nextValue(cursor), // ZoneName
+                nextValue(cursor), // SpaceID
+                nextValue(cursor), // StartTime
+                nextValue(cursor), // EndTime
+                nextValue(cursor)  // TotalCost
         );
     }
 
     /**
      * Generates a report of all citations by consuming messages from the "citationsQueue".
      * Parses each message into a {@link Citation} object and returns a list of citations.
+     * In stream mode only messages published since the previous report are read, with the
+     * partitions of a partitioned queue read in parallel, and the report holds the latest
+     * {@code mo.historyLimit} citations.
      *
      * @return a list of citations parsed from the messages
      */
-    public ArrayList<Citation> generateCitationReport() {
-        List<String> messages = rabbitMQUtil.fetchAndRepublishMessagesCitation("citationsQueue");
-        ArrayList<Citation> citations = new ArrayList<>();
-        for (String message : messages) {
-            Citation citation = parseCitationMessage(message);
+    public synchronized ArrayList<Citation> generateCitationReport() {
+        if (RabbitMQUtil.isStreamMode()) {
+            List<RabbitMQUtil.HistoryBatch> batches = rabbitMQUtil.readPartitions("citationsQueue", citationOffsets);
+            LegacyMessageCursor cursor = new LegacyMessageCursor();
+            for (int p = 0; p < batches.size(); p++) {
+                for (byte[] message : batches.get(p).bodies()) {
+                    remember(citationHistory, parseCitationMessage(cursor.reset(message)));
+                }
+                citationOffsets[p] = batches.get(p).nextOffset();
+            }
+            return new ArrayList<>(citationHistory);
+        }
+
+        List<byte[]> messages = rabbitMQUtil.fetchAndRepublishMessageBodies("citationsQueue");
+        ArrayList<Citation> citations = new ArrayList<>(messages.size());
+        LegacyMessageCursor cursor = new LegacyMessageCursor();
+        for (byte[] message : messages) {
+            Citation citation = parseCitationMessage(cursor.reset(message));
             citations.add(citation);
         }
         return citations;
     }
 
     /**
-     * Parses a message string into a {@link Citation} object.
+     * Parses a raw message body into a {@link Citation} object.
+     * Fields are read in place, in the order they are written by the PEO service.
      *
-     * @param message the message string to parse
+     * @param cursor a cursor positioned at the start of the message
      * @return a {@link Citation} object with data from the message
      */
-    private Citation parseCitationMessage(String message) {
-        String[] parts = message.split(", ");
-        return new Citation(
-                parts[0].split(": ")[1], // VehicleID
-                parts[1].split(": ")[1], // SpaceID
-                parts[2].split(": ")[1], // ParkingZone
-                parts[3].split(": ")[1], // inspectionTimes
-                Double.parseDouble(parts[4].split(": ")[1]) // totalCost as a Double
-        );
+    private Citation parseCitationMessage(LegacyMessageCursor cursor) {
+        String vehicleId = nextValue(cursor);       // VehicleID
+        String spaceId = nextValue(cursor);         // SpaceID
+        String parkingZone = nextValue(cursor);     // ParkingZone
+        String inspectionTimes = nextValue(cursor); // inspectionTimes
+        if (!cursor.next()) {
+            throw new IllegalArgumentException("Citation message is missing totalCost");
+        }
+        return new Citation(vehicleId, spaceId, parkingZone, inspectionTimes, cursor.valueAsDouble());
+    }
+
+    /**
+     * Advances the cursor to the next field and returns its value.
+     *
+     * @param cursor the message cursor
+     * @return the value of the next field
+     * @throws IllegalArgumentException if the message has no more fields
+     */
+    private String nextValue(LegacyMessageCursor cursor) {
+        if (!cursor.next()) {
+            throw new IllegalArgumentException("Message is missing an expected field");
+        }
+        return cursor.valueAsString();
     }
 }
@@ -4,7 +4,9 @@ package com.example.queries;
 
 import com.example.shared.models.Citation;
 import com.example.shared.utils.DatabaseUtil;
-import com.example.shared.utils.RabbitMQUtil;
+import com.example.shared.utils.Deadline;
+import com.example.shared.utils.OutboxRelay;
+import com.example.shared.utils.TransactionalOutbox;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -12,19 +14,58 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Service class for Parking Enforcement Officer (PEO) operations.
  * This class provides methods to check parking legality, issue citations,
  * validate parking spaces, and retrieve zone details.
- * It interacts with a database using {@link DatabaseUtil} and utilizes {@link RabbitMQUtil}
- * for logging citation messages.
+ * It interacts with a database using {@link DatabaseUtil} and logs citation messages to RabbitMQ
+ * through the {@link TransactionalOutbox}.
+ * Reference lookups (spaces, zones, vehicles) use the read pool of {@link DatabaseUtil}.
+ * Inspections and citations must finish within {@code peo.inspectionDeadlineMs}, lookups within
+ * {@code peo.lookupDeadlineMs}.
  * @version 8
  */
 public class PEOService {
 
-    /** Utility class for RabbitMQ messaging */
-    private final RabbitMQUtil rabbitMQUtil = new RabbitMQUtil();
+    /**
+     * The deadline of checking a vehicle or issuing a citation (in milliseconds).
+     */
+    private static final long INSPECTION_DEADLINE_MS = Long.getLong("peo.inspectionDeadlineMs", 2000);
+
+    /**
+     * The deadline of looking up a space, zone or vehicle (in milliseconds).
+     */
+    private static final long LOOKUP_DEADLINE_MS = Long.getLong("peo.lookupDeadlineMs", 1000);
+
+    // The hot query of an inspection, checked against the schema's indexes by the Database module
+    private static final String ACTIVE_EVENT_AT_SPACE_SQL = """
+            SELECT pe.VehicleID, ps.MaxTime, pe.StartTime
+            FROM ParkingEvents pe
+            JOIN ParkingSpaces ps ON pe.SpaceID = ps.SpaceID
+            WHERE pe.VehicleID = ? AND pe.SpaceID = ? AND pe.EndTime IS NULL
+            """;
+
+    /**
+     * Creates the service and makes sure the outbox relay of this process is running.
+     */
+    public PEOService() {
+        OutboxRelay.startInBackground();
+    }
+
+    /**
+     * Returns the service's hot queries by name, so the Database module can check that each of
+     * them is served by an index.
+     *
+     * @return the queries
+     */
+    public static Map<String, String> hotQueries() {
+        Map<String, String> queries = new LinkedHashMap<>();
+        queries.put("PEOService.checkIfLegallyParked", ACTIVE_EVENT_AT_SPACE_SQL);
+        return queries;
+    }
 
     /**
      * Checks if a vehicle is legally parked in a parking space.
@@ -34,38 +75,33 @@ public class PEOService {
      * @return {@code true} if the vehicle is legally parked; {@code false} otherwise.
      */
     public boolean checkIfLegallyParked(String vehicleNumber, String parkingSpaceId) {
-        String query = """
-                SELECT pe.VehicleID, ps.MaxTime, pe.StartTime
-                FROM ParkingEvents pe
-                JOIN ParkingSpaces ps ON pe.SpaceID = ps.SpaceID
-                WHERE pe.VehicleID = ? AND pe.SpaceID = ? AND pe.EndTime IS NULL
-                """;
-
-        try (Connection conn = DatabaseUtil.connect();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
+        return Deadline.call(INSPECTION_DEADLINE_MS, () -> {
+            try (Connection conn = DatabaseUtil.connect();
+                 PreparedStatement stmt = conn.prepareStatement(ACTIVE_EVENT_AT_SPACE_SQL)) {
 
-            stmt.setString(1, vehicleNumber);
-            stmt.setString(2, parkingSpaceId);
+                stmt.setString(1, vehicleNumber);
+                stmt.setString(2, parkingSpaceId);
 
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    String maxTime = rs.getString("MaxTime");
-                    String startTime = rs.getString("StartTime");
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        String maxTime = rs.getString("MaxTime");
+                        String startTime = rs.getString("StartTime");
 
-                    // Validate against MaxTime
-                    if (isWithinMaxTime(startTime, maxTime)) {
-                        recordQuery(conn, vehicleNumber, parkingSpaceId, "Parking Ok");
-                        return true;
-                    } else {
-                        recordQuery(conn, vehicleNumber, parkingSpaceId, "Parking Not Ok");
-                        return false;
+                        // Validate against MaxTime
+                        if (isWithinMaxTime(startTime, maxTime)) {
+                            recordQuery(conn, vehicleNumber, parkingSpaceId, "Parking Ok");
+                            return true;
+                        } else {
+                            recordQuery(conn, vehicleNumber, parkingSpaceId, "Parking Not Ok");
+                            return false;
+                        }
                     }
                 }
+            } catch (SQLException e) {
+                System.err.println("Error checking parking status: " + e.getMessage());
             }
-        } catch (SQLException e) {
-            System.err.println("Error checking parking status: " + e.getMessage());
-        }
-        return false;
+            return false;
+        });
     }
 
     /**
@@ -110,29 +146,19 @@ public class PEOService {
 
     /**
      * Issues a citation for a parking violation.
+     * The citation row and its queue message commit in one DB transaction.
      *
      * @param citation The citation details.
      * @return {@code true} if the citation was successfully issued; {@code false} otherwise.
      */
     public boolean issueCitation(Citation citation) {
-        String insertQuery = """
-                INSERT INTO Citations (CitationId, VehicleID, SpaceID, ZoneID, CitationCost, InspectionTime)
-                VALUES (?, ?, ?, ?, ?, ?)
-                """;
-
-        try (Connection conn = DatabaseUtil.connect();
-             PreparedStatement stmt = conn.prepareStatement(insertQuery)) {
-
-            stmt.setInt(1, generateUniqueId("Citations", "CitationID"));
-            stmt.setString(2, citation.getVehicleID());
-            stmt.setString(3, citation.getSpaceID());
-            stmt.setString(4, citation.getParkingZone());
-            stmt.setDouble(5, citation.getTotalCost());
-            stmt.setString(6, citation.getInspectionTimes());
+        return Deadline.call(INSPECTION_DEADLINE_MS, () -> {
+            String insertQuery = """
+                    INSERT INTO Citations (CitationId, VehicleID, SpaceID, ZoneID, CitationCost, InspectionTime)
+                    VALUES (?, ?, ?, ?, ?, ?)
+                    """;
 
-            stmt.executeUpdate();
-
-            // Log citation message to RabbitMQ
+            // Build the message first, the zone lookup uses its own connection
             String citationMessage = String.format(
                     "VehicleID: %s, SpaceID: %s, ParkingZone: %s, inspectionTimes: %s, totalCost: %.2f",
                     citation.getVehicleID(),
@@ -141,14 +167,35 @@ public class PEOService {
                     citation.getInspectionTimes(),
                     citation.getTotalCost()
             );
-            rabbitMQUtil.sendMessage("citationsQueue", citationMessage);
-            return true;
+            int citationId = generateUniqueId("Citations", "CitationID");
 
-        } catch (SQLException e) {
-            System.err.println("Error issuing citation: " + e.getMessage());
-        }
+            try (Connection conn = DatabaseUtil.connect()) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement stmt = conn.prepareStatement(insertQuery)) {
+                    stmt.setInt(1, citationId);
+                    stmt.setString(2, citation.getVehicleID());
+                    stmt.setString(3, citation.getSpaceID());
+                    stmt.setString(4, citation.getParkingZone());
+                    stmt.setDouble(5, citation.getTotalCost());
+                    stmt.setString(6, citation.getInspectionTimes());
+                    stmt.executeUpdate();
+
+                    // Log citation message through the outbox (published to RabbitMQ after commit)
+                    TransactionalOutbox.enqueue(conn, "citationsQueue", citation.getParkingZone(), citationMessage);
+                    conn.commit();
+                    return true;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                System.err.println("Error issuing citation: " + e.getMessage());
+            }
 
-        return false;
+            return false;
+        });
     }
 
     /**
@@ -179,19 +226,21 @@ public class PEOService {
      * @return The ZoneID, or {@code null} if not found.
      */
     public String getZoneIdBySpaceId(String parkingSpaceId) {
-        String query = "SELECT ZoneID FROM ParkingSpaces WHERE SpaceID = ?";
-        try (Connection conn = DatabaseUtil.connect();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
-            stmt.setString(1, parkingSpaceId);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getString("ZoneID");
+        return Deadline.call(LOOKUP_DEADLINE_MS, () -> {
+            String query = "SELECT ZoneID FROM ParkingSpaces WHERE SpaceID = ?";
+            try (Connection conn = DatabaseUtil.connectForRead();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                stmt.setString(1, parkingSpaceId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        return rs.getString("ZoneID");
+                    }
                 }
+            } catch (SQLException e) {
+                System.err.println("Error retrieving ZoneID: " + e.getMessage());
             }
-        } catch (SQLException e) {
-            System.err.println("Error retrieving ZoneID: " + e.getMessage());
-        }
-        return null;
+            return null;
+        });
     }
 
     public String generateUniqueCitationId() {
@@ -204,19 +253,21 @@ public class PEOService {
      * @return The ZoneName, or {@code null} if not found.
      */
     public String getZoneNameByZoneId(String zoneId) {
-        String query = "SELECT ZoneName FROM Zones WHERE ZoneID = ?";
-        try (Connection conn = DatabaseUtil.connect();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
-            stmt.setString(1, zoneId);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getString("ZoneName");
+        return Deadline.call(LOOKUP_DEADLINE_MS, () -> {
+            String query = "SELECT ZoneName FROM Zones WHERE ZoneID = ?";
+            try (Connection conn = DatabaseUtil.connectForRead();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                stmt.setString(1, zoneId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        return rs.getString("ZoneName");
+                    }
                 }
+            } catch (SQLException e) {
+                System.err.println("Error retrieving ZoneName: " + e.getMessage());
             }
-        } catch (SQLException e) {
-            System.err.println("Error retrieving ZoneName: " + e.getMessage());
-        }
-        return null;
+            return null;
+        });
     }
 
     /**
@@ -226,21 +277,23 @@ public class PEOService {
      * @return {@code true} if the parking space is valid; {@code false} otherwise.
      */
     public boolean isParkingSpaceValid(String parkingSpaceId) {
-        String query = """
-                SELECT SpaceID
-                FROM ParkingSpaces
-                WHERE SpaceID = ?
-                """;
-        try (Connection conn = DatabaseUtil.connect();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
-            stmt.setString(1, parkingSpaceId);
-            try (ResultSet rs = stmt.executeQuery()) {
-                return rs.next();
+        return Deadline.call(LOOKUP_DEADLINE_MS, () -> {
+            String query = """
+                    SELECT SpaceID
+                    FROM ParkingSpaces
+                    WHERE SpaceID = ?
+                    """;
+            try (Connection conn = DatabaseUtil.connectForRead();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                stmt.setString(1, parkingSpaceId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next();
+                }
+            } catch (SQLException e) {
+                System.err.println("Error validating ParkingSpaceId: " + e.getMessage());
             }
-        } catch (SQLException e) {
-            System.err.println("Error validating ParkingSpaceId: " + e.getMessage());
-        }
-        return false;
+            return false;
+        });
     }
 
     /**
@@ -250,16 +303,18 @@ public class PEOService {
      * @return {@code true} if the vehicle exists in the database; {@code false} otherwise.
      */
     public boolean isVehicleValid(String vehicleNumber) {
-        String query = "SELECT VehicleID FROM Vehicles WHERE VehicleID = ?";
-        try (Connection conn = DatabaseUtil.connect();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
-            stmt.setString(1, vehicleNumber);
-            try (ResultSet rs = stmt.executeQuery()) {
-                return rs.next(); // If a row is returned, the vehicle exists
+        return Deadline.call(LOOKUP_DEADLINE_MS, () -> {
+            String query = "SELECT VehicleID FROM Vehicles WHERE VehicleID = ?";
+            try (Connection conn = DatabaseUtil.connectForRead();
+                 PreparedStatement stmt = conn.prepareStatement(query)) {
+                stmt.setString(1, vehicleNumber);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next(); // If a row is returned, the vehicle exists
+                }
+            } catch (SQLException e) {
+                System.err.println("Error checking vehicle existence: " + e.getMessage());
             }
-        } catch (SQLException e) {
-            System.err.println("Error checking vehicle existence: " + e.getMessage());
-        }
-        return false;
+            return false;
+        });
     }
 }
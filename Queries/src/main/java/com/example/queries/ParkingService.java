@@ -4,21 +4,32 @@ package com.example.queries;
 
 import com.example.shared.models.ParkingEvent;
 import com.example.shared.utils.DatabaseUtil;
+import com.example.shared.utils.Deadline;
+import com.example.shared.utils.OutboxRelay;
 import com.example.shared.utils.RabbitMQUtil;
+import com.example.shared.utils.SchemaVersion;
+import com.example.shared.utils.TransactionalOutbox;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
 /**
  * Service class for handling parking-related operations.
  * This class manages parking events, validates parking spaces, calculates costs, and logs transactions to RabbitMQ.
- * It interacts with the database and RabbitMQ for storing and processing events.
+ * Starting and stopping a parking event each run as one transaction on the data node that owns the
+ * space's zone ({@link DatabaseUtil#beginZoneTransaction}), within {@code parking.claimDeadlineMs}; the
+ * transaction also writes the event's message to the database outbox, which the {@link OutboxRelay}
+ * publishes to RabbitMQ, and, while the Database module converts the time columns to native types,
+ * the shadow columns (see {@link SchemaVersion}). Lookups and history reads use the read pool within
+ * {@code parking.historyDeadlineMs}, following the session token so a customer sees their last change.
  *
  * @author
  * @version 1.0
@@ -26,8 +37,105 @@ import java.time.format.DateTimeFormatter;
  */
 public class ParkingService {
 
-    // RabbitMQ utility for sending messages
-    private final RabbitMQUtil rabbitMQUtil = new RabbitMQUtil();
+    /**
+     * Read-your-writes token of this service's session.
+     */
+    private final DatabaseUtil.SessionToken session = new DatabaseUtil.SessionToken();
+
+    /**
+     * The deadline of starting or stopping a parking event (in milliseconds).
+     */
+    private static final long CLAIM_DEADLINE_MS = Long.getLong("parking.claimDeadlineMs", 2000);
+
+    /**
+     * The deadline of reading a vehicle's parking history (in milliseconds).
+     */
+    private static final long HISTORY_DEADLINE_MS = Long.getLong("parking.historyDeadlineMs", 5000);
+
+    // The hot queries, checked against the schema's indexes by the Database module (see hotQueries())
+    private static final String ACTIVE_EVENT_SQL = "SELECT * FROM ParkingEvents WHERE VehicleID = ? AND EndTime IS NULL";
+
+    private static final String STOP_COST_SQL = """
+            SELECT z.HourlyRate, pe.StartTime
+            FROM zones z
+            INNER JOIN ParkingSpaces ps ON ps.ZoneID = z.zoneID
+            INNER JOIN ParkingEvents pe ON pe.SpaceID = ps.SpaceID
+            WHERE pe.VehicleID = ? AND pe.EndTime IS NULL
+            """;
+
+    private static final String END_EVENT_SQL = """
+            UPDATE ParkingEvents
+            SET EndTime = ?, TotalCost = ?
+            WHERE VehicleID = ? AND EndTime IS NULL
+            """;
+
+    // Assignments run left to right, so EndAt gets the new EndTime
+    private static final String END_EVENT_DUAL_WRITE_SQL = """
+            UPDATE ParkingEvents
+            SET EndTime = ?, TotalCost = ?, EndAt = EndTime
+            WHERE VehicleID = ? AND EndTime IS NULL
+            """;
+
+    private static final String ENDED_EVENT_SQL = """
+            SELECT pe.*,
+                   z.ZoneName,
+                   ps.ZoneID,
+                   (SELECT CustomerID FROM Vehicles WHERE VehicleID = ?) AS CustomerID
+            FROM ParkingEvents pe
+            INNER JOIN ParkingSpaces ps ON pe.SpaceID = ps.SpaceID
+            INNER JOIN Zones z ON ps.ZoneID = z.ZoneID
+            WHERE pe.VehicleID = ? AND pe.EndTime = ?
+            """;
+
+    private static final String ENDED_SPACE_SQL = "SELECT SpaceID FROM ParkingEvents WHERE VehicleID = ? AND EndTime = ?";
+
+    private static final String COMPLETED_EVENTS_SQL = """
+            SELECT SpaceID, StartTime, EndTime, TotalCost
+            FROM ParkingEvents
+            WHERE VehicleID = ? AND EndTime IS NOT NULL
+            ORDER BY StartTime DESC
+            """;
+
+    private static final String ACTIVE_EVENTS_SQL = """
+            SELECT EventID, SpaceID, StartTime, TotalCost
+            FROM ParkingEvents
+            WHERE VehicleID = ? AND EndTime IS NULL
+            ORDER BY StartTime DESC
+            """;
+
+    private static final String VEHICLE_BY_CUSTOMER_SQL = "SELECT VehicleID FROM Vehicles WHERE CustomerID = ?";
+
+    private static final String SPACE_ZONE_SQL = "SELECT ZoneID FROM ParkingSpaces WHERE SpaceID = ?";
+
+    private static final String ACTIVE_EVENT_ZONE_SQL = """
+            SELECT ps.ZoneID
+            FROM ParkingEvents pe
+            INNER JOIN ParkingSpaces ps ON ps.SpaceID = pe.SpaceID
+            WHERE pe.VehicleID = ? AND pe.EndTime IS NULL
+            """;
+
+    private static final String START_EVENT_SQL = """
+            INSERT INTO ParkingEvents (EventID, VehicleID, SpaceID, StartTime, MaxTime)
+            VALUES (?, ?, ?, ?, ?)
+            """;
+
+    private static final String START_EVENT_DUAL_WRITE_SQL = """
+            INSERT INTO ParkingEvents (EventID, VehicleID, SpaceID, StartTime, MaxTime, StartAt)
+            VALUES (?, ?, ?, ?, ?, StartTime)
+            """;
+
+    // Once the tables are partitioned by zone an event carries its space's ZoneID
+    private static final String START_EVENT_ZONED_SQL = """
+            INSERT INTO ParkingEvents (EventID, VehicleID, SpaceID, StartTime, MaxTime, ZoneID)
+            VALUES (?, ?, ?, ?, ?, (SELECT ZoneID FROM ParkingSpaces WHERE SpaceID = ?))
+            """;
+
+    /**
+     * Creates the service and makes sure the outbox relay of this process is running.
+     */
+    public ParkingService() {
+        OutboxRelay.startInBackground();
+    }
 
     /**
      * Starts a parking event for the given vehicle and parking space.
@@ -37,156 +145,189 @@ public class ParkingService {
      * @return {@code true} if the parking event is started successfully; {@code false} otherwise
      */
     public boolean startParking(int vehicleId, String parkingSpaceId) {
-        try (Connection conn = DatabaseUtil.connect()) {
-            // Check if the parking space ID is provided
-            if (parkingSpaceId.isEmpty()) {
-                System.out.println("Invalid parking space.");
-                return false;
-            }
+        return Deadline.call(CLAIM_DEADLINE_MS, () -> {
+            try (Connection conn = DatabaseUtil.connect()) {
+                // Check if the parking space ID is provided
+                if (parkingSpaceId.isEmpty()) {
+                    System.out.println("Invalid parking space.");
+                    return false;
+                }
 
-            // Validate if the parking space is available
-            if (!validateParkingSpace(conn, parkingSpaceId)) {
-                System.out.println("Failed to start parking event, parking space is occupied.");
-                return false;
-            }
+                String zoneId = spaceZone(conn, parkingSpaceId);
+                DatabaseUtil.beginZoneTransaction(conn, zoneId);
+                try {
+                    // Validate if the parking space is available
+                    if (!validateParkingSpace(conn, parkingSpaceId)) {
+                        System.out.println("Failed to start parking event, parking space is occupied.");
+                        conn.rollback();
+                        return false;
+                    }
 
-            // Check for an existing active parking event for the vehicle
-            if (vehicleHasActiveEvent(conn, vehicleId)) {
-                System.out.println("Vehicle already has an active parking event. Stopping the current event...");
-                stopParking(vehicleId); // Stop the current active event
-            }
+                    // Check for an existing active parking event for the vehicle; it ends in this
+                    // transaction, so a failed start keeps it running (its zone may be another node group's)
+                    if (vehicleHasActiveEvent(conn, vehicleId)) {
+                        System.out.println("Vehicle already has an active parking event. Stopping the current event...");
+                        // The stop writes to the old zone's outbox sequence and the start to the new one's;
+                        // take both in a fixed order, so starts moving between two zones both ways cannot deadlock
+                        TransactionalOutbox.lockSequences(conn, zoneId, activeEventZone(conn, vehicleId));
+                        if (!stopParkingInTransaction(conn, vehicleId)) {
+                            System.out.println("Failed to stop the current parking event.");
+                            conn.rollback();
+                            return false;
+                        }
+                    }
 
-            // Start a new parking event
-            if (startNewParkingEvent(conn, vehicleId, parkingSpaceId)) {
-                // Mark the parking space as occupied
-                markSpaceAsOccupied(conn, parkingSpaceId);
-                System.out.println("Parking started successfully for Vehicle ID: " + vehicleId);
-                return true;
-            } else {
-                System.out.println("Failed to create a new parking event.");
+                    // Start a new parking event
+                    if (startNewParkingEvent(conn, vehicleId, parkingSpaceId)) {
+                        // Mark the parking space as occupied
+                        markSpaceAsOccupied(conn, parkingSpaceId);
+                        conn.commit();
+                        session.markWrite();
+                        System.out.println("Parking started successfully for Vehicle ID: " + vehicleId);
+                        return true;
+                    } else {
+                        System.out.println("Failed to create a new parking event.");
+                        conn.rollback();
+                        return false;
+                    }
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            } catch (Exception e) {
+                if (e instanceof SQLException sql) {
+                    SchemaVersion.onError(sql);
+                }
+                e.printStackTrace();
                 return false;
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            return false;
-        }
+        });
     }
 
     /**
      * Stops an active parking event for the given vehicle and logs the transaction to RabbitMQ.
+     * The event update, the freed space and the transaction message commit in one DB transaction,
+     * so the billing record cannot be lost between the database and the queue.
      *
      * @param vehicleId the ID of the vehicle
      * @return {@code true} if the parking event is stopped successfully; {@code false} otherwise
      */
     public boolean stopParking(int vehicleId) {
-        try (Connection conn = DatabaseUtil.connect()) {
-            // Retrieve the hourly rate for the parking zone
-            String getCostQuery = """
-                SELECT z.HourlyRate, pe.StartTime
-                FROM zones z
-                INNER JOIN ParkingSpaces ps ON ps.ZoneID = z.zoneID
-                INNER JOIN ParkingEvents pe ON pe.SpaceID = ps.SpaceID
-                WHERE pe.VehicleID = ? AND pe.EndTime IS NULL
-                """;
-
-            double costPerHour;
-            String startTime;
-            try (PreparedStatement costStmt = conn.prepareStatement(getCostQuery)) {
-                costStmt.setInt(1, vehicleId); // Set the vehicle ID parameter
-                try (ResultSet rs = costStmt.executeQuery()) {
-                    if (rs.next()) {
-                        costPerHour = rs.getDouble("HourlyRate"); // Retrieve the hourly rate
-                        startTime = rs.getString("StartTime"); // Retrieve the start time
-                    } else {
-                        System.out.println("No active parking event or invalid vehicle ID: " + vehicleId);
-                        return false;
+        return Deadline.call(CLAIM_DEADLINE_MS, () -> {
+            try (Connection conn = DatabaseUtil.connect()) {
+                DatabaseUtil.beginZoneTransaction(conn, activeEventZone(conn, vehicleId));
+                try {
+                    if (stopParkingInTransaction(conn, vehicleId)) {
+                        conn.commit();
+                        session.markWrite();
+                        System.out.println("Transaction logged to the outbox for Vehicle ID: " + vehicleId);
+                        return true;
                     }
+                    conn.rollback();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
                 }
+            } catch (SQLException e) {
+                SchemaVersion.onError(e);
+                e.printStackTrace();
             }
+            return false;
+        });
+    }
 
-            // Calculate total cost in Java
-            LocalDateTime startDateTime = LocalDateTime.parse(startTime, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-            LocalDateTime now = LocalDateTime.now();
-            long minutes = java.time.Duration.between(startDateTime, now).toMinutes();
-            double totalCost = (minutes / 60.0) * costPerHour;
-
-            // Update the parking event with the end time and total cost
-            String updateEventQuery = """
-                UPDATE ParkingEvents
-                SET EndTime = ?, TotalCost = ?
-                WHERE VehicleID = ? AND EndTime IS NULL
-                """;
-
-            ParkingEvent temp; // Temporary storage for parking event details
-            String zoneName; // Zone name for the event
-            try (PreparedStatement stmt = conn.prepareStatement(updateEventQuery)) {
-                stmt.setString(1, now.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))); // Set the current time
-                stmt.setDouble(2, totalCost); // Set the total cost
-                stmt.setInt(3, vehicleId); // Set the vehicle ID parameter
-
-                int rowsUpdated = stmt.executeUpdate(); // Execute the update query
-                if (rowsUpdated > 0) {
-                    System.out.println("Parking event ended for Vehicle ID: " + vehicleId);
-
-                    // Retrieve the details for the completed event
-                    String fetchEventQuery = """
-                        SELECT pe.*, 
-                               z.ZoneName, 
-                               (SELECT CustomerID FROM Vehicles WHERE VehicleID = ?) AS CustomerID
-                        FROM ParkingEvents pe
-                        INNER JOIN ParkingSpaces ps ON pe.SpaceID = ps.SpaceID
-                        INNER JOIN Zones z ON ps.ZoneID = z.ZoneID
-                        WHERE pe.VehicleID = ? AND pe.EndTime = ?
-                        """;
-                    try (PreparedStatement fetchStmt = conn.prepareStatement(fetchEventQuery)) {
-                        fetchStmt.setInt(1, vehicleId);
-                        fetchStmt.setInt(2, vehicleId);
-                        fetchStmt.setString(3, now.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
-
-                        try (ResultSet rs = fetchStmt.executeQuery()) {
-                            if (rs.next()) {
-                                temp = new ParkingEvent(
-                                        rs.getInt("EventID"),
-                                        rs.getInt("SpaceID"),
-                                        rs.getString("StartTime"),
-                                        rs.getString("EndTime"),
-                                        rs.getDouble("TotalCost")
-                                );
-                                zoneName = rs.getString("ZoneName"); // Retrieve the zone name
-                            } else {
-                                System.out.println("Failed to fetch transaction details for Vehicle ID: " + vehicleId);
-                                return false;
-                            }
+    /**
+     * Ends the active parking event and writes the transaction message to the outbox.
+     * The caller owns the transaction and commits only if this returns {@code true}.
+     *
+     * @param conn      the database connection with an open transaction
+     * @param vehicleId the ID of the vehicle
+     * @return {@code true} if the parking event was stopped; {@code false} otherwise
+     * @throws SQLException if a database access error occurs
+     */
+    private boolean stopParkingInTransaction(Connection conn, int vehicleId) throws SQLException {
+        // Retrieve the hourly rate for the parking zone
+        double costPerHour;
+        String startTime;
+        try (PreparedStatement costStmt = conn.prepareStatement(STOP_COST_SQL)) {
+            costStmt.setInt(1, vehicleId); // Set the vehicle ID parameter
+            try (ResultSet rs = costStmt.executeQuery()) {
+                if (rs.next()) {
+                    costPerHour = rs.getDouble("HourlyRate"); // Retrieve the hourly rate
+                    startTime = rs.getString("StartTime"); // Retrieve the start time
+                } else {
+                    System.out.println("No active parking event or invalid vehicle ID: " + vehicleId);
+                    return false;
+                }
+            }
+        }
+
+        // Calculate total cost in Java
+        LocalDateTime startDateTime = LocalDateTime.parse(startTime, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        LocalDateTime now = LocalDateTime.now();
+        long minutes = java.time.Duration.between(startDateTime, now).toMinutes();
+        double totalCost = (minutes / 60.0) * costPerHour;
+
+        // Update the parking event with the end time and total cost
+        ParkingEvent temp; // Temporary storage for parking event details
+        String zoneName; // Zone name for the event
+        String zoneId; // Zone ID, the partition key of the transaction message
+        try (PreparedStatement stmt = conn.prepareStatement(SchemaVersion.dualWrite() ? END_EVENT_DUAL_WRITE_SQL : END_EVENT_SQL)) {
+            stmt.setString(1, now.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))); // Set the current time
+            stmt.setDouble(2, totalCost); // Set the total cost
+            stmt.setInt(3, vehicleId); // Set the vehicle ID parameter
+
+            int rowsUpdated = stmt.executeUpdate(); // Execute the update query
+            if (rowsUpdated > 0) {
+                System.out.println("Parking event ended for Vehicle ID: " + vehicleId);
+
+                // Retrieve the details for the completed event
+                try (PreparedStatement fetchStmt = conn.prepareStatement(ENDED_EVENT_SQL)) {
+                    fetchStmt.setInt(1, vehicleId);
+                    fetchStmt.setInt(2, vehicleId);
+                    fetchStmt.setString(3, now.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+
+                    try (ResultSet rs = fetchStmt.executeQuery()) {
+                        if (rs.next()) {
+                            temp = new ParkingEvent(
+                                    rs.getInt("EventID"),
+                                    rs.getInt("SpaceID"),
+                                    rs.getString("StartTime"),
+                                    rs.getString("EndTime"),
+                                    rs.getDouble("TotalCost")
+                            );
+                            zoneName = rs.getString("ZoneName"); // Retrieve the zone name
+                            zoneId = rs.getString("ZoneID");
+                        } else {
+                            System.out.println("Failed to fetch transaction details for Vehicle ID: " + vehicleId);
+                            return false;
                         }
                     }
+                }
 
-                    // Free the parking space after stopping the event
-                    freeParkingSpace(conn, vehicleId);
-
-                    // Log the transaction to RabbitMQ
-                    String transactionMessage = String.format(
-                            "VehicleID: %s, ZoneName: %s, SpaceID: %d, StartTime: %s, EndTime: %s, TotalCost: %.2f",
-                            vehicleId,
-                            zoneName,
-                            temp.getSpaceId(),
-                            temp.getStartTime(),
-                            temp.getEndTime(),
-                            temp.getTotalCost()
-                    );
-                    boolean sent = rabbitMQUtil.sendMessage("transactionsQueue", transactionMessage);
-                    if (sent) {
-                        System.out.println("Transaction logged to RabbitMQ for Vehicle ID: " + vehicleId);
-                    } else {
-                        System.err.println("Failed to log transaction to RabbitMQ for Vehicle ID: " + vehicleId);
-                    }
+                // Free the parking space after stopping the event
+                freeParkingSpace(conn, vehicleId);
+
+                // Log the transaction through the outbox (published to RabbitMQ after commit)
+                String transactionMessage = String.format(
+                        "VehicleID: %s, ZoneName: %s, SpaceID: %d, StartTime: %s, EndTime: %s, TotalCost: %.2f",
+                        vehicleId,
+                        zoneName,
+                        temp.getSpaceId(),
+                        temp.getStartTime(),
+                        temp.getEndTime(),
+                        temp.getTotalCost()
+                );
+                TransactionalOutbox.enqueue(conn, "transactionsQueue", zoneId, transactionMessage);
 
-                    return true;
-                } else {
-                    System.out.println("No active parking event found for Vehicle ID: " + vehicleId);
-                }
+                return true;
+            } else {
+                System.out.println("No active parking event found for Vehicle ID: " + vehicleId);
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
         }
         return false;
     }
@@ -205,17 +346,16 @@ public class ParkingService {
                 java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
         );
 
-        String spaceQuery = "SELECT SpaceID FROM ParkingEvents WHERE VehicleID = ? AND EndTime = ?";
-        try (PreparedStatement spaceStmt = conn.prepareStatement(spaceQuery)) {
+        try (PreparedStatement spaceStmt = conn.prepareStatement(ENDED_SPACE_SQL)) {
             spaceStmt.setInt(1, vehicleId);
             spaceStmt.setString(2, currentTime);
             try (ResultSet rs = spaceStmt.executeQuery()) {
                 if (rs.next()) {
                     int spaceId = rs.getInt("SpaceID");
-                    String updateSpaceQuery = "UPDATE ParkingSpaces SET Occupied = 0 WHERE SpaceID = ?";
-                    try (PreparedStatement updateSpaceStmt = conn.prepareStatement(updateSpaceQuery)) {
+                    try (PreparedStatement updateSpaceStmt = conn.prepareStatement(occupancyUpdate(false))) {
                         updateSpaceStmt.setInt(1, spaceId);
                         updateSpaceStmt.executeUpdate();
+                        announceOccupancy(conn, String.valueOf(spaceId), false);
                         System.out.println("Parking space " + spaceId + " is now available.");
                     }
                 }
@@ -225,11 +365,11 @@ public class ParkingService {
 
 
     public void UpdateParkingSpaceToBeFree(Connection conn, String parkingSpaceId) throws SQLException {
-        String query = "UPDATE ParkingSpaces SET Occupied = 0 WHERE SpaceID = ?";
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (PreparedStatement stmt = conn.prepareStatement(occupancyUpdate(false))) {
             stmt.setString(1, parkingSpaceId); // Set the parking space ID parameter
             stmt.executeUpdate(); // Mark the space as occupied
         }
+        announceOccupancy(conn, parkingSpaceId, false);
     }
 
 
@@ -265,8 +405,7 @@ public class ParkingService {
      * @throws SQLException if a database access error occurs
      */
     public boolean vehicleHasActiveEvent(Connection conn, int vehicleId) throws SQLException {
-        String query = "SELECT * FROM ParkingEvents WHERE VehicleID = ? AND EndTime IS NULL";
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (PreparedStatement stmt = conn.prepareStatement(ACTIVE_EVENT_SQL)) {
             stmt.setInt(1, vehicleId); // Set the vehicle ID parameter
             try (ResultSet rs = stmt.executeQuery()) {
                 return rs.next(); // Return true if there is an active event
@@ -307,17 +446,18 @@ public class ParkingService {
         System.out.println("MaxTime: " + maxTime.format(formatter));
 
         // Insert a new parking event into the ParkingEvents table
-        String query = """
-        INSERT INTO ParkingEvents (EventID, VehicleID, SpaceID, StartTime, MaxTime)
-        VALUES (?, ?, ?, ?, ?)
-    """;
-
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+        boolean zoned = SchemaVersion.zonePartitioned();
+        String insertQuery = zoned ? START_EVENT_ZONED_SQL
+                : SchemaVersion.dualWrite() ? START_EVENT_DUAL_WRITE_SQL : START_EVENT_SQL;
+        try (PreparedStatement stmt = conn.prepareStatement(insertQuery)) {
             stmt.setInt(1, generateUniqueId("ParkingEvents", "EventID")); // Generate unique event ID
             stmt.setInt(2, vehicleId); // Set vehicle ID
             stmt.setString(3, parkingSpaceId); // Set space ID
             stmt.setString(4, now.format(formatter)); // Set current time
             stmt.setString(5, maxTime.format(formatter)); // Set max time
+            if (zoned) {
+                stmt.setString(6, parkingSpaceId); // The space whose zone the event belongs to
+            }
 
             int rowsInserted = stmt.executeUpdate(); // Execute the insert statement
             return rowsInserted > 0; // Return true if the insert is successful
@@ -328,6 +468,41 @@ public class ParkingService {
     }
 
 
+    /**
+     * Returns the statement that sets a space's occupancy, also setting the native shadow column
+     * while the schema migration needs it.
+     *
+     * @param occupied the new state of the space
+     * @return the UPDATE statement, with the space ID as its only parameter
+     * @throws SQLException if the schema version is not known
+     */
+    private static String occupancyUpdate(boolean occupied) throws SQLException {
+        int value = occupied ? 1 : 0;
+        return SchemaVersion.dualWrite()
+                ? "UPDATE ParkingSpaces SET Occupied = " + value + ", OccupiedFlag = " + value + " WHERE SpaceID = ?"
+                : "UPDATE ParkingSpaces SET Occupied = " + value + " WHERE SpaceID = ?";
+    }
+
+    /**
+     * Returns the service's hot queries by name, so the Database module can check that each of
+     * them is served by an index.
+     *
+     * @return the queries, in the order the parking flow runs them
+     */
+    public static Map<String, String> hotQueries() {
+        Map<String, String> queries = new LinkedHashMap<>();
+        queries.put("ParkingService.vehicleHasActiveEvent", ACTIVE_EVENT_SQL);
+        queries.put("ParkingService.stopParking zone", ACTIVE_EVENT_ZONE_SQL);
+        queries.put("ParkingService.stopParking cost", STOP_COST_SQL);
+        queries.put("ParkingService.stopParking end", END_EVENT_SQL);
+        queries.put("ParkingService.stopParking fetch", ENDED_EVENT_SQL);
+        queries.put("ParkingService.freeParkingSpace", ENDED_SPACE_SQL);
+        queries.put("ParkingService.getParkingcompletedEvents", COMPLETED_EVENTS_SQL);
+        queries.put("ParkingService.getParkingactiveEvents", ACTIVE_EVENTS_SQL);
+        queries.put("ParkingService.getVehicleNumber", VEHICLE_BY_CUSTOMER_SQL);
+        return queries;
+    }
+
     /**
      * Marks a parking space as occupied.
      *
@@ -336,11 +511,64 @@ public class ParkingService {
      * @throws SQLException if a database access error occurs
      */
     public void markSpaceAsOccupied(Connection conn, String parkingSpaceId) throws SQLException {
-        String query = "UPDATE ParkingSpaces SET Occupied = 1 WHERE SpaceID = ?";
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (PreparedStatement stmt = conn.prepareStatement(occupancyUpdate(true))) {
             stmt.setString(1, parkingSpaceId); // Set the parking space ID parameter
             stmt.executeUpdate(); // Mark the space as occupied
         }
+        announceOccupancy(conn, parkingSpaceId, true);
+    }
+
+    /**
+     * Announces a change of a space's occupancy on {@link RabbitMQUtil#OCCUPANCY_EXCHANGE}, e.g. so
+     * cached recommendations for its zone are dropped. The event goes through the outbox on the
+     * caller's connection, so it is published exactly when the change is committed.
+     *
+     * @param conn           the database connection
+     * @param parkingSpaceId the ID of the parking space
+     * @param occupied       the new state of the space
+     * @throws SQLException if a database access error occurs
+     */
+    private void announceOccupancy(Connection conn, String parkingSpaceId, boolean occupied) throws SQLException {
+        String zoneId = spaceZone(conn, parkingSpaceId);
+        if (zoneId == null) {
+            return; // No such space, nothing changed
+        }
+        TransactionalOutbox.enqueue(conn, RabbitMQUtil.OCCUPANCY_EXCHANGE, zoneId,
+                "OCCUPANCY::SpaceID=" + parkingSpaceId + ",ZoneID=" + zoneId + ",Occupied=" + (occupied ? 1 : 0));
+    }
+
+    /**
+     * Looks up the zone of a parking space.
+     *
+     * @param conn           the database connection
+     * @param parkingSpaceId the ID of the parking space
+     * @return the zone ID, or {@code null} if there is no such space
+     * @throws SQLException if a database access error occurs
+     */
+    private String spaceZone(Connection conn, String parkingSpaceId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(SPACE_ZONE_SQL)) {
+            stmt.setString(1, parkingSpaceId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString("ZoneID") : null;
+            }
+        }
+    }
+
+    /**
+     * Looks up the zone of a vehicle's active parking event.
+     *
+     * @param conn      the database connection
+     * @param vehicleId the ID of the vehicle
+     * @return the zone ID, or {@code null} if the vehicle has no active event
+     * @throws SQLException if a database access error occurs
+     */
+    private String activeEventZone(Connection conn, int vehicleId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(ACTIVE_EVENT_ZONE_SQL)) {
+            stmt.setInt(1, vehicleId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString("ZoneID") : null;
+            }
+        }
     }
 
     /**
@@ -372,33 +600,28 @@ public class ParkingService {
      * @return a list of completed {@link ParkingEvent} objects
      */
     public List<ParkingEvent> getParkingcompletedEvents(int vehicleId) {
-        List<ParkingEvent> events = new ArrayList<>();
-        String completedEventsQuery = """
-                SELECT SpaceID, StartTime, EndTime, TotalCost
-                FROM ParkingEvents
-                WHERE VehicleID = ? AND EndTime IS NOT NULL
-                ORDER BY StartTime DESC
-                """;
-
-        try (Connection conn = DatabaseUtil.connect();
-             PreparedStatement stmt = conn.prepareStatement(completedEventsQuery)) {
-            stmt.setInt(1, vehicleId); // Set the vehicle ID parameter
-
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    ParkingEvent event = new ParkingEvent(
-                            rs.getInt("SpaceID"), // Retrieve space ID
-                            rs.getString("StartTime"), // Retrieve start time
-                            rs.getString("EndTime"), // Retrieve end time
-                            rs.getDouble("TotalCost") // Retrieve total cost
-                    );
-                    events.add(event); // Add the event to the list
+        return Deadline.call(HISTORY_DEADLINE_MS, () -> {
+            List<ParkingEvent> events = new ArrayList<>();
+            try (Connection conn = DatabaseUtil.connectForRead(session);
+                 PreparedStatement stmt = conn.prepareStatement(COMPLETED_EVENTS_SQL)) {
+                stmt.setInt(1, vehicleId); // Set the vehicle ID parameter
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        ParkingEvent event = new ParkingEvent(
+                                rs.getInt("SpaceID"), // Retrieve space ID
+                                rs.getString("StartTime"), // Retrieve start time
+                                rs.getString("EndTime"), // Retrieve end time
+                                rs.getDouble("TotalCost") // Retrieve total cost
+                        );
+                        events.add(event); // Add the event to the list
+                    }
                 }
+            } catch (SQLException e) {
+                e.printStackTrace();
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return events; // Return the list of completed events
+            return events; // Return the list of completed events
+        });
     }
 
     /**
@@ -408,31 +631,26 @@ public class ParkingService {
      * @return a list of active {@link ParkingEvent} objects
      */
     public List<ParkingEvent> getParkingactiveEvents(int vehicleId) {
-        List<ParkingEvent> events = new ArrayList<>();
-        String activeEventsQuery = """
-                SELECT EventID, SpaceID, StartTime, TotalCost
-                FROM ParkingEvents
-                WHERE VehicleID = ? AND EndTime IS NULL
-                ORDER BY StartTime DESC
-                """;
-
-        try (Connection conn = DatabaseUtil.connect();
-             PreparedStatement stmt = conn.prepareStatement(activeEventsQuery)) {
-            stmt.setInt(1, vehicleId); // Set the vehicle ID parameter
-
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    ParkingEvent event = new ParkingEvent(
-                            rs.getInt("SpaceID"), // Retrieve space ID
-                            rs.getString("StartTime") // Retrieve start time
-                    );
-                    events.add(event); // Add the event to the list
+        return Deadline.call(HISTORY_DEADLINE_MS, () -> {
+            List<ParkingEvent> events = new ArrayList<>();
+            try (Connection conn = DatabaseUtil.connectForRead(session);
+                 PreparedStatement stmt = conn.prepareStatement(ACTIVE_EVENTS_SQL)) {
+                stmt.setInt(1, vehicleId); // Set the vehicle ID parameter
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        ParkingEvent event = new ParkingEvent(
+                                rs.getInt("SpaceID"), // Retrieve space ID
+                                rs.getString("StartTime") // Retrieve start time
+                        );
+                        events.add(event); // Add the event to the list
+                    }
                 }
+            } catch (SQLException e) {
+                e.printStackTrace();
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return events; // Return the list of active events
+            return events; // Return the list of active events
+        });
     }
 
     /**
@@ -444,15 +662,14 @@ public class ParkingService {
 
     public int getVehicleNumber(int customerID) {
         int vehicleID = 0;
-        String query = "SELECT VehicleID FROM Vehicles WHERE CustomerID = ?";
 
         Connection conn = null;
         PreparedStatement preparedStatement = null;
         ResultSet resultSet = null;
 
         try {
-            conn = DatabaseUtil.connect(); // Establish connection
-            preparedStatement = conn.prepareStatement(query); // Prepare the query
+            conn = DatabaseUtil.connectForRead(); // Establish connection
+            preparedStatement = conn.prepareStatement(VEHICLE_BY_CUSTOMER_SQL); // Prepare the query
             preparedStatement.setInt(1, customerID); // Set the customer ID parameter
             resultSet = preparedStatement.executeQuery(); // Execute the query
 
@@ -471,7 +688,7 @@ public class ParkingService {
 
     public String getZoneIdBySpaceId(String parkingSpaceId) {
         String query = "SELECT ZoneID FROM ParkingSpaces WHERE SpaceID = ?";
-        try (Connection conn = DatabaseUtil.connect();
+        try (Connection conn = DatabaseUtil.connectForRead();
              PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setString(1, parkingSpaceId);
             try (ResultSet rs = stmt.executeQuery()) {
@@ -487,7 +704,7 @@ public class ParkingService {
 
     public String getZoneNameByZoneID(String Zoneid) {
         String query = "SELECT ZoneName FROM zones WHERE ZoneID = ?";
-        try (Connection conn = DatabaseUtil.connect();
+        try (Connection conn = DatabaseUtil.connectForRead();
              PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setString(1, Zoneid);
             try (ResultSet rs = stmt.executeQuery()) {
@@ -513,6 +730,7 @@ public class ParkingService {
              PreparedStatement preparedStatement = conn.prepareStatement(query)) {
             preparedStatement.setInt(1, vehicleNumber); // Set the vehicle ID parameter
             preparedStatement.executeUpdate(); // Execute the delete statement
+            session.markWrite();
         } catch (Exception e) {
             e.printStackTrace();
         }
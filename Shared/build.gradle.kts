@@ -0,0 +1,13 @@
+plugins {
+    id("me.champeau.jmh") version "0.7.2" // JMH micro-benchmarks (src/jmh/java)
+}
+
+// Run with: gradle :Shared:jmh
+jmh {
+    jmhVersion.set("1.37")
+    profilers.add("gc") // Report allocation rate per operation
+}
+
+tasks.test {
+    useJUnitPlatform()
+}
@@ -0,0 +1,80 @@
+package com.example.shared.utils;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the split-based parsing of legacy {@code "Key: value, Key: value"} messages
+ * with the in-place {@link LegacyMessageCursor}.
+ *
+ * Run with {@code gradle :Shared:jmh}; the gc profiler reports {@code gc.alloc.rate.norm}
+ * (bytes allocated per operation).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LegacyMessageCursorBenchmark {
+
+    private static final byte[] SPACE_ID_KEY = LegacyMessageCursor.key("SpaceID");
+    private static final byte[] TOTAL_COST_KEY = LegacyMessageCursor.key("totalCost");
+
+    private byte[] transactionBody;
+    private byte[] citationBody;
+    private final LegacyMessageCursor cursor = new LegacyMessageCursor();
+
+    @Setup
+    public void setUp() {
+        transactionBody = "VehicleID: 201, ZoneName: Downtown, SpaceID: 98, StartTime: 2025-01-29 15:28:11, EndTime: 2025-01-29 17:02:45, TotalCost: 18.50"
+                .getBytes(StandardCharsets.UTF_8);
+        citationBody = "VehicleID: 205, SpaceID: 10, ParkingZone: Downtown, inspectionTimes: 2025-01-29 15:28:11, totalCost: 654.00"
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Transaction report parsing as previously done in MunicipalityOfficerService. */
+    @Benchmark
+    public void transactionSplit(Blackhole bh) {
+        String[] parts = new String(transactionBody, StandardCharsets.UTF_8).split(", ");
+        for (int i = 0; i < 6; i++) {
+            bh.consume(parts[i].split(": ")[1]);
+        }
+    }
+
+    /** Transaction report parsing with the cursor (only the model's String fields are created). */
+    @Benchmark
+    public void transactionCursor(Blackhole bh) {
+        cursor.reset(transactionBody);
+        while (cursor.next()) {
+            bh.consume(cursor.valueAsString());
+        }
+    }
+
+    /** SpaceID extraction as previously done in RaftNode. */
+    @Benchmark
+    public int spaceIdSplit() {
+        String[] parts = new String(citationBody, StandardCharsets.UTF_8).split(",");
+        for (String p : parts) {
+            if (p.trim().startsWith("SpaceID: ")) {
+                return Integer.parseInt(p.trim().substring("SpaceID: ".length()));
+            }
+        }
+        return -1;
+    }
+
+    /** SpaceID extraction with the cursor. */
+    @Benchmark
+    public int spaceIdCursor() {
+        return cursor.reset(citationBody).seek(SPACE_ID_KEY) ? cursor.valueAsInt() : -1;
+    }
+
+    /** Citation cost as a primitive, without going through a String. */
+    @Benchmark
+    public double totalCostCursor() {
+        return cursor.reset(citationBody).seek(TOTAL_COST_KEY) ? cursor.valueAsDouble() : -1;
+    }
+}
@@ -3,7 +3,7 @@ package com.example.shared.models;
 /**
  * Represents a parking space in the parking system.
  * This class contains details such as the parking space ID, occupancy status,
- * and the hourly rate for using the parking space.
+ * the hourly rate for using the parking space and its location.
  *
  * <p>
  * The class provides constructors to create a parking space instance and
@@ -21,6 +21,12 @@ public class ParkingSpace {
     /** Hourly rate for parking in this space */
     private double hourlyRate;
 
+    /** Latitude of the parking space in degrees, or NaN if unknown */
+    private double latitude = Double.NaN;
+
+    /** Longitude of the parking space in degrees, or NaN if unknown */
+    private double longitude = Double.NaN;
+
     /**
      * Constructor to create a ParkingSpace object with specified details.
      *
@@ -34,6 +40,21 @@ public class ParkingSpace {
         this.hourlyRate = hourlyRate;
     }
 
+    /**
+     * Constructor to create a ParkingSpace object with a location.
+     *
+     * @param spaceId the unique ID of the parking space
+     * @param isOccupied whether the space is currently occupied
+     * @param hourlyRate the hourly rate for using the space
+     * @param latitude the latitude of the space in degrees
+     * @param longitude the longitude of the space in degrees
+     */
+    public ParkingSpace(String spaceId, boolean isOccupied, double hourlyRate, double latitude, double longitude) {
+        this(spaceId, isOccupied, hourlyRate);
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
     /**
      * Gets the unique ID of the parking space.
      *
@@ -87,4 +108,49 @@ public class ParkingSpace {
     public void setHourlyRate(double hourlyRate) {
         this.hourlyRate = hourlyRate;
     }
+
+    /**
+     * Gets the latitude of the parking space.
+     *
+     * @return the latitude in degrees, or NaN if unknown
+     */
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * Sets the latitude of the parking space.
+     *
+     * @param latitude the new latitude in degrees
+     */
+    public void setLatitude(double latitude) {
+        this.latitude = latitude;
+    }
+
+    /**
+     * Gets the longitude of the parking space.
+     *
+     * @return the longitude in degrees, or NaN if unknown
+     */
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Sets the longitude of the parking space.
+     *
+     * @param longitude the new longitude in degrees
+     */
+    public void setLongitude(double longitude) {
+        this.longitude = longitude;
+    }
+
+    /**
+     * Checks whether the location of the parking space is known.
+     *
+     * @return {@code true} if both coordinates are set
+     */
+    public boolean hasLocation() {
+        return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+    }
 }
@@ -0,0 +1,203 @@
+package com.example.shared.utils;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link BrokerTransport} backed by the RabbitMQ Java client.
+ * Connections fail fast and do not recover on their own; reconnects are driven by the
+ * {@link ReconnectSupervisor}.
+ */
+public class AmqpTransport implements BrokerTransport {
+
+    private static final String RABBITMQ_USERNAME = "guest";
+    private static final String RABBITMQ_PASSWORD = "guest";
+
+    /**
+     * Opens a connection to a RabbitMQ node.
+     *
+     * @param nodeUri The node URI.
+     * @return The open connection.
+     * @throws IOException      If the node cannot be reached.
+     * @throws TimeoutException If the handshake times out.
+     */
+    @Override
+    public BrokerConnection connect(String nodeUri) throws IOException, TimeoutException {
+        ConnectionFactory factory = new ConnectionFactory();
+        try {
+            factory.setUri(nodeUri);
+        } catch (Exception e) {
+            throw new IOException("Invalid RabbitMQ node URI: " + nodeUri, e);
+        }
+        factory.setUsername(RABBITMQ_USERNAME);
+        factory.setPassword(RABBITMQ_PASSWORD);
+
+        factory.setConnectionTimeout(500);
+        factory.setHandshakeTimeout(1000);
+        factory.setNetworkRecoveryInterval(1000);
+        factory.setRequestedHeartbeat(5);
+        factory.setAutomaticRecoveryEnabled(false);
+
+        return new AmqpConnection(factory.newConnection());
+    }
+
+    private static final class AmqpConnection implements BrokerConnection {
+        private final Connection connection;
+
+        AmqpConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public BrokerChannel createChannel() throws IOException {
+            Channel channel = connection.createChannel();
+            if (channel == null) {
+                throw new IOException("No channel available on " + getHostAddress());
+            }
+            return new AmqpChannel(channel);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return connection.isOpen();
+        }
+
+        @Override
+        public String getHostAddress() {
+            return connection.getAddress().getHostAddress();
+        }
+
+        @Override
+        public void close() throws IOException {
+            connection.close();
+        }
+    }
+
+    private static final class AmqpChannel implements BrokerChannel {
+        private final Channel channel;
+
+        AmqpChannel(Channel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void queueDeclare(String queue, Map<String, Object> arguments) throws IOException {
+            channel.queueDeclare(queue, true, false, false, arguments);
+        }
+
+        @Override
+        public String queueDeclareExclusive() throws IOException {
+            return channel.queueDeclare().getQueue();
+        }
+
+        @Override
+        public void queueDeclareExclusive(String queue, Map<String, Object> arguments) throws IOException {
+            channel.queueDeclare(queue, false, true, false, arguments);
+        }
+
+        @Override
+        public void queueDelete(String queue) throws IOException {
+            channel.queueDelete(queue);
+        }
+
+        @Override
+        public long messageCount(String queue) throws IOException {
+            return channel.messageCount(queue);
+        }
+
+        @Override
+        public void exchangeDeclare(String exchange, String type) throws IOException {
+            channel.exchangeDeclare(exchange, type, true);
+        }
+
+        @Override
+        public void queueBind(String queue, String exchange, String routingKey) throws IOException {
+            channel.queueBind(queue, exchange, routingKey);
+        }
+
+        @Override
+        public void basicQos(int prefetchCount) throws IOException {
+            channel.basicQos(prefetchCount);
+        }
+
+        @Override
+        public void basicPublish(String exchange, String routingKey, String correlationId, byte[] body) throws IOException {
+            AMQP.BasicProperties properties = correlationId == null
+                    ? null
+                    : new AMQP.BasicProperties.Builder().correlationId(correlationId).build();
+            channel.basicPublish(exchange, routingKey, properties, body);
+        }
+
+        @Override
+        public Delivery basicGet(String queue) throws IOException {
+            GetResponse response = channel.basicGet(queue, false);
+            if (response == null) {
+                return null;
+            }
+            AMQP.BasicProperties properties = response.getProps();
+            return new Delivery(response.getEnvelope().getDeliveryTag(), properties.getHeaders(),
+                    properties.getCorrelationId(), response.getBody());
+        }
+
+        @Override
+        public void basicAck(long deliveryTag) throws IOException {
+            channel.basicAck(deliveryTag, false);
+        }
+
+        @Override
+        public void basicNack(long deliveryTag, boolean requeue) throws IOException {
+            channel.basicNack(deliveryTag, false, requeue);
+        }
+
+        @Override
+        public String basicConsume(String queue, Map<String, Object> arguments, DeliveryHandler handler) throws IOException {
+            return channel.basicConsume(queue, false, arguments, new DefaultConsumer(channel) {
+                @Override
+                public void handleDelivery(String consumerTag, Envelope envelope,
+                                           AMQP.BasicProperties properties, byte[] body) throws IOException {
+                    handler.handle(consumerTag, new Delivery(envelope.getDeliveryTag(), properties.getHeaders(),
+                            properties.getCorrelationId(), body));
+                }
+            });
+        }
+
+        @Override
+        public void basicCancel(String consumerTag) throws IOException {
+            channel.basicCancel(consumerTag);
+        }
+
+        @Override
+        public void confirmSelect() throws IOException {
+            channel.confirmSelect();
+        }
+
+        @Override
+        public void waitForConfirmsOrDie(long timeoutMs) throws IOException, InterruptedException, TimeoutException {
+            channel.waitForConfirmsOrDie(timeoutMs);
+        }
+
+        @Override
+        public void queuePurge(String queue) throws IOException {
+            channel.queuePurge(queue);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException, TimeoutException {
+            channel.close();
+        }
+    }
+}
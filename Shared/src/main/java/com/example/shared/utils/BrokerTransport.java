@@ -0,0 +1,280 @@
+package com.example.shared.utils;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The broker operations {@link RabbitMQUtil} is built on.
+ *
+ * The interface is a narrow subset of the AMQP client: the calls the application actually makes,
+ * with the same semantics (manual acks, prefetch, publisher confirms, stream offsets). Two
+ * implementations exist:
+ * - {@link AmqpTransport}, the RabbitMQ Java client (the default).
+ * - {@link InProcessBroker}, an embedded stand-in for tests and benchmarks, selected with
+ *   {@code -Drabbitmq.transport=inprocess}.
+ */
+public interface BrokerTransport {
+
+    /**
+     * Opens a connection to a broker node.
+     *
+     * @param nodeUri The node URI, e.g. "amqp://10.0.0.1".
+     * @return The open connection.
+     * @throws IOException      If the node cannot be reached.
+     * @throws TimeoutException If the connection handshake times out.
+     */
+    BrokerConnection connect(String nodeUri) throws IOException, TimeoutException;
+
+    /**
+     * A message handed to a consumer or returned by {@link BrokerChannel#basicGet(String)}.
+     *
+     * @param deliveryTag   The tag to ack or nack the message with, unique per channel.
+     * @param headers       The message headers, e.g. "x-stream-offset" for stream deliveries (may be null).
+     * @param correlationId The correlation ID property of a reply (may be null).
+     * @param body          The raw message body.
+     */
+    record Delivery(long deliveryTag, Map<String, Object> headers, String correlationId, byte[] body) {
+    }
+
+    /**
+     * Receives the deliveries of a {@link BrokerChannel#basicConsume(String, Map, DeliveryHandler)} subscription.
+     * Deliveries of one channel are handed over one at a time, in order.
+     */
+    @FunctionalInterface
+    interface DeliveryHandler {
+        /**
+         * Handles one delivery.
+         *
+         * @param consumerTag The subscription the delivery belongs to.
+         * @param delivery    The delivery.
+         * @throws IOException If acking or nacking the delivery fails.
+         */
+        void handle(String consumerTag, Delivery delivery) throws IOException;
+    }
+
+    /**
+     * A connection to one broker node.
+     */
+    interface BrokerConnection {
+
+        /**
+         * Opens a new channel on this connection.
+         *
+         * @return The channel.
+         * @throws IOException If the connection is closed.
+         */
+        BrokerChannel createChannel() throws IOException;
+
+        /**
+         * Checks whether the connection is usable.
+         *
+         * @return True while the connection is open.
+         */
+        boolean isOpen();
+
+        /**
+         * Returns the address of the node behind the connection.
+         *
+         * @return The host address.
+         */
+        String getHostAddress();
+
+        /**
+         * Closes the connection and all of its channels.
+         *
+         * @throws IOException If closing fails.
+         */
+        void close() throws IOException;
+    }
+
+    /**
+     * A channel on a {@link BrokerConnection}. Queues and exchanges are always durable.
+     */
+    interface BrokerChannel {
+
+        /**
+         * Declares a queue if it does not exist.
+         *
+         * @param queue     The queue name.
+         * @param arguments Queue arguments such as "x-queue-type" (may be empty).
+         * @throws IOException If the declaration is refused.
+         */
+        void queueDeclare(String queue, Map<String, Object> arguments) throws IOException;
+
+        /**
+         * Declares a server-named queue that is exclusive to this connection and deleted with it,
+         * e.g. for replies.
+         *
+         * @return The generated queue name.
+         * @throws IOException If the declaration is refused.
+         */
+        String queueDeclareExclusive() throws IOException;
+
+        /**
+         * Declares a named queue that is exclusive to this connection and deleted with it, e.g. a
+         * node's inbox that must have exactly one reader. While another connection holds the queue
+         * the declaration is refused (RESOURCE_LOCKED).
+         *
+         * @param queue     The queue name.
+         * @param arguments Queue arguments such as "x-message-ttl" (may be empty).
+         * @throws IOException If the declaration is refused.
+         */
+        void queueDeclareExclusive(String queue, Map<String, Object> arguments) throws IOException;
+
+        /**
+         * Deletes a queue and its messages if it exists.
+         *
+         * @param queue The queue name.
+         * @throws IOException If the deletion fails.
+         */
+        void queueDelete(String queue) throws IOException;
+
+        /**
+         * Returns the number of messages in a queue. For a stream this is the offset after its last
+         * committed message, the offset the next append gets (RabbitMQ reports the committed
+         * offset + 1), also when retention has removed the oldest messages.
+         *
+         * @param queue The queue name.
+         * @return The ready messages of a queue, or the end offset of a stream.
+         * @throws IOException If the queue does not exist.
+         */
+        long messageCount(String queue) throws IOException;
+
+        /**
+         * Declares an exchange if it does not exist.
+         *
+         * @param exchange The exchange name.
+         * @param type     The exchange type, e.g. "x-consistent-hash".
+         * @throws IOException If the type is unknown or the declaration is refused.
+         */
+        void exchangeDeclare(String exchange, String type) throws IOException;
+
+        /**
+         * Binds a queue to an exchange.
+         *
+         * @param queue      The queue name.
+         * @param exchange   The exchange name.
+         * @param routingKey The binding key (the weight, for a consistent-hash exchange).
+         * @throws IOException If the binding fails.
+         */
+        void queueBind(String queue, String exchange, String routingKey) throws IOException;
+
+        /**
+         * Sets how many unacked deliveries the channel's consumers may hold (0 for no limit).
+         *
+         * @param prefetchCount The prefetch count.
+         * @throws IOException If the setting is refused.
+         */
+        void basicQos(int prefetchCount) throws IOException;
+
+        /**
+         * Publishes a message.
+         *
+         * @param exchange   The exchange ("" for the default exchange).
+         * @param routingKey The routing key (the queue name on the default exchange).
+         * @param body       The message body.
+         * @throws IOException If the channel is closed.
+         */
+        default void basicPublish(String exchange, String routingKey, byte[] body) throws IOException {
+            basicPublish(exchange, routingKey, null, body);
+        }
+
+        /**
+         * Publishes a message with a correlation ID, e.g. a reply to a request.
+         *
+         * @param exchange      The exchange ("" for the default exchange).
+         * @param routingKey    The routing key (the queue name on the default exchange).
+         * @param correlationId The correlation ID property (may be null).
+         * @param body          The message body.
+         * @throws IOException If the channel is closed.
+         */
+        void basicPublish(String exchange, String routingKey, String correlationId, byte[] body) throws IOException;
+
+        /**
+         * Takes one message from a queue, to be acked with {@link #basicAck(long)}.
+         *
+         * @param queue The queue name.
+         * @return The delivery, or null if the queue is empty.
+         * @throws IOException If the queue does not exist or cannot be read this way.
+         */
+        Delivery basicGet(String queue) throws IOException;
+
+        /**
+         * Acknowledges one delivery.
+         *
+         * @param deliveryTag The delivery tag.
+         * @throws IOException If the channel is closed.
+         */
+        void basicAck(long deliveryTag) throws IOException;
+
+        /**
+         * Rejects one delivery.
+         *
+         * @param deliveryTag The delivery tag.
+         * @param requeue     True to put the message back at the head of its queue.
+         * @throws IOException If the channel is closed.
+         */
+        void basicNack(long deliveryTag, boolean requeue) throws IOException;
+
+        /**
+         * Subscribes to a queue with manual acks.
+         *
+         * @param queue     The queue name.
+         * @param arguments Consumer arguments such as "x-stream-offset" (may be empty).
+         * @param handler   Receives the deliveries.
+         * @return The consumer tag.
+         * @throws IOException If the subscription is refused.
+         */
+        String basicConsume(String queue, Map<String, Object> arguments, DeliveryHandler handler) throws IOException;
+
+        /**
+         * Cancels a subscription. Unacked deliveries stay with the channel until acked or the channel closes.
+         *
+         * @param consumerTag The consumer tag.
+         * @throws IOException If the channel is closed.
+         */
+        void basicCancel(String consumerTag) throws IOException;
+
+        /**
+         * Switches the channel to publisher-confirm mode.
+         *
+         * @throws IOException If the channel is closed.
+         */
+        void confirmSelect() throws IOException;
+
+        /**
+         * Waits until every message published since the last call has been confirmed.
+         * Closes the channel if any was nacked or the wait timed out.
+         *
+         * @param timeoutMs How long to wait.
+         * @throws IOException          If a message was nacked.
+         * @throws InterruptedException If the wait was interrupted.
+         * @throws TimeoutException     If the confirms did not arrive in time.
+         */
+        void waitForConfirmsOrDie(long timeoutMs) throws IOException, InterruptedException, TimeoutException;
+
+        /**
+         * Removes all ready messages from a queue.
+         *
+         * @param queue The queue name.
+         * @throws IOException If the queue does not exist.
+         */
+        void queuePurge(String queue) throws IOException;
+
+        /**
+         * Checks whether the channel is usable.
+         *
+         * @return True while the channel is open.
+         */
+        boolean isOpen();
+
+        /**
+         * Closes the channel. Unacked deliveries go back to their queues.
+         *
+         * @throws IOException      If closing fails.
+         * @throws TimeoutException If the broker does not answer in time.
+         */
+        void close() throws IOException, TimeoutException;
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.shared.utils;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * A circuit breaker for one database host that trips on slow responses, not only on errors.
+ *
+ * The breaker keeps the latencies of the last {@code window} statements and whether they failed.
+ * Once it has {@code minSamples} of them it opens when either
+ * - the {@code percentile} latency (e.g. p95) exceeds {@code latencyThresholdMs}, or
+ * - more than {@code maxErrorRate} of them failed.
+ * While open, callers are refused at once ({@link #tryAcquire()} returns false) and go to another
+ * host or fail fast. After the open time one caller may probe the host (half-open): a fast,
+ * successful probe closes the breaker with an empty window, anything else opens it again for twice
+ * as long, up to {@code maxOpenMs}. This mirrors the quarantine of {@link NodeHealthTracker}.
+ */
+public class CircuitBreaker {
+
+    /**
+     * The breaker's state.
+     */
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    // A probe that has not reported back within this time is considered abandoned
+    private static final long PROBE_TIMEOUT_MS = 10_000;
+
+    private final String name;
+    private final int minSamples;
+    private final double percentile;
+    private final long latencyThresholdMicros;
+    private final double maxErrorRate;
+    private final long baseOpenMs;
+    private final long maxOpenMs;
+    private final LongSupplier clock;
+
+    // Guarded by this: the window as a ring buffer
+    private final long[] latencies;
+    private final boolean[] failures;
+    private int next;
+    private int samples;
+    private int failed;
+    private State state = State.CLOSED;
+    private long openUntil;
+    private long openMs;
+    private boolean probeInFlight;
+    private long probeStartedAt;
+    private long trips;
+
+    /**
+     * Creates a closed breaker using the system clock.
+     *
+     * @param name               The host, for logs.
+     * @param window             How many recent statements are considered.
+     * @param minSamples         How many statements are needed before the breaker may open.
+     * @param percentile         The latency percentile compared with the threshold, e.g. 95.
+     * @param latencyThresholdMs The highest acceptable percentile latency, in milliseconds.
+     * @param maxErrorRate       The highest acceptable share of failures, e.g. 0.5.
+     * @param openMs             How long the breaker stays open after the first trip.
+     * @param maxOpenMs          The cap for repeated trips.
+     */
+    public CircuitBreaker(String name, int window, int minSamples, double percentile, long latencyThresholdMs,
+                          double maxErrorRate, long openMs, long maxOpenMs) {
+        this(name, window, minSamples, percentile, latencyThresholdMs, maxErrorRate, openMs, maxOpenMs,
+                () -> System.nanoTime() / 1_000_000);
+    }
+
+    /**
+     * Creates a closed breaker with an explicit millisecond clock.
+     */
+    CircuitBreaker(String name, int window, int minSamples, double percentile, long latencyThresholdMs,
+                   double maxErrorRate, long openMs, long maxOpenMs, LongSupplier clockMs) {
+        this.name = name;
+        this.latencies = new long[window];
+        this.failures = new boolean[window];
+        this.minSamples = Math.min(minSamples, window);
+        this.percentile = percentile;
+        this.latencyThresholdMicros = latencyThresholdMs * 1000;
+        this.maxErrorRate = maxErrorRate;
+        this.baseOpenMs = openMs;
+        this.maxOpenMs = maxOpenMs;
+        this.openMs = openMs;
+        this.clock = clockMs;
+    }
+
+    /**
+     * Asks whether a request may go to the host. Must be followed by a record call if it returns
+     * true, since in the half-open state the caller is the probe.
+     *
+     * @return True if the breaker is closed, or half-open and this caller is the probe.
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        long now = clock.getAsLong();
+        if (now < openUntil || (probeInFlight && now - probeStartedAt < PROBE_TIMEOUT_MS)) {
+            return false;
+        }
+        state = State.HALF_OPEN;
+        probeInFlight = true;
+        probeStartedAt = now;
+        return true;
+    }
+
+    /**
+     * Records a completed statement.
+     *
+     * @param latencyMicros How long it took, in microseconds.
+     */
+    public synchronized void recordSuccess(long latencyMicros) {
+        if (state != State.CLOSED) {
+            if (probeInFlight && latencyMicros <= latencyThresholdMicros) {
+                close();
+            } else if (probeInFlight) {
+                reopen("slow probe (" + latencyMicros / 1000 + " ms)");
+            }
+            return;
+        }
+        add(latencyMicros, false);
+        if (latencyMicros > latencyThresholdMicros) {
+            evaluate(); // Only a slow sample can push the percentile over the threshold
+        }
+    }
+
+    /**
+     * Records a statement or connection attempt that failed because of the host (timeout,
+     * communication failure), not because of the SQL.
+     */
+    public synchronized void recordFailure() {
+        if (state != State.CLOSED) {
+            if (probeInFlight) {
+                reopen("failed probe");
+            }
+            return;
+        }
+        add(latencyThresholdMicros, true);
+        evaluate();
+    }
+
+    /**
+     * Returns the breaker's state.
+     *
+     * @return The state; OPEN until a probe is let through.
+     */
+    public synchronized State state() {
+        return state;
+    }
+
+    /**
+     * Returns the current percentile latency of the window.
+     *
+     * @return The latency in microseconds, or 0 if the window is empty.
+     */
+    public synchronized long percentileMicros() {
+        if (samples == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, samples);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(samples * percentile / 100.0) - 1;
+        return sorted[Math.max(0, Math.min(samples - 1, rank))];
+    }
+
+    /**
+     * Returns how often the breaker opened.
+     *
+     * @return The number of trips.
+     */
+    public synchronized long trips() {
+        return trips;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s [%s p%.0f=%dms errors=%d/%d trips=%d]", name, state, percentile,
+                percentileMicros() / 1000, failed, samples, trips);
+    }
+
+    private void add(long latencyMicros, boolean failure) {
+        if (samples == latencies.length) {
+            if (failures[next]) {
+                failed--;
+            }
+        } else {
+            samples++;
+        }
+        latencies[next] = latencyMicros;
+        failures[next] = failure;
+        if (failure) {
+            failed++;
+        }
+        next = (next + 1) % latencies.length;
+    }
+
+    private void evaluate() {
+        if (samples < minSamples) {
+            return;
+        }
+        if (failed > samples * maxErrorRate) {
+            open("error rate " + failed + "/" + samples);
+        } else {
+            long p = percentileMicros();
+            if (p > latencyThresholdMicros) {
+                open(String.format("p%.0f latency %d ms", percentile, p / 1000));
+            }
+        }
+    }
+
+    private void open(String reason) {
+        state = State.OPEN;
+        openMs = baseOpenMs;
+        openUntil = clock.getAsLong() + openMs;
+        trips++;
+        System.err.println("❌ Database host " + name + " circuit opened for " + openMs + " ms: " + reason);
+    }
+
+    private void reopen(String reason) {
+        state = State.OPEN;
+        probeInFlight = false;
+        openMs = Math.min(openMs * 2, maxOpenMs);
+        openUntil = clock.getAsLong() + openMs;
+        System.err.println("❌ Database host " + name + " " + reason + ", circuit open for " + openMs + " ms.");
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        probeInFlight = false;
+        openMs = baseOpenMs;
+        samples = 0;
+        failed = 0;
+        next = 0;
+        System.out.println("Database host " + name + " circuit closed after a successful probe.");
+    }
+}
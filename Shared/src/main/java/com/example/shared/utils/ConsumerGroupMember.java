@@ -0,0 +1,127 @@
+package com.example.shared.utils;
+
+import com.example.shared.utils.BrokerTransport.BrokerChannel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * One member of a consumer group over a partitioned queue (see {@link RabbitMQUtil#partitionQueues(String)}).
+ *
+ * Partitions are assigned statically: member {@code i} of a group of {@code n} consumes every partition
+ * {@code p} with {@code p % n == i}, so the members share the load without coordinating and every
+ * partition has exactly one consumer. All partitions of a member are consumed on one channel, whose
+ * deliveries the client dispatches one at a time, so messages of a partition (i.e. of a zone) are
+ * handled in publish order.
+ *
+ * A message is acked after the handler returns. If the handler throws, the message is requeued
+ * (redelivered to this member), so processing is at-least-once. Stream partitions cannot requeue
+ * and are acked regardless.
+ *
+ * The member does not survive a lost connection: check {@link #isOpen()} and join the group again.
+ */
+public class ConsumerGroupMember implements AutoCloseable {
+
+    /**
+     * Handles one message of a partition.
+     */
+    @FunctionalInterface
+    public interface PartitionHandler {
+        /**
+         * Processes a message.
+         *
+         * @param partition The partition the message came from.
+         * @param body      The raw message body.
+         * @throws Exception To have the message redelivered.
+         */
+        void handle(int partition, byte[] body) throws Exception;
+    }
+
+    private final BrokerChannel channel;
+    private final List<Integer> partitions = new ArrayList<>();
+    private final List<String> consumerTags = new ArrayList<>();
+
+    /**
+     * Subscribes to the partitions assigned to this member.
+     *
+     * @param channel         A dedicated channel, owned (and closed) by this member.
+     * @param partitionQueues The partition queues of the group's queue, in partition order.
+     * @param memberIndex     This member's index in the group (0 based).
+     * @param groupSize       The number of members in the group.
+     * @param prefetch        The number of unacked messages the channel may hold.
+     * @param stream          Whether the partitions are stream queues.
+     * @param handler         The message handler.
+     * @throws IOException If a subscription fails.
+     */
+    ConsumerGroupMember(BrokerChannel channel, List<String> partitionQueues, int memberIndex, int groupSize,
+                        int prefetch, boolean stream, PartitionHandler handler) throws IOException {
+        if (groupSize <= 0 || memberIndex < 0 || memberIndex >= groupSize) {
+            throw new IllegalArgumentException("Invalid group member " + memberIndex + " of " + groupSize);
+        }
+        this.channel = channel;
+        channel.basicQos(prefetch);
+
+        for (int p = memberIndex; p < partitionQueues.size(); p += groupSize) {
+            final int partition = p;
+            Map<String, Object> args = new HashMap<>();
+            if (stream) {
+                args.put("x-stream-offset", "next"); // Only messages published after joining
+            }
+            String tag = channel.basicConsume(partitionQueues.get(p), args, (consumerTag, delivery) -> {
+                try {
+                    handler.handle(partition, delivery.body());
+                    channel.basicAck(delivery.deliveryTag());
+                } catch (Exception e) {
+                    System.err.println(" Error handling message from partition " + partition + ": " + e.getMessage());
+                    if (stream) {
+                        channel.basicAck(delivery.deliveryTag());
+                    } else {
+                        channel.basicNack(delivery.deliveryTag(), true);
+                    }
+                }
+            });
+            partitions.add(p);
+            consumerTags.add(tag);
+        }
+        System.out.println("Joined consumer group as member " + memberIndex + "/" + groupSize + ", partitions " + partitions);
+    }
+
+    /**
+     * Returns the partitions this member consumes.
+     *
+     * @return The partition indexes.
+     */
+    public List<Integer> partitions() {
+        return List.copyOf(partitions);
+    }
+
+    /**
+     * Checks whether the member is still consuming.
+     *
+     * @return True while the channel is open.
+     */
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * Cancels the subscriptions and closes the channel. Unacked messages go back to their partition.
+     */
+    @Override
+    public void close() {
+        try {
+            if (channel.isOpen()) {
+                for (String tag : consumerTags) {
+                    channel.basicCancel(tag);
+                }
+                channel.close();
+            }
+        } catch (IOException | TimeoutException e) {
+            System.err.println(" Error leaving consumer group: " + e.getMessage());
+        }
+    }
+}
@@ -1,12 +1,14 @@
 package com.example.shared.utils;
 
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
-
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Utility class for managing database connections using HikariCP.
@@ -20,6 +22,27 @@ import java.sql.SQLException;
  * - Connection pooling for enhanced performance.
  * - Automatic handling of connection failures and reconnections.
  * - Optimized query execution using cached prepared statements.
+ * - Separate pools for writes and reads, so heavy reads cannot take the connections the
+ *   latency-critical writes need.
+ *
+ * **Read/write routing:** {@link #connect()} borrows from the write pool and is what every write
+ * (and every read that must see the latest data) uses. Reads that tolerate the read servers
+ * trailing slightly use {@link #connectForRead()}, or {@link #connectForRead(SessionToken)} to
+ * read their own writes: a {@link SessionToken} records when its session last wrote, and for
+ * {@code db.read.stickyMs} after that its reads are sent to the write pool.
+ *
+ * **Configuration:** the pools are named and configured per deployment role, from system
+ * properties or a configuration file (see {@link PoolConfig}): e.g. {@code db.write.poolSize} (12),
+ * {@code db.read.poolSize} (8), {@code db.read.url} (by default the same servers as the write
+ * pool), and extra pools listed in {@code db.pools}. Pools can be resized at runtime
+ * ({@link #resize(String, int, int)}) and export their metrics ({@link #getMetrics()}).
+ *
+ * **Per-host circuit breakers and deadlines:** each pool keeps one set of connections per server
+ * of its URL and a {@link CircuitBreaker} per server that opens when the server's p95 statement
+ * latency ({@code db.<pool>.breakerLatencyMs}) or error rate is too high; borrows go to the least
+ * busy server whose circuit is closed and fail at once when all are open. Every statement runs
+ * under the calling thread's {@link Deadline}, or {@code db.deadlineMs} (3000) from the borrow:
+ * the time left becomes its query timeout, and it is not sent once the deadline has passed.
  *
  * @author
  * @version 1.0
@@ -29,6 +52,7 @@ public class DatabaseUtil {
 
     /**
      * The JDBC URL for the database, configured with load balancing and additional parameters for optimization.
+     * The default of every pool; overridden with {@code db.<pool>.url}.
      */
     private static final String DB_URL = "jdbc:mysql:loadbalance://100.85.154.51:3306,100.76.110.20:3306/muligansystem"
             + "?autoReconnect=true"                 // Automatically reconnect in case of connection loss.
@@ -53,42 +77,224 @@ public class DatabaseUtil {
     private static final String PASSWORD = "root";
 
     /**
-     * HikariCP connection pool for managing database connections.
+     * How long after a write a session's reads still go to the write pool (in milliseconds).
+     */
+    private static final long STICKY_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("db.read.stickyMs", 2000));
+
+    /**
+     * The deadline of a call that did not attach one (in milliseconds), counted from the borrow.
+     */
+    private static final long DEFAULT_DEADLINE_MS = Long.getLong("db.deadlineMs", 3000);
+
+    /**
+     * The pool for writes and for reads that must see the latest data.
      */
-    private static HikariDataSource dataSource;
+    public static final String WRITE_POOL = "write";
 
-    // Static block to initialize the connection pool.
+    /**
+     * The pool for reads.
+     */
+    public static final String READ_POOL = "read";
+
+    /**
+     * The connection pools by name: {@link #WRITE_POOL}, {@link #READ_POOL} and those listed in {@code db.pools}.
+     */
+    private static final Map<String, HostRoutedPool> pools = new ConcurrentHashMap<>();
+
+    // Static block to initialize the connection pools.
     static {
         try {
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DB_URL);
-            config.setUsername(USERNAME);
-            config.setPassword(PASSWORD);
-
-            // Configure connection pool settings.
-            config.setMaximumPoolSize(20); // Maximum number of connections in the pool.
-            config.setMinimumIdle(5);     // Minimum number of idle connections.
-            config.setIdleTimeout(10000); // Time to close an idle connection (in milliseconds).
-            config.setConnectionTimeout(3000); // Maximum wait time for a connection (in milliseconds).
-            config.setMaxLifetime(1800000); // Maximum lifetime of a connection (30 minutes).
-
-            dataSource = new HikariDataSource(config); // Create the connection pool.
+            openPools();
         } catch (Exception e) {
-            throw new RuntimeException("Error initializing HikariDataSource", e);
+            throw new RuntimeException("Error initializing the connection pools", e);
+        }
+    }
+
+    /**
+     * Records when a session (e.g. one customer's UI) last wrote, so its reads see its own writes.
+     * Thread-safe.
+     */
+    public static final class SessionToken {
+        private volatile long lastWriteNanos;
+        private volatile boolean written;
+
+        /**
+         * Records that the session just committed a write.
+         */
+        public void markWrite() {
+            lastWriteNanos = System.nanoTime();
+            written = true;
+        }
+
+        /**
+         * Checks whether the session wrote recently enough that the read servers may not have it yet.
+         *
+         * @return True if its reads must go to the write pool.
+         */
+        public boolean needsPrimary() {
+            return written && System.nanoTime() - lastWriteNanos < STICKY_NANOS;
+        }
+    }
+
+    /**
+     * Returns the built-in settings of a pool, used for whatever the configuration leaves out.
+     *
+     * @param name The pool name.
+     * @return The defaults: 12 write and 8 read connections (a quarter kept idle), 4 for other pools;
+     *         a host's circuit opens above a p95 of 500 ms for writes, 2000 ms for other pools.
+     */
+    private static PoolConfig defaults(String name) {
+        int size = switch (name) {
+            case WRITE_POOL -> 12;
+            case READ_POOL -> 8;
+            default -> 4;
+        };
+        return new PoolConfig(name, DB_URL, USERNAME, PASSWORD, size, Math.max(1, size / 4),
+                3000,       // Maximum wait time for a connection (in milliseconds).
+                10000,      // Time to close an idle connection (in milliseconds).
+                1800000,    // Maximum lifetime of a connection (30 minutes).
+                !name.equals(WRITE_POOL),
+                name.equals(WRITE_POOL) ? 500 : 2000); // p95 statement latency that opens a host's circuit.
+    }
+
+    /**
+     * Creates the configured pools (see {@link PoolConfig}).
+     */
+    private static void openPools() {
+        List<String> names = new ArrayList<>(List.of(WRITE_POOL, READ_POOL));
+        for (String name : PoolConfig.extraPoolNames()) {
+            if (!names.contains(name)) {
+                names.add(name);
+            }
+        }
+        for (String name : names) {
+            PoolConfig config = PoolConfig.load(name, defaults(name));
+            pools.put(name, new HostRoutedPool(config));
+            System.out.println("Opened database pool " + config);
         }
     }
 
     /**
-     * Provides an active database connection from the connection pool.
+     * Provides an active database connection from the write pool.
+     * Use it for writes and for reads that must see the latest data.
      *
      * @return A {@link Connection} object for interacting with the database.
      * @throws SQLException If the connection pool is unavailable or closed, or if a connection cannot be retrieved.
      */
     public static Connection connect() throws SQLException {
-        if (dataSource == null || dataSource.isClosed()) {
-            throw new SQLException("Connection pool is not available or has been closed.");
+        return connect(WRITE_POOL);
+    }
+
+    /**
+     * Provides a read-only connection from the read pool.
+     *
+     * @return A {@link Connection} for reads.
+     * @throws SQLException If the connection pool is unavailable or closed, or if a connection cannot be retrieved.
+     */
+    public static Connection connectForRead() throws SQLException {
+        return connect(READ_POOL);
+    }
+
+    /**
+     * Provides a connection for a session's read: from the write pool if the session wrote within
+     * {@code db.read.stickyMs}, so it sees its own write, otherwise from the read pool.
+     *
+     * @param session The session's token (null: no writes to see).
+     * @return A {@link Connection} for reads.
+     * @throws SQLException If the connection pool is unavailable or closed, or if a connection cannot be retrieved.
+     */
+    public static Connection connectForRead(SessionToken session) throws SQLException {
+        return session != null && session.needsPrimary() ? connect() : connectForRead();
+    }
+
+    /**
+     * Provides a connection from a named pool, e.g. one configured for reports in {@code db.pools}.
+     *
+     * The connection's statements run under the thread's {@link Deadline}, or {@code db.deadlineMs}
+     * from now if none is attached.
+     *
+     * @param poolName The pool name.
+     * @return A {@link Connection} from that pool.
+     * @throws SQLException If there is no such pool, it has been closed, every server's circuit is
+     *                      open, the deadline has passed, or no connection can be retrieved.
+     */
+    public static Connection connect(String poolName) throws SQLException {
+        HostRoutedPool pool = pools.get(poolName);
+        if (pool == null) {
+            throw new SQLException("Connection pool " + poolName + " is not available or has been closed.");
+        }
+        Deadline deadline = Deadline.current();
+        return pool.connect(deadline != null ? deadline : Deadline.after(DEFAULT_DEADLINE_MS));
+    }
+
+    /**
+     * Starts a transaction whose coordinator runs on the data node that owns a zone.
+     *
+     * NDB places a transaction's coordinator on the data node holding the row its first statement
+     * reads by primary key (distribution awareness), so the transaction begins by reading the
+     * zone's row. Once the parking tables are partitioned by ZoneID (see {@link SchemaVersion}),
+     * the zone's spaces and events live in the same partition as that row. The commit then stays
+     * within one node group instead of a two-phase commit across the cluster.
+     *
+     * @param conn   An open connection; it is left with auto-commit off, and the caller commits or rolls back.
+     * @param zoneId The zone the transaction works on (null: no hint, just start the transaction).
+     * @throws SQLException If the transaction cannot be started.
+     */
+    public static void beginZoneTransaction(Connection conn, String zoneId) throws SQLException {
+        conn.setAutoCommit(false);
+        if (zoneId == null) {
+            return;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT ZoneID FROM zones WHERE ZoneID = ?")) {
+            stmt.setString(1, zoneId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+            }
+        }
+    }
+
+    /**
+     * Resizes a pool while it runs (see {@link PooledDatabase#resize(int, int)}), splitting the
+     * size between its servers.
+     *
+     * @param poolName    The pool name.
+     * @param maxPoolSize The new maximum number of connections.
+     * @param minIdle     The new number of idle connections to keep.
+     * @throws SQLException If there is no such pool.
+     */
+    public static void resize(String poolName, int maxPoolSize, int minIdle) throws SQLException {
+        HostRoutedPool pool = pools.get(poolName);
+        if (pool == null) {
+            throw new SQLException("Connection pool " + poolName + " is not available or has been closed.");
+        }
+        pool.resize(maxPoolSize, minIdle);
+    }
+
+    /**
+     * Returns the metrics of every pool: current counts and the wait-time, active, idle and
+     * pending histograms.
+     *
+     * @return The metrics, one per pool and server (named e.g. "write@host:3306").
+     */
+    public static List<PooledDatabase.PoolMetrics> getMetrics() {
+        List<PooledDatabase.PoolMetrics> metrics = new ArrayList<>();
+        for (HostRoutedPool pool : pools.values()) {
+            metrics.addAll(pool.metrics());
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns the circuit breakers of every pool's servers, e.g. for a health page.
+     *
+     * @return The breakers, one per pool and server.
+     */
+    public static List<CircuitBreaker> getCircuitBreakers() {
+        List<CircuitBreaker> breakers = new ArrayList<>();
+        for (HostRoutedPool pool : pools.values()) {
+            breakers.addAll(pool.breakers());
         }
-        return dataSource.getConnection();
+        return breakers;
     }
 
     /**
@@ -111,29 +317,27 @@ public class DatabaseUtil {
     }
 
     /**
-     * Resets the connection pool by closing the existing pool and reinitializing it.
-     * This can be useful in scenarios where the connection pool configuration needs to be updated.
+     * Resets the connection pools by closing the existing pools and reinitializing them from the
+     * current configuration, with the same settings as at startup unless the configuration changed.
+     * To only change a pool's size, {@link #resize(String, int, int)} keeps its connections.
      *
-     * @throws SQLException If an error occurs while resetting the connection pool.
+     * @throws SQLException If an error occurs while resetting the connection pools.
      */
     public static void resetConnectionPool() throws SQLException {
-        close(); // Ensure the old connection pool is closed.
-        HikariConfig config = new HikariConfig();
-        config.setJdbcUrl(DB_URL); // Ensure the JDBC URL is correctly configured.
-        config.setUsername(USERNAME);
-        config.setPassword(PASSWORD);
-        config.setMaximumPoolSize(20); // Maximum number of connections in the new pool.
-        config.setConnectionTimeout(5000); // Timeout for obtaining connections.
-        dataSource = new HikariDataSource(config); // Reinitialize the connection pool.
+        close(); // Ensure the old connection pools are closed.
+        openPools(); // Reinitialize the connection pools.
     }
 
     /**
-     * Closes the connection pool and releases all resources.
+     * Closes the connection pools and releases all resources.
      * This method should be called when the application shuts down to prevent resource leaks.
      */
     public static void close() {
-        if (dataSource != null && !dataSource.isClosed()) {
-            dataSource.close(); // Close the connection pool if it exists and is open.
+        for (String name : new ArrayList<>(pools.keySet())) {
+            HostRoutedPool pool = pools.remove(name);
+            if (pool != null) {
+                pool.close(); // Close the connection pool if it exists and is open.
+            }
         }
     }
 }
@@ -0,0 +1,133 @@
+package com.example.shared.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time by which a service call must be done, carried by the calling thread.
+ *
+ * A service runs a call under a deadline:
+ * <pre>
+ * return Deadline.call(5000, () -&gt; {
+ *     ... DatabaseUtil.connect() ...
+ * });
+ * </pre>
+ * {@link DatabaseUtil} hands out connections that apply the thread's deadline (or the default
+ * {@code db.deadlineMs} from the moment of the borrow) to every statement, as its query timeout
+ * and as the connection's network timeout, so a slow host cannot hold a call past its deadline.
+ * Nested scopes can only shorten the deadline.
+ */
+public final class Deadline {
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Restores the previous deadline of the thread when closed.
+     */
+    public static final class Scope implements AutoCloseable {
+        private final Deadline previous;
+
+        private Scope(Deadline previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Work that runs under a deadline, see {@link #call(long, Work)}.
+     *
+     * @param <T> The type of the result.
+     * @param <E> The checked exception the work may throw.
+     */
+    @FunctionalInterface
+    public interface Work<T, E extends Exception> {
+
+        /**
+         * Does the work.
+         *
+         * @return The result.
+         * @throws E If the work fails.
+         */
+        T run() throws E;
+    }
+
+    /**
+     * Runs work with a deadline attached to the calling thread, and detaches it afterwards.
+     *
+     * @param millis The time allowed, in milliseconds.
+     * @param work   The work.
+     * @param <T>    The type of the result.
+     * @param <E>    The checked exception the work may throw.
+     * @return The result of the work.
+     * @throws E If the work fails.
+     */
+    public static <T, E extends Exception> T call(long millis, Work<T, E> work) throws E {
+        Scope scope = after(millis).attach();
+        try {
+            return work.run();
+        } finally {
+            scope.close();
+        }
+    }
+
+    /**
+     * Creates a deadline some time from now.
+     *
+     * @param millis The time allowed, in milliseconds.
+     * @return The deadline.
+     */
+    public static Deadline after(long millis) {
+        return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    /**
+     * Returns the deadline attached to the calling thread.
+     *
+     * @return The deadline, or null if none is attached.
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Makes this the calling thread's deadline until the scope is closed; an earlier deadline
+     * already attached stays in force.
+     *
+     * @return The scope.
+     */
+    public Scope attach() {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(previous != null && previous.deadlineNanos - deadlineNanos < 0 ? previous : this);
+        return new Scope(previous);
+    }
+
+    /**
+     * Returns the time left.
+     *
+     * @return The remaining milliseconds, 0 if the deadline has passed.
+     */
+    public long remainingMillis() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * Checks whether the deadline has passed.
+     *
+     * @return True if no time is left.
+     */
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+}
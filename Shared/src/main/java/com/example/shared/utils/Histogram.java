@@ -0,0 +1,113 @@
+package com.example.shared.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative values (e.g. wait times in microseconds, or connection
+ * counts), with power-of-two buckets: bucket 0 holds 0, bucket i holds [2^(i-1), 2^i).
+ *
+ * Recording is one atomic increment, so it can sit on every connection borrow. Percentiles are
+ * read from a {@link Snapshot} and are accurate to the bucket, i.e. within a factor of two.
+ */
+public class Histogram {
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Histogram contents at one point in time.
+     *
+     * @param counts The count of each bucket.
+     */
+    public record Snapshot(long[] counts) {
+
+        /**
+         * Returns the number of recorded values.
+         *
+         * @return The count.
+         */
+        public long count() {
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            return total;
+        }
+
+        /**
+         * Returns an upper bound of a percentile: the upper end of the bucket it falls in.
+         *
+         * @param percentile The percentile, e.g. 99 or 99.9.
+         * @return The value, or 0 if nothing was recorded.
+         */
+        public long percentile(double percentile) {
+            long total = count();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= Math.max(1, rank)) {
+                    return upperBound(i);
+                }
+            }
+            return upperBound(counts.length - 1);
+        }
+
+        /**
+         * Formats the non-empty buckets and the common percentiles.
+         *
+         * @return E.g. "n=120 p50<=64 p99<=1024 max<=2048 [<=1:3 <=2:10 ...]".
+         */
+        public String format() {
+            StringBuilder text = new StringBuilder("n=").append(count())
+                    .append(" p50<=").append(percentile(50))
+                    .append(" p99<=").append(percentile(99))
+                    .append(" max<=").append(percentile(100))
+                    .append(" [");
+            boolean first = true;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    text.append(first ? "" : " ").append("<=").append(upperBound(i)).append(':').append(counts[i]);
+                    first = false;
+                }
+            }
+            return text.append(']').toString();
+        }
+    }
+
+    /**
+     * Records a value; negative values count as 0.
+     *
+     * @param value The value.
+     */
+    public void record(long value) {
+        counts.incrementAndGet(bucketOf(value));
+    }
+
+    /**
+     * Copies the current counts.
+     *
+     * @return The snapshot.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy);
+    }
+
+    private static int bucketOf(long value) {
+        return value <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+
+    /**
+     * Returns the largest value of a bucket.
+     */
+    private static long upperBound(int bucket) {
+        return bucket == 0 ? 0 : bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+}
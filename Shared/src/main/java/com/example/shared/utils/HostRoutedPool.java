@@ -0,0 +1,243 @@
+package com.example.shared.utils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A named pool spread over the hosts of its JDBC URL, with a {@link CircuitBreaker} per host.
+ *
+ * The driver's {@code loadbalance} URL hides which host a statement went to, so a host that turns
+ * slow keeps receiving its share and every caller waits for the socket timeout. Instead, the pool
+ * keeps one {@link PooledDatabase} per host (the configured size is split between them) and picks
+ * the host for each borrow: the one with the fewest active connections among those whose breaker
+ * admits the request. Statement latencies and host failures are fed back into the host's breaker.
+ * When every breaker is open the borrow fails at once.
+ *
+ * Connections are handed out wrapped: each statement gets the time left until the caller's
+ * {@link Deadline} as its query timeout, and the connection's network timeout ends at the
+ * deadline too. A statement started after the deadline fails without being sent.
+ */
+final class HostRoutedPool implements AutoCloseable {
+    private static final int BREAKER_WINDOW = Integer.getInteger("db.breaker.window", 100);
+    private static final int BREAKER_MIN_SAMPLES = Integer.getInteger("db.breaker.minSamples", 20);
+    private static final double BREAKER_PERCENTILE = Double.parseDouble(System.getProperty("db.breaker.percentile", "95"));
+    private static final double BREAKER_ERROR_RATE = Double.parseDouble(System.getProperty("db.breaker.errorRate", "0.5"));
+    private static final long BREAKER_OPEN_MS = Long.getLong("db.breaker.openMs", 5000);
+    private static final long BREAKER_MAX_OPEN_MS = Long.getLong("db.breaker.maxOpenMs", 60_000);
+
+    private static final Pattern LOAD_BALANCED = Pattern.compile("^jdbc:mysql:loadbalance://([^/?]+)(.*)$");
+    private static final Pattern SINGLE_HOST = Pattern.compile("^jdbc:[a-z]+://([^/?]+).*$");
+    private static final Executor DIRECT = Runnable::run;
+
+    /**
+     * One host of the pool.
+     */
+    private record Host(String host, PooledDatabase pool, CircuitBreaker breaker) {
+    }
+
+    private final String name;
+    private final long connectionTimeoutMs;
+    private final List<Host> hosts = new ArrayList<>();
+
+    /**
+     * Opens one pool per host of the configured URL.
+     *
+     * @param config The pool's settings; its size is split evenly between the hosts.
+     */
+    HostRoutedPool(PoolConfig config) {
+        this.name = config.name();
+        this.connectionTimeoutMs = config.connectionTimeoutMs();
+        List<String[]> targets = new ArrayList<>(); // host, url
+        Matcher balanced = LOAD_BALANCED.matcher(config.jdbcUrl());
+        if (balanced.matches()) {
+            for (String host : balanced.group(1).split(",")) {
+                targets.add(new String[]{host.trim(), "jdbc:mysql://" + host.trim() + balanced.group(2)});
+            }
+        } else {
+            Matcher single = SINGLE_HOST.matcher(config.jdbcUrl());
+            targets.add(new String[]{single.matches() ? single.group(1) : config.name(), config.jdbcUrl()});
+        }
+        int n = targets.size();
+        for (String[] target : targets) {
+            PoolConfig hostConfig = new PoolConfig(config.name() + "@" + target[0], target[1], config.user(),
+                    config.password(), ceilDiv(config.maxPoolSize(), n), ceilDiv(config.minIdle(), n),
+                    config.connectionTimeoutMs(), config.idleTimeoutMs(), config.maxLifetimeMs(), config.readOnly(),
+                    config.breakerLatencyMs());
+            CircuitBreaker breaker = new CircuitBreaker(hostConfig.name(), BREAKER_WINDOW, BREAKER_MIN_SAMPLES,
+                    BREAKER_PERCENTILE, config.breakerLatencyMs(), BREAKER_ERROR_RATE, BREAKER_OPEN_MS, BREAKER_MAX_OPEN_MS);
+            hosts.add(new Host(target[0], new PooledDatabase(hostConfig, List.of()), breaker));
+        }
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return Math.max(1, (a + b - 1) / b);
+    }
+
+    /**
+     * Borrows a connection from the least busy host whose breaker admits the request.
+     *
+     * @param deadline When the caller's work must be done.
+     * @return A connection that applies the deadline to its statements.
+     * @throws SQLException If the deadline has passed, every breaker is open (at once), or no host
+     *                      gave a connection in time.
+     */
+    Connection connect(Deadline deadline) throws SQLException {
+        if (deadline.isExpired()) {
+            throw new SQLTimeoutException("Deadline passed before a connection to " + name + " was requested");
+        }
+        List<Host> candidates = new ArrayList<>(hosts);
+        if (candidates.size() > 1) {
+            candidates.sort(Comparator.comparingInt(h -> h.pool().activeConnections()));
+        }
+        SQLException last = null;
+        for (Host host : candidates) {
+            long timeout = Math.min(connectionTimeoutMs, deadline.remainingMillis());
+            if (timeout <= 0) {
+                break; // Before the breaker, so an expired caller does not take a half-open probe
+            }
+            if (!host.breaker().tryAcquire()) {
+                continue;
+            }
+            Connection conn;
+            try {
+                conn = host.pool().connect(timeout);
+            } catch (SQLException e) {
+                host.breaker().recordFailure();
+                last = e;
+                continue; // Try the next host while time is left
+            }
+            try {
+                return guard(conn, host.breaker(), deadline);
+            } catch (SQLException | RuntimeException e) {
+                conn.close();
+                throw e;
+            }
+        }
+        if (last != null) {
+            throw last;
+        }
+        if (deadline.isExpired()) {
+            throw new SQLTimeoutException("Deadline passed while waiting for a connection to " + name);
+        }
+        throw new SQLTransientConnectionException("Database pool " + name + ": every host's circuit is open", "08001");
+    }
+
+    /**
+     * Resizes the pool, splitting the size between the hosts.
+     */
+    void resize(int maxPoolSize, int minIdle) {
+        for (Host host : hosts) {
+            host.pool().resize(ceilDiv(maxPoolSize, hosts.size()), Math.min(ceilDiv(maxPoolSize, hosts.size()),
+                    minIdle <= 0 ? 0 : ceilDiv(minIdle, hosts.size())));
+        }
+    }
+
+    /**
+     * Returns the metrics of each host's pool.
+     */
+    List<PooledDatabase.PoolMetrics> metrics() {
+        List<PooledDatabase.PoolMetrics> metrics = new ArrayList<>();
+        for (Host host : hosts) {
+            metrics.add(host.pool().getMetrics());
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns the breaker of each host.
+     */
+    List<CircuitBreaker> breakers() {
+        List<CircuitBreaker> breakers = new ArrayList<>();
+        for (Host host : hosts) {
+            breakers.add(host.breaker());
+        }
+        return breakers;
+    }
+
+    @Override
+    public void close() {
+        for (Host host : hosts) {
+            host.pool().close();
+        }
+    }
+
+    // ------------------------------------------------------------------ deadline-carrying connections
+
+    /**
+     * Wraps a connection so its statements honour the deadline and report to the breaker.
+     */
+    private static Connection guard(Connection conn, CircuitBreaker breaker, Deadline deadline) throws SQLException {
+        conn.setNetworkTimeout(DIRECT, (int) Math.min(Integer.MAX_VALUE, Math.max(1, deadline.remainingMillis())));
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(conn, method, args);
+                    if (result instanceof Statement stmt && !method.getName().equals("unwrap")) {
+                        return guard(stmt, breaker, deadline);
+                    }
+                    return result;
+                });
+    }
+
+    private static Statement guard(Statement stmt, CircuitBreaker breaker, Deadline deadline) {
+        Class<?> type = stmt instanceof CallableStatement ? CallableStatement.class
+                : stmt instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    if (!method.getName().startsWith("execute")) {
+                        return invoke(stmt, method, args);
+                    }
+                    long remaining = deadline.remainingMillis();
+                    if (remaining <= 0) {
+                        throw new SQLTimeoutException("Deadline passed before the statement was sent");
+                    }
+                    stmt.setQueryTimeout((int) Math.max(1, (remaining + 999) / 1000));
+                    long start = System.nanoTime();
+                    try {
+                        Object result = invoke(stmt, method, args);
+                        breaker.recordSuccess((System.nanoTime() - start) / 1000);
+                        return result;
+                    } catch (SQLException e) {
+                        if (isHostFailure(e)) {
+                            breaker.recordFailure();
+                        } else {
+                            breaker.recordSuccess((System.nanoTime() - start) / 1000); // The host answered
+                        }
+                        throw e;
+                    }
+                });
+    }
+
+    /**
+     * Checks whether an error says the host is slow or unreachable, rather than the SQL being wrong.
+     */
+    private static boolean isHostFailure(SQLException e) {
+        String state = e.getSQLState();
+        return e instanceof SQLTimeoutException
+                || e instanceof SQLTransientConnectionException
+                || e instanceof SQLNonTransientConnectionException
+                || (state != null && state.startsWith("08"));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
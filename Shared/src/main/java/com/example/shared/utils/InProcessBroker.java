@@ -0,0 +1,808 @@
+package com.example.shared.utils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Embedded, in-process stand-in for the RabbitMQ cluster, so tests and benchmarks run without a broker.
+ * Selected for every {@link RabbitMQUtil} with {@code -Drabbitmq.transport=inprocess}.
+ *
+ * All node URIs reach the same broker state, like the nodes of a cluster. It behaves like RabbitMQ
+ * in the ways the application depends on:
+ * - Quorum and classic queues: FIFO, manual acks. Nacked messages and those unacked when their
+ *   channel closes go back to the head of the queue. Single-active-consumer is supported.
+ * - Exclusive queues, server-named or named, deleted when their connection closes. Another
+ *   connection can neither declare nor consume a named one (RESOURCE_LOCKED). Correlation IDs are
+ *   carried from publish to delivery.
+ * - Streams: append-only, consumed from an "x-stream-offset" with the offset in the delivery
+ *   headers. A prefetch is required, {@code basicGet} and purge are refused.
+ * - The default exchange, direct exchanges and x-consistent-hash exchanges (weights honoured).
+ * - Prefetch limits the unacked deliveries per channel. Deliveries of a channel arrive in order.
+ * - Publisher confirms. Publishing to an unknown queue on the default exchange silently drops the
+ *   message, like an unroutable publish.
+ *
+ * Configurable latency is added to every round trip (connect, declare, get, confirm wait) and to
+ * every delivery. Faults can be injected:
+ * - Node outages.
+ * - Dropped connections.
+ * - A rate of publishes that break the connection.
+ * - A rate of nacked confirms.
+ */
+public class InProcessBroker implements BrokerTransport {
+
+    private static final InProcessBroker DEFAULT = new InProcessBroker(
+            TimeUnit.MICROSECONDS.toNanos(Long.getLong("rabbitmq.inprocess.latencyMicros", 0)));
+
+    private final Object lock = new Object(); // Guards all queue, exchange and channel state
+    private final Map<String, BrokerQueue> queues = new HashMap<>();
+    private final Map<String, Exchange> exchanges = new HashMap<>();
+    private final List<InProcessConnection> connections = new CopyOnWriteArrayList<>();
+    private final AtomicLong consumerTags = new AtomicLong();
+
+    private volatile long latencyNanos;
+    private volatile double publishFailureRate = 0;
+    private volatile double confirmNackRate = 0;
+    private final Set<String> downNodes = Collections.synchronizedSet(new HashSet<>());
+
+    /**
+     * Creates an empty broker without added latency.
+     */
+    public InProcessBroker() {
+        this(0);
+    }
+
+    /**
+     * Creates an empty broker.
+     *
+     * @param latencyNanos The latency added to every round trip and delivery.
+     */
+    public InProcessBroker(long latencyNanos) {
+        this.latencyNanos = latencyNanos;
+    }
+
+    /**
+     * Returns the broker shared by this process, used when {@code -Drabbitmq.transport=inprocess} is set.
+     * Its latency can be preset with {@code -Drabbitmq.inprocess.latencyMicros}.
+     *
+     * @return The process-wide broker.
+     */
+    public static InProcessBroker getDefault() {
+        return DEFAULT;
+    }
+
+    // ------------------------------------------------------------------ configuration and fault injection
+
+    /**
+     * Sets the latency added to every round trip and delivery.
+     *
+     * @param latency The latency.
+     * @param unit    The unit of {@code latency}.
+     */
+    public void setLatency(long latency, TimeUnit unit) {
+        this.latencyNanos = unit.toNanos(latency);
+    }
+
+    /**
+     * Takes a node down or brings it back. Connections to a down node are closed and new ones refused.
+     *
+     * @param nodeUri The node URI.
+     * @param down    True to take the node down.
+     */
+    public void setNodeDown(String nodeUri, boolean down) {
+        if (down) {
+            downNodes.add(nodeUri);
+            for (InProcessConnection connection : connections) {
+                if (connection.nodeUri.equals(nodeUri)) {
+                    connection.close();
+                }
+            }
+        } else {
+            downNodes.remove(nodeUri);
+        }
+    }
+
+    /**
+     * Closes every open connection, as after a network partition. Nodes stay up.
+     */
+    public void dropAllConnections() {
+        for (InProcessConnection connection : connections) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Sets the fraction of publishes that fail and close their connection.
+     *
+     * @param rate A probability between 0 and 1.
+     */
+    public void setPublishFailureRate(double rate) {
+        this.publishFailureRate = rate;
+    }
+
+    /**
+     * Sets the fraction of publishes on confirm channels that are nacked (and not enqueued).
+     *
+     * @param rate A probability between 0 and 1.
+     */
+    public void setConfirmNackRate(double rate) {
+        this.confirmNackRate = rate;
+    }
+
+    /**
+     * Returns the number of messages in a queue: ready messages, or the length of a stream.
+     *
+     * @param queue The queue name.
+     * @return The message count, or -1 if the queue does not exist.
+     */
+    public int messageCount(String queue) {
+        synchronized (lock) {
+            BrokerQueue q = queues.get(queue);
+            if (q == null) {
+                return -1;
+            }
+            return q.stream ? q.log.size() : q.ready.size();
+        }
+    }
+
+    /**
+     * Deletes all queues and exchanges, closes all connections and clears injected faults.
+     */
+    public void reset() {
+        dropAllConnections();
+        synchronized (lock) {
+            queues.clear();
+            exchanges.clear();
+        }
+        downNodes.clear();
+        publishFailureRate = 0;
+        confirmNackRate = 0;
+    }
+
+    // ------------------------------------------------------------------ transport
+
+    /**
+     * Opens a connection, unless the node has been taken down.
+     *
+     * @param nodeUri The node URI.
+     * @return The open connection.
+     * @throws IOException If the node is down.
+     */
+    @Override
+    public BrokerConnection connect(String nodeUri) throws IOException {
+        simulateLatency();
+        if (downNodes.contains(nodeUri)) {
+            throw new IOException("Connection refused (in-process node " + nodeUri + " is down)");
+        }
+        InProcessConnection connection = new InProcessConnection(nodeUri);
+        connections.add(connection);
+        return connection;
+    }
+
+    private void simulateLatency() {
+        long nanos = latencyNanos;
+        if (nanos > 0) {
+            LockSupport.parkNanos(nanos);
+        }
+    }
+
+    private static boolean chance(double rate) {
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    // ------------------------------------------------------------------ broker state
+
+    private static final class BrokerQueue {
+        final String name;
+        final boolean stream;
+        final boolean singleActiveConsumer;
+        final ArrayDeque<Message> ready = new ArrayDeque<>();    // Quorum / classic queues
+        final List<Message> log = new ArrayList<>();             // Streams
+        final List<Long> appendedAt = new ArrayList<>();         // Streams: publish time of each offset (ms)
+        final List<QueueConsumer> consumers = new ArrayList<>();
+        int nextConsumer = 0;                                    // Round-robin position
+        Object owner;                                            // Connection of an exclusive queue
+
+        BrokerQueue(String name, boolean stream, boolean singleActiveConsumer) {
+            this.name = name;
+            this.stream = stream;
+            this.singleActiveConsumer = singleActiveConsumer;
+        }
+    }
+
+    private static final class Exchange {
+        final String type;
+        final List<String[]> bindings = new ArrayList<>(); // {queue, key}
+
+        Exchange(String type) {
+            this.type = type;
+        }
+    }
+
+    private static final class QueueConsumer {
+        final String tag;
+        final InProcessChannel channel;
+        final BrokerQueue queue;
+        final DeliveryHandler handler;
+        long nextOffset; // Streams only
+
+        QueueConsumer(String tag, InProcessChannel channel, BrokerQueue queue, DeliveryHandler handler) {
+            this.tag = tag;
+            this.channel = channel;
+            this.queue = queue;
+            this.handler = handler;
+        }
+    }
+
+    /**
+     * A message in a queue: its body and its correlation ID (null for most messages).
+     */
+    private record Message(String correlationId, byte[] body) {
+    }
+
+    private record Unacked(BrokerQueue queue, Message message) {
+    }
+
+    /**
+     * Hands ready messages to consumers with free prefetch credit. Must hold the lock.
+     */
+    private void dispatch(BrokerQueue q) {
+        if (q.stream) {
+            for (QueueConsumer c : q.consumers) {
+                while (c.nextOffset < q.log.size() && c.channel.hasCredit()) {
+                    long offset = c.nextOffset++;
+                    c.channel.deliver(c, q, q.log.get((int) offset), Map.of("x-stream-offset", offset));
+                }
+            }
+            return;
+        }
+        while (!q.ready.isEmpty() && !q.consumers.isEmpty()) {
+            QueueConsumer target = null;
+            if (q.singleActiveConsumer) {
+                QueueConsumer active = q.consumers.get(0);
+                target = active.channel.hasCredit() ? active : null;
+            } else {
+                for (int i = 0; i < q.consumers.size(); i++) {
+                    QueueConsumer c = q.consumers.get((q.nextConsumer + i) % q.consumers.size());
+                    if (c.channel.hasCredit()) {
+                        target = c;
+                        q.nextConsumer = (q.nextConsumer + i + 1) % q.consumers.size();
+                        break;
+                    }
+                }
+            }
+            if (target == null) {
+                return;
+            }
+            target.channel.deliver(target, q, q.ready.pollFirst(), null);
+        }
+    }
+
+    /**
+     * Deletes a queue, cancelling its consumers and removing its bindings. Must hold the lock.
+     */
+    private void deleteQueue(String queue) {
+        BrokerQueue q = queues.remove(queue);
+        if (q != null) {
+            for (QueueConsumer c : q.consumers) {
+                c.channel.consumers.remove(c.tag);
+            }
+            for (Exchange ex : exchanges.values()) {
+                ex.bindings.removeIf(binding -> binding[0].equals(queue));
+            }
+        }
+    }
+
+    /**
+     * Resolves the queues a publish is routed to. Must hold the lock.
+     */
+    private List<BrokerQueue> route(String exchange, String routingKey) throws IOException {
+        if (exchange.isEmpty()) {
+            BrokerQueue q = queues.get(routingKey);
+            return q == null ? List.of() : List.of(q);
+        }
+        Exchange ex = exchanges.get(exchange);
+        if (ex == null) {
+            throw new IOException("NOT_FOUND - no exchange '" + exchange + "'");
+        }
+        List<BrokerQueue> targets = new ArrayList<>();
+        if ("x-consistent-hash".equals(ex.type)) {
+            // Each binding occupies as many buckets as its weight; the key always lands in the same bucket
+            List<String> buckets = new ArrayList<>();
+            for (String[] binding : ex.bindings) {
+                int weight = Math.max(1, Integer.parseInt(binding[1].trim()));
+                for (int i = 0; i < weight; i++) {
+                    buckets.add(binding[0]);
+                }
+            }
+            if (!buckets.isEmpty()) {
+                BrokerQueue q = queues.get(buckets.get(jumpHash(routingKey.hashCode(), buckets.size())));
+                if (q != null) targets.add(q);
+            }
+        } else {
+            for (String[] binding : ex.bindings) {
+                BrokerQueue q = queues.get(binding[0]);
+                if (q != null && ("fanout".equals(ex.type) || binding[1].equals(routingKey))) {
+                    targets.add(q);
+                }
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Jump consistent hash (Lamping and Veach): maps a key to one of {@code buckets} buckets,
+     * moving only 1/n of the keys when a bucket is added.
+     */
+    private static int jumpHash(long key, int buckets) {
+        long b = -1;
+        long j = 0;
+        while (j < buckets) {
+            b = j;
+            key = key * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+
+    // ------------------------------------------------------------------ connections and channels
+
+    private final class InProcessConnection implements BrokerConnection {
+        final String nodeUri;
+        final List<InProcessChannel> channels = new CopyOnWriteArrayList<>();
+        final List<String> exclusiveQueues = new CopyOnWriteArrayList<>();
+        volatile boolean open = true;
+
+        InProcessConnection(String nodeUri) {
+            this.nodeUri = nodeUri;
+        }
+
+        @Override
+        public BrokerChannel createChannel() throws IOException {
+            if (!open) {
+                throw new IOException("Connection to " + nodeUri + " is closed");
+            }
+            InProcessChannel channel = new InProcessChannel(this);
+            channels.add(channel);
+            return channel;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public String getHostAddress() {
+            String host = URI.create(nodeUri).getHost();
+            return host != null ? host : nodeUri;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+            for (InProcessChannel channel : channels) {
+                channel.close();
+            }
+            synchronized (lock) {
+                for (String queue : exclusiveQueues) {
+                    deleteQueue(queue);
+                }
+            }
+            connections.remove(this);
+        }
+    }
+
+    private final class InProcessChannel implements BrokerChannel {
+        final InProcessConnection connection;
+        final LinkedHashMap<Long, Unacked> unacked = new LinkedHashMap<>();
+        final Map<String, QueueConsumer> consumers = new HashMap<>();
+        ScheduledExecutorService dispatcher;  // Created on first subscription; runs deliveries in order
+        volatile boolean open = true;
+        long nextDeliveryTag = 1;
+        int prefetch = 0;
+        boolean confirmMode = false;
+        int nacksSinceWait = 0;
+
+        InProcessChannel(InProcessConnection connection) {
+            this.connection = connection;
+        }
+
+        boolean hasCredit() {
+            return open && (prefetch == 0 || unacked.size() < prefetch);
+        }
+
+        /**
+         * Records an unacked delivery and schedules the handler. Must hold the lock.
+         */
+        void deliver(QueueConsumer consumer, BrokerQueue q, Message message, Map<String, Object> headers) {
+            long tag = nextDeliveryTag++;
+            unacked.put(tag, new Unacked(q, message));
+            Delivery delivery = new Delivery(tag, headers, message.correlationId(), message.body());
+            dispatcher.schedule(() -> {
+                try {
+                    consumer.handler.handle(consumer.tag, delivery);
+                } catch (IOException | RuntimeException e) {
+                    System.err.println(" In-process consumer " + consumer.tag + " failed: " + e.getMessage());
+                }
+            }, latencyNanos, TimeUnit.NANOSECONDS);
+        }
+
+        private void checkOpen() throws IOException {
+            if (!open) {
+                throw new IOException("Channel is closed");
+            }
+        }
+
+        /**
+         * Closes the channel the way the broker does on a protocol error, and returns the error to throw.
+         */
+        private IOException channelError(String message) {
+            close();
+            return new IOException(message);
+        }
+
+        private BrokerQueue existingQueue(String queue) throws IOException {
+            BrokerQueue q = queues.get(queue);
+            if (q == null) {
+                throw channelError("NOT_FOUND - no queue '" + queue + "'");
+            }
+            return q;
+        }
+
+        @Override
+        public void queueDeclare(String queue, Map<String, Object> arguments) throws IOException {
+            checkOpen();
+            simulateLatency();
+            Map<String, Object> args = arguments == null ? Map.of() : arguments;
+            boolean stream = "stream".equals(args.get("x-queue-type"));
+            boolean sac = Boolean.TRUE.equals(args.get("x-single-active-consumer"));
+            synchronized (lock) {
+                BrokerQueue existing = queues.get(queue);
+                if (existing == null) {
+                    queues.put(queue, new BrokerQueue(queue, stream, sac));
+                } else if (existing.owner != null && existing.owner != connection) {
+                    throw lockedError(queue);
+                } else if (existing.stream != stream || existing.singleActiveConsumer != sac) {
+                    throw channelError("PRECONDITION_FAILED - inequivalent arguments for queue '" + queue + "'");
+                }
+            }
+        }
+
+        @Override
+        public String queueDeclareExclusive() throws IOException {
+            checkOpen();
+            simulateLatency();
+            String queue = "amq.gen-" + UUID.randomUUID();
+            synchronized (lock) {
+                queues.put(queue, new BrokerQueue(queue, false, false));
+            }
+            connection.exclusiveQueues.add(queue);
+            return queue;
+        }
+
+        @Override
+        public void queueDeclareExclusive(String queue, Map<String, Object> arguments) throws IOException {
+            checkOpen();
+            simulateLatency();
+            synchronized (lock) {
+                BrokerQueue existing = queues.get(queue);
+                if (existing != null && existing.owner == connection) {
+                    return;
+                }
+                if (existing != null) {
+                    throw lockedError(queue);
+                }
+                BrokerQueue q = new BrokerQueue(queue, false, false);
+                q.owner = connection;
+                queues.put(queue, q);
+            }
+            connection.exclusiveQueues.add(queue);
+        }
+
+        private IOException lockedError(String queue) {
+            return channelError("RESOURCE_LOCKED - cannot obtain exclusive access to locked queue '" + queue + "'");
+        }
+
+        @Override
+        public void queueDelete(String queue) throws IOException {
+            checkOpen();
+            simulateLatency();
+            synchronized (lock) {
+                deleteQueue(queue);
+            }
+        }
+
+        @Override
+        public long messageCount(String queue) throws IOException {
+            checkOpen();
+            simulateLatency();
+            synchronized (lock) {
+                BrokerQueue q = existingQueue(queue);
+                return q.stream ? q.log.size() : q.ready.size();
+            }
+        }
+
+        @Override
+        public void exchangeDeclare(String exchange, String type) throws IOException {
+            checkOpen();
+            simulateLatency();
+            if (!List.of("direct", "fanout", "x-consistent-hash").contains(type)) {
+                throw channelError("COMMAND_INVALID - unknown exchange type '" + type + "'");
+            }
+            synchronized (lock) {
+                Exchange existing = exchanges.get(exchange);
+                if (existing == null) {
+                    exchanges.put(exchange, new Exchange(type));
+                } else if (!existing.type.equals(type)) {
+                    throw channelError("PRECONDITION_FAILED - inequivalent type for exchange '" + exchange + "'");
+                }
+            }
+        }
+
+        @Override
+        public void queueBind(String queue, String exchange, String routingKey) throws IOException {
+            checkOpen();
+            simulateLatency();
+            synchronized (lock) {
+                existingQueue(queue);
+                Exchange ex = exchanges.get(exchange);
+                if (ex == null) {
+                    throw channelError("NOT_FOUND - no exchange '" + exchange + "'");
+                }
+                for (String[] binding : ex.bindings) {
+                    if (binding[0].equals(queue) && binding[1].equals(routingKey)) {
+                        return;
+                    }
+                }
+                ex.bindings.add(new String[]{queue, routingKey});
+            }
+        }
+
+        @Override
+        public void basicQos(int prefetchCount) throws IOException {
+            checkOpen();
+            synchronized (lock) {
+                prefetch = prefetchCount;
+                dispatchSubscribedQueues();
+            }
+        }
+
+        @Override
+        public void basicPublish(String exchange, String routingKey, String correlationId, byte[] body) throws IOException {
+            checkOpen();
+            if (chance(publishFailureRate)) {
+                connection.close();
+                throw new IOException("Connection reset (injected publish failure)");
+            }
+            synchronized (lock) {
+                List<BrokerQueue> targets;
+                try {
+                    targets = route(exchange, routingKey);
+                } catch (IOException e) {
+                    throw channelError(e.getMessage());
+                }
+                if (confirmMode && chance(confirmNackRate)) {
+                    nacksSinceWait++;
+                    return;
+                }
+                long now = System.currentTimeMillis();
+                Message message = new Message(correlationId, body);
+                for (BrokerQueue q : targets) {
+                    if (q.stream) {
+                        q.log.add(message);
+                        q.appendedAt.add(now);
+                    } else {
+                        q.ready.addLast(message);
+                    }
+                    dispatch(q);
+                }
+            }
+        }
+
+        @Override
+        public Delivery basicGet(String queue) throws IOException {
+            checkOpen();
+            simulateLatency();
+            synchronized (lock) {
+                BrokerQueue q = existingQueue(queue);
+                if (q.stream) {
+                    throw channelError("NOT_SUPPORTED - basic.get is not supported by stream queues");
+                }
+                Message message = q.ready.pollFirst();
+                if (message == null) {
+                    return null;
+                }
+                long tag = nextDeliveryTag++;
+                unacked.put(tag, new Unacked(q, message));
+                return new Delivery(tag, null, message.correlationId(), message.body());
+            }
+        }
+
+        @Override
+        public void basicAck(long deliveryTag) throws IOException {
+            checkOpen();
+            synchronized (lock) {
+                if (unacked.remove(deliveryTag) == null) {
+                    throw channelError("PRECONDITION_FAILED - unknown delivery tag " + deliveryTag);
+                }
+                dispatchSubscribedQueues();
+            }
+        }
+
+        @Override
+        public void basicNack(long deliveryTag, boolean requeue) throws IOException {
+            checkOpen();
+            synchronized (lock) {
+                Unacked nacked = unacked.remove(deliveryTag);
+                if (nacked == null) {
+                    throw channelError("PRECONDITION_FAILED - unknown delivery tag " + deliveryTag);
+                }
+                if (requeue && !nacked.queue().stream) {
+                    nacked.queue().ready.addFirst(nacked.message());
+                    dispatch(nacked.queue());
+                }
+                dispatchSubscribedQueues();
+            }
+        }
+
+        @Override
+        public String basicConsume(String queue, Map<String, Object> arguments, DeliveryHandler handler) throws IOException {
+            checkOpen();
+            simulateLatency();
+            synchronized (lock) {
+                BrokerQueue q = existingQueue(queue);
+                if (q.owner != null && q.owner != connection) {
+                    throw lockedError(queue);
+                }
+                QueueConsumer consumer = new QueueConsumer("inproc-ctag-" + consumerTags.incrementAndGet(), this, q, handler);
+                if (q.stream) {
+                    if (prefetch == 0) {
+                        throw channelError("PRECONDITION_FAILED - consumer prefetch count is not set for stream '" + queue + "'");
+                    }
+                    consumer.nextOffset = startOffset(q, arguments == null ? null : arguments.get("x-stream-offset"));
+                }
+                if (dispatcher == null) {
+                    dispatcher = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread thread = new Thread(r, "inprocess-broker-dispatch");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+                q.consumers.add(consumer);
+                consumers.put(consumer.tag, consumer);
+                dispatch(q);
+                return consumer.tag;
+            }
+        }
+
+        /**
+         * Resolves an "x-stream-offset" argument to a log position. Must hold the lock.
+         */
+        private long startOffset(BrokerQueue q, Object spec) {
+            if (spec instanceof Number offset) {
+                return Math.max(0, Math.min(offset.longValue(), q.log.size()));
+            }
+            if (spec instanceof Date since) {
+                int i = 0;
+                while (i < q.appendedAt.size() && q.appendedAt.get(i) < since.getTime()) {
+                    i++;
+                }
+                return i;
+            }
+            if ("first".equals(spec)) {
+                return 0;
+            }
+            if ("last".equals(spec)) {
+                return Math.max(0, q.log.size() - 1);
+            }
+            return q.log.size(); // "next", the default
+        }
+
+        @Override
+        public void basicCancel(String consumerTag) throws IOException {
+            checkOpen();
+            synchronized (lock) {
+                QueueConsumer consumer = consumers.remove(consumerTag);
+                if (consumer != null) {
+                    consumer.queue.consumers.remove(consumer);
+                    dispatch(consumer.queue); // A single-active-consumer queue may have a new active consumer
+                }
+            }
+        }
+
+        @Override
+        public void confirmSelect() throws IOException {
+            checkOpen();
+            synchronized (lock) {
+                confirmMode = true;
+            }
+        }
+
+        @Override
+        public void waitForConfirmsOrDie(long timeoutMs) throws IOException {
+            checkOpen();
+            simulateLatency();
+            synchronized (lock) {
+                if (!confirmMode) {
+                    throw new IllegalStateException("Channel is not in confirm mode");
+                }
+                int nacks = nacksSinceWait;
+                nacksSinceWait = 0;
+                if (nacks > 0) {
+                    throw channelError(nacks + " publishes were nacked");
+                }
+            }
+        }
+
+        @Override
+        public void queuePurge(String queue) throws IOException {
+            checkOpen();
+            simulateLatency();
+            synchronized (lock) {
+                BrokerQueue q = existingQueue(queue);
+                if (q.stream) {
+                    throw channelError("NOT_SUPPORTED - purge is not supported by stream queues");
+                }
+                q.ready.clear();
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open && connection.open;
+        }
+
+        /**
+         * Closes the channel: cancels its consumers and returns its unacked messages to the head of
+         * their queues, oldest first.
+         */
+        @Override
+        public void close() {
+            ScheduledExecutorService toStop;
+            synchronized (lock) {
+                if (!open) {
+                    return;
+                }
+                open = false;
+                Set<BrokerQueue> affected = new LinkedHashSet<>();
+                for (QueueConsumer c : consumers.values()) {
+                    c.queue.consumers.remove(c);
+                    affected.add(c.queue);
+                }
+                consumers.clear();
+
+                List<Unacked> pending = new ArrayList<>(unacked.values());
+                Collections.reverse(pending);
+                for (Unacked message : pending) {
+                    if (!message.queue().stream) {
+                        message.queue().ready.addFirst(message.message());
+                        affected.add(message.queue());
+                    }
+                }
+                unacked.clear();
+                for (BrokerQueue q : affected) {
+                    dispatch(q);
+                }
+                toStop = dispatcher;
+            }
+            connection.channels.remove(this);
+            if (toStop != null) {
+                toStop.shutdownNow(); // Pending deliveries were requeued above
+            }
+        }
+
+        private void dispatchSubscribedQueues() {
+            for (QueueConsumer c : List.copyOf(consumers.values())) {
+                dispatch(c.queue);
+            }
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.example.shared.utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Single-pass, cursor-based reader for the legacy {@code "Key: value, Key: value"} message format.
+ *
+ * The cursor walks the raw message body in place. Keys are matched byte-by-byte and values are
+ * exposed as primitives or as slices of the shared body, so no intermediate {@link String} objects
+ * are created while scanning. A String is only materialized when {@link #valueAsString()} is called
+ * explicitly (e.g. for model fields that are typed as String).
+ *
+ * A cursor is not thread-safe, but it can be reused for many messages via {@link #reset(byte[])}.
+ * Messages that write {@code Key=value} instead, such as the occupancy events, are read by a
+ * cursor created with {@link #LegacyMessageCursor(char)}.
+ *
+ * <pre>
+ * LegacyMessageCursor cursor = new LegacyMessageCursor();
+ * if (cursor.reset(body).seek(LegacyMessageCursor.key("SpaceID"))) {
+ *     int spaceId = cursor.valueAsInt();
+ * }
+ * </pre>
+ */
+public final class LegacyMessageCursor {
+
+    // Exact powers of ten for scaling in-place parsed decimals.
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    private final byte separator;
+
+    private byte[] buffer;
+    private int limit;
+    private int position;
+
+    private int keyStart;
+    private int keyEnd;
+    private int valueStart;
+    private int valueEnd;
+
+    /**
+     * Creates a cursor for {@code Key: value} fields.
+     */
+    public LegacyMessageCursor() {
+        this(':');
+    }
+
+    /**
+     * Creates a cursor for fields whose key and value are separated by another character.
+     *
+     * @param separator The character between key and value, e.g. '=' for {@code Key=value}.
+     */
+    public LegacyMessageCursor(char separator) {
+        this.separator = (byte) separator;
+    }
+
+    /**
+     * Encodes a field key once, so it can be matched against many messages without allocation.
+     *
+     * @param name The field name as it appears in the message (e.g. "SpaceID").
+     * @return The ASCII bytes of the key.
+     */
+    public static byte[] key(String name) {
+        return name.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Points the cursor at the start of a new message body.
+     *
+     * @param body The raw message body.
+     * @return This cursor.
+     */
+    public LegacyMessageCursor reset(byte[] body) {
+        return reset(body, 0, body.length);
+    }
+
+    /**
+     * Points the cursor at a region of a buffer holding a message body.
+     *
+     * @param body   The buffer holding the message.
+     * @param offset The index of the first byte of the message.
+     * @param length The number of bytes in the message.
+     * @return This cursor.
+     */
+    public LegacyMessageCursor reset(byte[] body, int offset, int length) {
+        this.buffer = body;
+        this.position = offset;
+        this.limit = offset + length;
+        this.keyStart = this.keyEnd = this.valueStart = this.valueEnd = offset;
+        return this;
+    }
+
+    /**
+     * Advances to the next {@code Key: value} field.
+     * A field without the separator is treated as a key with an empty value.
+     *
+     * @return True if a field was read, false if the end of the message was reached.
+     */
+    public boolean next() {
+        int p = skipSpaces(position);
+        if (p >= limit) {
+            position = limit;
+            return false;
+        }
+
+        keyStart = p;
+        while (p < limit && buffer[p] != separator && buffer[p] != ',') {
+            p++;
+        }
+        keyEnd = trimEnd(keyStart, p);
+
+        if (p < limit && buffer[p] == separator) {
+            valueStart = skipSpaces(p + 1);
+            p = valueStart;
+            while (p < limit && buffer[p] != ',') {
+                p++;
+            }
+            valueEnd = trimEnd(valueStart, p);
+        } else {
+            valueStart = valueEnd = p;
+        }
+
+        position = p < limit ? p + 1 : limit; // Skip the ',' separator.
+        return true;
+    }
+
+    /**
+     * Advances until a field with the given key is found.
+     *
+     * @param key The key bytes, usually created once with {@link #key(String)}.
+     * @return True if the field was found, false if the end of the message was reached.
+     */
+    public boolean seek(byte[] key) {
+        while (next()) {
+            if (keyEquals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the current field has the given key.
+     *
+     * @param key The key bytes.
+     * @return True if the current key matches exactly.
+     */
+    public boolean keyEquals(byte[] key) {
+        if (keyEnd - keyStart != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buffer[keyStart + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses the current value as a decimal int.
+     *
+     * @return The parsed value.
+     * @throws NumberFormatException If the value is empty, not a number or out of range.
+     */
+    public int valueAsInt() {
+        long value = valueAsLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Value out of int range: " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses the current value as a decimal long.
+     *
+     * @return The parsed value.
+     * @throws NumberFormatException If the value is empty, not a number or out of range.
+     */
+    public long valueAsLong() {
+        int p = valueStart;
+        boolean negative = p < valueEnd && buffer[p] == '-';
+        if (negative || (p < valueEnd && buffer[p] == '+')) {
+            p++;
+        }
+        if (p >= valueEnd) {
+            throw new NumberFormatException("Empty numeric value");
+        }
+
+        long result = 0;
+        for (; p < valueEnd; p++) {
+            int digit = buffer[p] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid digit in numeric value");
+            }
+            if (result > (Long.MAX_VALUE - digit) / 10) {
+                throw new NumberFormatException("Numeric value out of range");
+            }
+            result = result * 10 + digit;
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Parses the current value as a double.
+     * Plain decimals such as {@code 654.00} are parsed in place; any other notation falls back
+     * to {@link Double#parseDouble(String)}.
+     *
+     * @return The parsed value.
+     * @throws NumberFormatException If the value is not a number.
+     */
+    public double valueAsDouble() {
+        int p = valueStart;
+        boolean negative = p < valueEnd && buffer[p] == '-';
+        if (negative || (p < valueEnd && buffer[p] == '+')) {
+            p++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; p < valueEnd; p++) {
+            byte b = buffer[p];
+            if (b == '.' && scale < 0) {
+                scale = 0;
+                continue;
+            }
+            int digit = b - '0';
+            if (digit < 0 || digit > 9 || digits >= 15) {
+                return Double.parseDouble(valueAsString()); // Exponents, NaN, or too many digits.
+            }
+            mantissa = mantissa * 10 + digit;
+            digits++;
+            if (scale >= 0) {
+                scale++;
+            }
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("Empty numeric value");
+        }
+
+        // Both operands are exact doubles, so the division is correctly rounded like parseDouble.
+        double value = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Materializes the current value as a String.
+     *
+     * @return The value decoded as UTF-8.
+     */
+    public String valueAsString() {
+        return new String(buffer, valueStart, valueEnd - valueStart, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the buffer backing the current value slice.
+     *
+     * @return The shared message buffer.
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the start of the current value slice.
+     *
+     * @return The index of the first value byte in {@link #buffer()}.
+     */
+    public int valueOffset() {
+        return valueStart;
+    }
+
+    /**
+     * Returns the length of the current value slice.
+     *
+     * @return The number of bytes in the current value.
+     */
+    public int valueLength() {
+        return valueEnd - valueStart;
+    }
+
+    private int skipSpaces(int p) {
+        while (p < limit && buffer[p] == ' ') {
+            p++;
+        }
+        return p;
+    }
+
+    private int trimEnd(int start, int end) {
+        while (end > start && buffer[end - 1] == ' ') {
+            end--;
+        }
+        return end;
+    }
+}
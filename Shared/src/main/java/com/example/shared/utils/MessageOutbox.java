@@ -0,0 +1,177 @@
+package com.example.shared.utils;
+
+/**
+ * Bounded, in-memory FIFO of messages that could not be published because the broker connection
+ * was down. Backed by a ring buffer, so it allocates nothing after construction besides the
+ * message bodies themselves.
+ *
+ * When the outbox is full, the {@link OverflowPolicy} decides whether the new message is rejected
+ * or the oldest queued message is dropped to make room. All methods are thread-safe.
+ */
+public class MessageOutbox {
+
+    /**
+     * What to do with a new message when the outbox is full.
+     */
+    public enum OverflowPolicy {
+        /** Refuse the new message; the caller sees the send fail. */
+        REJECT,
+        /** Drop the oldest queued message and accept the new one. */
+        DROP_OLDEST
+    }
+
+    private final String[] exchanges;
+    private final String[] routingKeys;
+    private final byte[][] bodies;
+    private volatile OverflowPolicy overflowPolicy;
+
+    private int head = 0;   // Index of the oldest message
+    private int size = 0;   // Number of queued messages
+    private long dropped = 0;
+
+    /**
+     * Creates an outbox.
+     *
+     * @param capacity       The maximum number of messages held.
+     * @param overflowPolicy What to do when the outbox is full.
+     */
+    public MessageOutbox(int capacity, OverflowPolicy overflowPolicy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Outbox capacity must be positive: " + capacity);
+        }
+        this.exchanges = new String[capacity];
+        this.routingKeys = new String[capacity];
+        this.bodies = new byte[capacity][];
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Appends a message for a queue (published on the default exchange) to the outbox.
+     *
+     * @param queueName The destination queue.
+     * @param body      The message body.
+     * @return True if the message was queued, false if it was rejected because the outbox is full.
+     */
+    public boolean offer(String queueName, byte[] body) {
+        return offer("", queueName, body);
+    }
+
+    /**
+     * Appends a message to the outbox.
+     *
+     * @param exchange   The exchange to publish to ("" for the default exchange).
+     * @param routingKey The routing key (the queue name on the default exchange).
+     * @param body       The message body.
+     * @return True if the message was queued, false if it was rejected because the outbox is full.
+     */
+    public synchronized boolean offer(String exchange, String routingKey, byte[] body) {
+        if (size == bodies.length) {
+            dropped++;
+            if (overflowPolicy == OverflowPolicy.REJECT) {
+                return false;
+            }
+            poll(); // DROP_OLDEST
+        }
+        int tail = (head + size) % bodies.length;
+        exchanges[tail] = exchange;
+        routingKeys[tail] = routingKey;
+        bodies[tail] = body;
+        size++;
+        return true;
+    }
+
+    /**
+     * Returns the exchange of the oldest message without removing it.
+     *
+     * @return The exchange, or null if the outbox is empty.
+     */
+    public synchronized String peekExchange() {
+        return size == 0 ? null : exchanges[head];
+    }
+
+    /**
+     * Returns the routing key of the oldest message without removing it.
+     *
+     * @return The routing key, or null if the outbox is empty.
+     */
+    public synchronized String peekRoutingKey() {
+        return size == 0 ? null : routingKeys[head];
+    }
+
+    /**
+     * Returns the body of the oldest message without removing it.
+     *
+     * @return The message body, or null if the outbox is empty.
+     */
+    public synchronized byte[] peekBody() {
+        return size == 0 ? null : bodies[head];
+    }
+
+    /**
+     * Removes the oldest message. Call after it has been published successfully.
+     */
+    public synchronized void poll() {
+        if (size == 0) {
+            return;
+        }
+        exchanges[head] = null;
+        routingKeys[head] = null;
+        bodies[head] = null;
+        head = (head + 1) % bodies.length;
+        size--;
+    }
+
+    /**
+     * Returns the number of queued messages.
+     *
+     * @return The outbox depth.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether the outbox is empty.
+     *
+     * @return True if no messages are waiting.
+     */
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of messages lost to the overflow policy since creation.
+     *
+     * @return The rejected or dropped message count.
+     */
+    public synchronized long droppedCount() {
+        return dropped;
+    }
+
+    /**
+     * Returns the maximum number of messages held.
+     *
+     * @return The capacity.
+     */
+    public int capacity() {
+        return bodies.length;
+    }
+
+    /**
+     * Returns the current overflow policy.
+     *
+     * @return The overflow policy.
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Changes the overflow policy.
+     *
+     * @param overflowPolicy The new policy.
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+}
@@ -0,0 +1,302 @@
+package com.example.shared.utils;
+
+import java.util.*;
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks the health of the RabbitMQ cluster nodes for node selection.
+ *
+ * For every node the tracker keeps:
+ * - An EWMA of connect latency and of publish latency.
+ * - The number of consecutive failures and a time-based quarantine.
+ * - The number of connections this process currently holds to it.
+ *
+ * After {@link #FAILURE_THRESHOLD} consecutive failures a node is quarantined. When the quarantine
+ * expires the node becomes half-open: exactly one caller may probe it (see {@link #beginAttempt(String)}).
+ * A successful probe re-admits the node, a failed probe quarantines it again for twice as long
+ * (up to {@link #MAX_QUARANTINE_MS}).
+ *
+ * Nodes are ranked by latency plus a penalty per open connection, so new connections spread over
+ * the cluster instead of piling onto the first node in the list. Every re-admission bumps
+ * {@link #generation()}, which tells connection holders to check {@link #shouldRebalance(String)}.
+ */
+public class NodeHealthTracker {
+
+    // Consecutive failures before a node is quarantined
+    static final int FAILURE_THRESHOLD = 3;
+
+    // Quarantine length after the first trip, and the cap for repeated trips
+    static final long BASE_QUARANTINE_MS = 60_000;
+    static final long MAX_QUARANTINE_MS = 300_000;
+
+    // A probe that has not reported back within this time is considered abandoned
+    private static final long PROBE_TIMEOUT_MS = 10_000;
+
+    // Weight of the newest sample in the moving averages
+    private static final double EWMA_ALPHA = 0.3;
+
+    // Latency (ms) added to a node's score for each connection already open to it
+    private static final double CONNECTION_PENALTY_MS = 20.0;
+
+    private final Map<String, NodeState> nodes = new LinkedHashMap<>();
+    private final LongSupplier clock;
+    private long generation = 0;
+
+    /**
+     * Per-node health state. All access is guarded by the tracker's lock.
+     */
+    private static final class NodeState {
+        final String node;
+        double connectMs = Double.NaN;
+        double publishMs = Double.NaN;
+        int consecutiveFailures = 0;
+        long quarantinedUntil = 0; // ms, 0 when admitted
+        long quarantineMs = BASE_QUARANTINE_MS;
+        boolean probeInFlight = false;
+        long probeStartedAt = 0;
+        int openConnections = 0;
+
+        NodeState(String node) {
+            this.node = node;
+        }
+    }
+
+    /**
+     * Creates a tracker for the given nodes using the system clock.
+     *
+     * @param nodeUris The RabbitMQ node URIs.
+     */
+    public NodeHealthTracker(String... nodeUris) {
+        this(() -> System.nanoTime() / 1_000_000, nodeUris);
+    }
+
+    /**
+     * Creates a tracker with an explicit millisecond clock.
+     *
+     * @param clockMs  Supplies the current time in milliseconds.
+     * @param nodeUris The RabbitMQ node URIs.
+     */
+    NodeHealthTracker(LongSupplier clockMs, String... nodeUris) {
+        this.clock = clockMs;
+        for (String node : nodeUris) {
+            nodes.put(node, new NodeState(node));
+        }
+    }
+
+    /**
+     * Returns the nodes worth trying right now.
+     * Half-open nodes (quarantine expired, no probe running) come first so that a recovered node is
+     * picked up as soon as possible, followed by the admitted nodes, healthiest first.
+     * Quarantined nodes are omitted.
+     *
+     * @return The candidate node URIs in the order they should be tried.
+     */
+    public synchronized List<String> candidates() {
+        long now = clock.getAsLong();
+        List<NodeState> admitted = new ArrayList<>();
+        List<String> result = new ArrayList<>();
+
+        for (NodeState state : nodes.values()) {
+            if (state.quarantinedUntil == 0) {
+                admitted.add(state);
+            } else if (canProbe(state, now)) {
+                result.add(state.node);
+            }
+        }
+
+        admitted.sort(Comparator.comparingDouble(NodeHealthTracker::score));
+        for (NodeState state : admitted) {
+            result.add(state.node);
+        }
+        return result;
+    }
+
+    /**
+     * Must be called before connecting to a node from {@link #candidates()}.
+     * For a half-open node this claims the single probe slot.
+     *
+     * @param node The node URI.
+     * @return True if the caller may connect, false if the node is quarantined or another
+     *         caller is already probing it.
+     */
+    public synchronized boolean beginAttempt(String node) {
+        NodeState state = state(node);
+        if (state.quarantinedUntil == 0) {
+            return true;
+        }
+        long now = clock.getAsLong();
+        if (!canProbe(state, now)) {
+            return false;
+        }
+        state.probeInFlight = true;
+        state.probeStartedAt = now;
+        return true;
+    }
+
+    /**
+     * Records a successful connection and its latency. Re-admits the node if it was quarantined.
+     *
+     * @param node      The node URI.
+     * @param elapsedMs The connect and handshake time in milliseconds.
+     */
+    public synchronized void recordConnectSuccess(String node, long elapsedMs) {
+        NodeState state = state(node);
+        state.connectMs = ewma(state.connectMs, elapsedMs);
+        state.consecutiveFailures = 0;
+        state.openConnections++;
+        if (state.quarantinedUntil != 0) {
+            readmit(state);
+        }
+    }
+
+    /**
+     * Records a failed connection attempt. Quarantines the node once the threshold is reached,
+     * or immediately if this was a half-open probe.
+     *
+     * @param node The node URI.
+     */
+    public synchronized void recordConnectFailure(String node) {
+        recordFailure(state(node));
+    }
+
+    /**
+     * Records the latency of a successful publish.
+     *
+     * @param node      The node URI.
+     * @param elapsedMs The publish time in milliseconds.
+     */
+    public synchronized void recordPublish(String node, long elapsedMs) {
+        NodeState state = state(node);
+        state.publishMs = ewma(state.publishMs, elapsedMs);
+    }
+
+    /**
+     * Records a failed publish. Counts towards the quarantine threshold like a failed connect.
+     *
+     * @param node The node URI.
+     */
+    public synchronized void recordPublishFailure(String node) {
+        recordFailure(state(node));
+    }
+
+    /**
+     * Records that a connection to the node has been closed.
+     *
+     * @param node The node URI.
+     */
+    public synchronized void connectionClosed(String node) {
+        NodeState state = state(node);
+        if (state.openConnections > 0) {
+            state.openConnections--;
+        }
+    }
+
+    /**
+     * Returns a counter that increases every time a node is re-admitted.
+     * Connection holders compare it with the value seen at connect time to know when to
+     * check {@link #shouldRebalance(String)}.
+     *
+     * @return The re-admission generation.
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Checks whether a connection to {@code node} should move to a less loaded node,
+     * i.e. some admitted node has at least two fewer connections from this process.
+     *
+     * @param node The node the caller is connected to.
+     * @return True if reconnecting would spread the load more evenly.
+     */
+    public synchronized boolean shouldRebalance(String node) {
+        NodeState current = nodes.get(node);
+        if (current == null) {
+            return false;
+        }
+        for (NodeState other : nodes.values()) {
+            if (other != current && other.quarantinedUntil == 0
+                    && other.openConnections + 1 < current.openConnections) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether a node is currently quarantined.
+     *
+     * @param node The node URI.
+     * @return True if the node is quarantined or waiting for its half-open probe.
+     */
+    public synchronized boolean isQuarantined(String node) {
+        NodeState state = nodes.get(node);
+        return state != null && state.quarantinedUntil != 0;
+    }
+
+    /**
+     * Returns a one-line summary of every node, for logging.
+     *
+     * @return The node health summary.
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        long now = clock.getAsLong();
+        for (NodeState s : nodes.values()) {
+            sb.append(s.node)
+                    .append(String.format(" [connect=%.1fms publish=%.1fms open=%d failures=%d",
+                            s.connectMs, s.publishMs, s.openConnections, s.consecutiveFailures));
+            if (s.quarantinedUntil != 0) {
+                sb.append(" quarantined ").append(Math.max(0, s.quarantinedUntil - now)).append("ms");
+            }
+            sb.append("] ");
+        }
+        return sb.toString().trim();
+    }
+
+    private void recordFailure(NodeState state) {
+        state.consecutiveFailures++;
+        long now = clock.getAsLong();
+
+        if (state.probeInFlight) {
+            // Half-open probe failed: back off for longer
+            state.probeInFlight = false;
+            state.quarantineMs = Math.min(state.quarantineMs * 2, MAX_QUARANTINE_MS);
+            state.quarantinedUntil = now + state.quarantineMs;
+            System.err.println(" Node " + state.node + " probe failed, quarantined for " + state.quarantineMs + " ms.");
+        } else if (state.quarantinedUntil == 0 && state.consecutiveFailures >= FAILURE_THRESHOLD) {
+            state.quarantineMs = BASE_QUARANTINE_MS;
+            state.quarantinedUntil = now + state.quarantineMs;
+            System.err.println(" Node " + state.node + " quarantined for " + state.quarantineMs + " ms.");
+        }
+    }
+
+    private static boolean canProbe(NodeState state, long now) {
+        return now >= state.quarantinedUntil
+                && (!state.probeInFlight || now - state.probeStartedAt >= PROBE_TIMEOUT_MS);
+    }
+
+    private void readmit(NodeState state) {
+        state.quarantinedUntil = 0;
+        state.quarantineMs = BASE_QUARANTINE_MS;
+        state.probeInFlight = false;
+        generation++;
+        System.out.println(" Node " + state.node + " re-admitted after successful probe.");
+    }
+
+    private NodeState state(String node) {
+        return nodes.computeIfAbsent(node, NodeState::new);
+    }
+
+    private static double score(NodeState state) {
+        double connect = Double.isNaN(state.connectMs) ? 0 : state.connectMs;
+        double publish = Double.isNaN(state.publishMs) ? 0 : state.publishMs;
+        return connect + publish + state.openConnections * CONNECTION_PENALTY_MS
+                + state.consecutiveFailures * BASE_QUARANTINE_MS / 1000.0;
+    }
+
+    private static double ewma(double current, double sample) {
+        return Double.isNaN(current) ? sample : EWMA_ALPHA * sample + (1 - EWMA_ALPHA) * current;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.shared.utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A change of a parking space's occupancy, as published on {@link RabbitMQUtil#OCCUPANCY_EXCHANGE}:
+ * {@code "OCCUPANCY::SpaceID=12,ZoneID=3,Occupied=1"}.
+ *
+ * Every subscriber reads the event with {@link #parse(byte[])}, so they agree on what a readable
+ * event is: all three fields present and numeric, in any order, other fields ignored.
+ *
+ * @param spaceId  The space whose occupancy changed.
+ * @param zoneId   The zone of the space.
+ * @param occupied The new state of the space.
+ */
+public record OccupancyEvent(int spaceId, int zoneId, boolean occupied) {
+
+    private static final byte[] PREFIX = "OCCUPANCY::".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SPACE_ID = LegacyMessageCursor.key("SpaceID");
+    private static final byte[] ZONE_ID = LegacyMessageCursor.key("ZoneID");
+    private static final byte[] OCCUPIED = LegacyMessageCursor.key("Occupied");
+
+    /**
+     * Reads an occupancy event in place, without splitting the body into Strings.
+     *
+     * @param body The raw message body.
+     * @return The event, or null if the body is not a readable occupancy event.
+     */
+    public static OccupancyEvent parse(byte[] body) {
+        if (body.length < PREFIX.length) {
+            return null;
+        }
+        for (int i = 0; i < PREFIX.length; i++) {
+            if (body[i] != PREFIX[i]) {
+                return null;
+            }
+        }
+        LegacyMessageCursor cursor = new LegacyMessageCursor('=').reset(body, PREFIX.length, body.length - PREFIX.length);
+        int spaceId = -1, zoneId = -1, occupied = -1;
+        try {
+            while (cursor.next()) {
+                if (cursor.keyEquals(SPACE_ID)) {
+                    spaceId = cursor.valueAsInt();
+                } else if (cursor.keyEquals(ZONE_ID)) {
+                    zoneId = cursor.valueAsInt();
+                } else if (cursor.keyEquals(OCCUPIED)) {
+                    occupied = cursor.valueAsInt();
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (spaceId < 0 || zoneId < 0 || (occupied != 0 && occupied != 1)) {
+            return null;
+        }
+        return new OccupancyEvent(spaceId, zoneId, occupied == 1);
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.shared.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Publishes committed {@link TransactionalOutbox} rows to RabbitMQ.
+ *
+ * The relay tails the OutboxMessages table in batches, publishes each batch with publisher
+ * confirms and deletes the rows only after the broker has confirmed them, so a crash at any point
+ * leads to a re-publish rather than a lost message (at-least-once delivery).
+ *
+ * One relay runs per process ({@link #startInBackground()}), and a lease row in the database makes
+ * sure only one of them publishes at a time. The wait for the broker's confirms ends before the
+ * lease runs out, and the rows are only deleted in a transaction that renews the lease, so a relay
+ * whose lease passed to another one leaves the rows to it. Each database step borrows its own
+ * connection under its own deadline ({@code outbox.relay.deadlineMs}), so a slow confirm does not
+ * use up the time of the delete.
+ *
+ * The outbox tables are created by the schema migrations; until the schema has them the relay
+ * waits. Rows are published in sequence order per partition key (see {@link TransactionalOutbox}),
+ * so each zone's messages reach the broker in the order their transactions committed, and a batch
+ * is shared among the zones with rows waiting, read through the (PartitionKey, Seq) index, so its
+ * cost does not grow with the rows left in the table.
+ *
+ * While rows are waiting the relay loops without sleeping; when the table is empty it polls every
+ * {@link #POLL_INTERVAL_MS} ms, which bounds the end-to-end lag of a quiet system.
+ */
+public class OutboxRelay implements Runnable {
+
+    private static final int BATCH_SIZE = Integer.getInteger("outbox.relay.batchSize", 1000);
+    private static final long POLL_INTERVAL_MS = 100;
+    private static final long LEASE_MS = 5_000;
+    private static final long CONFIRM_TIMEOUT_MS = 5_000;
+    private static final long LEASE_MARGIN_MS = 500;   // Lease time kept back for the delete after a confirm
+    private static final long STATEMENT_DEADLINE_MS = Long.getLong("outbox.relay.deadlineMs", 3_000);
+    private static final long ERROR_BACKOFF_MS = 1_000;
+
+    private static OutboxRelay instance;
+
+    private final String owner = ProcessHandle.current().pid() + "-" + UUID.randomUUID();
+    private RabbitMQUtil rabbitMQUtil; // Created on first use, so a broker outage does not block startup
+    private volatile boolean running = true;
+
+    private long leaseUntil = 0;
+    private boolean waitingForSchema;   // Logged once until the outbox tables exist
+    private volatile long relayedCount = 0;
+    private volatile long lastLagMs = 0;
+
+    /**
+     * Creates a relay that connects to the RabbitMQ cluster when it first has rows to publish.
+     */
+    public OutboxRelay() {
+    }
+
+    /**
+     * Creates a relay that publishes through the given RabbitMQ connection.
+     *
+     * @param rabbitMQUtil The RabbitMQ connection used for publishing.
+     */
+    public OutboxRelay(RabbitMQUtil rabbitMQUtil) {
+        this.rabbitMQUtil = rabbitMQUtil;
+    }
+
+    /**
+     * Starts the process-wide relay on a daemon thread, if it is not running yet.
+     *
+     * @return The running relay.
+     */
+    public static synchronized OutboxRelay startInBackground() {
+        if (instance == null) {
+            instance = new OutboxRelay();
+            Thread thread = new Thread(instance, "outbox-relay");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return instance;
+    }
+
+    /**
+     * Tails the outbox until {@link #stop()} is called.
+     */
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                if (relayOnce() == 0) {
+                    Thread.sleep(isLeader() ? POLL_INTERVAL_MS : LEASE_MS / 2);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("Outbox relay error: " + e.getMessage());
+                try {
+                    Thread.sleep(ERROR_BACKOFF_MS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Publishes and deletes one batch of outbox rows, if this relay holds the lease.
+     *
+     * @return The number of rows relayed (0 if there was nothing to do, the lease is held elsewhere,
+     *         or the schema has no outbox yet).
+     * @throws SQLException If the outbox cannot be read or cleaned up.
+     */
+    public int relayOnce() throws SQLException {
+        if (SchemaVersion.current() < SchemaVersion.OUTBOX_TABLES) {
+            if (!waitingForSchema) {
+                waitingForSchema = true;
+                System.err.println("Outbox relay: waiting for schema version " + SchemaVersion.OUTBOX_TABLES
+                        + " (the outbox tables); run the migrations of the Database module.");
+            }
+            return 0;
+        }
+        waitingForSchema = false;
+        List<TransactionalOutbox.OutboxMessage> batch = Deadline.call(STATEMENT_DEADLINE_MS, () -> {
+            try (Connection conn = DatabaseUtil.connect()) {
+                long now = System.currentTimeMillis();
+                if (leaseUntil - now < LEASE_MS / 2) {
+                    leaseUntil = TransactionalOutbox.tryAcquireLease(conn, owner, LEASE_MS) ? now + LEASE_MS : 0;
+                }
+                return isLeader() ? TransactionalOutbox.readBatch(conn, BATCH_SIZE) : List.of();
+            }
+        });
+        if (batch.isEmpty()) {
+            lastLagMs = 0;
+            return 0;
+        }
+
+        if (rabbitMQUtil == null) {
+            rabbitMQUtil = new RabbitMQUtil(); // Throws while the cluster is down; retried after a backoff
+        }
+
+        List<String> queues = new ArrayList<>(batch.size());
+        List<String> partitionKeys = new ArrayList<>(batch.size());
+        List<byte[]> bodies = new ArrayList<>(batch.size());
+        for (TransactionalOutbox.OutboxMessage message : batch) {
+            queues.add(message.queueName());
+            partitionKeys.add(message.partitionKey());
+            bodies.add(message.payload().getBytes(StandardCharsets.UTF_8));
+        }
+        // Stop waiting while the lease still holds, so no other relay can have taken the rows over yet
+        long confirmTimeoutMs = Math.min(CONFIRM_TIMEOUT_MS, leaseUntil - System.currentTimeMillis() - LEASE_MARGIN_MS);
+        if (confirmTimeoutMs <= 0) {
+            return 0; // The lease is renewed before the next batch
+        }
+        if (!rabbitMQUtil.publishConfirmed(queues, partitionKeys, bodies, confirmTimeoutMs)) {
+            throw new SQLException("Broker did not confirm the outbox batch, will retry");
+        }
+
+        // Only confirmed rows are removed; a crash before this just re-publishes the batch
+        boolean deleted = Deadline.call(STATEMENT_DEADLINE_MS, () -> {
+            try (Connection conn = DatabaseUtil.connect()) {
+                long now = System.currentTimeMillis();
+                boolean held = TransactionalOutbox.deleteBatchIfLeaseHeld(conn, owner, LEASE_MS, batch);
+                leaseUntil = held ? now + LEASE_MS : 0;
+                return held;
+            }
+        });
+        if (!deleted) {
+            System.err.println("Outbox relay lost its lease while publishing; the new holder publishes the batch again.");
+            return 0;
+        }
+        relayedCount += batch.size();
+        lastLagMs = System.currentTimeMillis() - batch.stream().mapToLong(TransactionalOutbox.OutboxMessage::createdAt).min().orElseThrow();
+        return batch.size();
+    }
+
+    /**
+     * Stops the relay loop after the current batch.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Checks whether this relay currently holds the publishing lease.
+     *
+     * @return True if this relay is the active publisher.
+     */
+    public boolean isLeader() {
+        return leaseUntil > System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the number of outbox rows this relay has published and deleted.
+     *
+     * @return The relayed row count.
+     */
+    public long getRelayedCount() {
+        return relayedCount;
+    }
+
+    /**
+     * Returns the age of the oldest row in the last relayed batch, i.e. the end-to-end lag
+     * from commit to broker confirm.
+     *
+     * @return The lag in milliseconds (0 when the outbox was empty).
+     */
+    public long getLastLagMs() {
+        return lastLagMs;
+    }
+}
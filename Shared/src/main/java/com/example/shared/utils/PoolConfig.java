@@ -0,0 +1,151 @@
+package com.example.shared.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * The settings of a named connection pool, read from the deployment's configuration instead of
+ * being compiled in.
+ *
+ * Settings are looked up as {@code db.<pool>.<key>}, first in the system properties, then in the
+ * configuration file ({@code -Ddb.config=/path/db.properties}, or {@code database.properties} on
+ * the classpath), then in the defaults given by the code. Keys: {@code url}, {@code user},
+ * {@code password}, {@code poolSize}, {@code minIdle}, {@code connectionTimeoutMs},
+ * {@code idleTimeoutMs}, {@code maxLifetimeMs}, {@code readOnly} and {@code breakerLatencyMs}. For example, a kiosk could run
+ * with {@code db.write.poolSize=4} and {@code db.read.poolSize=2}, a reporting server with a large
+ * read pool.
+ *
+ * @param name                The pool name, e.g. "write" or "read".
+ * @param jdbcUrl             The JDBC URL.
+ * @param user                The database user.
+ * @param password            The database password.
+ * @param maxPoolSize         The maximum number of connections.
+ * @param minIdle             The number of idle connections kept open.
+ * @param connectionTimeoutMs The longest wait for a connection, in milliseconds.
+ * @param idleTimeoutMs       After how long an idle connection above minIdle is closed, in milliseconds.
+ * @param maxLifetimeMs       The longest lifetime of a connection, in milliseconds.
+ * @param readOnly            Whether the connections are read-only.
+ * @param breakerLatencyMs    The percentile latency above which a host's circuit opens, in milliseconds.
+ */
+public record PoolConfig(String name, String jdbcUrl, String user, String password, int maxPoolSize, int minIdle,
+                         long connectionTimeoutMs, long idleTimeoutMs, long maxLifetimeMs, boolean readOnly,
+                         long breakerLatencyMs) {
+
+    /**
+     * Reads the configuration file, if any. Called again by {@link #load(String, PoolConfig)}, so a
+     * changed file is picked up when pools are rebuilt.
+     *
+     * @return The file's settings (empty without a file).
+     */
+    public static Properties fileSettings() {
+        Properties settings = new Properties();
+        String file = System.getProperty("db.config");
+        try {
+            if (file != null) {
+                Path path = Paths.get(file);
+                try (InputStream in = Files.newInputStream(path)) {
+                    settings.load(in);
+                }
+            } else {
+                try (InputStream in = PoolConfig.class.getClassLoader().getResourceAsStream("database.properties")) {
+                    if (in != null) {
+                        settings.load(in);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("❌ Could not read database configuration " + file + ": " + e.getMessage());
+        }
+        return settings;
+    }
+
+    /**
+     * Loads a pool's settings, falling back to the given defaults for anything not configured.
+     *
+     * @param name     The pool name.
+     * @param defaults The settings used when nothing is configured (its name is ignored).
+     * @return The pool's settings.
+     */
+    public static PoolConfig load(String name, PoolConfig defaults) {
+        Properties file = fileSettings();
+        Lookup lookup = key -> {
+            String property = "db." + name + "." + key;
+            return System.getProperty(property, file.getProperty(property));
+        };
+        int maxPoolSize = lookup.getInt("poolSize", defaults.maxPoolSize());
+        return new PoolConfig(name,
+                lookup.get("url", defaults.jdbcUrl()),
+                lookup.get("user", defaults.user()),
+                lookup.get("password", defaults.password()),
+                maxPoolSize,
+                Math.min(maxPoolSize, lookup.getInt("minIdle", Math.min(maxPoolSize, defaults.minIdle()))),
+                lookup.getLong("connectionTimeoutMs", defaults.connectionTimeoutMs()),
+                lookup.getLong("idleTimeoutMs", defaults.idleTimeoutMs()),
+                lookup.getLong("maxLifetimeMs", defaults.maxLifetimeMs()),
+                Boolean.parseBoolean(lookup.get("readOnly", String.valueOf(defaults.readOnly()))),
+                lookup.getLong("breakerLatencyMs", defaults.breakerLatencyMs()));
+    }
+
+    /**
+     * Returns the names of the extra pools to create besides the built-in ones, from {@code db.pools}
+     * (comma-separated, in the system properties or the file).
+     *
+     * @return The names, possibly empty.
+     */
+    public static List<String> extraPoolNames() {
+        String names = System.getProperty("db.pools", fileSettings().getProperty("db.pools", ""));
+        List<String> result = new ArrayList<>();
+        for (String name : names.split(",")) {
+            if (!name.isBlank()) {
+                result.add(name.trim());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Looks up one configured value.
+     */
+    private interface Lookup {
+        String raw(String key);
+
+        default String get(String key, String fallback) {
+            String value = raw(key);
+            return value == null ? fallback : value.trim();
+        }
+
+        default int getInt(String key, int fallback) {
+            return (int) getLong(key, fallback);
+        }
+
+        default long getLong(String key, long fallback) {
+            String value = raw(key);
+            if (value == null) {
+                return fallback;
+            }
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                System.err.println("❌ Ignoring invalid database setting " + key + "=" + value);
+                return fallback;
+            }
+        }
+    }
+
+    /**
+     * Hides the password in logs.
+     */
+    @Override
+    public String toString() {
+        return "PoolConfig[" + name + ": " + jdbcUrl.replaceAll("\\?.*$", "") + ", user=" + user
+                + ", poolSize=" + maxPoolSize + ", minIdle=" + minIdle + ", connectionTimeoutMs=" + connectionTimeoutMs
+                + ", idleTimeoutMs=" + idleTimeoutMs + ", maxLifetimeMs=" + maxLifetimeMs + ", readOnly=" + readOnly
+                + ", breakerLatencyMs=" + breakerLatencyMs + "]";
+    }
+}
@@ -0,0 +1,345 @@
+package com.example.shared.utils;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.pool.HikariPool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * A small HikariCP pool for one database, with its hot statements prepared once per connection.
+ *
+ * Connections stay open across requests, so a query no longer pays the TCP and authentication
+ * handshake. The driver's statement cache is enabled ({@code cachePrepStmts}, server-side prepares),
+ * so {@code conn.prepareStatement(sql)} for a statement that was prepared before on the same
+ * connection is a cache hit and executing it is a single round trip. On construction the pool opens
+ * its idle connections and prepares the given statements on each of them in the background.
+ *
+ * Pools are meant to be long-lived: use {@link #shared(String, String, String, int, List)} to get
+ * one pool per JDBC URL for the whole process.
+ *
+ * A pool can be resized while it runs ({@link #resize(int, int)}). Besides its current counts it
+ * keeps histograms: of the time each borrow waited, and of its active, idle and pending
+ * (waiting-thread) counts sampled every {@code db.metrics.sampleMs}; {@code db.metrics.logMs}
+ * prints them periodically.
+ */
+public final class PooledDatabase implements AutoCloseable {
+
+    // One pool per JDBC URL for the whole process
+    private static final Map<String, PooledDatabase> SHARED = new ConcurrentHashMap<>();
+
+    private static final long SAMPLE_MS = Long.getLong("db.metrics.sampleMs", 100);
+    private static final long LOG_MS = Long.getLong("db.metrics.logMs", 0);
+
+    // All open pools, sampled by one thread for the whole process
+    private static final List<PooledDatabase> OPEN = new CopyOnWriteArrayList<>();
+    private static final ScheduledExecutorService SAMPLER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "db-pool-metrics");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        SAMPLER.scheduleAtFixedRate(() -> OPEN.forEach(PooledDatabase::sample), SAMPLE_MS, SAMPLE_MS, TimeUnit.MILLISECONDS);
+        if (LOG_MS > 0) {
+            SAMPLER.scheduleAtFixedRate(() -> OPEN.forEach(pool -> System.out.println(pool.getMetrics().format())),
+                    LOG_MS, LOG_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private final String name;
+    private final HikariDataSource dataSource;
+    private final List<String> statements;
+
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong borrowNanos = new AtomicLong();
+    private final LongAccumulator maxBorrowNanos = new LongAccumulator(Math::max, 0);
+    private final AtomicLong failedBorrows = new AtomicLong();
+    private final Histogram waitMicros = new Histogram();
+    private final Histogram activeSamples = new Histogram();
+    private final Histogram idleSamples = new Histogram();
+    private final Histogram pendingSamples = new Histogram();
+
+    /**
+     * Pool statistics at one point in time.
+     *
+     * @param name             The pool name.
+     * @param maxPoolSize      The current maximum number of connections.
+     * @param active           Connections in use.
+     * @param idle             Connections ready in the pool.
+     * @param total            All open connections.
+     * @param waiting          Threads waiting for a connection.
+     * @param borrows          Connections handed out so far.
+     * @param failedBorrows    Borrows that timed out or failed.
+     * @param meanBorrowMicros Average time to get a connection, in microseconds.
+     * @param maxBorrowMicros  Longest time to get a connection, in microseconds.
+     * @param waitMicros       Histogram of the time borrows waited, in microseconds.
+     * @param activeSamples    Histogram of the sampled active connections.
+     * @param idleSamples      Histogram of the sampled idle connections.
+     * @param pendingSamples   Histogram of the sampled threads waiting for a connection.
+     */
+    public record PoolMetrics(String name, int maxPoolSize, int active, int idle, int total, int waiting,
+                              long borrows, long failedBorrows, long meanBorrowMicros, long maxBorrowMicros,
+                              Histogram.Snapshot waitMicros, Histogram.Snapshot activeSamples,
+                              Histogram.Snapshot idleSamples, Histogram.Snapshot pendingSamples) {
+
+        /**
+         * Formats the metrics for a log line.
+         *
+         * @return The metrics as text.
+         */
+        public String format() {
+            return "Pool " + name + " (max " + maxPoolSize + "): active=" + active + " idle=" + idle
+                    + " pending=" + waiting + " borrows=" + borrows + " failed=" + failedBorrows
+                    + "\n  wait µs: " + waitMicros.format()
+                    + "\n  active:  " + activeSamples.format()
+                    + "\n  idle:    " + idleSamples.format()
+                    + "\n  pending: " + pendingSamples.format();
+        }
+    }
+
+    /**
+     * Creates the pool and starts warming it up in the background.
+     *
+     * @param name        The pool name, used in thread names and logs.
+     * @param jdbcUrl     The JDBC URL of the database.
+     * @param user        The database user.
+     * @param password    The database password.
+     * @param maxPoolSize The maximum number of connections; half of them (at least one) are kept idle.
+     * @param statements  The SQL statements to prepare on every connection during warm-up.
+     */
+    public PooledDatabase(String name, String jdbcUrl, String user, String password,
+                          int maxPoolSize, List<String> statements) {
+        this(new PoolConfig(name, jdbcUrl, user, password, maxPoolSize, Math.max(1, maxPoolSize / 2),
+                3000, 600000, 1800000, false, 500), statements);
+    }
+
+    /**
+     * Creates a pool from its settings and starts warming it up in the background.
+     *
+     * @param settings   The pool's settings (see {@link PoolConfig#load(String, PoolConfig)}).
+     * @param statements The SQL statements to prepare on every connection during warm-up.
+     */
+    public PooledDatabase(PoolConfig settings, List<String> statements) {
+        this.name = settings.name();
+        this.statements = List.copyOf(statements);
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(settings.name());
+        config.setJdbcUrl(settings.jdbcUrl());
+        config.setUsername(settings.user());
+        config.setPassword(settings.password());
+        config.setMaximumPoolSize(settings.maxPoolSize());
+        config.setMinimumIdle(Math.max(0, Math.min(settings.minIdle(), settings.maxPoolSize())));
+        config.setConnectionTimeout(settings.connectionTimeoutMs()); // Maximum wait time for a connection.
+        config.setIdleTimeout(settings.idleTimeoutMs());             // Time to close an idle connection.
+        config.setMaxLifetime(settings.maxLifetimeMs());             // Maximum lifetime of a connection.
+        config.setReadOnly(settings.readOnly());
+        config.setInitializationFailTimeout(-1); // Start even if the database is down; connect when it is back.
+
+        // Statements are prepared on the server once per connection and cached by the driver.
+        config.addDataSourceProperty("cachePrepStmts", "true");
+        config.addDataSourceProperty("prepStmtCacheSize", "250");
+        config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        config.addDataSourceProperty("useServerPrepStmts", "true");
+
+        this.dataSource = new HikariDataSource(config);
+        OPEN.add(this);
+
+        Thread warmer = new Thread(this::warmUp, name + "-warmup");
+        warmer.setDaemon(true);
+        warmer.start();
+    }
+
+    /**
+     * Returns the process-wide pool for a JDBC URL, creating it on first use.
+     *
+     * @param jdbcUrl     The JDBC URL of the database.
+     * @param user        The database user.
+     * @param password    The database password.
+     * @param maxPoolSize The maximum number of connections (used when the pool is created).
+     * @param statements  The statements to prepare during warm-up (used when the pool is created).
+     * @return The pool.
+     */
+    public static PooledDatabase shared(String jdbcUrl, String user, String password,
+                                        int maxPoolSize, List<String> statements) {
+        return SHARED.computeIfAbsent(jdbcUrl, url ->
+                new PooledDatabase("db-" + url.replaceAll("^jdbc:[a-z]+://|[:/].*$", ""), url, user, password,
+                        maxPoolSize, statements));
+    }
+
+    /**
+     * Borrows a connection from the pool. Closing it returns it to the pool.
+     *
+     * @return An open connection.
+     * @throws SQLException If no connection becomes available in time.
+     */
+    public Connection connect() throws SQLException {
+        return connect(-1);
+    }
+
+    /**
+     * Borrows a connection, waiting at most the given time (e.g. what is left of a deadline)
+     * instead of the pool's connection timeout.
+     *
+     * @param timeoutMs The longest wait in milliseconds; negative for the pool's connection timeout.
+     * @return An open connection.
+     * @throws SQLException If no connection becomes available in time.
+     */
+    public Connection connect(long timeoutMs) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            HikariPool pool = (HikariPool) dataSource.getHikariPoolMXBean();
+            Connection conn = timeoutMs < 0 || pool == null ? dataSource.getConnection() : pool.getConnection(timeoutMs);
+            long elapsed = System.nanoTime() - start;
+            borrows.incrementAndGet();
+            borrowNanos.addAndGet(elapsed);
+            maxBorrowNanos.accumulate(elapsed);
+            waitMicros.record(elapsed / 1000);
+            return conn;
+        } catch (SQLException e) {
+            failedBorrows.incrementAndGet();
+            waitMicros.record((System.nanoTime() - start) / 1000); // A timeout is the longest wait of all
+            throw e;
+        }
+    }
+
+    /**
+     * Changes the pool's size while it runs. Growing takes effect at once; when shrinking, the
+     * open connections are closed as they are returned and reopened within the new maximum.
+     *
+     * @param maxPoolSize The new maximum number of connections (at least 1).
+     * @param minIdle     The new number of idle connections to keep (at most maxPoolSize).
+     */
+    public void resize(int maxPoolSize, int minIdle) {
+        if (maxPoolSize < 1) {
+            throw new IllegalArgumentException("A pool needs at least one connection: " + maxPoolSize);
+        }
+        int idle = Math.max(0, Math.min(minIdle, maxPoolSize));
+        HikariConfigMXBean config = dataSource.getHikariConfigMXBean();
+        // Keep minIdle <= max at every step
+        if (maxPoolSize < config.getMaximumPoolSize()) {
+            config.setMinimumIdle(idle);
+            config.setMaximumPoolSize(maxPoolSize);
+            HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+            if (pool != null) {
+                pool.softEvictConnections(); // Replaced within the new size as they are returned
+            }
+        } else {
+            config.setMaximumPoolSize(maxPoolSize);
+            config.setMinimumIdle(idle);
+        }
+        System.out.println("Resized pool " + name + " to " + maxPoolSize + " connections (" + idle + " idle).");
+    }
+
+    /**
+     * Returns how many connections are borrowed right now.
+     *
+     * @return The number of active connections (0 before the pool has started).
+     */
+    public int activeConnections() {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        return pool == null ? 0 : pool.getActiveConnections();
+    }
+
+    /**
+     * Returns the pool's name.
+     *
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records the current counts in the sample histograms.
+     */
+    private void sample() {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        if (pool == null) {
+            return;
+        }
+        activeSamples.record(pool.getActiveConnections());
+        idleSamples.record(pool.getIdleConnections());
+        pendingSamples.record(pool.getThreadsAwaitingConnection());
+    }
+
+    /**
+     * Opens the idle connections and prepares the statements on each, so the first requests find
+     * them ready. Failures are logged; the pool keeps trying to connect on its own.
+     */
+    private void warmUp() {
+        int connections = Math.max(1, dataSource.getMinimumIdle());
+        List<Connection> held = new ArrayList<>(connections);
+        try {
+            for (int i = 0; i < connections; i++) {
+                Connection conn = dataSource.getConnection();
+                held.add(conn); // Hold them all, so each prepare lands on a different connection
+                for (String sql : statements) {
+                    conn.prepareStatement(sql).close(); // Closing puts the prepared statement into the connection's cache
+                }
+            }
+            System.out.println("Warmed up pool " + name + ": " + held.size() + " connections, "
+                    + statements.size() + " statements each.");
+        } catch (SQLException e) {
+            System.err.println("❌ Warm-up of pool " + name + " stopped after " + held.size() + " connections: " + e.getMessage());
+        } finally {
+            for (Connection conn : held) {
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    System.err.println("Error returning warm-up connection to " + name + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the pool's current statistics.
+     *
+     * @return The metrics.
+     */
+    public PoolMetrics getMetrics() {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        long count = borrows.get();
+        return new PoolMetrics(name,
+                dataSource.getHikariConfigMXBean().getMaximumPoolSize(),
+                pool == null ? 0 : pool.getActiveConnections(),
+                pool == null ? 0 : pool.getIdleConnections(),
+                pool == null ? 0 : pool.getTotalConnections(),
+                pool == null ? 0 : pool.getThreadsAwaitingConnection(),
+                count,
+                failedBorrows.get(),
+                count == 0 ? 0 : borrowNanos.get() / count / 1000,
+                maxBorrowNanos.get() / 1000,
+                waitMicros.snapshot(),
+                activeSamples.snapshot(),
+                idleSamples.snapshot(),
+                pendingSamples.snapshot());
+    }
+
+    /**
+     * Closes the pool and all of its connections.
+     */
+    @Override
+    public void close() {
+        SHARED.values().remove(this);
+        OPEN.remove(this);
+        if (!dataSource.isClosed()) {
+            dataSource.close();
+        }
+    }
+}
@@ -1,9 +1,9 @@
 package com.example.shared.utils;
 
 
-import com.rabbitmq.client.Connection;
-import com.rabbitmq.client.Channel;
-import com.rabbitmq.client.ConnectionFactory;
+import com.example.shared.utils.BrokerTransport.BrokerChannel;
+import com.example.shared.utils.BrokerTransport.BrokerConnection;
+import com.example.shared.utils.BrokerTransport.Delivery;
 
 import java.io.IOException;
 import java.net.URI;
@@ -12,8 +12,15 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 import static java.lang.Thread.sleep;
 
@@ -21,8 +28,10 @@ import static java.lang.Thread.sleep;
  * Utility class for managing RabbitMQ connections and operations.
  * This class provides methods to connect to a RabbitMQ cluster, send and receive messages,
  * and manage message queues efficiently with failure handling.
+ * The broker is reached through a {@link BrokerTransport}: the RabbitMQ client by default, or the
+ * embedded {@link InProcessBroker} with {@code -Drabbitmq.transport=inprocess}.
  */
-public class RabbitMQUtil {
+public final class RabbitMQUtil {
 
     // List of RabbitMQ nodes for failover
     private static final String[] RABBITMQ_NODES = {
@@ -36,19 +45,66 @@ public class RabbitMQUtil {
     private static final String CITATIONS_QUEUE = "citationsQueue";
     private static final String RECOMENDATION_QUEUE = "recommendationResponsesQueue";
 
+    /** Fanout exchange announcing every change of a parking space's occupancy, to every subscriber. */
+    public static final String OCCUPANCY_EXCHANGE = "occupancyEvents";
+
+    // Queue type for the append-only history queues (transactions, citations): "quorum" or "stream".
+    // Switching an existing deployment to streams requires deleting the old quorum queues first.
+    private static final String HISTORY_QUEUE_TYPE = System.getProperty("rabbitmq.historyQueueType", "quorum");
+
+    // Number of partitions for the history queues, 0 for a single queue each.
+    // With N > 0, messages go through a consistent-hash exchange (rabbitmq_consistent_hash_exchange plugin)
+    // into queues "<name>.0" .. "<name>.N-1", routed by their partition key (the ZoneID).
+    private static final int PARTITIONS = Integer.getInteger("rabbitmq.partitions", 0);
+
+    // Stream readers: prefetch window, and how long a read waits for the next delivery before it gives up
+    private static final int STREAM_PREFETCH = 1000;
+    private static final long STREAM_STALL_TIMEOUT_MS = Long.getLong("rabbitmq.streamStallMs", 5000);
+
+    // Outbox for messages published while the connection is down: capacity and overflow policy
+    private static final int OUTBOX_CAPACITY = Integer.getInteger("rabbitmq.outbox.capacity", 10_000);
+    private static final MessageOutbox.OverflowPolicy OUTBOX_OVERFLOW = MessageOutbox.OverflowPolicy.valueOf(
+            System.getProperty("rabbitmq.outbox.overflow", MessageOutbox.OverflowPolicy.REJECT.name()));
+
     // RabbitMQ API details for managing policies
     private static final String RABBITMQ_API_URL = "http://127.0.0.1:15672/api/policies/%2F";
     private static final String RABBITMQ_USERNAME = "guest";
     private static final String RABBITMQ_PASSWORD = "guest";
 
-    private Connection connection;
-    private Channel channel;
-    private final Map<String, Integer> failedNodes = new HashMap<>(); // שמירת מספר כשלים לכל צומת
+    // How connections are opened: the RabbitMQ client ("amqp") or the embedded broker ("inprocess")
+    private static volatile BrokerTransport transport =
+            "inprocess".equalsIgnoreCase(System.getProperty("rabbitmq.transport", "amqp"))
+                    ? InProcessBroker.getDefault()
+                    : new AmqpTransport();
+
+    // Latency and failure tracking shared by every RabbitMQUtil in this process
+    private static final NodeHealthTracker NODE_HEALTH = new NodeHealthTracker(RABBITMQ_NODES);
+
+    // Reads the partitions of a history queue in parallel, each on its own channel
+    private static final ExecutorService PARTITION_READERS = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "rabbitmq-partition-reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private BrokerConnection connection;
+    private BrokerChannel channel;
+    private String connectedNode;          // URI of the node behind the current connection
+    private long connectedGeneration;      // NODE_HEALTH generation seen when the connection was made
+    private final String pinnedNode;       // Node this instance was created for, or null for any cluster node
+
+    // Guards connection/channel against concurrent use by callers and the reconnect supervisor
+    private final ReentrantLock connectionLock = new ReentrantLock();
+    private final MessageOutbox outbox = new MessageOutbox(OUTBOX_CAPACITY, OUTBOX_OVERFLOW);
+    private volatile boolean closed = false; // Set by closeConnection(), stops reconnect attempts
+    private BrokerChannel confirmChannel;           // Channel already switched to publisher-confirm mode
+    private final Map<String, BrokerChannel> declaredOn = new HashMap<>(); // Announcement exchange -> channel that declared it
 
     /**
      * Default constructor that attempts to connect to the RabbitMQ cluster.
      */
     public RabbitMQUtil() {
+        this.pinnedNode = null;
         connectToCluster();
     }
 
@@ -58,9 +114,38 @@ public class RabbitMQUtil {
      * @param rabbitMQIP The RabbitMQ node URI to connect to.
      */
     public RabbitMQUtil(String rabbitMQIP) {
+        this.pinnedNode = rabbitMQIP;
         connectToNode(rabbitMQIP);
     }
 
+    /**
+     * Returns the process-wide node health tracker, e.g. for logging the cluster state.
+     *
+     * @return The shared {@link NodeHealthTracker}.
+     */
+    public static NodeHealthTracker getNodeHealth() {
+        return NODE_HEALTH;
+    }
+
+    /**
+     * Returns the transport new connections are opened with.
+     *
+     * @return The current transport.
+     */
+    public static BrokerTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Replaces the transport for connections opened from now on, e.g. with an {@link InProcessBroker}
+     * in tests. Existing connections keep their transport until they reconnect.
+     *
+     * @param brokerTransport The transport to use.
+     */
+    public static void setTransport(BrokerTransport brokerTransport) {
+        transport = Objects.requireNonNull(brokerTransport);
+    }
+
     /**
      * Attempts to connect to a specific RabbitMQ node.
      *
@@ -68,66 +153,85 @@ public class RabbitMQUtil {
      * @return True if the connection is successful, otherwise false.
      */
     private boolean connectToNode(String node) {
+        connectionLock.lock();
         try {
             System.out.println(" Attempting connection to RabbitMQ node: " + node);
 
-            ConnectionFactory factory = new ConnectionFactory();
-            factory.setUri(node);
-            factory.setUsername(RABBITMQ_USERNAME);
-            factory.setPassword(RABBITMQ_PASSWORD);
-
-
-            factory.setConnectionTimeout(500);
-            factory.setHandshakeTimeout(1000);
-            factory.setNetworkRecoveryInterval(1000);
-            factory.setRequestedHeartbeat(5);
-            factory.setAutomaticRecoveryEnabled(false);
-
-            connection = factory.newConnection();
+            long start = System.nanoTime();
+            connection = transport.connect(node);
             channel = connection.createChannel();
 
             channel.basicQos(50); // Prefetch 50 הודעות
 
+            // Record the connect latency; this also re-admits a quarantined node after a successful probe
+            connectedGeneration = NODE_HEALTH.generation();
+            NODE_HEALTH.recordConnectSuccess(node, (System.nanoTime() - start) / 1_000_000);
+            connectedNode = node;
+
             System.out.println(" Connected to RabbitMQ node: " + node);
-            failedNodes.put(node, 0); // אפסנו את הכשלונות בצומת הזה
             return true;
 
         } catch (Exception e) {
-            int failures = failedNodes.getOrDefault(node, 0) + 1;
-            failedNodes.put(node, failures);
-            System.err.println(" Failed to connect to RabbitMQ node: " + node + " (Attempt " + failures + ")");
-
-            // אם יש יותר מ-3 כשלונות, נשאיר את הצומת מחוץ לרשימה למשך 60 שניות
-            if (failures >= 3) {
-                System.err.println(" Node " + node + " marked as temporarily unavailable.");
-                failedNodes.put(node, -1);
-            }
+            NODE_HEALTH.recordConnectFailure(node);
+            System.err.println(" Failed to connect to RabbitMQ node: " + node + " (" + NODE_HEALTH + ")");
             return false;
+        } finally {
+            connectionLock.unlock();
         }
     }
 
     /**
-     * Attempts to connect to any available RabbitMQ node from the predefined cluster.
+     * Attempts to connect to the healthiest available RabbitMQ node in the cluster.
+     * Nodes are tried in the order given by {@link NodeHealthTracker#candidates()}; quarantined
+     * nodes are skipped until their quarantine expires and they can be probed again.
      * If all nodes fail, it throws an exception.
      */
     private void connectToCluster() {
-        if (connection != null && connection.isOpen()) return;
+        connectionLock.lock();
+        try {
+            if (connection != null && connection.isOpen()) return;
 
-        for (String node : RABBITMQ_NODES) {
-            if (failedNodes.getOrDefault(node, 0) == -1) {
-                System.err.println(" Skipping node " + node + " due to repeated failures.");
-                continue;
+            for (String node : NODE_HEALTH.candidates()) {
+                if (!NODE_HEALTH.beginAttempt(node)) {
+                    continue; // Another connection is already probing this node
+                }
+                if (connectToNode(node)) {
+                    initializeQueues();
+                    return;
+                }
             }
-            if (connectToNode(node)) {
-                initializeQueues();
-                return;
+            throw new RuntimeException("Failed to connect to any RabbitMQ node.");
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+
+    /**
+     * Moves this connection to a less loaded node after a node has been re-admitted,
+     * so that connections which piled onto one node during an outage spread out again.
+     */
+    private void rebalanceIfNeeded() {
+        if (pinnedNode != null || connectedNode == null) return;
+
+        long generation = NODE_HEALTH.generation();
+        if (generation == connectedGeneration) return;
+        connectedGeneration = generation;
+
+        if (NODE_HEALTH.shouldRebalance(connectedNode)) {
+            System.out.println(" Rebalancing RabbitMQ connection away from " + connectedNode);
+            try {
+                reconnect();
+            } catch (RuntimeException e) {
+                System.err.println(" Rebalance failed: " + e.getMessage());
             }
         }
-        throw new RuntimeException("Failed to connect to any RabbitMQ node.");
     }
 
     /**
      * Initializes RabbitMQ queues with quorum queue configuration.
+     * The transactions and citations history queues are declared as streams instead
+     * when {@code -Drabbitmq.historyQueueType=stream} is set, and split into partitions
+     * when {@code -Drabbitmq.partitions=N} is set.
      */
     public void initializeQueues() {
         try {
@@ -135,37 +239,399 @@ public class RabbitMQUtil {
             Map<String, Object> args = new HashMap<>();
             args.put("x-queue-type", "quorum");
 
-            channel.queueDeclare(TRANSACTIONS_QUEUE, true, false, false, args);
-            channel.queueDeclare(CITATIONS_QUEUE, true, false, false, args);
-            channel.queueDeclare(RECOMENDATION_QUEUE, true, false, false, args);
+            Map<String, Object> historyArgs = new HashMap<>();
+            historyArgs.put("x-queue-type", isStreamMode() ? "stream" : "quorum");
+
+            declareHistoryQueue(TRANSACTIONS_QUEUE, historyArgs);
+            declareHistoryQueue(CITATIONS_QUEUE, historyArgs);
+            channel.queueDeclare(RECOMENDATION_QUEUE, args);
+            channel.exchangeDeclare(OCCUPANCY_EXCHANGE, "fanout");
 
-            System.out.println(" Quorum queues initialized.");
+            System.out.println(" Queues initialized (history queues: " + (isStreamMode() ? "stream" : "quorum")
+                    + ", partitions: " + Math.max(PARTITIONS, 1) + ").");
         } catch (IOException e) {
             System.err.println(" Error initializing RabbitMQ queues: " + e.getMessage());
         }
     }
 
 
+    /**
+     * Declares a history queue, or its consistent-hash exchange and partition queues when partitioned.
+     * Every partition is bound with the same weight, so the zones spread evenly over the partitions.
+     * Quorum partitions allow a single active consumer only, which keeps each partition in order even
+     * if two consumer group members claim it by mistake.
+     */
+    private void declareHistoryQueue(String queueName, Map<String, Object> historyArgs) throws IOException {
+        if (!isPartitioned(queueName)) {
+            channel.queueDeclare(queueName, historyArgs);
+            return;
+        }
+        Map<String, Object> partitionArgs = new HashMap<>(historyArgs);
+        if (!isStreamMode()) {
+            partitionArgs.put("x-single-active-consumer", true);
+        }
+        String exchange = partitionExchange(queueName);
+        channel.exchangeDeclare(exchange, "x-consistent-hash");
+        for (String partitionQueue : partitionQueues(queueName)) {
+            channel.queueDeclare(partitionQueue, partitionArgs);
+            channel.queueBind(partitionQueue, exchange, "1"); // Binding key is the partition weight
+        }
+    }
+
+    /**
+     * Checks whether a queue is split into partitions.
+     *
+     * @param queueName The logical queue name, e.g. "transactionsQueue".
+     * @return True if messages for the queue are routed by partition key.
+     */
+    public static boolean isPartitioned(String queueName) {
+        return PARTITIONS > 0 && (TRANSACTIONS_QUEUE.equals(queueName) || CITATIONS_QUEUE.equals(queueName));
+    }
+
+    /**
+     * Returns the physical queues behind a logical queue: its partitions in partition order,
+     * or just the queue itself if it is not partitioned.
+     *
+     * @param queueName The logical queue name.
+     * @return The queues to read or consume.
+     */
+    public static List<String> partitionQueues(String queueName) {
+        if (!isPartitioned(queueName)) {
+            return List.of(queueName);
+        }
+        List<String> queues = new ArrayList<>(PARTITIONS);
+        for (int p = 0; p < PARTITIONS; p++) {
+            queues.add(queueName + "." + p);
+        }
+        return queues;
+    }
+
+    /**
+     * Returns the consistent-hash exchange that routes messages into a partitioned queue.
+     *
+     * @param queueName The logical queue name.
+     * @return The exchange name.
+     */
+    public static String partitionExchange(String queueName) {
+        return queueName + ".partitioned";
+    }
+
     /**
      * Sends a message to the specified RabbitMQ queue.
+     * While the connection is down (or older messages are still waiting), the message is appended
+     * to the outbox and published in order once the reconnect supervisor has restored the connection.
      *
      * @param queueName The name of the queue.
      * @param message   The message content.
-     * @return True if the message is sent successfully, otherwise false.
+     * @return True if the message was sent or queued in the outbox, false if the outbox rejected it.
      */
     public boolean sendMessage(String queueName, String message) {
+        return sendMessage(queueName, null, message);
+    }
+
+    /**
+     * Sends a message to the partition of a queue that its partition key hashes to.
+     * Messages with the same key (the ZoneID) always land in the same partition and keep their order.
+     * For a queue that is not partitioned the key is ignored.
+     *
+     * @param queueName    The logical queue name.
+     * @param partitionKey The partition key, e.g. the ZoneID (null routes like an empty key).
+     * @param message      The message content.
+     * @return True if the message was sent or queued in the outbox, false if the outbox rejected it.
+     */
+    public boolean sendMessage(String queueName, String partitionKey, String message) {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        String exchange = isPartitioned(queueName) ? partitionExchange(queueName) : "";
+        String routingKey = isPartitioned(queueName) ? Objects.requireNonNullElse(partitionKey, "") : queueName;
+        connectionLock.lock();
         try {
             ensureChannelOpen();
-            channel.basicPublish("", queueName, null, message.getBytes(StandardCharsets.UTF_8));
-            System.out.println("Message sent to " + queueName + ": " + message);
+            if (!outbox.isEmpty() && isChannelOpen()) {
+                flushOutbox(); // Older messages go first
+            }
+            if (!outbox.isEmpty() || !isChannelOpen()) {
+                return queueInOutbox(exchange, routingKey, body);
+            }
+
+            try {
+                publish(exchange, routingKey, body);
+                System.out.println("Message sent to " + queueName + ": " + message);
+                rebalanceIfNeeded();
+                return true;
+            } catch (Exception e) {
+                System.err.println(" Error sending message to queue " + queueName + ": " + e.getMessage());
+                requestReconnect();
+                return queueInOutbox(exchange, routingKey, body);
+            }
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+
+    /**
+     * Publishes a batch of messages and waits until the broker has confirmed all of them.
+     * Unlike {@link #sendMessage(String, String)}, nothing is queued in the in-memory outbox on
+     * failure: the caller keeps the messages (e.g. in the database outbox) and retries.
+     *
+     * @param queueNames The destination queue of each message.
+     * @param bodies     The message bodies, in publish order.
+     * @param timeoutMs  How long to wait for the confirms.
+     * @return True if every message was confirmed, false if any was nacked, timed out or failed.
+     */
+    public boolean publishConfirmed(List<String> queueNames, List<byte[]> bodies, long timeoutMs) {
+        return publishConfirmed(queueNames, Collections.nCopies(queueNames.size(), null), bodies, timeoutMs);
+    }
+
+    /**
+     * Publishes a batch of messages with partition keys and waits until the broker has confirmed all of them.
+     * See {@link #sendMessage(String, String, String)} for how keys are routed. Messages for
+     * {@link #OCCUPANCY_EXCHANGE} go to that exchange, and so to all of its subscribers.
+     *
+     * @param queueNames    The logical destination queue of each message.
+     * @param partitionKeys The partition key of each message (entries may be null).
+     * @param bodies        The message bodies, in publish order.
+     * @param timeoutMs     How long to wait for the confirms.
+     * @return True if every message was confirmed, false if any was nacked, timed out or failed.
+     */
+    public boolean publishConfirmed(List<String> queueNames, List<String> partitionKeys, List<byte[]> bodies, long timeoutMs) {
+        connectionLock.lock();
+        try {
+            ensureChannelOpen();
+            if (!isChannelOpen()) {
+                return false;
+            }
+            if (confirmChannel != channel) {
+                channel.confirmSelect();
+                channel.exchangeDeclare(OCCUPANCY_EXCHANGE, "fanout"); // Publishing to a missing exchange closes the channel
+                confirmChannel = channel;
+            }
+            for (int i = 0; i < bodies.size(); i++) {
+                String queueName = queueNames.get(i);
+                if (OCCUPANCY_EXCHANGE.equals(queueName)) {
+                    publish(OCCUPANCY_EXCHANGE, "", bodies.get(i));
+                } else if (isPartitioned(queueName)) {
+                    publish(partitionExchange(queueName), Objects.requireNonNullElse(partitionKeys.get(i), ""), bodies.get(i));
+                } else {
+                    publish("", queueName, bodies.get(i));
+                }
+            }
+            channel.waitForConfirmsOrDie(timeoutMs);
+            return true;
+        } catch (Exception e) {
+            System.err.println(" Error publishing confirmed batch of " + bodies.size() + " messages: " + e.getMessage());
+            requestReconnect();
+            return false;
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+
+    /**
+     * Sends a reply to a request's reply queue, tagged with the request's correlation ID.
+     * Replies bypass the outbox: a reply that cannot be published now would arrive after the
+     * requester's deadline, so it is dropped and the requester counts this node as abstaining.
+     *
+     * @param replyQueue    The reply queue named by the requester (see {@link ReplyQueue}).
+     * @param correlationId The correlation ID of the request.
+     * @param message       The reply content.
+     * @return True if the reply was published.
+     */
+    public boolean sendReply(String replyQueue, String correlationId, String message) {
+        return sendTransient(replyQueue, correlationId, message);
+    }
+
+    /**
+     * Sends a message that is only useful right now, such as an election heartbeat or vote.
+     * Like replies, such messages bypass the outbox and are dropped while disconnected.
+     *
+     * @param queueName The destination queue.
+     * @param message   The message content.
+     * @return True if the message was published.
+     */
+    public boolean sendTransient(String queueName, String message) {
+        return sendTransient(queueName, null, message);
+    }
+
+    private boolean sendTransient(String queueName, String correlationId, String message) {
+        connectionLock.lock();
+        try {
+            ensureChannelOpen();
+            if (!isChannelOpen()) {
+                return false;
+            }
+            publish("", queueName, correlationId, message.getBytes(StandardCharsets.UTF_8));
+            return true;
+        } catch (Exception e) {
+            System.err.println(" Error sending to " + queueName + ": " + e.getMessage());
+            requestReconnect();
+            return false;
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+
+    /**
+     * Declares a node's inbox queue, whose messages expire after a time-to-live, and consumes it.
+     * Used for messages addressed to one node, such as election traffic.
+     *
+     * The inbox is exclusive to this connection and deleted with it, so a node's messages have
+     * exactly one reader: while another connection holds the inbox, opening it fails. Messages
+     * sent while nobody holds it are dropped, like any transient message.
+     *
+     * @param queueName    The inbox queue name.
+     * @param messageTtlMs How long an undelivered message stays useful, in milliseconds.
+     * @param handler      Called for every message.
+     * @return The subscription; close it to stop consuming.
+     * @throws IOException If there is no connection, or the declaration fails or is refused.
+     */
+    public ConsumerGroupMember openInbox(String queueName, long messageTtlMs,
+                                         Consumer<byte[]> handler) throws IOException {
+        BrokerChannel declareChannel;
+        connectionLock.lock();
+        try {
+            ensureChannelOpen();
+            if (connection == null || !connection.isOpen()) {
+                throw new IOException("No RabbitMQ connection to open inbox " + queueName);
+            }
+            declareChannel = connection.createChannel(); // A refusal closes the channel, so not the shared one
+        } finally {
+            connectionLock.unlock();
+        }
+        try {
+            Map<String, Object> args = new HashMap<>();
+            args.put("x-message-ttl", messageTtlMs);
+            declareChannel.queueDeclareExclusive(queueName, args);
+        } finally {
+            try {
+                if (declareChannel.isOpen()) declareChannel.close();
+            } catch (IOException | TimeoutException closeError) {
+                System.err.println("Error closing inbox channel: " + closeError.getMessage());
+            }
+        }
+        return joinConsumerGroup(queueName, 0, 1, (partition, body) -> handler.accept(body));
+    }
+
+    /**
+     * Announces a message that is only useful right now to every subscriber of a fanout exchange
+     * (see {@link #subscribe(String, Consumer)}), such as the current election leader. Like
+     * {@link #sendTransient(String, String)} it bypasses the outbox and is dropped while disconnected.
+     *
+     * @param exchange The fanout exchange.
+     * @param message  The message content.
+     * @return True if the message was published.
+     */
+    public boolean announceTransient(String exchange, String message) {
+        connectionLock.lock();
+        try {
+            ensureChannelOpen();
+            if (!isChannelOpen()) {
+                return false;
+            }
+            if (declaredOn.get(exchange) != channel) {
+                channel.exchangeDeclare(exchange, "fanout"); // Publishing to a missing exchange closes the channel
+                declaredOn.put(exchange, channel);
+            }
+            publish(exchange, "", message.getBytes(StandardCharsets.UTF_8));
             return true;
         } catch (Exception e) {
-            System.err.println(" Error sending message to queue " + queueName + ": " + e.getMessage());
-            reconnectFast();
+            System.err.println(" Error announcing on " + exchange + ": " + e.getMessage());
+            requestReconnect();
             return false;
+        } finally {
+            connectionLock.unlock();
         }
     }
 
+    /**
+     * Publishes one message on the current channel and records the publish latency.
+     */
+    private void publish(String exchange, String routingKey, byte[] body) throws IOException {
+        publish(exchange, routingKey, null, body);
+    }
+
+    /**
+     * Publishes one message with a correlation ID on the current channel and records the publish latency.
+     */
+    private void publish(String exchange, String routingKey, String correlationId, byte[] body) throws IOException {
+        long start = System.nanoTime();
+        try {
+            channel.basicPublish(exchange, routingKey, correlationId, body);
+        } catch (IOException | RuntimeException e) {
+            if (connectedNode != null) NODE_HEALTH.recordPublishFailure(connectedNode);
+            throw e;
+        }
+        if (connectedNode != null) NODE_HEALTH.recordPublish(connectedNode, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Appends a message to the outbox, applying its overflow policy.
+     */
+    private boolean queueInOutbox(String exchange, String routingKey, byte[] body) {
+        boolean accepted = outbox.offer(exchange, routingKey, body);
+        String destination = exchange.isEmpty() ? routingKey : exchange;
+        if (accepted) {
+            System.out.println("Message queued for " + destination + " until reconnect (outbox depth " + outbox.size() + ").");
+        } else {
+            System.err.println(" Outbox full (" + outbox.capacity() + "), message to " + destination + " rejected.");
+        }
+        return accepted;
+    }
+
+    /**
+     * Publishes the queued outbox messages in order. Stops at the first failure, keeping that
+     * message and everything after it, and asks the supervisor to reconnect.
+     */
+    void flushOutbox() {
+        connectionLock.lock();
+        try {
+            int flushed = 0;
+            while (!outbox.isEmpty() && isChannelOpen()) {
+                try {
+                    publish(outbox.peekExchange(), outbox.peekRoutingKey(), outbox.peekBody());
+                } catch (Exception e) {
+                    System.err.println(" Error flushing outbox: " + e.getMessage());
+                    requestReconnect();
+                    break;
+                }
+                outbox.poll();
+                flushed++;
+            }
+            if (flushed > 0) {
+                System.out.println("Flushed " + flushed + " queued messages (outbox depth " + outbox.size() + ").");
+            }
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of messages waiting in the outbox for the connection to come back.
+     *
+     * @return The outbox depth.
+     */
+    public int getOutboxDepth() {
+        return outbox.size();
+    }
+
+    /**
+     * Returns the number of messages lost to the outbox overflow policy.
+     *
+     * @return The rejected or dropped message count.
+     */
+    public long getOutboxDroppedCount() {
+        return outbox.droppedCount();
+    }
+
+    /**
+     * Changes what happens when the outbox is full
+     * (default from {@code -Drabbitmq.outbox.overflow}, REJECT if unset).
+     *
+     * @param policy The overflow policy.
+     */
+    public void setOutboxOverflowPolicy(MessageOutbox.OverflowPolicy policy) {
+        outbox.setOverflowPolicy(policy);
+    }
+
     /**
      * Fetches and republishes messages from a specified RabbitMQ queue.
      *
@@ -173,70 +639,426 @@ public class RabbitMQUtil {
      * @return A list of messages retrieved from the queue.
      */
     public List<String> fetchAndRepublishMessagesCitation(String queueName) {
-        List<String> messages = new ArrayList<>();
+        List<byte[]> bodies = fetchAndRepublishMessageBodies(queueName);
+        List<String> messages = new ArrayList<>(bodies.size());
+        for (byte[] body : bodies) {
+            messages.add(new String(body, StandardCharsets.UTF_8));
+        }
+        return messages;
+    }
+
+    /**
+     * Fetches and republishes messages from a specified RabbitMQ queue, returning the raw bodies.
+     * Callers that parse the bodies in place (see {@link LegacyMessageCursor}) avoid decoding
+     * every message into a String. A partitioned queue is read partition by partition, and each
+     * message is republished to the partition it came from.
+     *
+     * @param queueName The name of the queue.
+     * @return A list of raw message bodies retrieved from the queue.
+     */
+    public List<byte[]> fetchAndRepublishMessageBodies(String queueName) {
+        List<byte[]> messageBodies = new ArrayList<>();
+        connectionLock.lock();
         try {
             ensureChannelOpen();
-            List<byte[]> messageBodies = new ArrayList<>();
 
-            while (true) {
-                var response = channel.basicGet(queueName, false);
-                if (response == null) {
-                    break;
-                }
+            for (String partitionQueue : partitionQueues(queueName)) {
+                int first = messageBodies.size();
+                while (true) {
+                    Delivery response = channel.basicGet(partitionQueue);
+                    if (response == null) {
+                        break;
+                    }
 
-                String message = new String(response.getBody(), "UTF-8");
-                messages.add(message);
-                messageBodies.add(response.getBody());
-                channel.basicAck(response.getEnvelope().getDeliveryTag(), false);
-            }
+                    messageBodies.add(response.body());
+                    channel.basicAck(response.deliveryTag());
+                }
 
-            for (byte[] body : messageBodies) {
-                channel.basicPublish("", queueName, null, body);
+                for (byte[] body : messageBodies.subList(first, messageBodies.size())) {
+                    channel.basicPublish("", partitionQueue, body);
+                }
             }
 
             System.out.println("All messages fetched and republished to " + queueName);
-            sleep(200);
         } catch (Exception e) {
             System.err.println("Error fetching and republishing messages from RabbitMQ queue " + queueName + ": " + e.getMessage());
-            reconnect();
+            requestReconnect();
+        } finally {
+            connectionLock.unlock();
         }
 
-        return messages;
+        try {
+            sleep(200); // Let the republished messages settle before the next reader drains the queue
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return messageBodies;
     }
 
     /**
-     * Ensures the RabbitMQ channel is open before performing operations.
+     * A batch of messages read from a stream, with the offset to resume from on the next read.
+     *
+     * @param bodies     The raw message bodies, in stream order.
+     * @param nextOffset The offset of the first message not included in this batch.
      */
-    private void ensureChannelOpen() {
-        if (channel == null || !channel.isOpen()) reconnectFast();
+    public record HistoryBatch(List<byte[]> bodies, long nextOffset) {
+    }
+
+    /**
+     * Checks whether the history queues (transactions, citations) are declared as streams.
+     *
+     * @return True if history is read with {@link #readStream(String, long)}, false if it must be
+     *         fetched and republished.
+     */
+    public static boolean isStreamMode() {
+        return "stream".equalsIgnoreCase(HISTORY_QUEUE_TYPE);
     }
 
     /**
-     * Performs a fast reconnection attempt.
+     * Reads a stream queue non-destructively, starting at a stored offset.
+     * Messages stay in the stream, so any number of readers can do this in parallel, and a reader
+     * that keeps {@link HistoryBatch#nextOffset()} only receives new messages on its next call.
+     *
+     * @param queueName  The name of the stream queue.
+     * @param fromOffset The first offset to read (0 for the whole retained history).
+     * @return The messages from {@code fromOffset} up to the current end of the stream.
+     */
+    public HistoryBatch readStream(String queueName, long fromOffset) {
+        return readStream(queueName, fromOffset, fromOffset);
+    }
+
+    /**
+     * Reads every partition of a stream queue in parallel, each from its own stored offset.
+     * For a queue that is not partitioned this is a single {@link #readStream(String, long)}.
+     *
+     * @param queueName   The logical queue name.
+     * @param fromOffsets The offset to read each partition from, indexed like {@link #partitionQueues(String)}.
+     * @return One batch per partition, in partition order.
      */
-    private void reconnectFast() {
-        new Thread(() -> {
+    public List<HistoryBatch> readPartitions(String queueName, long[] fromOffsets) {
+        List<String> queues = partitionQueues(queueName);
+        if (fromOffsets.length != queues.size()) {
+            throw new IllegalArgumentException("Expected " + queues.size() + " offsets for " + queueName + ", got " + fromOffsets.length);
+        }
+        if (queues.size() == 1) {
+            return List.of(readStream(queues.get(0), fromOffsets[0]));
+        }
+
+        List<CompletableFuture<HistoryBatch>> reads = new ArrayList<>(queues.size());
+        for (int p = 0; p < queues.size(); p++) {
+            String partitionQueue = queues.get(p);
+            long offset = fromOffsets[p];
+            reads.add(CompletableFuture.supplyAsync(() -> readStream(partitionQueue, offset), PARTITION_READERS));
+        }
+        List<HistoryBatch> batches = new ArrayList<>(reads.size());
+        for (CompletableFuture<HistoryBatch> read : reads) {
+            batches.add(read.join()); // readStream never throws, it returns what it read
+        }
+        return batches;
+    }
+
+    /**
+     * Reads a stream queue non-destructively, starting at the first message published at or after
+     * the given time.
+     *
+     * @param queueName The name of the stream queue.
+     * @param since     The timestamp to attach at.
+     * @return The messages from {@code since} up to the current end of the stream. If none was
+     *         published since then, the read only ends after {@code rabbitmq.streamStallMs}.
+     */
+    public HistoryBatch readStreamSince(String queueName, Date since) {
+        return readStream(queueName, since, 0);
+    }
+
+    /**
+     * Attaches a short-lived consumer to a stream at the given offset specification and collects
+     * deliveries up to the stream's committed end, taken when the read starts. A read from that end
+     * or later returns at once without consuming. If no delivery arrives for
+     * {@code rabbitmq.streamStallMs} the read gives up and returns what it has, so the next read
+     * resumes from there. A dedicated channel is used so the stream prefetch does not affect the
+     * shared channel.
+     */
+    private HistoryBatch readStream(String queueName, Object offsetSpec, long nextOffset) {
+        List<byte[]> bodies = new ArrayList<>();
+        BrokerChannel streamChannel = null;
+        try {
+            connectionLock.lock();
             try {
-                Thread.sleep(500);
-                reconnect();
-            } catch (InterruptedException e) {
-                System.err.println("Quick reconnect error: " + e.getMessage());
+                ensureChannelOpen();
+                if (connection == null || !connection.isOpen()) {
+                    return new HistoryBatch(bodies, nextOffset);
+                }
+                streamChannel = connection.createChannel();
+            } finally {
+                connectionLock.unlock();
+            }
+            long endOffset = streamChannel.messageCount(queueName);
+            if (endOffset == 0 || (offsetSpec instanceof Long from && from >= endOffset)) {
+                return new HistoryBatch(bodies, nextOffset); // Nothing was appended since the last read
+            }
+            streamChannel.basicQos(STREAM_PREFETCH); // Streams require a prefetch and manual acks
+
+            BlockingQueue<Delivery> deliveries = new LinkedBlockingQueue<>();
+            Map<String, Object> args = new HashMap<>();
+            args.put("x-stream-offset", offsetSpec);
+            String consumerTag = streamChannel.basicConsume(queueName, args, (tag, delivery) -> deliveries.add(delivery));
+
+            while (nextOffset < endOffset) {
+                Delivery delivery = deliveries.poll(STREAM_STALL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (delivery == null) {
+                    System.err.println("Stream " + queueName + " stalled at offset " + nextOffset + " of " + endOffset
+                            + "; the next read resumes there.");
+                    break;
+                }
+                bodies.add(delivery.body());
+                Map<String, Object> headers = delivery.headers();
+                if (headers != null && headers.get("x-stream-offset") instanceof Long offset) {
+                    nextOffset = offset + 1;
+                }
+                streamChannel.basicAck(delivery.deliveryTag());
+            }
+            streamChannel.basicCancel(consumerTag);
+            System.out.println("Read " + bodies.size() + " messages from stream " + queueName + ", next offset " + nextOffset);
+        } catch (Exception e) {
+            System.err.println("Error reading stream " + queueName + ": " + e.getMessage());
+        } finally {
+            try {
+                if (streamChannel != null && streamChannel.isOpen()) streamChannel.close();
+            } catch (IOException | TimeoutException e) {
+                System.err.println("Error closing stream channel: " + e.getMessage());
+            }
+        }
+        return new HistoryBatch(bodies, nextOffset);
+    }
+
+    /**
+     * Follows every partition of a stream queue from stored offsets, on a dedicated channel of this
+     * connection, receiving messages as they are appended (see {@link StreamFollower}).
+     *
+     * @param queueName   The logical name of a stream queue.
+     * @param fromOffsets The offset to follow each partition from, indexed like {@link #partitionQueues(String)}.
+     * @param handler     Called for every message with its partition and offset.
+     * @return The follower; close it to stop.
+     * @throws IOException If there is no connection, the history queues are not streams, or a subscription fails.
+     */
+    public StreamFollower followStream(String queueName, long[] fromOffsets,
+                                       StreamFollower.OffsetHandler handler) throws IOException {
+        if (!isStreamMode()) {
+            throw new IOException(queueName + " is not a stream (rabbitmq.historyQueueType=" + HISTORY_QUEUE_TYPE + ")");
+        }
+        BrokerChannel followerChannel;
+        connectionLock.lock();
+        try {
+            ensureChannelOpen();
+            if (connection == null || !connection.isOpen()) {
+                throw new IOException("No RabbitMQ connection to follow " + queueName);
+            }
+            followerChannel = connection.createChannel();
+        } finally {
+            connectionLock.unlock();
+        }
+        try {
+            return new StreamFollower(followerChannel, partitionQueues(queueName), fromOffsets, STREAM_PREFETCH, handler);
+        } catch (IOException | RuntimeException e) {
+            try {
+                if (followerChannel.isOpen()) followerChannel.close();
+            } catch (IOException | TimeoutException closeError) {
+                System.err.println("Error closing stream follower channel: " + closeError.getMessage());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Joins a consumer group over the partitions of a queue, on a dedicated channel of this connection.
+     * Start one member per process (or thread) with distinct indexes to spread the partitions.
+     *
+     * @param queueName   The logical queue name.
+     * @param memberIndex This member's index in the group (0 based).
+     * @param groupSize   The number of members in the group.
+     * @param handler     Called for every message of the member's partitions.
+     * @return The group member; close it to leave the group.
+     * @throws IOException If there is no connection or a subscription fails.
+     */
+    public ConsumerGroupMember joinConsumerGroup(String queueName, int memberIndex, int groupSize,
+                                                 ConsumerGroupMember.PartitionHandler handler) throws IOException {
+        BrokerChannel memberChannel;
+        connectionLock.lock();
+        try {
+            ensureChannelOpen();
+            if (connection == null || !connection.isOpen()) {
+                throw new IOException("No RabbitMQ connection to join the consumer group for " + queueName);
+            }
+            memberChannel = connection.createChannel();
+        } finally {
+            connectionLock.unlock();
+        }
+        boolean stream = isStreamMode() && (TRANSACTIONS_QUEUE.equals(queueName) || CITATIONS_QUEUE.equals(queueName));
+        try {
+            return new ConsumerGroupMember(memberChannel, partitionQueues(queueName), memberIndex, groupSize,
+                    STREAM_PREFETCH, stream, handler);
+        } catch (IOException | RuntimeException e) {
+            try {
+                if (memberChannel.isOpen()) memberChannel.close();
+            } catch (IOException | TimeoutException closeError) {
+                System.err.println("Error closing consumer group channel: " + closeError.getMessage());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Subscribes to a fanout exchange: every subscriber gets its own copy of each message, on a
+     * server-named queue that lives as long as this connection. Messages published while not
+     * subscribed are not received, so after a reconnect the caller must assume it missed some.
+     *
+     * @param exchange The fanout exchange, e.g. {@link #OCCUPANCY_EXCHANGE}.
+     * @param handler  Called for every message.
+     * @return The subscription; close it to stop receiving.
+     * @throws IOException If there is no connection or the subscription fails.
+     */
+    public ConsumerGroupMember subscribe(String exchange, Consumer<byte[]> handler) throws IOException {
+        BrokerChannel subscriberChannel;
+        connectionLock.lock();
+        try {
+            ensureChannelOpen();
+            if (connection == null || !connection.isOpen()) {
+                throw new IOException("No RabbitMQ connection to subscribe to " + exchange);
+            }
+            subscriberChannel = connection.createChannel();
+        } finally {
+            connectionLock.unlock();
+        }
+        try {
+            subscriberChannel.exchangeDeclare(exchange, "fanout");
+            String queue = subscriberChannel.queueDeclareExclusive();
+            subscriberChannel.queueBind(queue, exchange, "");
+            return new ConsumerGroupMember(subscriberChannel, List.of(queue), 0, 1, STREAM_PREFETCH, false,
+                    (partition, body) -> handler.accept(body));
+        } catch (IOException | RuntimeException e) {
+            try {
+                if (subscriberChannel.isOpen()) subscriberChannel.close();
+            } catch (IOException | TimeoutException closeError) {
+                System.err.println("Error closing subscriber channel: " + closeError.getMessage());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a reply queue on this connection: a server-named exclusive queue with one consumer
+     * that hands each reply to the request with the same correlation ID.
+     * The queue lives as long as the connection; after a reconnect open a new one.
+     *
+     * @return The reply queue.
+     * @throws IOException If there is no connection or the queue cannot be declared.
+     */
+    public ReplyQueue openReplyQueue() throws IOException {
+        BrokerChannel replyChannel;
+        connectionLock.lock();
+        try {
+            ensureChannelOpen();
+            if (connection == null || !connection.isOpen()) {
+                throw new IOException("No RabbitMQ connection to open a reply queue on");
+            }
+            replyChannel = connection.createChannel();
+        } finally {
+            connectionLock.unlock();
+        }
+        try {
+            return new ReplyQueue(replyChannel);
+        } catch (IOException | RuntimeException e) {
+            try {
+                if (replyChannel.isOpen()) replyChannel.close();
+            } catch (IOException | TimeoutException closeError) {
+                System.err.println("Error closing reply channel: " + closeError.getMessage());
             }
-        }).start();
+            throw e;
+        }
     }
 
     /**
-     * Closes the RabbitMQ connection and attempts to reconnect.
+     * Ensures the RabbitMQ channel is open before performing operations.
+     * If it is not, a reconnect is handed to the {@link ReconnectSupervisor}.
+     */
+    private void ensureChannelOpen() {
+        closed = false; // Using the connection again re-enables reconnects
+        if (!isChannelOpen()) requestReconnect();
+    }
+
+    private boolean isChannelOpen() {
+        return channel != null && channel.isOpen();
+    }
+
+    /**
+     * Asks the process-wide supervisor to restore this connection (at most one attempt is in flight).
+     */
+    private void requestReconnect() {
+        ReconnectSupervisor.getInstance().requestReconnect(this);
+    }
+
+    /**
+     * Called by the {@link ReconnectSupervisor}: makes one reconnect attempt.
+     *
+     * @return True if the channel is open afterwards.
+     */
+    boolean tryReconnect() {
+        connectionLock.lock();
+        try {
+            if (isChannelOpen()) return true;
+            reconnect();
+            return isChannelOpen();
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether the owner has closed this connection.
+     *
+     * @return True after {@link #closeConnection()} until the connection is used again.
+     */
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Closes the RabbitMQ connection and reconnects, to the pinned node if there is one.
      */
     private void reconnect() {
-        closeConnection();
-        connectToCluster();
+        disconnect();
+        if (pinnedNode != null) {
+            if (!connectToNode(pinnedNode)) {
+                throw new RuntimeException("Failed to reconnect to RabbitMQ node " + pinnedNode);
+            }
+        } else {
+            connectToCluster();
+        }
     }
 
     /**
      * Closes the RabbitMQ connection safely.
+     * Stops any pending reconnect; messages still in the outbox stay there until the connection
+     * is used again.
      */
     public void closeConnection() {
+        closed = true;
+        connectionLock.lock();
+        try {
+            disconnect();
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+
+    /**
+     * Closes the channel and connection and releases the node in the health tracker.
+     */
+    private void disconnect() {
+        if (connectedNode != null) {
+            NODE_HEALTH.connectionClosed(connectedNode);
+            connectedNode = null;
+        }
         try {
             if (channel != null && channel.isOpen()) channel.close();
             if (connection != null && connection.isOpen()) connection.close();
@@ -248,7 +1070,7 @@ public class RabbitMQUtil {
     public String getConnectedServer() {
         try {
             if (connection != null && connection.isOpen()) {
-                return "Connected to RabbitMQ node: " + connection.getAddress().getHostAddress();
+                return "Connected to RabbitMQ node: " + connection.getHostAddress();
             }
         } catch (Exception e) {
             System.err.println("Error retrieving RabbitMQ connection details: " + e.getMessage());
@@ -258,12 +1080,15 @@ public class RabbitMQUtil {
     }
 
     public void purgeQueue(String queueName) {
+        connectionLock.lock();
         try {
             ensureChannelOpen();
             channel.queuePurge(queueName);
             System.out.println("Queue " + queueName + " has been purged successfully.");
         } catch (IOException e) {
             System.err.println("Error purging queue " + queueName + ": " + e.getMessage());
+        } finally {
+            connectionLock.unlock();
         }
     }
 
@@ -0,0 +1,99 @@
+package com.example.shared.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide supervisor that reconnects broken {@link RabbitMQUtil} connections.
+ *
+ * All reconnects run on one daemon thread, and each connection has at most one attempt scheduled
+ * at a time, so a broker outage cannot spawn a thread per failed send. Attempts are spaced with
+ * jittered exponential backoff ("full jitter": a random delay up to {@code BASE * 2^attempt},
+ * capped at {@link #MAX_BACKOFF_MS}) so that many clients do not reconnect in lockstep.
+ * After a successful reconnect the connection's outbox is flushed in order.
+ */
+public final class ReconnectSupervisor {
+
+    private static final ReconnectSupervisor INSTANCE = new ReconnectSupervisor();
+
+    // Backoff bounds for reconnect attempts (milliseconds)
+    private static final long MIN_BACKOFF_MS = 100;
+    private static final long BASE_BACKOFF_MS = 500;
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "rabbitmq-reconnect-supervisor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Connections with a reconnect scheduled, mapped to the number of failed attempts so far
+    private final Map<RabbitMQUtil, Integer> pending = new ConcurrentHashMap<>();
+
+    private ReconnectSupervisor() {
+    }
+
+    /**
+     * Returns the supervisor for this process.
+     *
+     * @return The shared supervisor.
+     */
+    public static ReconnectSupervisor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Schedules a reconnect for the given connection, unless one is already scheduled.
+     *
+     * @param rabbitMQUtil The connection to restore.
+     */
+    public void requestReconnect(RabbitMQUtil rabbitMQUtil) {
+        if (pending.putIfAbsent(rabbitMQUtil, 0) == null) {
+            schedule(rabbitMQUtil, 0);
+        }
+    }
+
+    /**
+     * Returns the number of connections currently waiting to be reconnected.
+     *
+     * @return The number of pending reconnects.
+     */
+    public int pendingReconnects() {
+        return pending.size();
+    }
+
+    private void schedule(RabbitMQUtil rabbitMQUtil, int attempt) {
+        scheduler.schedule(() -> attempt(rabbitMQUtil, attempt), backoffMs(attempt), TimeUnit.MILLISECONDS);
+    }
+
+    private void attempt(RabbitMQUtil rabbitMQUtil, int attempt) {
+        if (rabbitMQUtil.isClosed()) {
+            pending.remove(rabbitMQUtil); // Closed by its owner, stop trying
+            return;
+        }
+        boolean connected;
+        try {
+            connected = rabbitMQUtil.tryReconnect();
+        } catch (RuntimeException e) {
+            connected = false;
+        }
+
+        if (connected) {
+            pending.remove(rabbitMQUtil);
+            rabbitMQUtil.flushOutbox();
+        } else {
+            System.err.println(" Reconnect attempt " + (attempt + 1) + " failed, retrying with backoff.");
+            pending.put(rabbitMQUtil, attempt + 1);
+            schedule(rabbitMQUtil, attempt + 1);
+        }
+    }
+
+    private static long backoffMs(int attempt) {
+        long ceiling = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(attempt, 16));
+        return MIN_BACKOFF_MS + ThreadLocalRandom.current().nextLong(ceiling);
+    }
+}
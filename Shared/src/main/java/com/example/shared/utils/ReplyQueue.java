@@ -0,0 +1,207 @@
+package com.example.shared.utils;
+
+import com.example.shared.utils.BrokerTransport.BrokerChannel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A private reply queue for request/reply over the broker (see {@link RabbitMQUtil#openReplyQueue()}).
+ *
+ * The queue is server-named and exclusive to its connection, so no other client reads from it or
+ * purges it. Each request registers a correlation ID with {@link #expect(int)}, and responders
+ * publish to {@link #getQueueName()} with that ID ({@link RabbitMQUtil#sendReply(String, String, String)}).
+ * One consumer demultiplexes the replies in memory into their {@link PendingRequest}, so any
+ * number of requests can share the queue concurrently. Replies for requests that are already
+ * closed (past their deadline) are counted and dropped.
+ *
+ * The queue does not survive a lost connection: check {@link #isOpen()} and open a new one.
+ */
+public class ReplyQueue implements AutoCloseable {
+
+    /**
+     * The replies of one request, collected until the expected number arrived or the caller gives up.
+     */
+    public final class PendingRequest implements AutoCloseable {
+        private final String correlationId;
+        private final List<byte[]> replies = new ArrayList<>();
+        private int expected;
+
+        private PendingRequest(String correlationId, int expected) {
+            this.correlationId = correlationId;
+            this.expected = expected;
+        }
+
+        /**
+         * Returns the correlation ID responders must tag their replies with.
+         *
+         * @return The correlation ID.
+         */
+        public String correlationId() {
+            return correlationId;
+        }
+
+        /**
+         * Lowers the number of expected replies, e.g. when a responder is known not to answer,
+         * so {@link #awaitReplies(long)} returns without waiting for it.
+         */
+        public synchronized void expectFewer() {
+            expected--;
+            notifyAll();
+        }
+
+        /**
+         * Waits until all expected replies arrived or the deadline passed.
+         *
+         * @param deadlineNanos The deadline, in {@link System#nanoTime()} terms.
+         * @return The replies received so far, in arrival order.
+         * @throws InterruptedException If the wait was interrupted.
+         */
+        public synchronized List<byte[]> awaitReplies(long deadlineNanos) throws InterruptedException {
+            long remaining;
+            while (replies.size() < expected && (remaining = deadlineNanos - System.nanoTime()) > 0) {
+                long millis = remaining / 1_000_000;
+                wait(millis, (int) (remaining % 1_000_000));
+            }
+            return new ArrayList<>(replies);
+        }
+
+        /**
+         * Waits for one reply, for callers that act on each reply as it arrives. Also returns early
+         * when fewer replies are expected than before, so the caller can re-check whether waiting
+         * is still worthwhile.
+         *
+         * @param index         The position of the reply in arrival order (0 for the first).
+         * @param deadlineNanos The deadline, in {@link System#nanoTime()} terms.
+         * @return The reply, or null if the deadline passed or the expected number of replies dropped.
+         * @throws InterruptedException If the wait was interrupted.
+         */
+        public synchronized byte[] awaitReply(int index, long deadlineNanos) throws InterruptedException {
+            int expectedBefore = expected;
+            long remaining;
+            while (replies.size() <= index && expected == expectedBefore && index < expected
+                    && (remaining = deadlineNanos - System.nanoTime()) > 0) {
+                long millis = remaining / 1_000_000;
+                wait(millis, (int) (remaining % 1_000_000));
+            }
+            return index < replies.size() ? replies.get(index) : null;
+        }
+
+        /**
+         * Returns the replies received so far without waiting.
+         *
+         * @return The replies, in arrival order.
+         */
+        public synchronized List<byte[]> replies() {
+            return new ArrayList<>(replies);
+        }
+
+        private synchronized void add(byte[] body) {
+            replies.add(body);
+            notifyAll();
+        }
+
+        /**
+         * Unregisters the request. Replies that arrive later are dropped.
+         */
+        @Override
+        public void close() {
+            pending.remove(correlationId);
+        }
+    }
+
+    private final BrokerChannel channel;
+    private final String queueName;
+    private final Map<String, PendingRequest> pending = new ConcurrentHashMap<>();
+    private final AtomicLong lateReplies = new AtomicLong();
+
+    /**
+     * Declares the reply queue and starts consuming it.
+     *
+     * @param channel A dedicated channel, owned (and closed) by this reply queue.
+     * @throws IOException If the queue cannot be declared or consumed.
+     */
+    ReplyQueue(BrokerChannel channel) throws IOException {
+        this.channel = channel;
+        this.queueName = channel.queueDeclareExclusive();
+        channel.basicQos(0);
+        channel.basicConsume(queueName, Map.of(), (consumerTag, delivery) -> {
+            channel.basicAck(delivery.deliveryTag());
+            PendingRequest request = delivery.correlationId() == null ? null : pending.get(delivery.correlationId());
+            if (request == null) {
+                lateReplies.incrementAndGet();
+                return;
+            }
+            request.add(delivery.body());
+        });
+        System.out.println("Opened reply queue " + queueName);
+    }
+
+    /**
+     * Returns the name responders publish replies to.
+     *
+     * @return The reply queue name.
+     */
+    public String getQueueName() {
+        return queueName;
+    }
+
+    /**
+     * Registers a new request with a fresh correlation ID. Close it when done.
+     *
+     * @param expectedReplies The number of replies after which {@link PendingRequest#awaitReplies(long)} returns.
+     * @return The pending request.
+     */
+    public PendingRequest expect(int expectedReplies) {
+        PendingRequest request = new PendingRequest(UUID.randomUUID().toString(), expectedReplies);
+        pending.put(request.correlationId(), request);
+        return request;
+    }
+
+    /**
+     * Returns the number of requests waiting for replies.
+     *
+     * @return The in-flight request count.
+     */
+    public int getInFlightCount() {
+        return pending.size();
+    }
+
+    /**
+     * Returns the number of replies dropped because their request was closed or unknown.
+     *
+     * @return The late reply count.
+     */
+    public long getLateReplyCount() {
+        return lateReplies.get();
+    }
+
+    /**
+     * Checks whether replies are still being received.
+     *
+     * @return True while the channel is open.
+     */
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * Closes the channel. The queue itself goes away with its connection.
+     */
+    @Override
+    public void close() {
+        try {
+            if (channel.isOpen()) {
+                channel.close();
+            }
+        } catch (IOException | TimeoutException e) {
+            System.err.println(" Error closing reply queue " + queueName + ": " + e.getMessage());
+        }
+    }
+}
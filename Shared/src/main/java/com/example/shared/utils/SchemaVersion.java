@@ -0,0 +1,205 @@
+package com.example.shared.utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+
+/**
+ * The version of the database schema, as recorded by the migrations of the Database module in
+ * the {@code SchemaVersion} table.
+ *
+ * The services need it while the varchar columns {@code ParkingSpaces.Occupied} and
+ * {@code ParkingEvents.StartTime/EndTime} are converted to native types online: between
+ * {@link #NATIVE_COLUMNS_ADDED} and {@link #NATIVE_COLUMNS_SWAPPED} every write must also set the
+ * native shadow column ({@code OccupiedFlag}, {@code StartAt}, {@code EndAt}), so the backfill
+ * and the final swap do not lose changes. The version is cached and re-read every
+ * {@code schema.refreshMs} (10 s), and at once after an "unknown column" error. A failed re-read
+ * keeps the last version read; until one has been read, the version is unknown and the callers
+ * fail rather than guess a phase (guessing 0 would silently stop the dual-write).
+ * Every read is reported in the {@code SchemaWriters} table, so the migrations can tell when every
+ * running process has seen a version before they depend on it.
+ */
+public final class SchemaVersion {
+
+    /**
+     * From this version on the outbox tables of {@link TransactionalOutbox} exist.
+     */
+    public static final int OUTBOX_TABLES = 1;
+
+    /**
+     * From this version on parkingspaces has the Latitude and Longitude columns of the recommender's space index.
+     */
+    public static final int SPACE_COORDINATES = 2;
+
+    /**
+     * From this version on the native shadow columns exist and writes set them too.
+     */
+    public static final int NATIVE_COLUMNS_ADDED = 4;
+
+    /**
+     * From this version on the legacy columns are gone and the native ones have taken their names.
+     */
+    public static final int NATIVE_COLUMNS_SWAPPED = 7;
+
+    /**
+     * From this version on parkingspaces and parkingevents are partitioned by ZoneID, and every
+     * parking event carries the ZoneID of its space.
+     */
+    public static final int ZONE_PARTITIONED = 8;
+
+    /**
+     * How long the version read by a process is used before it is read again (in milliseconds).
+     */
+    public static final long REFRESH_MS = Long.getLong("schema.refreshMs", 10_000);
+
+    private static final long REFRESH_NANOS = REFRESH_MS * 1_000_000;
+
+    // MySQL error codes
+    private static final int NO_SUCH_TABLE = 1146;
+    private static final int UNKNOWN_COLUMN = 1054;
+
+    private static final String REPORT_SQL = """
+            INSERT INTO SchemaWriters (Writer, Version, SeenAt) VALUES (?, ?, NOW(3))
+            ON DUPLICATE KEY UPDATE Version = VALUES(Version), SeenAt = VALUES(SeenAt)
+            """;
+
+    // This process in SchemaWriters
+    private static final String WRITER = ProcessHandle.current().pid() + "-" + UUID.randomUUID();
+
+    private static volatile int version = -1;        // -1 until read
+    private static volatile long readAt;
+    private static volatile SQLException readError;  // Why the version could not be read yet
+
+    private SchemaVersion() {
+    }
+
+    /**
+     * Returns the schema version, re-reading it when the cached value is older than
+     * {@code schema.refreshMs}.
+     *
+     * @return The highest applied migration, 0 before the first one; the last one read if the
+     *         version cannot be re-read now.
+     * @throws SQLException If the version has never been read and cannot be read now.
+     */
+    public static int current() throws SQLException {
+        if (version < 0 || System.nanoTime() - readAt > REFRESH_NANOS) {
+            refresh();
+        }
+        int v = version;
+        if (v < 0) {
+            throw new SQLException("The schema version is not known yet", readError);
+        }
+        return v;
+    }
+
+    /**
+     * Checks whether writes must set the native shadow columns as well as the legacy ones.
+     *
+     * @return True between {@link #NATIVE_COLUMNS_ADDED} and {@link #NATIVE_COLUMNS_SWAPPED}.
+     * @throws SQLException If the version is not known.
+     */
+    public static boolean dualWrite() throws SQLException {
+        int v = current();
+        return v >= NATIVE_COLUMNS_ADDED && v < NATIVE_COLUMNS_SWAPPED;
+    }
+
+    /**
+     * Checks whether the parking tables are partitioned by zone, so new events need their ZoneID.
+     *
+     * @return True from {@link #ZONE_PARTITIONED} on.
+     * @throws SQLException If the version is not known.
+     */
+    public static boolean zonePartitioned() throws SQLException {
+        return current() >= ZONE_PARTITIONED;
+    }
+
+    /**
+     * Fails unless the schema has a version, so code that needs a migrated table says what is
+     * missing instead of failing on it.
+     *
+     * @param required The version the caller needs, e.g. {@link #OUTBOX_TABLES}.
+     * @param what     What needs it, for the message.
+     * @throws SQLException If the schema is older, or its version is not known.
+     */
+    public static void require(int required, String what) throws SQLException {
+        int v = current();
+        if (v < required) {
+            throw new SQLException(what + " needs schema version " + required + " but the database is at " + v
+                    + "; run the migrations of the Database module");
+        }
+    }
+
+    /**
+     * Re-reads the version if a statement failed because a column came or went, e.g. the shadow
+     * columns were just renamed, so the next call uses the right statement.
+     *
+     * @param e The error of the failed statement.
+     */
+    public static void onError(SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLException sql && sql.getErrorCode() == UNKNOWN_COLUMN) {
+                refresh();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads the version from the database now and reports it. If that fails, the last version read
+     * is kept.
+     */
+    public static synchronized void refresh() {
+        try (Connection conn = DatabaseUtil.connect()) {
+            version = read(conn);
+            readError = null;
+            report(conn, version);
+        } catch (SQLException e) {
+            if (version < 0) {
+                readError = e;
+                System.err.println("❌ Could not read the schema version: " + e.getMessage());
+            } else {
+                System.err.println("❌ Could not re-read the schema version, keeping version " + version + ": " + e.getMessage());
+            }
+        }
+        readAt = System.nanoTime(); // Also after a failure, so a database outage does not cause a query per write
+    }
+
+    /**
+     * Records that this process uses a version until its next refresh. Before the migrations have
+     * created the SchemaWriters table there is nothing to report to. A failed report only delays
+     * the migration waiting for it.
+     */
+    private static void report(Connection conn, int v) {
+        try (PreparedStatement stmt = conn.prepareStatement(REPORT_SQL)) {
+            stmt.setString(1, WRITER);
+            stmt.setInt(2, v);
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            if (e.getErrorCode() != NO_SUCH_TABLE) {
+                System.err.println("❌ Could not report schema version " + v + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reads the version on a connection.
+     *
+     * @param conn An open connection.
+     * @return The highest applied migration, 0 if none (or no SchemaVersion table).
+     * @throws SQLException If the query fails for another reason.
+     */
+    public static int read(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(Version) FROM SchemaVersion")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            if (e.getErrorCode() == NO_SUCH_TABLE) {
+                return 0;
+            }
+            throw e;
+        }
+    }
+}
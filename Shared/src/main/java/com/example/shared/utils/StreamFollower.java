@@ -0,0 +1,109 @@
+package com.example.shared.utils;
+
+import com.example.shared.utils.BrokerTransport.BrokerChannel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A long-lived, non-destructive subscription to every partition of a stream queue
+ * (see {@link RabbitMQUtil#followStream(String, long[], OffsetHandler)}).
+ *
+ * Unlike {@link RabbitMQUtil#readStream(String, long)}, which reads up to the current end and
+ * detaches, a follower stays attached and receives each message as it is appended. Every message
+ * is handed over with its offset, so the caller can store the offsets and resume from them later.
+ * Messages of a partition arrive in stream order; all partitions share one channel.
+ *
+ * The follower does not survive a lost connection: check {@link #isOpen()} and follow again from
+ * the stored offsets.
+ */
+public class StreamFollower implements AutoCloseable {
+
+    /**
+     * Handles one message of a followed stream.
+     */
+    @FunctionalInterface
+    public interface OffsetHandler {
+        /**
+         * Processes a message.
+         *
+         * @param partition The partition the message came from.
+         * @param offset    The message's offset in its partition.
+         * @param body      The raw message body.
+         */
+        void handle(int partition, long offset, byte[] body);
+    }
+
+    private final BrokerChannel channel;
+    private final List<String> consumerTags = new ArrayList<>();
+
+    /**
+     * Subscribes to every partition from its offset.
+     *
+     * @param channel         A dedicated channel, owned (and closed) by this follower.
+     * @param partitionQueues The partition queues of the stream, in partition order.
+     * @param fromOffsets     The first offset to receive of each partition.
+     * @param prefetch        The number of unacked messages the channel may hold.
+     * @param handler         The message handler.
+     * @throws IOException If a subscription fails.
+     */
+    StreamFollower(BrokerChannel channel, List<String> partitionQueues, long[] fromOffsets,
+                   int prefetch, OffsetHandler handler) throws IOException {
+        if (fromOffsets.length != partitionQueues.size()) {
+            throw new IllegalArgumentException("Expected " + partitionQueues.size() + " offsets, got " + fromOffsets.length);
+        }
+        this.channel = channel;
+        channel.basicQos(prefetch); // Streams require a prefetch and manual acks
+
+        for (int p = 0; p < partitionQueues.size(); p++) {
+            final int partition = p;
+            final long firstOffset = fromOffsets[p];
+            Map<String, Object> args = new HashMap<>();
+            args.put("x-stream-offset", firstOffset);
+            String tag = channel.basicConsume(partitionQueues.get(p), args, (consumerTag, delivery) -> {
+                Map<String, Object> headers = delivery.headers();
+                long offset = headers != null && headers.get("x-stream-offset") instanceof Long o ? o : -1;
+                try {
+                    if (offset >= firstOffset) { // The broker may start a little before the requested offset
+                        handler.handle(partition, offset, delivery.body());
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println(" Error handling stream message " + offset + " of partition " + partition + ": " + e.getMessage());
+                }
+                channel.basicAck(delivery.deliveryTag());
+            });
+            consumerTags.add(tag);
+        }
+        System.out.println("Following " + partitionQueues.size() + " stream partition(s) " + partitionQueues);
+    }
+
+    /**
+     * Checks whether messages are still being received.
+     *
+     * @return True while the channel is open.
+     */
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * Cancels the subscriptions and closes the channel.
+     */
+    @Override
+    public void close() {
+        try {
+            if (channel.isOpen()) {
+                for (String tag : consumerTags) {
+                    channel.basicCancel(tag);
+                }
+                channel.close();
+            }
+        } catch (IOException | TimeoutException e) {
+            System.err.println(" Error closing stream follower: " + e.getMessage());
+        }
+    }
+}
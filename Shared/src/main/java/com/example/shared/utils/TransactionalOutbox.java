@@ -0,0 +1,369 @@
+package com.example.shared.utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Database outbox for messages that must not diverge from the rows they describe.
+ *
+ * A service writes its business rows (e.g. the completed ParkingEvent or a Citation) and the
+ * matching queue message with {@link #enqueue(Connection, String, String)} on the same connection,
+ * inside the same transaction. Either both are committed or neither is. The {@link OutboxRelay}
+ * then publishes committed rows to RabbitMQ and deletes them once the broker has confirmed them.
+ *
+ * Messages with the same partition key (the ZoneID) are published in the order their transactions
+ * committed. The AUTO_INCREMENT OutboxID cannot give that order: NDB hands out ID ranges per SQL
+ * node, and IDs are taken at insert, not at commit. Instead each message takes the next number of
+ * its key's row in OutboxSequence, whose lock is held until the transaction ends. So a key's
+ * numbers are given out in commit order, a rolled-back transaction gives its number back, and the
+ * committed rows of a key always carry the numbers from the lowest one up, without gaps. Messages
+ * without a key share one sequence. A transaction that enqueues for several keys takes their rows
+ * with {@link #lockSequences(Connection, String...)} first, in a fixed order, so two such
+ * transactions cannot wait for each other.
+ *
+ * The relay reads a batch without scanning the table: OutboxCursor holds, per key, the lowest
+ * number not relayed yet, so the sequence and cursor rows tell how many rows each key has waiting.
+ * The batch is shared among those keys, and each key's share is read from its cursor up through
+ * the (PartitionKey, Seq) index; deleting the relayed rows moves the cursors past them.
+ *
+ * Table layout (created by migration {@link SchemaVersion#OUTBOX_TABLES} of the Database module):
+ * <pre>
+ * OutboxMessages(OutboxID BIGINT AUTO_INCREMENT, QueueName, PartitionKey, Seq, Payload, CreatedAt epoch-ms)
+ *                                                         -- indexed by (PartitionKey, Seq); '' for no key
+ * OutboxSequence(PartitionKey, NextSeq)                   -- one row per key: the number of its next message
+ * OutboxCursor(PartitionKey, NextSeq)                     -- one row per key: its lowest number not relayed
+ * OutboxRelayLease(LeaseID, Owner, LeaseUntil epoch-ms)   -- one row, held by the active relay
+ * </pre>
+ */
+public class TransactionalOutbox {
+
+    private static final String NEXT_SEQ =
+            "UPDATE OutboxSequence SET NextSeq = NextSeq + 1 WHERE PartitionKey = ?";
+
+    private static final String NEW_SEQ =
+            "INSERT IGNORE INTO OutboxSequence (PartitionKey, NextSeq) VALUES (?, 0)";
+
+    private static final String INSERT_MESSAGE =
+            "INSERT INTO OutboxMessages (QueueName, PartitionKey, Seq, Payload, CreatedAt) "
+                    + "SELECT ?, PartitionKey, NextSeq - 1, ?, ? FROM OutboxSequence WHERE PartitionKey = ?";
+
+    private static final String LOCK_SEQ =
+            "SELECT NextSeq FROM OutboxSequence WHERE PartitionKey = ? FOR UPDATE";
+
+    // The keys with committed rows not relayed yet; a key without a cursor row has relayed nothing
+    private static final String SELECT_PENDING =
+            "SELECT s.PartitionKey, s.NextSeq, COALESCE(c.NextSeq, 0) AS FromSeq FROM OutboxSequence s "
+                    + "LEFT JOIN OutboxCursor c ON c.PartitionKey = s.PartitionKey WHERE s.NextSeq > COALESCE(c.NextSeq, 0)";
+
+    // One key's share of a batch, a range scan of idx_outbox_partition_seq from the key's cursor
+    private static final String SELECT_KEY =
+            "(SELECT OutboxID, QueueName, PartitionKey, Seq, Payload, CreatedAt FROM OutboxMessages "
+                    + "WHERE PartitionKey = ? AND Seq >= ? ORDER BY Seq LIMIT ?)";
+
+    private static final String ADVANCE_CURSOR =
+            "INSERT INTO OutboxCursor (PartitionKey, NextSeq) VALUES (?, ?) "
+                    + "ON DUPLICATE KEY UPDATE NextSeq = GREATEST(NextSeq, VALUES(NextSeq))";
+
+    /**
+     * A committed outbox row waiting to be published.
+     *
+     * @param id           The outbox row ID.
+     * @param queueName    The destination queue.
+     * @param partitionKey The partition key (the ZoneID), or null.
+     * @param seq          The message's number in its partition key's sequence.
+     * @param payload      The message text.
+     * @param createdAt    When the row was written (epoch milliseconds).
+     */
+    public record OutboxMessage(long id, String queueName, String partitionKey, long seq, String payload, long createdAt) {
+    }
+
+    /**
+     * Writes a message to the outbox on the caller's connection.
+     * Must be called inside the caller's transaction, so the message commits or rolls back
+     * together with the business rows.
+     *
+     * @param conn      The connection holding the open transaction.
+     * @param queueName The destination queue.
+     * @param payload   The message text.
+     * @throws SQLException If the row cannot be inserted.
+     */
+    public static void enqueue(Connection conn, String queueName, String payload) throws SQLException {
+        enqueue(conn, queueName, null, payload);
+    }
+
+    /**
+     * Writes a message with a partition key to the outbox on the caller's connection.
+     * The relay publishes it to the partition the key hashes to (see {@link RabbitMQUtil#sendMessage(String, String, String)}),
+     * after the messages with the same key that committed before it. Other transactions enqueuing
+     * for the key wait for this one to end.
+     *
+     * @param conn         The connection holding the open transaction.
+     * @param queueName    The destination queue.
+     * @param partitionKey The partition key, e.g. the ZoneID (may be null).
+     * @param payload      The message text.
+     * @throws SQLException If the row cannot be inserted, or the schema has no outbox yet.
+     */
+    public static void enqueue(Connection conn, String queueName, String partitionKey, String payload) throws SQLException {
+        SchemaVersion.require(SchemaVersion.OUTBOX_TABLES, "The outbox");
+        String sequence = partitionKey == null ? "" : partitionKey;
+        try (PreparedStatement stmt = conn.prepareStatement(NEXT_SEQ)) {
+            stmt.setString(1, sequence);
+            if (stmt.executeUpdate() == 0) {
+                try (PreparedStatement create = conn.prepareStatement(NEW_SEQ)) {
+                    create.setString(1, sequence);
+                    create.executeUpdate(); // Ignored if a concurrent transaction created it first
+                }
+                stmt.executeUpdate();
+            }
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_MESSAGE)) {
+            stmt.setString(1, queueName);
+            stmt.setString(2, payload);
+            stmt.setLong(3, System.currentTimeMillis());
+            stmt.setString(4, sequence);
+            if (stmt.executeUpdate() != 1) {
+                throw new SQLException("No outbox sequence for partition key " + sequence);
+            }
+        }
+    }
+
+    /**
+     * Takes the sequence rows of several partition keys, creating missing ones, in key order.
+     * A transaction that enqueues for more than one key calls this before its first enqueue, so
+     * every such transaction waits for the rows in the same order and none holds one row while
+     * waiting for another that is held the other way round.
+     *
+     * @param conn          The connection holding the open transaction.
+     * @param partitionKeys The partition keys the transaction will enqueue for (nulls and repeats allowed).
+     * @throws SQLException If the rows cannot be locked.
+     */
+    public static void lockSequences(Connection conn, String... partitionKeys) throws SQLException {
+        SortedSet<String> sequences = new TreeSet<>();
+        for (String partitionKey : partitionKeys) {
+            sequences.add(partitionKey == null ? "" : partitionKey);
+        }
+        for (String sequence : sequences) {
+            try (PreparedStatement stmt = conn.prepareStatement(LOCK_SEQ)) {
+                stmt.setString(1, sequence);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        continue;
+                    }
+                }
+                try (PreparedStatement create = conn.prepareStatement(NEW_SEQ)) {
+                    create.setString(1, sequence);
+                    create.executeUpdate(); // Ignored if a concurrent transaction created it first
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the oldest committed outbox rows: for every partition key with rows waiting, its
+     * lowest sequence numbers. Published in the order returned, each key's messages reach the
+     * broker in commit order.
+     *
+     * @param conn      An open connection.
+     * @param batchSize The maximum number of rows to read.
+     * @return The rows, in sequence order per partition key.
+     * @throws SQLException If the rows cannot be read.
+     */
+    public static List<OutboxMessage> readBatch(Connection conn, int batchSize) throws SQLException {
+        List<String> keys = new ArrayList<>();
+        List<Long> fromSeqs = new ArrayList<>();
+        List<Long> pending = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT_PENDING);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                keys.add(rs.getString("PartitionKey"));
+                fromSeqs.add(rs.getLong("FromSeq"));
+                pending.add(rs.getLong("NextSeq") - rs.getLong("FromSeq"));
+            }
+        }
+        List<OutboxMessage> batch = new ArrayList<>();
+        if (keys.isEmpty()) {
+            return batch;
+        }
+        int[] shares = shareBatch(pending.stream().mapToLong(Long::longValue).toArray(), batchSize,
+                ThreadLocalRandom.current().nextInt(keys.size()));
+
+        StringBuilder sql = new StringBuilder();
+        for (int share : shares) {
+            if (share > 0) {
+                sql.append(sql.length() == 0 ? "" : " UNION ALL ").append(SELECT_KEY);
+            }
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            int parameter = 1;
+            for (int i = 0; i < shares.length; i++) {
+                if (shares[i] > 0) {
+                    stmt.setString(parameter++, keys.get(i));
+                    stmt.setLong(parameter++, fromSeqs.get(i));
+                    stmt.setInt(parameter++, shares[i]);
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String partitionKey = rs.getString("PartitionKey");
+                    batch.add(new OutboxMessage(
+                            rs.getLong("OutboxID"),
+                            rs.getString("QueueName"),
+                            partitionKey.isEmpty() ? null : partitionKey,
+                            rs.getLong("Seq"),
+                            rs.getString("Payload"),
+                            rs.getLong("CreatedAt")
+                    ));
+                }
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Shares a batch among the keys with rows waiting: each round, every key that still has rows
+     * gets an equal part of what is left, so a busy zone does not hold back the quiet ones, and
+     * what a quiet zone cannot use goes to the busy ones.
+     *
+     * @param pending   The number of rows waiting per key.
+     * @param batchSize The size of the batch.
+     * @param first     The key served first when there are more keys than rows to share.
+     * @return The number of rows to read per key.
+     */
+    static int[] shareBatch(long[] pending, int batchSize, int first) {
+        int[] shares = new int[pending.length];
+        int left = batchSize;
+        int open = (int) Arrays.stream(pending).filter(count -> count > 0).count();
+        while (left > 0 && open > 0) {
+            int part = Math.max(1, left / open);
+            open = 0;
+            for (int n = 0; n < pending.length && left > 0; n++) {
+                int i = (first + n) % pending.length;
+                long wanted = pending[i] - shares[i];
+                if (wanted > 0) {
+                    int taken = (int) Math.min(Math.min(wanted, part), left);
+                    shares[i] += taken;
+                    left -= taken;
+                    if (wanted > taken) {
+                        open++;
+                    }
+                }
+            }
+        }
+        return shares;
+    }
+
+    /**
+     * Deletes published rows by ID, then moves each key's cursor past them, so the next batch is
+     * read from the rows after them. IDs are listed explicitly rather than as a range, so a row
+     * with a lower ID that committed late is never deleted before it has been published. A cursor
+     * left behind (e.g. by a crash between the two statements) only makes the next read start lower.
+     *
+     * @param conn  An open connection.
+     * @param batch The rows that the broker has confirmed.
+     * @throws SQLException If the rows cannot be deleted.
+     */
+    public static void deleteBatch(Connection conn, List<OutboxMessage> batch) throws SQLException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        StringBuilder sql = new StringBuilder("DELETE FROM OutboxMessages WHERE OutboxID IN (");
+        SortedMap<String, Long> cursors = new TreeMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            sql.append(i == 0 ? "?" : ",?");
+            OutboxMessage message = batch.get(i);
+            cursors.merge(message.partitionKey() == null ? "" : message.partitionKey(), message.seq() + 1, Math::max);
+        }
+        sql.append(')');
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            for (int i = 0; i < batch.size(); i++) {
+                stmt.setLong(i + 1, batch.get(i).id());
+            }
+            stmt.executeUpdate();
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(ADVANCE_CURSOR)) {
+            for (Map.Entry<String, Long> cursor : cursors.entrySet()) {
+                stmt.setString(1, cursor.getKey());
+                stmt.setLong(2, cursor.getValue());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Deletes published rows, but only while the caller still holds the relay lease: the lease is
+     * renewed and the rows deleted in one transaction, which is rolled back if the lease has
+     * expired or passed to another relay. That relay then publishes the rows again and deletes them.
+     *
+     * @param conn    An open connection in auto-commit mode.
+     * @param owner   The ID of the calling relay.
+     * @param leaseMs How long the renewed lease is valid.
+     * @param batch   The rows that the broker has confirmed.
+     * @return True if the caller held the lease and the rows were deleted.
+     * @throws SQLException If the lease or the rows cannot be updated.
+     */
+    public static boolean deleteBatchIfLeaseHeld(Connection conn, String owner, long leaseMs,
+                                                 List<OutboxMessage> batch) throws SQLException {
+        long now = System.currentTimeMillis();
+        conn.setAutoCommit(false);
+        try {
+            boolean held;
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "UPDATE OutboxRelayLease SET LeaseUntil = ? WHERE LeaseID = 1 AND Owner = ? AND LeaseUntil >= ?")) {
+                stmt.setLong(1, now + leaseMs);
+                stmt.setString(2, owner);
+                stmt.setLong(3, now);
+                held = stmt.executeUpdate() == 1;
+            }
+            if (!held) {
+                conn.rollback();
+                return false;
+            }
+            deleteBatch(conn, batch);
+            conn.commit();
+            return true;
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Claims or renews the relay lease. Only the lease holder publishes, so running a relay in
+     * every process does not publish the same rows several times.
+     *
+     * @param conn    An open connection.
+     * @param owner   A unique ID for the calling relay.
+     * @param leaseMs How long the lease is valid.
+     * @return True if the caller holds the lease afterwards.
+     * @throws SQLException If the lease row cannot be updated.
+     */
+    public static boolean tryAcquireLease(Connection conn, String owner, long leaseMs) throws SQLException {
+        long now = System.currentTimeMillis();
+        String sql = "UPDATE OutboxRelayLease SET Owner = ?, LeaseUntil = ? WHERE LeaseID = 1 AND (Owner = ? OR LeaseUntil < ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, owner);
+            stmt.setLong(2, now + leaseMs);
+            stmt.setString(3, owner);
+            stmt.setLong(4, now);
+            return stmt.executeUpdate() == 1;
+        }
+    }
+}
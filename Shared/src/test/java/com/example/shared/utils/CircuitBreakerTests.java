@@ -0,0 +1,158 @@
+package com.example.shared.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for CircuitBreaker.
+ * This class drives the breaker with a test clock through tripping on latency and on errors,
+ * the half-open probe, and the growing open time.
+ */
+class CircuitBreakerTests {
+
+    private static final long THRESHOLD_MS = 100;
+    private static final long OPEN_MS = 1_000;
+    private static final long MAX_OPEN_MS = 3_000;
+
+    private final AtomicLong now = new AtomicLong();
+    private CircuitBreaker breaker;
+
+    /**
+     * Creates a breaker over the last 10 statements that opens at a p90 above 100 ms or more
+     * than half of them failed, once it has 5 of them.
+     */
+    @BeforeEach
+    void setUp() {
+        now.set(1_000_000);
+        breaker = new CircuitBreaker("test", 10, 5, 90, THRESHOLD_MS, 0.5, OPEN_MS, MAX_OPEN_MS, now::get);
+    }
+
+    private void recordSlow(int count) {
+        for (int i = 0; i < count; i++) {
+            breaker.recordSuccess((THRESHOLD_MS + 50) * 1000);
+        }
+    }
+
+    private void recordFast(int count) {
+        for (int i = 0; i < count; i++) {
+            breaker.recordSuccess(THRESHOLD_MS * 1000 / 10);
+        }
+    }
+
+    /**
+     * Tests that fast statements keep the breaker closed.
+     */
+    @Test
+    void recordSuccess_fastStatementsStayClosed() {
+        recordFast(50);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertTrue(breaker.tryAcquire());
+        assertEquals(0, breaker.trips());
+    }
+
+    /**
+     * Tests that a slow percentile opens the breaker only once enough samples are in, and that an
+     * open breaker refuses callers.
+     */
+    @Test
+    void recordSuccess_slowPercentileOpens() {
+        recordSlow(4);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state(), "Fewer than minSamples must not open the breaker.");
+        recordSlow(1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(1, breaker.trips());
+    }
+
+    /**
+     * Tests that a single slow statement among fast ones does not move the p90 over the threshold.
+     */
+    @Test
+    void recordSuccess_singleOutlierDoesNotOpen() {
+        recordFast(9);
+        recordSlow(1);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    /**
+     * Tests that more failures than the error rate allows open the breaker.
+     */
+    @Test
+    void recordFailure_errorRateOpens() {
+        recordFast(4);
+        for (int i = 0; i < 4; i++) {
+            breaker.recordFailure();
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state(), "4 of 8 failed is not more than half.");
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    /**
+     * Tests that after the open time exactly one caller probes, and a fast probe closes the
+     * breaker with an empty window.
+     */
+    @Test
+    void tryAcquire_fastProbeCloses() {
+        recordSlow(5);
+        now.addAndGet(OPEN_MS - 1);
+        assertFalse(breaker.tryAcquire(), "Still open.");
+        now.addAndGet(1);
+        assertTrue(breaker.tryAcquire(), "The first caller after the open time is the probe.");
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire(), "Only one probe at a time.");
+
+        recordFast(1);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(0, breaker.percentileMicros(), "The window starts empty after closing.");
+        recordSlow(4);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state(), "Old slow samples must not count again.");
+    }
+
+    /**
+     * Tests that a failed or slow probe opens the breaker again for twice as long, up to the cap.
+     */
+    @Test
+    void tryAcquire_failedProbesBackOff() {
+        recordSlow(5);
+        now.addAndGet(OPEN_MS);
+        assertTrue(breaker.tryAcquire());
+        breaker.recordFailure();
+
+        now.addAndGet(2 * OPEN_MS - 1);
+        assertFalse(breaker.tryAcquire(), "Open for twice as long after a failed probe.");
+        now.addAndGet(1);
+        assertTrue(breaker.tryAcquire());
+        recordSlow(1); // A slow probe counts as a failed one
+
+        now.addAndGet(MAX_OPEN_MS - 1);
+        assertFalse(breaker.tryAcquire(), "The open time is capped.");
+        now.addAndGet(1);
+        assertTrue(breaker.tryAcquire());
+        breaker.recordFailure();
+
+        now.addAndGet(MAX_OPEN_MS - 1);
+        assertFalse(breaker.tryAcquire());
+        now.addAndGet(1);
+        assertTrue(breaker.tryAcquire());
+        assertEquals(1, breaker.trips(), "Failed probes reopen the breaker without a new trip.");
+    }
+
+    /**
+     * Tests that a probe that never reports back is given up after a while, so the breaker does
+     * not stay half-open forever.
+     */
+    @Test
+    void tryAcquire_abandonedProbeIsReplaced() {
+        recordSlow(5);
+        now.addAndGet(OPEN_MS);
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        now.addAndGet(10_000);
+        assertTrue(breaker.tryAcquire(), "A new probe is let through once the old one is abandoned.");
+    }
+}
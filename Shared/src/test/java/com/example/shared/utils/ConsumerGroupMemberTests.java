@@ -0,0 +1,154 @@
+package com.example.shared.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ConsumerGroupMember.
+ * This class tests on the embedded broker, with the topology of a partitioned history queue (a
+ * consistent-hash exchange over four partition queues), that the members of a group split the
+ * partitions between them and that each zone's messages arrive on one partition, in publish order.
+ */
+class ConsumerGroupMemberTests {
+
+    private static final String NODE = "amqp://group-test";
+    private static final String EXCHANGE = "history.partitioned";
+    private static final int PARTITIONS = 4;
+
+    private BrokerTransport previousTransport;
+    private BrokerTransport.BrokerConnection connection;
+    private BrokerTransport.BrokerChannel publisher;
+    private final List<String> partitionQueues = new ArrayList<>();
+    private final List<ConsumerGroupMember> members = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        previousTransport = RabbitMQUtil.getTransport();
+        RabbitMQUtil.setTransport(new InProcessBroker());
+        connection = RabbitMQUtil.getTransport().connect(NODE);
+        publisher = connection.createChannel();
+        publisher.exchangeDeclare(EXCHANGE, "x-consistent-hash");
+        for (int p = 0; p < PARTITIONS; p++) {
+            partitionQueues.add("history." + p);
+            publisher.queueDeclare("history." + p, Map.of("x-queue-type", "quorum"));
+            publisher.queueBind("history." + p, EXCHANGE, "1");
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        members.forEach(ConsumerGroupMember::close);
+        connection.close();
+        RabbitMQUtil.setTransport(previousTransport);
+    }
+
+    private ConsumerGroupMember join(int memberIndex, int groupSize, ConsumerGroupMember.PartitionHandler handler)
+            throws Exception {
+        ConsumerGroupMember member = new ConsumerGroupMember(connection.createChannel(), partitionQueues,
+                memberIndex, groupSize, 10, false, handler);
+        members.add(member);
+        return member;
+    }
+
+    private void publish(String zone, String message) throws Exception {
+        publisher.basicPublish(EXCHANGE, zone, message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Tests that member i of n consumes the partitions p with p % n == i, and that an invalid
+     * member index is refused.
+     */
+    @Test
+    void constructor_assignsPartitionsByIndex() throws Exception {
+        assertEquals(List.of(0, 2), join(0, 2, (partition, body) -> { }).partitions());
+        assertEquals(List.of(1, 3), join(1, 2, (partition, body) -> { }).partitions());
+        assertEquals(List.of(0, 1, 2, 3), join(0, 1, (partition, body) -> { }).partitions());
+        assertThrows(IllegalArgumentException.class, () -> join(2, 2, (partition, body) -> { }));
+    }
+
+    /**
+     * Tests that two members together receive every message once, that each zone stays on one
+     * partition, and that a zone's messages arrive in the order they were published.
+     */
+    @Test
+    void handle_keepsEachZoneOnOnePartitionInOrder() throws Exception {
+        int zones = 12;
+        int perZone = 20;
+        CountDownLatch received = new CountDownLatch(zones * perZone);
+        Map<String, List<Integer>> sequences = new ConcurrentHashMap<>();
+        Map<String, Integer> partitionOfZone = new ConcurrentHashMap<>();
+        Map<Integer, Integer> memberOfPartition = new ConcurrentHashMap<>();
+        AtomicBoolean sharedPartition = new AtomicBoolean();
+        for (int m = 0; m < 2; m++) {
+            int member = m;
+            join(member, 2, (partition, body) -> {
+                String[] parts = new String(body, StandardCharsets.UTF_8).split(":");
+                if (!partitionOfZone.computeIfAbsent(parts[0], zone -> partition).equals(partition)
+                        || !memberOfPartition.computeIfAbsent(partition, p -> member).equals(member)) {
+                    sharedPartition.set(true);
+                }
+                sequences.computeIfAbsent(parts[0], zone -> new ArrayList<>()).add(Integer.parseInt(parts[1]));
+                received.countDown();
+            });
+        }
+
+        for (int i = 0; i < perZone; i++) {
+            for (int zone = 0; zone < zones; zone++) {
+                publish("zone" + zone, "zone" + zone + ":" + i);
+            }
+        }
+
+        assertTrue(received.await(5, TimeUnit.SECONDS), "Not every message arrived.");
+        assertFalse(sharedPartition.get(), "A zone moved between partitions, or a partition between members.");
+        assertEquals(zones, sequences.size());
+        for (List<Integer> sequence : sequences.values()) {
+            assertEquals(perZone, sequence.size());
+            for (int i = 0; i < perZone; i++) {
+                assertEquals(i, sequence.get(i));
+            }
+        }
+        assertTrue(partitionOfZone.values().stream().distinct().count() > 1, "All zones hashed to one partition.");
+    }
+
+    /**
+     * Tests that a message whose handler fails is delivered again (at-least-once).
+     */
+    @Test
+    void handle_redeliversFailedMessage() throws Exception {
+        List<String> handled = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(2);
+        AtomicBoolean failed = new AtomicBoolean();
+        join(0, 1, (partition, body) -> {
+            String message = new String(body, StandardCharsets.UTF_8);
+            if (message.equals("zone1:0") && failed.compareAndSet(false, true)) {
+                throw new IllegalStateException("Handler failure");
+            }
+            synchronized (handled) {
+                handled.add(message);
+            }
+            done.countDown();
+        });
+
+        publish("zone1", "zone1:0");
+        publish("zone1", "zone1:1");
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(failed.get());
+        synchronized (handled) {
+            assertEquals(2, handled.size());
+            assertTrue(handled.containsAll(List.of("zone1:0", "zone1:1")));
+        }
+    }
+}
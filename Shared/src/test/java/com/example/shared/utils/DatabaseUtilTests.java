@@ -0,0 +1,208 @@
+package com.example.shared.utils;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for DatabaseUtil.
+ * This class tests the routing between the write and the read pool: plain reads go to the read
+ * servers, writes and the reads of a session that just wrote go to the write servers. The pools
+ * are configured to a stand-in driver whose connections name the server they are connected to
+ * as their catalog. It also tests the statements that start a zone transaction.
+ */
+class DatabaseUtilTests {
+
+    private static final String WRITE_URL = "jdbc:routetest://primary/muligansystem";
+    private static final String READ_URL = "jdbc:routetest://replica/muligansystem";
+
+    private static final Driver DRIVER = new ServerNamingDriver();
+
+    /**
+     * Connects to any {@code jdbc:routetest://<server>/...} URL without a database.
+     */
+    private static final class ServerNamingDriver implements Driver {
+        @Override
+        public Connection connect(String url, Properties info) {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            String server = url.substring("jdbc:routetest://".length(), url.indexOf('/', "jdbc:routetest://".length()));
+            boolean[] state = new boolean[2]; // readOnly, closed
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (self, method, args) -> switch (method.getName()) {
+                        case "getCatalog" -> server;
+                        case "setReadOnly" -> state[0] = (Boolean) args[0];
+                        case "isReadOnly" -> state[0];
+                        case "close" -> state[1] = true;
+                        case "isClosed" -> state[1];
+                        case "isValid", "getAutoCommit" -> true;
+                        case "getTransactionIsolation" -> Connection.TRANSACTION_REPEATABLE_READ;
+                        case "getNetworkTimeout", "hashCode" -> 0;
+                        case "equals", "isWrapperFor" -> false;
+                        case "toString" -> "connection to " + server;
+                        default -> null; // Setters and the like
+                    });
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith("jdbc:routetest://");
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+
+    @BeforeAll
+    static void routeToStandIns() throws SQLException {
+        DriverManager.registerDriver(DRIVER);
+        System.setProperty("db.write.url", WRITE_URL);
+        System.setProperty("db.read.url", READ_URL);
+        DatabaseUtil.resetConnectionPool();
+    }
+
+    @AfterAll
+    static void restorePools() throws SQLException {
+        System.clearProperty("db.write.url");
+        System.clearProperty("db.read.url");
+        DatabaseUtil.resetConnectionPool();
+        DriverManager.deregisterDriver(DRIVER);
+    }
+
+    private static String serverOf(Connection conn) throws SQLException {
+        try (conn) {
+            return conn.getCatalog();
+        }
+    }
+
+    /**
+     * Tests that writes go to the write servers and reads to the read servers, on read-only connections.
+     */
+    @Test
+    void connectForRead_usesReadPool() throws Exception {
+        assertEquals("primary", serverOf(DatabaseUtil.connect()));
+        try (Connection read = DatabaseUtil.connectForRead()) {
+            assertEquals("replica", read.getCatalog());
+            assertTrue(read.isReadOnly(), "A read connection accepts writes.");
+        }
+        assertEquals("replica", serverOf(DatabaseUtil.connectForRead(null)), "No session, no writes to see.");
+    }
+
+    /**
+     * Tests that a session reads from the write servers right after it wrote, and from the read
+     * servers again once the read servers have had time to catch up.
+     */
+    @Test
+    void connectForRead_sessionReadsItsOwnWrites() throws Exception {
+        DatabaseUtil.SessionToken session = new DatabaseUtil.SessionToken();
+        assertEquals("replica", serverOf(DatabaseUtil.connectForRead(session)), "The session has not written.");
+
+        session.markWrite();
+        assertEquals("primary", serverOf(DatabaseUtil.connectForRead(session)));
+        DatabaseUtil.SessionToken other = new DatabaseUtil.SessionToken();
+        assertEquals("replica", serverOf(DatabaseUtil.connectForRead(other)), "Another session's write moved this one.");
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5); // db.read.stickyMs is 2000 by default
+        while (session.needsPrimary() && System.nanoTime() - deadline < 0) {
+            Thread.sleep(50);
+        }
+        assertEquals("replica", serverOf(DatabaseUtil.connectForRead(session)));
+    }
+
+    /**
+     * Tests that a pool that is not configured is refused rather than replaced by another.
+     */
+    @Test
+    void connect_refusesUnknownPool() {
+        SQLException e = assertThrows(SQLException.class, () -> DatabaseUtil.connect("reports"));
+        assertTrue(e.getMessage().contains("reports"), e.getMessage());
+    }
+
+    /**
+     * Returns a connection that writes every call made on it, or on its statements and results,
+     * to the journal as "method(arguments)".
+     */
+    private static Connection journaling(List<String> journal) {
+        InvocationHandler[] handler = new InvocationHandler[1];
+        handler[0] = (self, method, args) -> {
+            journal.add(method.getName() + (args == null ? "()" : Arrays.toString(args).replace('[', '(').replace(']', ')')));
+            Class<?> type = method.getReturnType();
+            if (type == PreparedStatement.class || type == ResultSet.class) {
+                return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler[0]);
+            }
+            return type == boolean.class ? true : null; // The zone exists
+        };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler[0]);
+    }
+
+    /**
+     * Tests that a zone transaction turns auto-commit off and then reads the zone's row by its
+     * primary key before anything else, so the transaction is coordinated by the zone's data node.
+     */
+    @Test
+    void beginZoneTransaction_readsZoneRowFirst() throws Exception {
+        List<String> journal = new ArrayList<>();
+        DatabaseUtil.beginZoneTransaction(journaling(journal), "Z3");
+
+        assertEquals(List.of(
+                "setAutoCommit(false)",
+                "prepareStatement(SELECT ZoneID FROM zones WHERE ZoneID = ?)",
+                "setString(1, Z3)",
+                "executeQuery()",
+                "next()",
+                "close()",
+                "close()"), journal);
+    }
+
+    /**
+     * Tests that without a zone the transaction is only started, without a hint.
+     */
+    @Test
+    void beginZoneTransaction_withoutZoneOnlyStartsTransaction() throws Exception {
+        List<String> journal = new ArrayList<>();
+        DatabaseUtil.beginZoneTransaction(journaling(journal), null);
+        assertEquals(List.of("setAutoCommit(false)"), journal);
+    }
+}
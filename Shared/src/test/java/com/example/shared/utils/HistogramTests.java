@@ -0,0 +1,87 @@
+package com.example.shared.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for Histogram.
+ * This class tests the power-of-two buckets, the percentiles read from a snapshot and that
+ * concurrent recording loses no values.
+ */
+class HistogramTests {
+
+    /**
+     * Tests that a percentile is reported as the upper end of its bucket.
+     */
+    @Test
+    void percentile_returnsBucketUpperBound() {
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < 98; i++) {
+            histogram.record(100); // Bucket [64, 128)
+        }
+        histogram.record(1000);    // Bucket [512, 1024)
+        histogram.record(5000);    // Bucket [4096, 8192)
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.count());
+        assertEquals(127, snapshot.percentile(50));
+        assertEquals(1023, snapshot.percentile(99));
+        assertEquals(8191, snapshot.percentile(100));
+    }
+
+    /**
+     * Tests that zero and negative values share the first bucket, and that an empty histogram reports 0.
+     */
+    @Test
+    void record_zeroAndNegativeInFirstBucket() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.snapshot().percentile(99));
+
+        histogram.record(0);
+        histogram.record(-5);
+        histogram.record(1);
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(2, snapshot.counts()[0]);
+        assertEquals(1, snapshot.counts()[1]);
+        assertEquals(0, snapshot.percentile(50));
+        assertEquals("n=3 p50<=0 p99<=1 max<=1 [<=0:2 <=1:1]", snapshot.format());
+    }
+
+    /**
+     * Tests that the largest values land in the last bucket instead of overflowing.
+     */
+    @Test
+    void record_largeValuesInLastBucket() {
+        Histogram histogram = new Histogram();
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.snapshot().percentile(100));
+    }
+
+    /**
+     * Tests that values recorded from many threads at once are all counted.
+     */
+    @Test
+    void record_concurrentRecordingLosesNothing() throws Exception {
+        Histogram histogram = new Histogram();
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            threads.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i % 16);
+                }
+            });
+        }
+        threads.shutdown();
+        assertTrue(threads.awaitTermination(10, TimeUnit.SECONDS));
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(80_000, snapshot.count());
+        assertEquals(5_000, snapshot.counts()[0], "Zeros.");
+        assertEquals(40_000, snapshot.counts()[4], "8 to 15.");
+    }
+}
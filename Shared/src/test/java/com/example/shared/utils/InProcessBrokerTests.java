@@ -0,0 +1,157 @@
+package com.example.shared.utils;
+
+import com.example.shared.utils.BrokerTransport.BrokerChannel;
+import com.example.shared.utils.BrokerTransport.BrokerConnection;
+import com.example.shared.utils.BrokerTransport.Delivery;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for InProcessBroker.
+ * This class tests the RabbitMQ behaviour the services rely on: unacked messages going back to
+ * the head of their queue, exclusive queues, prefetch limits, correlation IDs, nacked confirms and
+ * node outages. Each test uses a broker of its own.
+ */
+class InProcessBrokerTests {
+
+    private static final String NODE = "amqp://broker-test";
+    private static final Map<String, Object> QUORUM = Map.of("x-queue-type", "quorum");
+
+    private final InProcessBroker broker = new InProcessBroker();
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(Delivery delivery) {
+        return new String(delivery.body(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Tests that the messages a closed channel had not acked are delivered again first, in their
+     * original order.
+     */
+    @Test
+    void close_requeuesUnackedMessagesInOrder() throws Exception {
+        BrokerConnection connection = broker.connect(NODE);
+        BrokerChannel first = connection.createChannel();
+        first.queueDeclare("orders", QUORUM);
+        for (String message : List.of("a", "b", "c")) {
+            first.basicPublish("", "orders", bytes(message));
+        }
+        assertEquals("a", text(first.basicGet("orders")));
+        assertEquals("b", text(first.basicGet("orders")));
+        first.close();
+
+        BrokerChannel second = connection.createChannel();
+        assertEquals("a", text(second.basicGet("orders")));
+        assertEquals("b", text(second.basicGet("orders")));
+        Delivery last = second.basicGet("orders");
+        assertEquals("c", text(last));
+        second.basicAck(last.deliveryTag());
+        assertNull(second.basicGet("orders"));
+    }
+
+    /**
+     * Tests that another connection can neither declare nor consume an exclusive queue, and that
+     * the queue goes away with its connection.
+     */
+    @Test
+    void queueDeclareExclusive_isLockedToItsConnection() throws Exception {
+        BrokerConnection owner = broker.connect(NODE);
+        owner.createChannel().queueDeclareExclusive("replies", Map.of());
+
+        BrokerChannel other = broker.connect(NODE).createChannel();
+        IOException declare = assertThrows(IOException.class, () -> other.queueDeclareExclusive("replies", Map.of()));
+        assertTrue(declare.getMessage().startsWith("RESOURCE_LOCKED"));
+        assertFalse(other.isOpen(), "The channel survived a channel error.");
+
+        BrokerChannel consumer = broker.connect(NODE).createChannel();
+        assertThrows(IOException.class, () -> consumer.basicConsume("replies", Map.of(), (tag, delivery) -> { }));
+
+        assertEquals(0, broker.messageCount("replies"));
+        owner.close();
+        assertEquals(-1, broker.messageCount("replies"));
+    }
+
+    /**
+     * Tests that a consumer gets no more unacked deliveries than the prefetch, and the next one
+     * after an ack. The correlation ID of a publish reaches the consumer.
+     */
+    @Test
+    void basicConsume_respectsPrefetch() throws Exception {
+        BrokerChannel channel = broker.connect(NODE).createChannel();
+        channel.queueDeclare("work", QUORUM);
+        channel.basicQos(2);
+        BlockingQueue<Delivery> deliveries = new LinkedBlockingQueue<>();
+        channel.basicConsume("work", Map.of(), (tag, delivery) -> deliveries.add(delivery));
+        for (int i = 0; i < 5; i++) {
+            channel.basicPublish("", "work", "request-" + i, bytes("job " + i));
+        }
+
+        Delivery first = deliveries.poll(5, TimeUnit.SECONDS);
+        assertNotNull(deliveries.poll(5, TimeUnit.SECONDS));
+        assertNull(deliveries.poll(200, TimeUnit.MILLISECONDS), "More deliveries than the prefetch.");
+        assertEquals("request-0", first.correlationId());
+        assertEquals(3, broker.messageCount("work"));
+
+        channel.basicAck(first.deliveryTag());
+        Delivery third = deliveries.poll(5, TimeUnit.SECONDS);
+        assertNotNull(third);
+        assertEquals("job 2", text(third));
+    }
+
+    /**
+     * Tests that nacked confirms fail the confirm wait, close the channel and enqueue nothing.
+     */
+    @Test
+    void waitForConfirmsOrDie_failsOnNackedPublish() throws Exception {
+        BrokerConnection connection = broker.connect(NODE);
+        BrokerChannel channel = connection.createChannel();
+        channel.queueDeclare("confirmed", QUORUM);
+        channel.confirmSelect();
+        broker.setConfirmNackRate(1);
+
+        channel.basicPublish("", "confirmed", bytes("lost"));
+        assertThrows(IOException.class, () -> channel.waitForConfirmsOrDie(1000));
+        assertFalse(channel.isOpen());
+        assertEquals(0, broker.messageCount("confirmed"));
+
+        broker.setConfirmNackRate(0);
+        BrokerChannel retry = connection.createChannel();
+        retry.confirmSelect();
+        retry.basicPublish("", "confirmed", bytes("kept"));
+        retry.waitForConfirmsOrDie(1000);
+        assertEquals(1, broker.messageCount("confirmed"));
+    }
+
+    /**
+     * Tests that a node taken down closes its connections and refuses new ones until it is back,
+     * while the other nodes keep serving the same queues.
+     */
+    @Test
+    void setNodeDown_closesAndRefusesConnections() throws Exception {
+        BrokerConnection connection = broker.connect(NODE);
+        BrokerChannel channel = connection.createChannel();
+        channel.queueDeclare("shared", QUORUM);
+        channel.basicPublish("", "shared", bytes("before"));
+
+        broker.setNodeDown(NODE, true);
+        assertFalse(connection.isOpen());
+        assertFalse(channel.isOpen());
+        assertThrows(IOException.class, () -> broker.connect(NODE));
+        assertEquals("before", text(broker.connect("amqp://broker-test-2").createChannel().basicGet("shared")));
+
+        broker.setNodeDown(NODE, false);
+        assertTrue(broker.connect(NODE).isOpen());
+    }
+}
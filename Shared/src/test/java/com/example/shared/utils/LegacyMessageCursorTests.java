@@ -0,0 +1,116 @@
+package com.example.shared.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LegacyMessageCursor.
+ * This class checks that the in-place reader returns the same fields and values as the
+ * split-based parsing it replaced.
+ */
+class LegacyMessageCursorTests {
+
+    private static final byte[] SPACE_ID = LegacyMessageCursor.key("SpaceID");
+    private static final byte[] TOTAL_COST = LegacyMessageCursor.key("totalCost");
+
+    private static byte[] body(String message) {
+        return message.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Tests that every field of a transaction report is read in order, with the same values as
+     * splitting on ", " and ": ".
+     */
+    @Test
+    void next_readsEveryFieldLikeSplit() {
+        String message = "VehicleID: 201, ZoneName: Downtown, SpaceID: 98, StartTime: 2025-01-29 15:28:11, "
+                + "EndTime: 2025-01-29 17:02:45, TotalCost: 18.50";
+        String[] parts = message.split(", ");
+
+        LegacyMessageCursor cursor = new LegacyMessageCursor().reset(body(message));
+        for (String part : parts) {
+            assertTrue(cursor.next(), "Expected a field for " + part);
+            String[] kv = part.split(": ", 2);
+            assertTrue(cursor.keyEquals(LegacyMessageCursor.key(kv[0])), "Expected key " + kv[0]);
+            assertEquals(kv[1], cursor.valueAsString());
+        }
+        assertFalse(cursor.next(), "Expected the end of the message.");
+    }
+
+    /**
+     * Tests that seek finds a field in the middle of the message and parses numbers in place.
+     */
+    @Test
+    void seek_findsFieldAndParsesNumbers() {
+        byte[] citation = body("VehicleID: 205, SpaceID: 10, ParkingZone: Downtown, "
+                + "inspectionTimes: 2025-01-29 15:28:11, totalCost: 654.00");
+        LegacyMessageCursor cursor = new LegacyMessageCursor();
+
+        assertTrue(cursor.reset(citation).seek(SPACE_ID));
+        assertEquals(10, cursor.valueAsInt());
+        assertTrue(cursor.reset(citation).seek(TOTAL_COST));
+        assertEquals(654.0, cursor.valueAsDouble());
+        assertFalse(cursor.reset(citation).seek(LegacyMessageCursor.key("Missing")));
+    }
+
+    /**
+     * Tests that decimals are parsed exactly like Double.parseDouble, including signs and
+     * notations the in-place parser leaves to it.
+     */
+    @Test
+    void valueAsDouble_matchesParseDouble() {
+        LegacyMessageCursor cursor = new LegacyMessageCursor();
+        for (String value : new String[]{"0.1", "18.50", "-3.25", "+7", "123456789.123456", "1e3", "0.30000000000000004"}) {
+            assertTrue(cursor.reset(body("Cost: " + value)).next());
+            assertEquals(Double.parseDouble(value), cursor.valueAsDouble(), "Value " + value);
+        }
+    }
+
+    /**
+     * Tests that malformed or out-of-range numbers are rejected rather than misread.
+     */
+    @Test
+    void valueAsInt_rejectsMalformedNumbers() {
+        LegacyMessageCursor cursor = new LegacyMessageCursor();
+        for (String value : new String[]{"", "-", "12a", "2147483648"}) {
+            assertTrue(cursor.reset(body("SpaceID: " + value)).next());
+            assertThrows(NumberFormatException.class, cursor::valueAsInt, "Value '" + value + "'");
+        }
+    }
+
+    /**
+     * Tests that a field without a separator is a key with an empty value, and that spaces
+     * around keys and values are trimmed.
+     */
+    @Test
+    void next_handlesMissingSeparatorAndSpaces() {
+        LegacyMessageCursor cursor = new LegacyMessageCursor().reset(body("  Flag ,  SpaceID :  12  "));
+        assertTrue(cursor.next());
+        assertTrue(cursor.keyEquals(LegacyMessageCursor.key("Flag")));
+        assertEquals(0, cursor.valueLength());
+        assertTrue(cursor.next());
+        assertTrue(cursor.keyEquals(SPACE_ID));
+        assertEquals(12, cursor.valueAsInt());
+        assertFalse(cursor.next());
+    }
+
+    /**
+     * Tests reading a region of a larger buffer, and a cursor with '=' as its separator.
+     */
+    @Test
+    void reset_readsRegionWithOtherSeparator() {
+        byte[] buffer = body("OCCUPANCY::SpaceID=12,ZoneID=3,Occupied=1");
+        int offset = "OCCUPANCY::".length();
+        LegacyMessageCursor cursor = new LegacyMessageCursor('=').reset(buffer, offset, buffer.length - offset);
+
+        assertTrue(cursor.seek(LegacyMessageCursor.key("ZoneID")));
+        assertEquals(3, cursor.valueAsInt());
+        assertTrue(cursor.next());
+        assertTrue(cursor.keyEquals(LegacyMessageCursor.key("Occupied")));
+        assertEquals(1L, cursor.valueAsLong());
+        assertFalse(cursor.next());
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.shared.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for MessageOutbox.
+ * This class tests the FIFO order of the ring buffer, including across its wrap-around, and both
+ * overflow policies.
+ */
+class MessageOutboxTests {
+
+    private static byte[] body(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String pollBody(MessageOutbox outbox) {
+        String text = new String(outbox.peekBody(), StandardCharsets.UTF_8);
+        outbox.poll();
+        return text;
+    }
+
+    /**
+     * Tests that messages come out in the order they were offered, with their exchange and routing key.
+     */
+    @Test
+    void poll_returnsMessagesInOfferOrder() {
+        MessageOutbox outbox = new MessageOutbox(3, MessageOutbox.OverflowPolicy.REJECT);
+        assertTrue(outbox.offer("transactionsQueue", body("a")));
+        assertTrue(outbox.offer("occupancyEvents", "", body("b")));
+
+        assertEquals("", outbox.peekExchange());
+        assertEquals("transactionsQueue", outbox.peekRoutingKey());
+        assertEquals("a", pollBody(outbox));
+        assertEquals("occupancyEvents", outbox.peekExchange());
+        assertEquals("", outbox.peekRoutingKey());
+        assertEquals("b", pollBody(outbox));
+        assertTrue(outbox.isEmpty());
+        assertNull(outbox.peekBody(), "An empty outbox has nothing to peek.");
+    }
+
+    /**
+     * Tests that the order holds when the ring buffer wraps around many times.
+     */
+    @Test
+    void poll_keepsOrderAcrossWrapAround() {
+        MessageOutbox outbox = new MessageOutbox(3, MessageOutbox.OverflowPolicy.REJECT);
+        int next = 0;
+        for (int round = 0; round < 10; round++) {
+            assertTrue(outbox.offer("q", body(String.valueOf(round * 2))));
+            assertTrue(outbox.offer("q", body(String.valueOf(round * 2 + 1))));
+            assertEquals(String.valueOf(next++), pollBody(outbox));
+            assertEquals(String.valueOf(next++), pollBody(outbox));
+        }
+        assertEquals(0, outbox.size());
+    }
+
+    /**
+     * Tests that a full outbox with REJECT refuses the new message and keeps the queued ones.
+     */
+    @Test
+    void offer_rejectsWhenFull() {
+        MessageOutbox outbox = new MessageOutbox(2, MessageOutbox.OverflowPolicy.REJECT);
+        assertTrue(outbox.offer("q", body("1")));
+        assertTrue(outbox.offer("q", body("2")));
+        assertFalse(outbox.offer("q", body("3")), "A full outbox must reject the new message.");
+
+        assertEquals(2, outbox.size());
+        assertEquals(1, outbox.droppedCount());
+        assertEquals("1", pollBody(outbox));
+        assertEquals("2", pollBody(outbox));
+    }
+
+    /**
+     * Tests that a full outbox with DROP_OLDEST accepts the new message and drops the oldest one.
+     */
+    @Test
+    void offer_dropsOldestWhenFull() {
+        MessageOutbox outbox = new MessageOutbox(2, MessageOutbox.OverflowPolicy.DROP_OLDEST);
+        outbox.offer("q", body("1"));
+        outbox.offer("q", body("2"));
+        assertTrue(outbox.offer("q", body("3")));
+
+        assertEquals(2, outbox.size());
+        assertEquals(1, outbox.droppedCount());
+        assertEquals("2", pollBody(outbox));
+        assertEquals("3", pollBody(outbox));
+    }
+
+    /**
+     * Tests that the policy can be changed while messages are queued.
+     */
+    @Test
+    void setOverflowPolicy_appliesToTheNextOffer() {
+        MessageOutbox outbox = new MessageOutbox(1, MessageOutbox.OverflowPolicy.REJECT);
+        outbox.offer("q", body("1"));
+        assertFalse(outbox.offer("q", body("2")));
+
+        outbox.setOverflowPolicy(MessageOutbox.OverflowPolicy.DROP_OLDEST);
+        assertTrue(outbox.offer("q", body("3")));
+        assertEquals("3", pollBody(outbox));
+        assertEquals(2, outbox.droppedCount());
+    }
+
+    /**
+     * Tests that an outbox without room is refused at construction.
+     */
+    @Test
+    void constructor_rejectsNonPositiveCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new MessageOutbox(0, MessageOutbox.OverflowPolicy.REJECT));
+    }
+}
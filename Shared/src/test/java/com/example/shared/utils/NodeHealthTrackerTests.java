@@ -0,0 +1,143 @@
+package com.example.shared.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for NodeHealthTracker.
+ * This class tests the quarantine of failing nodes, the single half-open probe, the ranking of the
+ * candidates and the rebalancing of connections after a node comes back. The tracker runs on a
+ * clock the tests move forward.
+ */
+class NodeHealthTrackerTests {
+
+    private static final String A = "amqp://a";
+    private static final String B = "amqp://b";
+    private static final String C = "amqp://c";
+
+    private long now = 1_000_000;
+    private final NodeHealthTracker tracker = new NodeHealthTracker(() -> now, A, B, C);
+
+    private void fail(String node, int times) {
+        for (int i = 0; i < times; i++) {
+            tracker.recordConnectFailure(node);
+        }
+    }
+
+    private void connect(String node, int connections) {
+        for (int i = 0; i < connections; i++) {
+            assertTrue(tracker.beginAttempt(node));
+            tracker.recordConnectSuccess(node, 5);
+        }
+    }
+
+    /**
+     * Tests that a node is quarantined after the threshold of consecutive failures, and not before.
+     */
+    @Test
+    void recordConnectFailure_quarantinesAtThreshold() {
+        fail(A, NodeHealthTracker.FAILURE_THRESHOLD - 1);
+        assertFalse(tracker.isQuarantined(A));
+        assertTrue(tracker.candidates().contains(A));
+
+        fail(A, 1);
+        assertTrue(tracker.isQuarantined(A));
+        assertEquals(List.of(B, C), tracker.candidates());
+        assertFalse(tracker.beginAttempt(A));
+    }
+
+    /**
+     * Tests that an expired quarantine lets exactly one caller probe the node, and that the node
+     * is listed first while it waits for that probe.
+     */
+    @Test
+    void beginAttempt_allowsOneProbeAfterQuarantine() {
+        fail(B, NodeHealthTracker.FAILURE_THRESHOLD);
+        now += NodeHealthTracker.BASE_QUARANTINE_MS;
+
+        assertEquals(B, tracker.candidates().get(0));
+        assertTrue(tracker.beginAttempt(B));
+        assertFalse(tracker.beginAttempt(B), "A second caller probed the node as well.");
+        assertFalse(tracker.candidates().contains(B));
+    }
+
+    /**
+     * Tests that a failed probe quarantines the node for twice as long.
+     */
+    @Test
+    void recordConnectFailure_doublesQuarantineAfterFailedProbe() {
+        fail(C, NodeHealthTracker.FAILURE_THRESHOLD);
+        now += NodeHealthTracker.BASE_QUARANTINE_MS;
+        assertTrue(tracker.beginAttempt(C));
+        tracker.recordConnectFailure(C);
+
+        now += NodeHealthTracker.BASE_QUARANTINE_MS;
+        assertFalse(tracker.beginAttempt(C), "The second quarantine was not longer.");
+        now += NodeHealthTracker.BASE_QUARANTINE_MS;
+        assertTrue(tracker.beginAttempt(C));
+    }
+
+    /**
+     * Tests that a successful probe re-admits the node and bumps the generation.
+     */
+    @Test
+    void recordConnectSuccess_readmitsProbedNode() {
+        fail(A, NodeHealthTracker.FAILURE_THRESHOLD);
+        long generation = tracker.generation();
+        now += NodeHealthTracker.BASE_QUARANTINE_MS;
+
+        connect(A, 1);
+
+        assertFalse(tracker.isQuarantined(A));
+        assertEquals(generation + 1, tracker.generation());
+        assertTrue(tracker.beginAttempt(A));
+    }
+
+    /**
+     * Tests that candidates are ranked by latency and by the connections already open to them.
+     */
+    @Test
+    void candidates_prefersFastAndLightlyLoadedNodes() {
+        tracker.recordConnectSuccess(A, 30);
+        tracker.recordConnectSuccess(B, 10);
+        tracker.recordConnectSuccess(C, 10);
+        assertEquals(List.of(B, C, A), tracker.candidates());
+
+        connect(B, 2); // Each open connection counts as 20 ms
+        assertEquals(List.of(C, A, B), tracker.candidates());
+
+        tracker.connectionClosed(B);
+        tracker.connectionClosed(B);
+        assertEquals(List.of(B, C, A), tracker.candidates());
+    }
+
+    /**
+     * Tests that the connections that piled onto the remaining nodes during an outage are told to
+     * move once the node is back, until the load is even to within one connection.
+     */
+    @Test
+    void shouldRebalance_afterReadmission() {
+        fail(A, NodeHealthTracker.FAILURE_THRESHOLD);
+        connect(B, 3);
+        connect(C, 3);
+        assertFalse(tracker.shouldRebalance(B), "Moved towards a quarantined node.");
+
+        now += NodeHealthTracker.BASE_QUARANTINE_MS;
+        long generation = tracker.generation();
+        connect(A, 1);
+        assertNotEquals(generation, tracker.generation());
+        assertTrue(tracker.shouldRebalance(B));
+        assertTrue(tracker.shouldRebalance(C));
+        assertFalse(tracker.shouldRebalance(A));
+
+        // One connection of B moves to A: B 2, C 3, A 2
+        tracker.connectionClosed(B);
+        connect(A, 1);
+        assertFalse(tracker.shouldRebalance(B));
+        assertFalse(tracker.shouldRebalance(C), "C has only one more connection than the others.");
+        assertFalse(tracker.shouldRebalance("amqp://unknown"));
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.shared.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for PoolConfig.
+ * This class tests where a pool's settings come from: the system properties first, then the
+ * configuration file, then the code's defaults. The tests configure a pool named "kiosk" and
+ * clear what they set afterwards.
+ */
+class PoolConfigTests {
+
+    private static final PoolConfig DEFAULTS = new PoolConfig("default", "jdbc:mysql://db:3306/muligansystem",
+            "root", "secret", 12, 3, 3000, 10000, 1800000, false, 500);
+
+    private static final List<String> PROPERTIES = List.of("db.config", "db.pools",
+            "db.kiosk.poolSize", "db.kiosk.minIdle", "db.kiosk.url", "db.kiosk.connectionTimeoutMs");
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void clearProperties() {
+        PROPERTIES.forEach(System::clearProperty);
+    }
+
+    private void configFile(String... lines) throws Exception {
+        Path file = Files.write(dir.resolve("db.properties"), List.of(lines));
+        System.setProperty("db.config", file.toString());
+    }
+
+    /**
+     * Tests that a pool nothing is configured for gets the defaults, under its own name.
+     */
+    @Test
+    void load_usesDefaultsWhenNotConfigured() {
+        PoolConfig config = PoolConfig.load("kiosk", DEFAULTS);
+        assertEquals("kiosk", config.name());
+        assertEquals(new PoolConfig("kiosk", DEFAULTS.jdbcUrl(), "root", "secret", 12, 3, 3000, 10000, 1800000, false, 500),
+                config);
+    }
+
+    /**
+     * Tests that the file overrides the defaults and a system property overrides the file.
+     */
+    @Test
+    void load_systemPropertyWinsOverFile() throws Exception {
+        configFile("db.kiosk.poolSize=4", "db.kiosk.minIdle=2", "db.kiosk.url=jdbc:mysql://file-host/muligansystem",
+                "db.kiosk.readOnly=true");
+        System.setProperty("db.kiosk.poolSize", "6");
+
+        PoolConfig config = PoolConfig.load("kiosk", DEFAULTS);
+        assertEquals(6, config.maxPoolSize());
+        assertEquals(2, config.minIdle());
+        assertEquals("jdbc:mysql://file-host/muligansystem", config.jdbcUrl());
+        assertTrue(config.readOnly());
+        assertEquals(3000, config.connectionTimeoutMs(), "Not configured anywhere.");
+    }
+
+    /**
+     * Tests that an unreadable number falls back to the default, and that no more connections are
+     * kept idle than the pool may have.
+     */
+    @Test
+    void load_ignoresInvalidValuesAndClampsMinIdle() {
+        System.setProperty("db.kiosk.connectionTimeoutMs", "soon");
+        System.setProperty("db.kiosk.poolSize", "2");
+        System.setProperty("db.kiosk.minIdle", "5");
+
+        PoolConfig config = PoolConfig.load("kiosk", DEFAULTS);
+        assertEquals(3000, config.connectionTimeoutMs());
+        assertEquals(2, config.maxPoolSize());
+        assertEquals(2, config.minIdle());
+    }
+
+    /**
+     * Tests that the extra pools are read from db.pools, trimmed and without empty names.
+     */
+    @Test
+    void extraPoolNames_readsCommaSeparatedList() throws Exception {
+        configFile("db.pools=reports");
+        assertEquals(List.of("reports"), PoolConfig.extraPoolNames());
+
+        System.setProperty("db.pools", " reports , ,audit");
+        assertEquals(List.of("reports", "audit"), PoolConfig.extraPoolNames());
+    }
+
+    /**
+     * Tests that the password does not appear when a configuration is logged.
+     */
+    @Test
+    void toString_hidesPassword() {
+        String text = PoolConfig.load("kiosk", DEFAULTS).toString();
+        assertFalse(text.contains("secret"), text);
+        assertTrue(text.contains("poolSize=12"), text);
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.shared.utils;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for PooledDatabase.
+ * This class tests the warm-up, which prepares the hot statements on every idle connection before
+ * the first request, the borrow metrics and resizing a running pool. The pools connect through a JDBC driver registered for
+ * {@code jdbc:pooltest:} URLs, whose connections only record the statements prepared on them.
+ */
+class PooledDatabaseTests {
+
+    private static final List<String> STATEMENTS = List.of("SELECT 1", "SELECT 2", "SELECT 3");
+
+    // Per database name: the statements prepared on each connection, in connection order
+    private static final Map<String, List<List<String>>> PREPARED = new ConcurrentHashMap<>();
+
+    private static Driver driver;
+
+    @BeforeAll
+    static void registerDriver() throws SQLException {
+        driver = (Driver) Proxy.newProxyInstance(Driver.class.getClassLoader(), new Class<?>[]{Driver.class},
+                (self, method, args) -> switch (method.getName()) {
+                    case "acceptsURL" -> ((String) args[0]).startsWith("jdbc:pooltest:");
+                    case "connect" -> ((String) args[0]).startsWith("jdbc:pooltest:")
+                            ? openConnection(((String) args[0]).substring("jdbc:pooltest:".length())) : null;
+                    case "getPropertyInfo" -> new java.sql.DriverPropertyInfo[0];
+                    case "getMajorVersion", "getMinorVersion" -> 1;
+                    case "jdbcCompliant" -> false;
+                    case "toString" -> "pooltest driver";
+                    case "hashCode" -> System.identityHashCode(self);
+                    case "equals" -> self == args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+        DriverManager.registerDriver(driver);
+    }
+
+    @AfterAll
+    static void deregisterDriver() throws SQLException {
+        DriverManager.deregisterDriver(driver);
+    }
+
+    private static Connection openConnection(String database) {
+        List<String> prepared = new ArrayList<>();
+        PREPARED.computeIfAbsent(database, d -> new ArrayList<>());
+        synchronized (PREPARED.get(database)) {
+            PREPARED.get(database).add(prepared);
+        }
+        boolean[] closed = new boolean[1];
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (self, method, args) -> switch (method.getName()) {
+                    case "prepareStatement" -> {
+                        synchronized (prepared) {
+                            prepared.add((String) args[0]);
+                        }
+                        yield statement();
+                    }
+                    case "isValid" -> !closed[0];
+                    case "isClosed" -> closed[0];
+                    case "close" -> closed[0] = true;
+                    case "getAutoCommit" -> true;
+                    case "getTransactionIsolation" -> Connection.TRANSACTION_REPEATABLE_READ;
+                    case "unwrap" -> null;
+                    case "isWrapperFor" -> false;
+                    default -> defaultValue(method);
+                });
+    }
+
+    private static PreparedStatement statement() {
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (self, method, args) -> defaultValue(method));
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        return null;
+    }
+
+    private static List<List<String>> preparedOn(String database) {
+        List<List<String>> connections = PREPARED.getOrDefault(database, List.of());
+        synchronized (connections) {
+            List<List<String>> copy = new ArrayList<>();
+            for (List<String> prepared : connections) {
+                synchronized (prepared) {
+                    copy.add(List.copyOf(prepared));
+                }
+            }
+            return copy;
+        }
+    }
+
+    private static void awaitPrepared(String database, int connections) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (System.nanoTime() - deadline < 0) {
+            List<List<String>> prepared = preparedOn(database);
+            if (prepared.stream().filter(STATEMENTS::equals).count() >= connections) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("The pool did not warm up: " + preparedOn(database));
+    }
+
+    /**
+     * Tests that the warm-up opens the idle connections and prepares every hot statement once on
+     * each of them, so the first requests find them in the driver's cache.
+     */
+    @Test
+    void constructor_warmsUpEveryIdleConnection() throws Exception {
+        try (PooledDatabase pool = new PooledDatabase("warm", "jdbc:pooltest:warm", "user", "secret", 6, STATEMENTS)) {
+            awaitPrepared("warm", 3); // Half of the maximum is kept idle
+
+            // The pool may open more connections to refill while the warm-up holds them; those stay cold
+            long warmed = preparedOn("warm").stream().filter(STATEMENTS::equals).count();
+            assertEquals(3, warmed, "Prepared on " + preparedOn("warm"));
+            assertEquals(0, pool.activeConnections(), "The warm-up kept connections borrowed.");
+        }
+    }
+
+    /**
+     * Tests that borrows are counted and timed, and that a borrow that cannot get a connection in
+     * time fails after its own timeout and is counted as failed.
+     */
+    @Test
+    void connect_recordsBorrowsAndFailures() throws Exception {
+        try (PooledDatabase pool = new PooledDatabase("borrow", "jdbc:pooltest:borrow", "user", "secret", 2, STATEMENTS)) {
+            Connection first = pool.connect();
+            Connection second = pool.connect();
+            assertEquals(2, pool.activeConnections());
+
+            long start = System.nanoTime();
+            assertThrows(SQLException.class, () -> pool.connect(200));
+            long waitedMs = (System.nanoTime() - start) / 1_000_000;
+            assertTrue(waitedMs >= 150 && waitedMs < 2000, "The borrow waited " + waitedMs + " ms.");
+
+            first.close();
+            second.close();
+            PooledDatabase.PoolMetrics metrics = pool.getMetrics();
+            assertEquals(2, metrics.borrows());
+            assertEquals(1, metrics.failedBorrows());
+            assertEquals(0, metrics.active());
+            assertEquals(2, metrics.maxPoolSize());
+            assertTrue(metrics.maxBorrowMicros() >= metrics.meanBorrowMicros());
+        }
+    }
+
+    /**
+     * Tests that a pool grown while it runs lends the extra connections at once, that one shrunk
+     * back makes further borrows wait, and that a pool cannot be sized to nothing.
+     */
+    @Test
+    void resize_changesPoolWhileRunning() throws Exception {
+        try (PooledDatabase pool = new PooledDatabase("resize", "jdbc:pooltest:resize", "user", "secret", 1, STATEMENTS)) {
+            Connection first = pool.connect();
+            assertThrows(SQLException.class, () -> pool.connect(100), "The pool had a second connection.");
+
+            pool.resize(3, 1);
+            assertEquals(3, pool.getMetrics().maxPoolSize());
+            Connection second = pool.connect(1000);
+            Connection third = pool.connect(1000);
+            assertEquals(3, pool.activeConnections());
+
+            pool.resize(1, 1);
+            second.close();
+            third.close();
+            assertThrows(SQLException.class, () -> pool.connect(100), "The pool kept lending beyond its new size.");
+            first.close();
+            pool.connect(1000).close();
+
+            assertThrows(IllegalArgumentException.class, () -> pool.resize(0, 0));
+            assertEquals(1, pool.getMetrics().maxPoolSize());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.shared.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for RabbitMQUtil.
+ * This class tests on the embedded broker that a stream read ends at the stream's committed end
+ * instead of waiting for the stream to go quiet, and resumes from the offset it returned.
+ */
+class RabbitMQUtilTests {
+
+    private static final String NODE = "amqp://stream-test";
+    private static final String STREAM = "history.test";
+
+    private BrokerTransport previousTransport;
+    private BrokerTransport.BrokerConnection publisher;
+    private BrokerTransport.BrokerChannel channel;
+    private RabbitMQUtil rabbitMQUtil;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        previousTransport = RabbitMQUtil.getTransport();
+        RabbitMQUtil.setTransport(new InProcessBroker());
+        publisher = RabbitMQUtil.getTransport().connect(NODE);
+        channel = publisher.createChannel();
+        channel.queueDeclare(STREAM, Map.of("x-queue-type", "stream"));
+        rabbitMQUtil = new RabbitMQUtil(NODE);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        rabbitMQUtil.closeConnection();
+        publisher.close();
+        RabbitMQUtil.setTransport(previousTransport);
+    }
+
+    private void append(String... messages) throws Exception {
+        for (String message : messages) {
+            channel.basicPublish("", STREAM, message.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static List<String> texts(RabbitMQUtil.HistoryBatch batch) {
+        return batch.bodies().stream().map(body -> new String(body, StandardCharsets.UTF_8)).toList();
+    }
+
+    /**
+     * Tests that a read returns everything up to the end with the offset after it, well before a
+     * quiet stream would have been noticed.
+     */
+    @Test
+    void readStream_endsAtCommittedEnd() throws Exception {
+        append("a", "b", "c");
+
+        long start = System.nanoTime();
+        RabbitMQUtil.HistoryBatch batch = rabbitMQUtil.readStream(STREAM, 0);
+
+        assertEquals(List.of("a", "b", "c"), texts(batch));
+        assertEquals(3, batch.nextOffset());
+        assertTrue(System.nanoTime() - start < 1_000_000_000L, "The read waited for the stream to go quiet.");
+        assertEquals(List.of("b", "c"), texts(rabbitMQUtil.readStream(STREAM, 1)));
+    }
+
+    /**
+     * Tests that a reader at the end gets nothing at once, and only the new messages after more
+     * were appended.
+     */
+    @Test
+    void readStream_resumesFromReturnedOffset() throws Exception {
+        append("a", "b");
+        long offset = rabbitMQUtil.readStream(STREAM, 0).nextOffset();
+
+        RabbitMQUtil.HistoryBatch caughtUp = rabbitMQUtil.readStream(STREAM, offset);
+        assertEquals(List.of(), caughtUp.bodies());
+        assertEquals(offset, caughtUp.nextOffset());
+
+        append("c", "d");
+        RabbitMQUtil.HistoryBatch next = rabbitMQUtil.readStream(STREAM, offset);
+        assertEquals(List.of("c", "d"), texts(next));
+        assertEquals(4, next.nextOffset());
+    }
+
+    /**
+     * Tests that reading an empty stream returns nothing, at offset 0.
+     */
+    @Test
+    void readStream_emptyStreamReturnsNothing() {
+        RabbitMQUtil.HistoryBatch batch = rabbitMQUtil.readStream(STREAM, 0);
+        assertEquals(List.of(), batch.bodies());
+        assertEquals(0, batch.nextOffset());
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.shared.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ReplyQueue.
+ * This class tests on the embedded broker that replies reach the request with their correlation
+ * ID even when many requests share the queue, and that replies to closed or unknown requests are
+ * dropped. The requester and the responder use connections to different nodes.
+ */
+class ReplyQueueTests {
+
+    private BrokerTransport previousTransport;
+    private RabbitMQUtil requester;
+    private RabbitMQUtil responder;
+    private ReplyQueue replyQueue;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        previousTransport = RabbitMQUtil.getTransport();
+        RabbitMQUtil.setTransport(new InProcessBroker());
+        requester = new RabbitMQUtil("amqp://requester");
+        responder = new RabbitMQUtil("amqp://responder");
+        replyQueue = requester.openReplyQueue();
+    }
+
+    @AfterEach
+    void tearDown() {
+        replyQueue.close();
+        requester.closeConnection();
+        responder.closeConnection();
+        RabbitMQUtil.setTransport(previousTransport);
+    }
+
+    private static long inMillis(long millis) {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private static List<String> texts(List<byte[]> bodies) {
+        List<String> texts = new ArrayList<>();
+        for (byte[] body : bodies) {
+            texts.add(new String(body, StandardCharsets.UTF_8));
+        }
+        return texts;
+    }
+
+    /**
+     * Tests that concurrent requests, answered in an interleaved order, each get exactly their own replies.
+     */
+    @Test
+    void expect_concurrentRequestsGetOnlyTheirReplies() throws Exception {
+        int requests = 16;
+        List<ReplyQueue.PendingRequest> pending = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            pending.add(replyQueue.expect(3));
+        }
+        assertEquals(requests, replyQueue.getInFlightCount());
+
+        ExecutorService waiters = Executors.newFixedThreadPool(requests);
+        try {
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (ReplyQueue.PendingRequest request : pending) {
+                results.add(waiters.submit(() -> texts(request.awaitReplies(inMillis(5000)))));
+            }
+            List<Integer> order = new ArrayList<>();
+            for (int node = 0; node < 3; node++) {
+                for (int i = 0; i < requests; i++) {
+                    order.add(i * 3 + node);
+                }
+            }
+            Collections.shuffle(order);
+            for (int reply : order) {
+                int request = reply / 3;
+                assertTrue(responder.sendReply(replyQueue.getQueueName(), pending.get(request).correlationId(),
+                        "request " + request + " from node " + reply % 3));
+            }
+
+            for (int i = 0; i < requests; i++) {
+                List<String> replies = results.get(i).get(5, TimeUnit.SECONDS);
+                assertEquals(3, replies.size(), "Request " + i + " got " + replies);
+                for (String reply : replies) {
+                    assertTrue(reply.startsWith("request " + i + " "), "Request " + i + " got " + reply);
+                }
+            }
+        } finally {
+            waiters.shutdownNow();
+            pending.forEach(ReplyQueue.PendingRequest::close);
+        }
+        assertEquals(0, replyQueue.getInFlightCount());
+        assertEquals(0, replyQueue.getLateReplyCount());
+    }
+
+    /**
+     * Tests that a reply to a closed request, or without a known correlation ID, is counted as
+     * late and reaches no request.
+     */
+    @Test
+    void close_dropsLateReplies() throws Exception {
+        ReplyQueue.PendingRequest closed = replyQueue.expect(1);
+        closed.close();
+        ReplyQueue.PendingRequest open = replyQueue.expect(1);
+
+        responder.sendReply(replyQueue.getQueueName(), closed.correlationId(), "too late");
+        responder.sendReply(replyQueue.getQueueName(), "unknown", "stray");
+        responder.sendReply(replyQueue.getQueueName(), open.correlationId(), "in time");
+
+        assertEquals(List.of("in time"), texts(open.awaitReplies(inMillis(5000))));
+        long deadline = inMillis(5000);
+        while (replyQueue.getLateReplyCount() < 2 && System.nanoTime() - deadline < 0) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, replyQueue.getLateReplyCount());
+        assertEquals(List.of(), closed.replies());
+        open.close();
+    }
+
+    /**
+     * Tests that a request stops waiting once it expects fewer replies, e.g. when a responder
+     * could not be asked.
+     */
+    @Test
+    void expectFewer_endsWaitWithoutTheMissingReply() throws Exception {
+        try (ReplyQueue.PendingRequest request = replyQueue.expect(2)) {
+            responder.sendReply(replyQueue.getQueueName(), request.correlationId(), "only one");
+            assertNotNull(request.awaitReply(0, inMillis(5000)));
+
+            long start = System.nanoTime();
+            Thread giveUp = new Thread(() -> {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                request.expectFewer();
+            });
+            giveUp.start();
+            assertNull(request.awaitReply(1, inMillis(5000)));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2), "Waited for a reply that was not coming.");
+            assertEquals(List.of("only one"), texts(request.awaitReplies(inMillis(5000))));
+            giveUp.join();
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.example.shared.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for TransactionalOutbox.
+ * This class tests that a batch holds each key's lowest sequence numbers in order, shared among
+ * the keys, that relayed rows are only deleted while the lease is held, and that the lease passes
+ * to another relay only once it has run out. The database is a stand-in for the four outbox tables
+ * that understands the statements of TransactionalOutbox.
+ */
+class TransactionalOutboxTests {
+
+    private static final String RELAY_A = "relay-a";
+    private static final String RELAY_B = "relay-b";
+
+    private Tables tables;
+    private Connection conn;
+
+    @BeforeEach
+    void setUp() {
+        tables = new Tables();
+        conn = tables.connect();
+    }
+
+    private static List<String> payloads(List<TransactionalOutbox.OutboxMessage> batch) {
+        return batch.stream().map(TransactionalOutbox.OutboxMessage::payload).toList();
+    }
+
+    /**
+     * Tests that each key's rows come in sequence order even when their IDs are not, and that rows
+     * without a key come back without one.
+     */
+    @Test
+    void readBatch_returnsEachKeysRowsInSequenceOrder() throws Exception {
+        tables.commit("7", "7-a", 30);
+        tables.commit("3", "3-a", 20);
+        tables.commit("7", "7-b", 10); // A lower ID, handed out by another SQL node
+        tables.commit("", "no-key", 40);
+        tables.commit("7", "7-c", 5);
+
+        List<TransactionalOutbox.OutboxMessage> batch = TransactionalOutbox.readBatch(conn, 100);
+
+        assertEquals(5, batch.size());
+        assertEquals(List.of("7-a", "7-b", "7-c"), payloads(batch.stream().filter(m -> "7".equals(m.partitionKey())).toList()));
+        assertEquals(List.of(0L, 1L, 2L), batch.stream().filter(m -> "7".equals(m.partitionKey()))
+                .map(TransactionalOutbox.OutboxMessage::seq).toList());
+        assertTrue(batch.stream().anyMatch(m -> m.partitionKey() == null && m.payload().equals("no-key")));
+    }
+
+    /**
+     * Tests that a busy key gets what the quiet keys leave of the batch, and only its lowest rows.
+     */
+    @Test
+    void readBatch_sharesBatchAmongKeys() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            tables.commit("busy", "busy-" + i, 100 + i);
+        }
+        tables.commit("quiet", "quiet-0", 1);
+        tables.commit("quiet", "quiet-1", 2);
+
+        List<TransactionalOutbox.OutboxMessage> batch = TransactionalOutbox.readBatch(conn, 6);
+
+        assertEquals(List.of("busy-0", "busy-1", "busy-2", "busy-3"),
+                payloads(batch.stream().filter(m -> m.partitionKey().equals("busy")).toList()));
+        assertEquals(List.of("quiet-0", "quiet-1"),
+                payloads(batch.stream().filter(m -> m.partitionKey().equals("quiet")).toList()));
+    }
+
+    /**
+     * Tests the sharing itself: equal parts first, the rest to the keys that can use it, and with
+     * more keys than rows one row each from the given key on.
+     */
+    @Test
+    void shareBatch_givesUnusedSharesToBusyKeys() {
+        assertArrayEquals(new int[]{4, 2, 3}, TransactionalOutbox.shareBatch(new long[]{10, 2, 3}, 9, 0));
+        assertArrayEquals(new int[]{10, 2, 3}, TransactionalOutbox.shareBatch(new long[]{10, 2, 3}, 100, 0));
+        assertArrayEquals(new int[]{0, 1, 1}, TransactionalOutbox.shareBatch(new long[]{5, 5, 5}, 2, 1));
+        assertArrayEquals(new int[]{0, 0}, TransactionalOutbox.shareBatch(new long[]{0, 0}, 10, 0));
+    }
+
+    /**
+     * Tests that a relay holding the lease deletes its batch and moves the cursors past it, so the
+     * next batch starts at the following rows without reading the deleted ones again.
+     */
+    @Test
+    void deleteBatchIfLeaseHeld_deletesAndAdvancesCursors() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            tables.commit("7", "7-" + i, i);
+        }
+        assertTrue(TransactionalOutbox.tryAcquireLease(conn, RELAY_A, 60_000));
+        List<TransactionalOutbox.OutboxMessage> batch = TransactionalOutbox.readBatch(conn, 3);
+
+        assertTrue(TransactionalOutbox.deleteBatchIfLeaseHeld(conn, RELAY_A, 60_000, batch));
+
+        assertEquals(2, tables.messages.size());
+        assertEquals(3L, tables.cursors.get("7"));
+        assertEquals(List.of("7-3", "7-4"), payloads(TransactionalOutbox.readBatch(conn, 10)));
+        assertEquals(3L, tables.lastFromSeq, "The read starts at the cursor.");
+        assertTrue(conn.getAutoCommit());
+    }
+
+    /**
+     * Tests that a relay whose lease ran out deletes nothing and leaves the cursors alone, so the
+     * rows are published again by the next holder.
+     */
+    @Test
+    void deleteBatchIfLeaseHeld_keepsRowsWhenLeaseLost() throws Exception {
+        tables.commit("7", "7-0", 1);
+        tables.commit("7", "7-1", 2);
+        assertTrue(TransactionalOutbox.tryAcquireLease(conn, RELAY_A, 60_000));
+        List<TransactionalOutbox.OutboxMessage> batch = TransactionalOutbox.readBatch(conn, 10);
+        tables.leaseUntil = System.currentTimeMillis() - 1; // The confirm took longer than the lease
+
+        assertFalse(TransactionalOutbox.deleteBatchIfLeaseHeld(conn, RELAY_A, 60_000, batch));
+
+        assertEquals(2, tables.messages.size());
+        assertTrue(tables.cursors.isEmpty());
+        assertFalse(tables.executed.stream().anyMatch(sql -> sql.startsWith("DELETE")), "Nothing was deleted.");
+        assertEquals(1, tables.rollbacks);
+        assertTrue(conn.getAutoCommit());
+    }
+
+    /**
+     * Tests that a second relay only gets the lease once the first one's ran out, and then
+     * publishes the first one's batch from the same lowest rows, while the first can no longer
+     * delete them.
+     */
+    @Test
+    void tryAcquireLease_handsOverOnlyAfterExpiry() throws Exception {
+        tables.commit("7", "7-0", 1);
+        tables.commit("3", "3-0", 2);
+        assertTrue(TransactionalOutbox.tryAcquireLease(conn, RELAY_A, 200));
+        assertFalse(TransactionalOutbox.tryAcquireLease(conn, RELAY_B, 200), "The lease is held by relay A.");
+        assertTrue(TransactionalOutbox.tryAcquireLease(conn, RELAY_A, 200), "The holder renews its lease.");
+        List<TransactionalOutbox.OutboxMessage> batchOfA = TransactionalOutbox.readBatch(conn, 10);
+
+        Thread.sleep(300);
+        assertTrue(TransactionalOutbox.tryAcquireLease(conn, RELAY_B, 60_000));
+        assertEquals(RELAY_B, tables.leaseOwner);
+        assertFalse(TransactionalOutbox.deleteBatchIfLeaseHeld(conn, RELAY_A, 60_000, batchOfA));
+        assertFalse(TransactionalOutbox.tryAcquireLease(conn, RELAY_A, 200));
+
+        List<TransactionalOutbox.OutboxMessage> batchOfB = TransactionalOutbox.readBatch(conn, 10);
+        assertEquals(batchOfA.stream().map(TransactionalOutbox.OutboxMessage::id).sorted().toList(),
+                batchOfB.stream().map(TransactionalOutbox.OutboxMessage::id).sorted().toList());
+        assertTrue(TransactionalOutbox.deleteBatchIfLeaseHeld(conn, RELAY_B, 60_000, batchOfB));
+        assertTrue(tables.messages.isEmpty());
+    }
+
+    /**
+     * Tests that the sequence rows are taken in key order, each once, and missing ones created.
+     */
+    @Test
+    void lockSequences_locksInKeyOrder() throws Exception {
+        tables.commit("7", "7-0", 1);
+
+        TransactionalOutbox.lockSequences(conn, "7", null, "12", "7");
+
+        assertEquals(List.of("", "12", "7"), tables.locked.stream().distinct().toList());
+        assertEquals(0L, tables.sequences.get("12"));
+        assertEquals(1L, tables.sequences.get("7"), "An existing sequence keeps its number.");
+    }
+
+    /**
+     * The OutboxMessages, OutboxSequence, OutboxCursor and OutboxRelayLease tables in memory, with
+     * one transaction at a time.
+     */
+    private static final class Tables {
+
+        private record Row(long id, String queueName, String partitionKey, long seq, String payload, long createdAt) {
+        }
+
+        final TreeMap<Long, Row> messages = new TreeMap<>();
+        final Map<String, Long> sequences = new TreeMap<>();
+        final Map<String, Long> cursors = new TreeMap<>();
+        String leaseOwner = "";
+        long leaseUntil = 0;
+
+        final List<String> executed = new ArrayList<>();
+        final List<String> locked = new ArrayList<>();
+        long lastFromSeq = -1;
+        int rollbacks = 0;
+
+        private boolean autoCommit = true;
+        private Tables saved;
+
+        /** Writes a committed message with the next number of its key, under the given ID. */
+        void commit(String partitionKey, String payload, long id) {
+            long seq = sequences.merge(partitionKey, 1L, Long::sum) - 1;
+            messages.put(id, new Row(id, "q", partitionKey, seq, payload, System.currentTimeMillis()));
+        }
+
+        private Tables copy() {
+            Tables copy = new Tables();
+            copy.messages.putAll(messages);
+            copy.sequences.putAll(sequences);
+            copy.cursors.putAll(cursors);
+            copy.leaseOwner = leaseOwner;
+            copy.leaseUntil = leaseUntil;
+            return copy;
+        }
+
+        private void restore(Tables copy) {
+            messages.clear();
+            messages.putAll(copy.messages);
+            sequences.clear();
+            sequences.putAll(copy.sequences);
+            cursors.clear();
+            cursors.putAll(copy.cursors);
+            leaseOwner = copy.leaseOwner;
+            leaseUntil = copy.leaseUntil;
+        }
+
+        Connection connect() {
+            return proxy(Connection.class, (self, method, args) -> switch (method.getName()) {
+                case "prepareStatement" -> statement((String) args[0]);
+                case "getAutoCommit" -> autoCommit;
+                case "setAutoCommit" -> {
+                    autoCommit = (Boolean) args[0];
+                    saved = autoCommit ? null : copy();
+                    yield null;
+                }
+                case "commit" -> saved = copy();
+                case "rollback" -> {
+                    rollbacks++;
+                    restore(saved);
+                    yield null;
+                }
+                default -> null;
+            });
+        }
+
+        private PreparedStatement statement(String sql) {
+            Map<Integer, Object> parameters = new HashMap<>();
+            List<Map<Integer, Object>> batch = new ArrayList<>();
+            return proxy(PreparedStatement.class, (self, method, args) -> switch (method.getName()) {
+                case "setString", "setLong", "setInt" -> parameters.put((Integer) args[0], args[1]);
+                case "addBatch" -> batch.add(new HashMap<>(parameters));
+                case "executeQuery" -> {
+                    executed.add(sql);
+                    yield query(sql, parameters);
+                }
+                case "executeUpdate" -> {
+                    executed.add(sql);
+                    yield update(sql, parameters);
+                }
+                case "executeBatch" -> {
+                    executed.add(sql);
+                    yield batch.stream().mapToInt(row -> update(sql, row)).toArray();
+                }
+                default -> null;
+            });
+        }
+
+        private ResultSet query(String sql, Map<Integer, Object> p) {
+            List<Map<String, Object>> rows = new ArrayList<>();
+            if (sql.startsWith("SELECT s.PartitionKey")) {
+                sequences.forEach((key, next) -> {
+                    long from = cursors.getOrDefault(key, 0L);
+                    if (next > from) {
+                        rows.add(Map.of("PartitionKey", key, "NextSeq", next, "FromSeq", from));
+                    }
+                });
+            } else if (sql.startsWith("(SELECT OutboxID")) {
+                for (int i = 1; p.containsKey(i); i += 3) {
+                    String key = (String) p.get(i);
+                    lastFromSeq = (Long) p.get(i + 1);
+                    messages.values().stream()
+                            .filter(row -> row.partitionKey().equals(key) && row.seq() >= lastFromSeq)
+                            .sorted((a, b) -> Long.compare(a.seq(), b.seq()))
+                            .limit((Integer) p.get(i + 2))
+                            .forEach(row -> rows.add(Map.of("OutboxID", row.id(), "QueueName", row.queueName(),
+                                    "PartitionKey", row.partitionKey(), "Seq", row.seq(), "Payload", row.payload(),
+                                    "CreatedAt", row.createdAt())));
+                }
+            } else if (sql.startsWith("SELECT NextSeq FROM OutboxSequence")) {
+                String key = (String) p.get(1);
+                locked.add(key);
+                if (sequences.containsKey(key)) {
+                    rows.add(Map.of("NextSeq", sequences.get(key)));
+                }
+            } else {
+                throw new AssertionError("Unexpected query: " + sql);
+            }
+            Iterator<Map<String, Object>> cursor = rows.iterator();
+            Object[] current = new Object[1];
+            return proxy(ResultSet.class, (self, method, args) -> switch (method.getName()) {
+                case "next" -> {
+                    current[0] = cursor.hasNext() ? cursor.next() : null;
+                    yield current[0] != null;
+                }
+                case "getString" -> ((Map<?, ?>) current[0]).get(args[0]);
+                case "getLong" -> ((Number) ((Map<?, ?>) current[0]).get(args[0])).longValue();
+                default -> null;
+            });
+        }
+
+        private int update(String sql, Map<Integer, Object> p) {
+            if (sql.startsWith("UPDATE OutboxRelayLease SET Owner")) {
+                if (!leaseOwner.equals(p.get(3)) && leaseUntil >= (Long) p.get(4)) {
+                    return 0;
+                }
+                leaseOwner = (String) p.get(1);
+                leaseUntil = (Long) p.get(2);
+                return 1;
+            } else if (sql.startsWith("UPDATE OutboxRelayLease SET LeaseUntil")) {
+                if (!leaseOwner.equals(p.get(2)) || leaseUntil < (Long) p.get(3)) {
+                    return 0;
+                }
+                leaseUntil = (Long) p.get(1);
+                return 1;
+            } else if (sql.startsWith("DELETE FROM OutboxMessages")) {
+                return (int) p.values().stream().filter(id -> messages.remove((Long) id) != null).count();
+            } else if (sql.startsWith("INSERT INTO OutboxCursor")) {
+                cursors.merge((String) p.get(1), (Long) p.get(2), Math::max);
+                return 1;
+            } else if (sql.startsWith("INSERT IGNORE INTO OutboxSequence")) {
+                return sequences.putIfAbsent((String) p.get(1), 0L) == null ? 1 : 0;
+            }
+            throw new AssertionError("Unexpected update: " + sql);
+        }
+
+        private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                    (self, method, args) -> method.getName().equals("close") ? null : handler.invoke(self, method, args)));
+        }
+    }
+}
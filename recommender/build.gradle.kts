@@ -1,5 +1,6 @@
 plugins {
     id("java")
+    id("me.champeau.jmh") version "0.7.2" // JMH benchmarks (src/jmh/java)
 }
 
 group = "com.example"
@@ -17,4 +18,9 @@ dependencies {
 
 tasks.test {
     useJUnitPlatform()
+}
+
+// Run with: gradle :recommender:jmh (uses the embedded broker, no cluster needed)
+jmh {
+    jmhVersion.set("1.37")
 }
\ No newline at end of file
@@ -0,0 +1,100 @@
+package com.example.recommender;
+
+import com.example.shared.utils.InProcessBroker;
+import com.example.shared.utils.RabbitMQUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long the recommender nodes are without a leader when the leader fails, and what looking up
+ * the leader costs a request once one is elected.
+ *
+ * Three {@link ElectionManager} participants run on the embedded {@link InProcessBroker}. Each
+ * failover measurement elects a leader, closes it (it stops sending heartbeats, as if it crashed)
+ * and times until one of the two others leads with a majority. With an election timeout T the
+ * expected failover is between T and 2T, plus one vote round trip.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class FailoverBenchmark {
+
+    private static final int NODES = 3;
+    private static int generation; // Fresh node IDs per measurement, so no state carries over
+
+    @Param({"150", "500"})
+    public long electionTimeoutMs;
+
+    private Path stateDir;
+    private List<ElectionManager> members;
+    private ElectionManager leader;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException {
+        RabbitMQUtil.setTransport(new InProcessBroker());
+        stateDir = Files.createTempDirectory("raft-bench");
+    }
+
+    @Setup(Level.Iteration)
+    public void elect() throws InterruptedException {
+        List<String> ids = new ArrayList<>();
+        int gen = generation++;
+        for (int i = 0; i < NODES; i++) {
+            ids.add("amqp://node-" + gen + "-" + i);
+        }
+        members = new ArrayList<>();
+        for (String id : ids) {
+            members.add(new ElectionManager(id, ids, stateDir.resolve(id.replaceAll("[^A-Za-z0-9.-]", "_")),
+                    Math.max(10, electionTimeoutMs / 5), electionTimeoutMs));
+        }
+        leader = awaitLeader(members, null);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeAll() {
+        for (ElectionManager member : members) {
+            member.close();
+        }
+    }
+
+    /** Time from the leader's failure until another node leads with a majority. */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 20)
+    public ElectionManager failover() throws InterruptedException {
+        leader.close();
+        return awaitLeader(members, leader);
+    }
+
+    /** What a recommendation request pays to learn the leader once it is elected. */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 3, time = 3)
+    public String leaderLookup() {
+        return members.get(1).getLeader();
+    }
+
+    /**
+     * Polls until a member other than {@code excluded} leads with a majority.
+     */
+    private static ElectionManager awaitLeader(List<ElectionManager> members, ElectionManager excluded)
+            throws InterruptedException {
+        while (true) {
+            for (ElectionManager member : members) {
+                if (member != excluded && member.isLeader()) {
+                    return member;
+                }
+            }
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.recommender;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to find the 10 nearest free spaces around a requested space: a linear scan over every
+ * space (what ranking all free spaces of a zone grows into) versus the {@link SpaceIndex} KD-tree.
+ *
+ * Spaces are spread uniformly over a 10 km x 10 km city, with a share of them occupied.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NearestSpaceBenchmark {
+
+    private static final int K = 10;
+    private static final double LAT0 = 32.08, LON0 = 34.78;   // City center
+    private static final double SPAN_DEG = 0.09;              // About 10 km
+
+    @Param({"10000", "1000000"})
+    public int spaces;
+
+    @Param({"0.5", "0.95"})
+    public double occupiedShare;
+
+    private SpaceIndex index;
+    private double[] lats;
+    private double[] lons;
+    private boolean[] occupied;
+    private int[] queries;
+    private int next;
+
+    private final int[] outIds = new int[K];
+    private final double[] outDist = new double[K];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        int[] ids = new int[spaces];
+        int[] zones = new int[spaces];
+        lats = new double[spaces];
+        lons = new double[spaces];
+        occupied = new boolean[spaces];
+        for (int i = 0; i < spaces; i++) {
+            ids[i] = i + 1;
+            lats[i] = LAT0 + random.nextDouble() * SPAN_DEG;
+            lons[i] = LON0 + random.nextDouble() * SPAN_DEG;
+            zones[i] = (int) ((lats[i] - LAT0) / SPAN_DEG * 10) * 10 + (int) ((lons[i] - LON0) / SPAN_DEG * 10);
+            occupied[i] = random.nextDouble() < occupiedShare;
+        }
+        index = new SpaceIndex(ids, lats, lons, zones, occupied, spaces);
+        queries = new int[1024];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = random.nextInt(spaces);
+        }
+    }
+
+    /** Distance to every free space, keeping the K nearest by insertion into a sorted array. */
+    @Benchmark
+    public int linearScan() {
+        int q = queries[next++ & (queries.length - 1)];
+        double cosLat = Math.cos(Math.toRadians(LAT0 + SPAN_DEG / 2));
+        double qx = lons[q] * cosLat, qy = lats[q];
+        int found = 0;
+        for (int i = 0; i < spaces; i++) {
+            if (occupied[i]) continue;
+            double dx = lons[i] * cosLat - qx, dy = lats[i] - qy;
+            double d = dx * dx + dy * dy;
+            if (found < K || d < outDist[found - 1]) {
+                int j = found < K ? found++ : K - 1;
+                while (j > 0 && outDist[j - 1] > d) {
+                    outDist[j] = outDist[j - 1];
+                    outIds[j] = outIds[j - 1];
+                    j--;
+                }
+                outDist[j] = d;
+                outIds[j] = i + 1;
+            }
+        }
+        return found;
+    }
+
+    /** The KD-tree query used by recommendations. */
+    @Benchmark
+    public int kdTree() {
+        int q = queries[next++ & (queries.length - 1)];
+        return index.nearestFree(q + 1, K, outIds, outDist);
+    }
+}
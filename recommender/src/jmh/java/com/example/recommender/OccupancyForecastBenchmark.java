@@ -0,0 +1,91 @@
+package com.example.recommender;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the {@link OccupancyForecast}: learning a history of 10 million arrivals and departures
+ * in one pass (as the training from ParkingEvents does, without the database), one live update,
+ * and one forecast as a recommendation asks for it.
+ *
+ * The synthetic history spreads a year of events over 200 zones, with a morning rush.
+ */
+@Fork(1)
+@State(Scope.Benchmark)
+public class OccupancyForecastBenchmark {
+
+    private static final int ZONES = 200;
+    private static final int HISTORY = 10_000_000;
+    private static final LocalDateTime FIRST_DAY = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    private OccupancyForecast trained;
+    private LocalDateTime[] times;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        times = new LocalDateTime[4096];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = randomTime(random);
+        }
+        trained = new OccupancyForecast("bench", 15);
+        learnHistory(trained, 1_000_000);
+    }
+
+    /** One pass over a 10M event history. */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public OccupancyForecast train10M() {
+        OccupancyForecast forecast = new OccupancyForecast("bench", 15);
+        learnHistory(forecast, HISTORY);
+        return forecast;
+    }
+
+    /** One live arrival or departure. */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 3, time = 3)
+    public void update() {
+        int i = next++ & (times.length - 1);
+        trained.record(i % ZONES, times[i], (i & 1) == 0);
+    }
+
+    /** The free spaces of a zone in 10 minutes. */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 3, time = 3)
+    public double predict() {
+        int i = next++ & (times.length - 1);
+        return trained.predictFree(i % ZONES, 20, 10, times[i]);
+    }
+
+    /**
+     * Records {@code events} arrivals and departures, then marks the forecast trained, as
+     * {@link OccupancyForecast#train} does.
+     */
+    private void learnHistory(OccupancyForecast forecast, int events) {
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < events; i++) {
+            LocalDateTime at = times[random.nextInt(times.length)].plusDays(random.nextInt(365));
+            forecast.record(random.nextInt(ZONES), at, (i & 1) == 0);
+        }
+        forecast.markTrained();
+    }
+
+    private static LocalDateTime randomTime(SplittableRandom random) {
+        // Half the arrivals between 8:00 and 9:30, the rest over the day
+        int minute = random.nextBoolean() ? 480 + random.nextInt(90) : random.nextInt(24 * 60);
+        return FIRST_DAY.plusMinutes(minute);
+    }
+}
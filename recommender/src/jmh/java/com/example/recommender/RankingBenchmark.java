@@ -0,0 +1,66 @@
+package com.example.recommender;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to rank the free spaces of a zone and keep the best {@code k}: the bounded heap of
+ * {@link TopK} (O(n log k)) versus sorting every candidate (O(n log n)).
+ *
+ * Citation scores are small integers, so many spaces tie on the score and are ordered by distance.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RankingBenchmark {
+
+    @Param({"1000", "100000"})
+    public int freeSpaces;
+
+    @Param({"3", "10"})
+    public int k;
+
+    private int[] ids;
+    private int[] citations;
+    private int requested;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        ids = new int[freeSpaces];
+        citations = new int[freeSpaces];
+        for (int i = 0; i < freeSpaces; i++) {
+            ids[i] = random.nextInt(10 * freeSpaces);
+            citations[i] = random.nextInt(5);
+        }
+        requested = 5 * freeSpaces;
+    }
+
+    /** Bounded heap of the k best. */
+    @Benchmark
+    public List<RankedCandidate> topK() {
+        TopK<RankedCandidate> best = new TopK<>(k, RankedCandidate.ORDER);
+        for (int i = 0; i < freeSpaces; i++) {
+            best.offer(new RankedCandidate(ids[i], citations[i], citations[i], Math.abs(ids[i] - requested)));
+        }
+        return best.toSortedList();
+    }
+
+    /** Sort every candidate, keep the first k. */
+    @Benchmark
+    public List<RankedCandidate> fullSort() {
+        List<RankedCandidate> all = new ArrayList<>(freeSpaces);
+        for (int i = 0; i < freeSpaces; i++) {
+            all.add(new RankedCandidate(ids[i], citations[i], citations[i], Math.abs(ids[i] - requested)));
+        }
+        all.sort(RankedCandidate.ORDER);
+        return new ArrayList<>(all.subList(0, Math.min(k, all.size())));
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.recommender;
+
+import com.example.shared.utils.InProcessBroker;
+import com.example.shared.utils.RabbitMQUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a burst of recommendation requests, as at the entrance of an event venue: sixteen
+ * clients ask for the spaces of a few zones at once, with and without the {@link RecommendationCache}.
+ *
+ * While measuring, a space of a random zone changes state every {@code occupancyEventMs}
+ * milliseconds; the event goes out on {@link RabbitMQUtil#OCCUPANCY_EXCHANGE} and invalidates that
+ * zone's entries. The nodes are {@link RecommenderClientBenchmark.StandInNode}s on the embedded
+ * {@link InProcessBroker}, with their election participants running for the whole trial.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Threads(16)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+public class RecommendationCacheBenchmark {
+
+    private static final List<String> NODES = List.of("amqp://node-a", "amqp://node-b", "amqp://node-c");
+    private static final int ZONES = 4;
+    private static final int SPACES_PER_ZONE = 20;
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    /** Time between occupancy changes, in milliseconds. */
+    @Param({"50"})
+    public long occupancyEventMs;
+
+    private final List<ElectionManager> elections = new ArrayList<>();
+    private RecommenderClient client;
+    private RabbitMQUtil publisher;
+    private Thread occupancy;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        RabbitMQUtil.setTransport(new InProcessBroker(TimeUnit.MICROSECONDS.toNanos(500)));
+        for (String node : NODES) {
+            elections.add(ElectionManager.forNode(node, NODES));
+        }
+        client = new RecommenderClient(NODES, RecommenderClientBenchmark.StandInNode::new, cached);
+        client.recommend(1); // The first request waits for the election
+        publisher = new RabbitMQUtil();
+        occupancy = new Thread(this::changeOccupancy, "occupancy-events");
+        occupancy.setDaemon(true);
+        occupancy.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        occupancy.interrupt();
+        occupancy.join();
+        RecommendationCache.CacheStats stats = client.getCacheStats();
+        if (stats != null) {
+            System.out.println("Cache: " + stats);
+        }
+        publisher.closeConnection();
+        client.close();
+        for (ElectionManager election : elections) {
+            election.close();
+        }
+        elections.clear();
+    }
+
+    /** One request for a random space of the busy zones. */
+    @Benchmark
+    public String request() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return client.recommend(random.nextInt(ZONES) * 100 + random.nextInt(SPACES_PER_ZONE));
+    }
+
+    /**
+     * Publishes an occupancy change of a random space until interrupted.
+     */
+    private void changeOccupancy() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(occupancyEventMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+            int zone = random.nextInt(ZONES);
+            String event = "OCCUPANCY::SpaceID=" + (zone * 100 + random.nextInt(SPACES_PER_ZONE))
+                    + ",ZoneID=" + zone + ",Occupied=" + random.nextInt(2);
+            publisher.publishConfirmed(List.of(RabbitMQUtil.OCCUPANCY_EXCHANGE),
+                    List.of(event.getBytes(StandardCharsets.UTF_8)), 1000);
+        }
+    }
+}
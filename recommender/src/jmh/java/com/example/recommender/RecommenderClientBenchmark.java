@@ -0,0 +1,141 @@
+package com.example.recommender;
+
+import com.example.shared.utils.InProcessBroker;
+import com.example.shared.utils.RabbitMQUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of one recommendation request with three nodes: "cold" sets up the cluster handles for
+ * the request and closes them afterwards (connections, leader subscription, reply queue), as every
+ * click used to; "warm" reuses one long-lived {@link RecommenderClient}.
+ *
+ * The nodes are stand-ins that take a fixed time to compute or validate, on the embedded
+ * {@link InProcessBroker} with a per-round-trip latency, so no database or cluster is needed. Their
+ * election participants, which run in the nodes' own processes in a deployment, run here for the
+ * whole trial.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RecommenderClientBenchmark {
+
+    private static final List<String> NODES = List.of("amqp://node-a", "amqp://node-b", "amqp://node-c");
+    private static final long COMPUTE_MS = 5;
+    private static final long VALIDATE_MS = 1;
+
+    /** Broker round-trip latency in microseconds. */
+    @Param({"500"})
+    public long brokerLatencyMicros;
+
+    private final List<ElectionManager> elections = new ArrayList<>();
+
+    /**
+     * A node that answers after a fixed time instead of querying the database.
+     */
+    static final class StandInNode extends RaftNode {
+        private final RabbitMQUtil rabbitMQUtil;
+
+        StandInNode(String nodeId, RabbitMQUtil rabbitMQUtil) {
+            super(nodeId, rabbitMQUtil, null, null, null);
+            this.rabbitMQUtil = rabbitMQUtil;
+        }
+
+        @Override
+        public String proposeRecommendation(int requestedSpaceID) {
+            return pause(COMPUTE_MS) ? "SpaceID=" + (requestedSpaceID + 1) + ",Citations=0\n" : null;
+        }
+
+        @Override
+        public boolean sendValidation(int requestedSpaceID, String proposal, String replyQueue, String correlationId) {
+            List<RankedCandidate> ranking = RankedCandidate.parseRanking(proposal);
+            return pause(VALIDATE_MS) && rabbitMQUtil.sendReply(replyQueue, correlationId,
+                    RecommendationResponse.formatDigestVote(getNodeId(), ranking, new int[ranking.size()]));
+        }
+
+        @Override
+        public boolean sendRecommendation(int requestedSpaceID, String replyQueue, String correlationId) {
+            String rec = proposeRecommendation(requestedSpaceID);
+            return rec != null
+                    && rabbitMQUtil.sendReply(replyQueue, correlationId, "RESPONSE::Node=" + getNodeId() + ",Rec=" + rec);
+        }
+
+        @Override
+        public int zoneOf(int spaceId) {
+            return spaceId / 100; // A hundred spaces per zone
+        }
+
+        @Override
+        public long citationVersion() {
+            return 0;
+        }
+
+        private static boolean pause(long ms) {
+            try {
+                Thread.sleep(ms);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        RabbitMQUtil.setTransport(new InProcessBroker(TimeUnit.MICROSECONDS.toNanos(brokerLatencyMicros)));
+        for (String node : NODES) {
+            elections.add(ElectionManager.forNode(node, NODES));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (ElectionManager election : elections) {
+            election.close();
+        }
+        elections.clear();
+    }
+
+    /**
+     * The long-lived client of the warm requests, elected before measuring.
+     */
+    @State(Scope.Benchmark)
+    public static class WarmClient {
+        RecommenderClient client;
+
+        @Setup(Level.Trial)
+        public void start(RecommenderClientBenchmark benchmark) { // Set up after the broker
+            client = new RecommenderClient(NODES, StandInNode::new, false);
+            client.recommend(10); // The first request waits for the election
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            client.close();
+        }
+    }
+
+    /** Per-request setup and teardown, as each click used to do. */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 10)
+    public String cold() {
+        try (RecommenderClient client = new RecommenderClient(NODES, StandInNode::new, false)) {
+            return client.recommend(10);
+        }
+    }
+
+    /** A request on the long-lived client. */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 2, time = 3)
+    @Measurement(iterations = 3, time = 5)
+    public String warm(WarmClient warm) {
+        return warm.client.recommend(10);
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.recommender;
+
+import com.example.shared.utils.InProcessBroker;
+import com.example.shared.utils.RabbitMQUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * How fast a recommender node that joins or restarts gets the replicated citation state.
+ *
+ * Two of three nodes run a {@link ReplicatedLog} on the embedded {@link InProcessBroker}; the
+ * leader appends {@code entries} citations, which both commit. Then:
+ * - {@code catchUp} starts the third node with no state and times until it applied everything.
+ *   With {@code snapshotEntries} above {@code entries} it replays the whole log; otherwise the
+ *   leader has compacted its log and sends the snapshot and the tail.
+ * - {@code restart} closes the caught-up third node and times reopening it from its files (the
+ *   snapshot and the log tail, or the whole log).
+ * Divide {@code entries} by the catch-up time for the throughput in entries/s.
+ */
+@Fork(1)
+public class ReplicatedLogBenchmark {
+
+    private static final long ELECTION_TIMEOUT_MS = 500;
+    private static final long RETRY_MS = 20;
+
+    /**
+     * The leader and one follower, with the entries committed.
+     */
+    @State(Scope.Benchmark)
+    public static class Cluster {
+        @Param({"1000000"})
+        public int entries;
+
+        @Param({"100000", "100000000"})
+        public long snapshotEntries;
+
+        List<String> ids = new ArrayList<>();
+        List<ElectionManager> elections = new ArrayList<>();
+        List<ReplicatedLog> logs = new ArrayList<>();
+        Path root;
+        ReplicatedLog leader;
+
+        @Setup(Level.Trial)
+        public void start() throws IOException, InterruptedException {
+            RabbitMQUtil.setTransport(new InProcessBroker());
+            root = Files.createTempDirectory("raft-log-bench");
+            for (int i = 0; i < 3; i++) {
+                ids.add("amqp://log-node-" + i);
+            }
+            for (int i = 0; i < 2; i++) {
+                startNode(i);
+            }
+            while (leader == null) {
+                for (int i = 0; i < 2; i++) {
+                    if (elections.get(i).isLeader()) {
+                        leader = logs.get(i);
+                    }
+                }
+                Thread.sleep(1);
+            }
+            long last = -1;
+            for (int i = 0; i < entries; i++) {
+                long index;
+                while ((index = leader.propose(ReplicatedLog.CITATION, i % 5000, 0, i)) < 0) {
+                    Thread.sleep(1); // Not leading yet: the log learns it on its next tick
+                }
+                last = index;
+            }
+            for (ReplicatedLog log : logs) {
+                if (!log.awaitApplied(last, 60_000)) {
+                    throw new IllegalStateException("The entries were not committed");
+                }
+            }
+        }
+
+        void startNode(int i) throws IOException {
+            Path dir = Files.createDirectories(root.resolve("node-" + i));
+            ElectionManager election = new ElectionManager(ids.get(i), ids, dir.resolve("election"),
+                    ELECTION_TIMEOUT_MS / 5, ELECTION_TIMEOUT_MS);
+            elections.add(election);
+            logs.add(new ReplicatedLog(ids.get(i), ids, election, dir, 10, RETRY_MS, snapshotEntries, false));
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws IOException {
+            for (ReplicatedLog log : logs) {
+                log.close();
+            }
+            for (ElectionManager election : elections) {
+                election.close();
+            }
+            deleteAll(root);
+        }
+    }
+
+    /**
+     * A third node with no state, not started yet.
+     */
+    @State(Scope.Thread)
+    public static class Joiner {
+        ElectionManager election;
+        ReplicatedLog log;
+        Path dir;
+
+        @Setup(Level.Iteration)
+        public void clear(Cluster cluster) throws IOException {
+            dir = cluster.root.resolve("joiner-" + System.nanoTime());
+            Files.createDirectories(dir);
+        }
+
+        @TearDown(Level.Iteration)
+        public void stop() throws IOException {
+            if (log != null) {
+                log.close();
+                election.close();
+                log = null;
+            }
+            deleteAll(dir);
+        }
+
+        ReplicatedLog start(Cluster cluster, long retryMs) {
+            String id = cluster.ids.get(2);
+            election = new ElectionManager(id, cluster.ids, dir.resolve("election"), ELECTION_TIMEOUT_MS / 5, ELECTION_TIMEOUT_MS);
+            log = new ReplicatedLog(id, cluster.ids, election, dir, 10, retryMs, cluster.snapshotEntries, false);
+            return log;
+        }
+    }
+
+    /** Time until a node with no state has applied every committed entry. */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public long catchUp(Cluster cluster, Joiner joiner) throws InterruptedException {
+        long target = cluster.leader.getCommitIndex();
+        ReplicatedLog log = joiner.start(cluster, RETRY_MS);
+        if (!log.awaitApplied(target, 120_000)) {
+            throw new IllegalStateException("The node did not catch up");
+        }
+        return log.getLastApplied();
+    }
+
+    /** Time to reopen a caught-up node from its snapshot and log files. */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public long restart(Cluster cluster, CaughtUp caughtUp) {
+        caughtUp.joiner.log.close();
+        caughtUp.joiner.log = new ReplicatedLog(cluster.ids.get(2), cluster.ids, caughtUp.joiner.election,
+                caughtUp.joiner.dir, 10, RETRY_MS, cluster.snapshotEntries, false);
+        return caughtUp.joiner.log.getLastIndex();
+    }
+
+    /**
+     * A third node that has caught up, for {@code restart}.
+     */
+    @State(Scope.Thread)
+    public static class CaughtUp {
+        Joiner joiner = new Joiner();
+
+        @Setup(Level.Iteration)
+        public void catchUp(Cluster cluster) throws IOException, InterruptedException {
+            joiner.clear(cluster);
+            if (!joiner.start(cluster, RETRY_MS).awaitApplied(cluster.leader.getCommitIndex(), 120_000)) {
+                throw new IllegalStateException("The node did not catch up");
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void stop() throws IOException {
+            joiner.stop();
+        }
+    }
+
+    private static void deleteAll(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.recommender;
+
+import com.example.shared.utils.InProcessBroker;
+import com.example.shared.utils.RabbitMQUtil;
+import com.example.shared.utils.ReplyQueue;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of one recommendation round with three nodes, asked one after the other (as before)
+ * versus scatter-gather with a deadline.
+ *
+ * The nodes are stand-ins that answer after a fixed delay, publishing through the embedded
+ * {@link InProcessBroker}, so no database or cluster is needed. The "straggler" profile has one
+ * node that is far slower than the deadline: the serial round waits for it, the scatter-gather
+ * round counts it as an abstention.
+ *
+ * The correlated rounds reply through a private {@link ReplyQueue} instead of the shared response
+ * queue; run with several threads ({@code -t 64}) to see concurrent rounds stay isolated.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScatterGatherBenchmark {
+
+    private static final String RESPONSE_QUEUE = "recommendationResponsesQueue";
+    private static final long DEADLINE_MS = 1000;
+
+    /** Per-node answer delays in milliseconds. */
+    @Param({"40,60,80", "40,60,3000"})
+    public String nodeDelaysMs;
+
+    private List<RaftNode> raftNodes;
+    private List<RabbitMQUtil> rabbitMQs;
+    private ConsensusProtocol protocol;
+    private ConsensusProtocol correlatedProtocol;
+    private ReplyQueue replyQueue;
+
+    /**
+     * A node that answers after a fixed delay instead of querying the database.
+     */
+    static final class DelayedNode extends RaftNode {
+        private final RabbitMQUtil rabbitMQUtil;
+        private final long delayMs;
+
+        DelayedNode(String nodeId, RabbitMQUtil rabbitMQUtil, long delayMs) {
+            super(nodeId, rabbitMQUtil, null, null, null);
+            this.rabbitMQUtil = rabbitMQUtil;
+            this.delayMs = delayMs;
+        }
+
+        @Override
+        public boolean sendRecommendation(int requestedSpaceID, String replyQueue, String correlationId) {
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false; // Cancelled at the deadline
+            }
+            String response = "RESPONSE::Node=" + getNodeId() + ",Rec=SpaceID=" + (requestedSpaceID + 1) + ",Citations=0,Dist=1";
+            return correlationId == null
+                    ? rabbitMQUtil.sendMessage(replyQueue, response)
+                    : rabbitMQUtil.sendReply(replyQueue, correlationId, response);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        RabbitMQUtil.setTransport(new InProcessBroker());
+        raftNodes = new ArrayList<>();
+        rabbitMQs = new ArrayList<>();
+        String[] delays = nodeDelaysMs.split(",");
+        for (int i = 0; i < delays.length; i++) {
+            String uri = "amqp://node" + i;
+            RabbitMQUtil rmq = new RabbitMQUtil(uri);
+            rmq.initializeQueues();
+            rabbitMQs.add(rmq);
+            raftNodes.add(new DelayedNode(uri, rmq, Long.parseLong(delays[i].trim())));
+        }
+        protocol = new ConsensusProtocol(raftNodes, rabbitMQs);
+        replyQueue = rabbitMQs.get(0).openReplyQueue();
+        correlatedProtocol = new ConsensusProtocol(raftNodes, rabbitMQs, replyQueue);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        replyQueue.close();
+        for (RabbitMQUtil rmq : rabbitMQs) {
+            rmq.closeConnection();
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void purgeResponses() {
+        rabbitMQs.get(0).purgeQueue(RESPONSE_QUEUE);
+    }
+
+    /** The previous round: every node in turn, then every node's response queue in turn. */
+    @Benchmark
+    public int serialRound() {
+        for (RaftNode node : raftNodes) {
+            node.sendRecommendation(10, RESPONSE_QUEUE);
+        }
+        int responses = 0;
+        for (RabbitMQUtil rmq : rabbitMQs) {
+            responses += rmq.fetchAndRepublishMessagesCitation(RESPONSE_QUEUE).size();
+        }
+        return responses;
+    }
+
+    /** Scatter-gather with one deadline; late nodes abstain. */
+    @Benchmark
+    public int scatterGatherRound() {
+        return protocol.requestRecommendations(10, DEADLINE_MS).size();
+    }
+
+    /** Scatter-gather with correlated replies on a private reply queue; ends when every node answered. */
+    @Benchmark
+    public int correlatedRound() {
+        return correlatedProtocol.requestRecommendations(10, DEADLINE_MS).size();
+    }
+}
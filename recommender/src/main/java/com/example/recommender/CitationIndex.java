@@ -0,0 +1,605 @@
+package com.example.recommender;
+
+import com.example.shared.utils.LegacyMessageCursor;
+import com.example.shared.utils.RabbitMQUtil;
+import com.example.shared.utils.StreamFollower;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Citation counts per parking space, kept up to date in the background for one node.
+ *
+ * Recommendations used to drain and republish the whole citationsQueue on every request. Instead,
+ * each node keeps one index for the life of the process, and lookups never touch the broker:
+ * - In stream mode a {@link StreamFollower} adds each citation as it is published, resuming from
+ *   the stored per-partition offsets.
+ * - Otherwise the queue can only be read by fetching and republishing it, so the index is rebuilt
+ *   from it every {@code recommender.citations.refreshMs} on the background thread.
+ *
+ * The counts live in a primitive open-addressing table (SpaceID -> count) and are written to a
+ * snapshot file periodically and on close, so a restarted node can serve at once and, in stream
+ * mode, only reads what was published since the snapshot.
+ *
+ * With {@code -Drecommender.citations.halfLifeHours=H} every citation also carries a weight that
+ * halves every H hours; spaces are then ranked by {@link #score(int)} so old citations count less.
+ *
+ * With replication enabled ({@link #followReplicatedLog(ReplicatedLog)}) the index stops reading
+ * the broker and counts the citations the nodes' log committed instead, so all nodes agree.
+ */
+public class CitationIndex implements AutoCloseable {
+    private static final String CITATIONS_QUEUE = "citationsQueue";
+
+    // Key of the space field in citation messages, encoded once for in-place matching
+    private static final byte[] SPACE_ID_KEY = LegacyMessageCursor.key("SpaceID");
+
+    private static final double HALF_LIFE_HOURS = Double.parseDouble(System.getProperty("recommender.citations.halfLifeHours", "0"));
+    private static final long REFRESH_MS = Long.getLong("recommender.citations.refreshMs", 5000);
+    private static final long SNAPSHOT_MS = Long.getLong("recommender.citations.snapshotMs", 30_000);
+    private static final String SNAPSHOT_DIR = System.getProperty("recommender.citations.snapshotDir",
+            System.getProperty("java.io.tmpdir"));
+
+    private static final int SNAPSHOT_MAGIC = 0x43495458; // "CITX"
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private static final int EMPTY = -1;              // SpaceIDs are never negative
+    private static final double REBASE_EXPONENT = 50; // Rebase weights before exp() gets near overflow
+
+    // One index per node for the whole process
+    private static final Map<String, CitationIndex> INDEXES = new ConcurrentHashMap<>();
+
+    private final String nodeId;
+    private final Path snapshotFile;
+    private final double decayPerMs; // 0: plain counts
+
+    // Guarded by this: the table, the offsets and the decay epoch
+    private int[] keys;
+    private int[] counts;
+    private double[] weights;        // Decayed weights relative to epochMs, null without decay
+    private int size;
+    private long epochMs;
+    private long[] offsets = new long[RabbitMQUtil.partitionQueues(CITATIONS_QUEUE).size()];
+    private boolean dirty;
+    private long version;            // Bumped whenever a count changes
+    private final LegacyMessageCursor streamCursor = new LegacyMessageCursor();
+
+    private volatile boolean closed;
+    private Thread updater;
+    private RabbitMQUtil rabbitMQUtil;  // Owned by the background thread
+    private StreamFollower follower;
+    private ReplicatedLog replicatedLog;  // Guarded by this; counts come from it, not the broker
+
+    /**
+     * Returns the index of a node, restoring it from its snapshot and starting its background
+     * updates on first use.
+     *
+     * @param nodeId The RabbitMQ node URI.
+     * @return The node's index.
+     */
+    public static CitationIndex forNode(String nodeId) {
+        return INDEXES.computeIfAbsent(nodeId, id -> {
+            CitationIndex index = new CitationIndex(id, snapshotPath(id), HALF_LIFE_HOURS);
+            index.restore();
+            index.start();
+            return index;
+        });
+    }
+
+    /**
+     * Creates an empty index without background updates.
+     *
+     * @param nodeId         The node the index belongs to.
+     * @param snapshotFile   Where snapshots are written (null for none).
+     * @param halfLifeHours  The half-life of a citation's weight (0 for no decay).
+     */
+    CitationIndex(String nodeId, Path snapshotFile, double halfLifeHours) {
+        this.nodeId = nodeId;
+        this.snapshotFile = snapshotFile;
+        this.decayPerMs = halfLifeHours > 0 ? Math.log(2) / (halfLifeHours * 3_600_000) : 0;
+        this.epochMs = System.currentTimeMillis();
+        allocate(64);
+    }
+
+    private static Path snapshotPath(String nodeId) {
+        return Paths.get(SNAPSHOT_DIR, "citations-" + nodeId.replaceAll("[^A-Za-z0-9.-]", "_") + ".idx");
+    }
+
+    // ------------------------------------------------------------------ lookups
+
+    /**
+     * Returns the number of citations of a space.
+     *
+     * @param spaceId The SpaceID.
+     * @return The citation count (0 if none).
+     */
+    public synchronized int count(int spaceId) {
+        int slot = find(spaceId);
+        return slot < 0 ? 0 : counts[slot];
+    }
+
+    /**
+     * Returns the ranking weight of a space: its citation count, or with decay the sum of its
+     * citations' weights at the current time.
+     *
+     * @param spaceId The SpaceID.
+     * @return The weight (0 if no citations).
+     */
+    public synchronized double score(int spaceId) {
+        int slot = find(spaceId);
+        if (slot < 0) {
+            return 0;
+        }
+        if (weights == null) {
+            return counts[slot];
+        }
+        return weights[slot] * Math.exp(-decayPerMs * (System.currentTimeMillis() - epochMs));
+    }
+
+    /**
+     * Returns the number of spaces with citations.
+     *
+     * @return The number of indexed spaces.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns a number that changes whenever a citation count changes, so results computed from the
+     * index can be tagged with it and recognized as stale later.
+     *
+     * @return The version of the counts.
+     */
+    public synchronized long version() {
+        return version;
+    }
+
+    // ------------------------------------------------------------------ updates
+
+    /**
+     * Adds a citation message read from a partition at an offset and advances the partition's offset.
+     */
+    private synchronized void addFromStream(int partition, long offset, byte[] message) {
+        addCitation(partition, offset, parseSpaceID(streamCursor.reset(message)));
+    }
+
+    /**
+     * Adds a citation read from a partition at an offset and advances the partition's offset.
+     *
+     * @param partition The stream partition.
+     * @param offset    The citation's offset in the partition.
+     * @param spaceId   The cited SpaceID, or -1 if the message had none.
+     */
+    synchronized void addCitation(int partition, long offset, int spaceId) {
+        if (partition < 0 || partition >= offsets.length || offset < offsets[partition]) {
+            return; // Already counted (e.g. re-delivered after resubscribing)
+        }
+        if (spaceId != -1) {
+            addCount(spaceId, 1, System.currentTimeMillis());
+            version++;
+        }
+        offsets[partition] = offset + 1;
+        dirty = true;
+    }
+
+    /**
+     * Takes the counts from a node's replicated log from now on: the background thread stops
+     * reading the broker, and committed citations are added as they are applied. The log's state
+     * replaces the counts whenever it covers at least the offsets counted here (e.g. after a
+     * snapshot was installed); otherwise its entries are added as they pass those offsets.
+     *
+     * @param log The node's log.
+     */
+    public void followReplicatedLog(ReplicatedLog log) {
+        synchronized (this) {
+            if (replicatedLog == log) {
+                return;
+            }
+            replicatedLog = log;
+        }
+        log.subscribe(new ReplicatedLog.Listener() {
+            @Override
+            public void onReset(ReplicatedState state) {
+                adoptReplicatedState(state);
+            }
+
+            @Override
+            public void onCommitted(byte type, int spaceId, int partition, long value) {
+                if (type == ReplicatedLog.CITATION) {
+                    addCitation(partition, value, spaceId);
+                }
+            }
+        });
+    }
+
+    private synchronized void adoptReplicatedState(ReplicatedState state) {
+        long[] replicatedOffsets = state.offsets();
+        if (replicatedOffsets.length != offsets.length) {
+            return;
+        }
+        for (int i = 0; i < offsets.length; i++) {
+            if (replicatedOffsets[i] < offsets[i]) {
+                return; // Behind this index; its next entries catch up
+            }
+        }
+        Map<Integer, Integer> replicatedCounts = state.citations();
+        int[] spaceIds = new int[replicatedCounts.size()];
+        int[] spaceCounts = new int[replicatedCounts.size()];
+        int n = 0;
+        for (Map.Entry<Integer, Integer> e : replicatedCounts.entrySet()) {
+            spaceIds[n] = e.getKey();
+            spaceCounts[n++] = e.getValue();
+        }
+        replaceAll(spaceIds, spaceCounts, n);
+        offsets = replicatedOffsets;
+    }
+
+    /**
+     * Replaces the counts with a full recount of the queue. Spaces whose count grew get the new
+     * citations weighted as of now; spaces whose count shrank (citations expired) lose weight in
+     * proportion.
+     */
+    synchronized void replaceAll(int[] spaceIds, int[] newCounts, int n) {
+        long now = System.currentTimeMillis();
+        CitationIndex fresh = new CitationIndex(nodeId, null, 0);
+        for (int i = 0; i < n; i++) {
+            fresh.addCount(spaceIds[i], newCounts[i], now);
+        }
+        boolean changed = false;
+        // Spaces that are no longer cited
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY && fresh.find(keys[slot]) < 0) {
+                changed |= counts[slot] != 0;
+                counts[slot] = 0;
+                if (weights != null) weights[slot] = 0;
+            }
+        }
+        for (int i = 0; i < fresh.keys.length; i++) {
+            if (fresh.keys[i] == EMPTY) {
+                continue;
+            }
+            int spaceId = fresh.keys[i];
+            int newCount = fresh.counts[i];
+            int slot = find(spaceId);
+            int oldCount = slot < 0 ? 0 : counts[slot];
+            changed |= newCount != oldCount;
+            if (newCount > oldCount) {
+                addCount(spaceId, newCount - oldCount, now);
+            } else if (newCount < oldCount) {
+                if (weights != null) weights[slot] *= (double) newCount / oldCount;
+                counts[slot] = newCount;
+            }
+        }
+        if (changed) {
+            version++;
+        }
+        dirty = true;
+    }
+
+    /**
+     * Adds citations to a space. Must hold the lock.
+     */
+    private void addCount(int spaceId, int n, long atMillis) {
+        if (spaceId < 0) {
+            return;
+        }
+        int slot = find(spaceId);
+        if (slot < 0) {
+            if ((size + 1) * 4 > keys.length * 3) {
+                grow();
+            }
+            slot = insertSlot(spaceId);
+            keys[slot] = spaceId;
+            size++;
+        }
+        counts[slot] += n;
+        if (weights != null) {
+            double exponent = decayPerMs * (atMillis - epochMs);
+            if (exponent > REBASE_EXPONENT) {
+                rebase(atMillis);
+                exponent = 0;
+            }
+            weights[slot] += n * Math.exp(exponent);
+        }
+    }
+
+    /**
+     * Moves the decay epoch to {@code atMillis}, scaling all weights down accordingly. Must hold the lock.
+     */
+    private void rebase(long atMillis) {
+        double factor = Math.exp(-decayPerMs * (atMillis - epochMs));
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] *= factor;
+        }
+        epochMs = atMillis;
+    }
+
+    // ------------------------------------------------------------------ open-addressing table
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        counts = new int[capacity];
+        weights = decayPerMs > 0 ? new double[capacity] : null;
+        size = 0;
+    }
+
+    private int find(int spaceId) {
+        int mask = keys.length - 1;
+        for (int slot = mix(spaceId) & mask; ; slot = (slot + 1) & mask) {
+            if (keys[slot] == spaceId) {
+                return slot;
+            }
+            if (keys[slot] == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    private int insertSlot(int spaceId) {
+        int mask = keys.length - 1;
+        int slot = mix(spaceId) & mask;
+        while (keys[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldCounts = counts;
+        double[] oldWeights = weights;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = insertSlot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+                if (weights != null) weights[slot] = oldWeights[i];
+                size++;
+            }
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9; // Fibonacci hashing spreads consecutive SpaceIDs
+        return h ^ (h >>> 16);
+    }
+
+    // ------------------------------------------------------------------ background updates
+
+    /**
+     * Starts the background thread that keeps the index current and writes snapshots.
+     */
+    private void start() {
+        updater = new Thread(this::run, "citation-index-" + nodeId);
+        updater.setDaemon(true);
+        updater.start();
+    }
+
+    private void run() {
+        long lastSnapshot = System.currentTimeMillis();
+        while (!closed) {
+            try {
+                if (rabbitMQUtil == null) {
+                    rabbitMQUtil = new RabbitMQUtil(nodeId);
+                }
+                boolean replicated;
+                synchronized (this) {
+                    replicated = replicatedLog != null;
+                }
+                if (replicated) {
+                    if (follower != null) {
+                        follower.close();
+                        follower = null;
+                    }
+                } else if (RabbitMQUtil.isStreamMode()) {
+                    if (follower == null || !follower.isOpen()) {
+                        follow();
+                    }
+                } else {
+                    rebuildFromQueue();
+                }
+                if (System.currentTimeMillis() - lastSnapshot >= SNAPSHOT_MS) {
+                    snapshot();
+                    lastSnapshot = System.currentTimeMillis();
+                }
+                Thread.sleep(REFRESH_MS);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                System.err.println("❌ Citation index (" + nodeId + ") update failed: " + e.getMessage());
+                try {
+                    Thread.sleep(REFRESH_MS);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * (Re)subscribes to the citation stream from the stored offsets.
+     */
+    private void follow() throws IOException {
+        if (follower != null) {
+            follower.close();
+        }
+        long[] from;
+        synchronized (this) {
+            from = offsets.clone();
+        }
+        follower = rabbitMQUtil.followStream(CITATIONS_QUEUE, from, this::addFromStream);
+    }
+
+    /**
+     * Recounts the citations of the whole queue (the non-stream fallback).
+     */
+    private void rebuildFromQueue() {
+        List<byte[]> msgs = rabbitMQUtil.fetchAndRepublishMessageBodies(CITATIONS_QUEUE);
+        int[] ids = new int[msgs.size()];
+        int n = 0;
+        LegacyMessageCursor cursor = new LegacyMessageCursor();
+        for (byte[] msg : msgs) {
+            int sid = parseSpaceID(cursor.reset(msg));
+            if (sid != -1) {
+                ids[n++] = sid;
+            }
+        }
+        // Count runs of equal IDs
+        Arrays.sort(ids, 0, n);
+        int[] spaceIds = new int[n];
+        int[] spaceCounts = new int[n];
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct > 0 && spaceIds[distinct - 1] == ids[i]) {
+                spaceCounts[distinct - 1]++;
+            } else {
+                spaceIds[distinct] = ids[i];
+                spaceCounts[distinct++] = 1;
+            }
+        }
+        replaceAll(spaceIds, spaceCounts, distinct);
+    }
+
+    /**
+     * Parses a SpaceID from a violation message without splitting it.
+     * Expected format: "VehicleID: 205, SpaceID: 10, ParkingZone: ..., inspectionTimes: ..., totalCost: 654.00"
+     *
+     * @param cursor A cursor positioned at the start of the message.
+     * @return The SpaceID, or -1 if the field is missing or not a number.
+     */
+    static int parseSpaceID(LegacyMessageCursor cursor) {
+        if (!cursor.seek(SPACE_ID_KEY)) {
+            return -1;
+        }
+        try {
+            return cursor.valueAsInt();
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // ------------------------------------------------------------------ snapshots
+
+    /**
+     * Writes the index to its snapshot file if it changed, replacing the previous snapshot atomically.
+     */
+    void snapshot() {
+        if (snapshotFile == null) {
+            return;
+        }
+        byte[] bytes;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(32 + size * 16);
+            try (DataOutputStream out = new DataOutputStream(buffer)) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeBoolean(RabbitMQUtil.isStreamMode());
+                out.writeInt(offsets.length);
+                for (long offset : offsets) {
+                    out.writeLong(offset);
+                }
+                out.writeDouble(decayPerMs);
+                out.writeLong(epochMs);
+                out.writeInt(size);
+                for (int slot = 0; slot < keys.length; slot++) {
+                    if (keys[slot] != EMPTY) {
+                        out.writeInt(keys[slot]);
+                        out.writeInt(counts[slot]);
+                        out.writeDouble(weights == null ? counts[slot] : weights[slot]);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // In-memory stream
+            }
+            bytes = buffer.toByteArray();
+            dirty = false;
+        }
+        try {
+            Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+            Files.write(tmp, bytes);
+            Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("❌ Could not write citation snapshot " + snapshotFile + ": " + e.getMessage());
+            synchronized (this) {
+                dirty = true;
+            }
+        }
+    }
+
+    /**
+     * Loads the snapshot file if there is one. Offsets are only kept if the snapshot was taken with the
+     * same queue mode and partition count; otherwise the stream is read again from the start.
+     */
+    synchronized void restore() {
+        if (snapshotFile == null || !Files.exists(snapshotFile)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                System.err.println("❌ Ignoring citation snapshot " + snapshotFile + ": unknown format");
+                return;
+            }
+            boolean streamMode = in.readBoolean();
+            long[] savedOffsets = new long[in.readInt()];
+            for (int i = 0; i < savedOffsets.length; i++) {
+                savedOffsets[i] = in.readLong();
+            }
+            if (streamMode != RabbitMQUtil.isStreamMode() || savedOffsets.length != offsets.length) {
+                System.out.println("Citation snapshot " + snapshotFile + " is from another queue layout, rebuilding.");
+                return;
+            }
+            double savedDecay = in.readDouble();
+            long savedEpoch = in.readLong();
+            int entries = in.readInt();
+            allocate(Math.max(64, Integer.highestOneBit(Math.max(1, entries * 2)) * 2));
+            epochMs = weights != null && savedDecay == decayPerMs ? savedEpoch : System.currentTimeMillis();
+            for (int i = 0; i < entries; i++) {
+                int spaceId = in.readInt();
+                int count = in.readInt();
+                double weight = in.readDouble();
+                int slot = insertSlot(spaceId);
+                keys[slot] = spaceId;
+                counts[slot] = count;
+                if (weights != null) weights[slot] = savedDecay == decayPerMs ? weight : count;
+                size++;
+            }
+            offsets = savedOffsets;
+            System.out.println("Restored " + size + " cited spaces for " + nodeId + " from " + snapshotFile);
+        } catch (IOException e) {
+            System.err.println("❌ Could not read citation snapshot " + snapshotFile + ": " + e.getMessage());
+            allocate(64);
+            offsets = new long[offsets.length];
+        }
+    }
+
+    /**
+     * Stops the background updates, writes a final snapshot and closes the index's connection.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (updater != null) {
+            updater.interrupt();
+        }
+        if (follower != null) {
+            follower.close();
+        }
+        snapshot();
+        if (rabbitMQUtil != null) {
+            rabbitMQUtil.closeConnection();
+        }
+        INDEXES.remove(nodeId, this);
+    }
+}
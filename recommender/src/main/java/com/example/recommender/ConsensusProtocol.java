@@ -3,8 +3,20 @@ package com.example.recommender;
 import com.example.recommender.RaftNode;
 import com.example.recommender.RecommendationResponse;
 import com.example.shared.utils.RabbitMQUtil;
+import com.example.shared.utils.ReplyQueue;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -12,13 +24,55 @@ import java.util.stream.Collectors;
  *  1) Sends a request to all nodes.
  *  2) Collects responses from the nodes.
  *  3) Performs Majority Voting to determine the consensus decision.
+ *
+ * Both the request and the collection fan out to all nodes in parallel (scatter-gather) under one
+ * overall deadline, so a round takes as long as the slowest node that answers in time rather than
+ * the sum of all nodes. A node that has not answered by the deadline abstains from the vote.
+ *
+ * With a {@link ReplyQueue}, every round gets its own correlation ID and the nodes reply to the
+ * requester's private queue, so concurrent rounds (e.g. several customers asking at once) never
+ * see or purge each other's responses. Without one, responses go through the shared RESPONSE_QUEUE.
+ *
+ * With an election that knows a leader ({@link LeaderView}, e.g. a
+ * {@link LeaderObserver}), only the leader computes a recommendation;
+ * the other nodes check its proposal against their own data and vote for it with a digest vote
+ * (see {@link RecommendationResponse}), so the ranking itself is never sent back. A round then costs
+ * one full computation plus a few point lookups per follower.
+ *
+ * Votes are counted as they arrive ({@link VoteTally}): a correlated round ends as soon as a
+ * majority of the cluster agrees, or can no longer agree, and the nodes still working are
+ * cancelled. A round is therefore as slow as the median node, not the slowest one.
+ *
+ * Nodes vote for their top choice ({@link RecommendationResponse#getTopChoice()}); the rest of a
+ * ranking are alternates. A listener passed to {@link #requestRecommendations(int, long, Consumer)}
+ * sees every vote as it is counted, so a UI can show the candidates before the round is decided.
  */
 public class ConsensusProtocol {
     // Name of the queue for receiving responses
     private static final String RESPONSE_QUEUE = "recommendationResponsesQueue";
 
+    /** Overall time budget of a recommendation round, in milliseconds. */
+    public static final long DEFAULT_DEADLINE_MS = Long.getLong("recommender.deadlineMs", 2000);
+
+    // Share of the round's budget kept for collecting responses, so a straggler cannot use it all up
+    private static final double GATHER_SHARE = 1.0 / 3;
+
+    // Send status of a node in a correlated round
+    private static final int SENDING = 0, SENT = 1, FAILED = 2;
+
+    // Runs the per-node calls; they mostly wait on the DB and the broker
+    private static final ExecutorService SCATTER_EXECUTOR = newScatterExecutor();
+
     private final List<RaftNode> raftNodes;
     private final List<RabbitMQUtil> rabbitMQNodes;
+    private final ReplyQueue replyQueue; // Null: responses go through the shared RESPONSE_QUEUE
+    private final LeaderView election; // Null: every node computes its own recommendation
+    private final int clusterSize;          // A majority of it decides, however many nodes take part
+
+    // Nodes that did not answer in time during the last round
+    private volatile List<String> abstainedNodes = List.of();
+    // Nodes that voted against the decision of the last round
+    private volatile List<String> dissentingNodes = List.of();
 
 
     /**
@@ -29,112 +83,428 @@ public class ConsensusProtocol {
      */
     public ConsensusProtocol(List<RaftNode> raftNodes,
                              List<RabbitMQUtil> rabbitMQNodes) {
+        this(raftNodes, rabbitMQNodes, null);
+    }
+
+    /**
+     * Constructor for ConsensusProtocol with correlated replies
+     *
+     * @param raftNodes      List of Raft nodes participating in consensus
+     * @param rabbitMQNodes  List of RabbitMQ utilities for message communication
+     * @param replyQueue     The requester's reply queue, shared by concurrent rounds (null for the shared queue)
+     */
+    public ConsensusProtocol(List<RaftNode> raftNodes,
+                             List<RabbitMQUtil> rabbitMQNodes,
+                             ReplyQueue replyQueue) {
+        this(raftNodes, rabbitMQNodes, replyQueue, null);
+    }
+
+    /**
+     * Constructor for ConsensusProtocol with correlated replies and a leader
+     *
+     * @param raftNodes      List of Raft nodes participating in consensus
+     * @param rabbitMQNodes  List of RabbitMQ utilities for message communication
+     * @param replyQueue     The requester's reply queue, shared by concurrent rounds (null for the shared queue)
+     * @param election       The election that names the round's leader (null to let every node compute)
+     */
+    public ConsensusProtocol(List<RaftNode> raftNodes,
+                             List<RabbitMQUtil> rabbitMQNodes,
+                             ReplyQueue replyQueue,
+                             LeaderView election) {
+        this(raftNodes, rabbitMQNodes, replyQueue, election, raftNodes.size());
+    }
+
+    /**
+     * Constructor for ConsensusProtocol with correlated replies, a leader and the size of the whole cluster
+     *
+     * @param raftNodes      List of Raft nodes participating in this round (e.g. the reachable ones)
+     * @param rabbitMQNodes  List of RabbitMQ utilities for message communication
+     * @param replyQueue     The requester's reply queue, shared by concurrent rounds (null for the shared queue)
+     * @param election       The election that names the round's leader (null to let every node compute)
+     * @param clusterSize    The number of nodes in the cluster, reachable or not; a majority of it decides
+     */
+    public ConsensusProtocol(List<RaftNode> raftNodes,
+                             List<RabbitMQUtil> rabbitMQNodes,
+                             ReplyQueue replyQueue,
+                             LeaderView election,
+                             int clusterSize) {
         this.raftNodes = raftNodes;
         this.rabbitMQNodes = rabbitMQNodes;
+        this.replyQueue = replyQueue;
+        this.election = election;
+        this.clusterSize = clusterSize;
     }
 
     /**
-     * Sends a recommendation request to all nodes.
+     * Runs a full recommendation round: every node computes its recommendation in parallel, then the
+     * responses are collected in parallel, all within one deadline. Nodes get the first two thirds of
+     * the budget to answer, the rest is kept for collection. Nodes that miss the deadline are
+     * listed by {@link #getAbstainedNodes()}.
+     * With a reply queue, votes are counted as they arrive and the round ends as soon as a majority
+     * of the cluster agrees or cannot agree anymore, or at the deadline; the remaining nodes are cancelled.
+     * With a known leader, the leader proposes and the others validate (see {@link ConsensusProtocol});
+     * if the leader has no proposal in time, every node computes its own in the time left.
+     *
+     * @param spaceID    The parking space ID for which recommendation is requested.
+     * @param deadlineMs The time budget of the whole round, in milliseconds.
+     * @return The responses collected before the deadline.
+     */
+    public List<RecommendationResponse> requestRecommendations(int spaceID, long deadlineMs) {
+        return requestRecommendations(spaceID, deadlineMs, null);
+    }
+
+    /**
+     * Runs a full recommendation round as {@link #requestRecommendations(int, long)} does, and
+     * passes every vote to a listener as soon as it is counted (on the requesting thread), the
+     * leader's proposal first.
+     *
+     * @param spaceID    The parking space ID for which recommendation is requested.
+     * @param deadlineMs The time budget of the whole round, in milliseconds.
+     * @param onVote     Sees each response as it arrives (null for none).
+     * @return The responses collected before the deadline.
+     */
+    public List<RecommendationResponse> requestRecommendations(int spaceID, long deadlineMs,
+                                                               Consumer<RecommendationResponse> onVote) {
+        long start = System.nanoTime();
+        long budget = TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+        long deadline = start + budget;
+        if (replyQueue != null) {
+            RaftNode leader = currentLeader();
+            if (leader != null) {
+                return requestLed(spaceID, leader, deadline - (long) (budget * GATHER_SHARE), deadline, onVote);
+            }
+            return requestCorrelated(raftNodes, (node, queue, correlationId) ->
+                    node.sendRecommendation(spaceID, queue, correlationId), new VoteTally(clusterSize), deadline, onVote);
+        }
+        List<String> abstained = new ArrayList<>(scatter(spaceID, deadline - (long) (budget * GATHER_SHARE)));
+        List<RecommendationResponse> responses = gather(deadline, abstained);
+        abstainedNodes = List.copyOf(abstained);
+        for (RecommendationResponse response : responses) {
+            notifyVote(onVote, response);
+        }
+        return responses;
+    }
+
+    /**
+     * Sends a recommendation request to all nodes in parallel and waits for them until
+     * {@link #DEFAULT_DEADLINE_MS} has passed.
      * Each node processes the request and sends a response to RESPONSE_QUEUE.
      *
      * @param spaceID The parking space ID for which recommendation is requested.
      */
     public void sendRecommendationRequest(int spaceID) {
-        for (RaftNode node : raftNodes) {
-            // Node שולח את תגובתו לתור RESPONSE_QUEUE
-            node.sendRecommendation(spaceID, RESPONSE_QUEUE);
-        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DEFAULT_DEADLINE_MS);
+        abstainedNodes = List.copyOf(scatter(spaceID, deadline));
     }
 
     /**
-     * Collects all responses from the RESPONSE_QUEUE across all nodes.
+     * Collects all responses from the RESPONSE_QUEUE across all nodes, reading the nodes in parallel
+     * for at most {@link #DEFAULT_DEADLINE_MS}.
      *
      * @return List of RecommendationResponse objects containing responses from nodes.
      */
     public List<RecommendationResponse> collectResponses() {
-        List<String> rawMsgs = new ArrayList<>();
-        for (RabbitMQUtil rmq : rabbitMQNodes) {
-            rawMsgs.addAll(rmq.fetchAndRepublishMessagesCitation(RESPONSE_QUEUE));
-        }
-        return rawMsgs.stream()
-                .map(this::parseResponse)
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DEFAULT_DEADLINE_MS);
+        List<String> abstained = new ArrayList<>();
+        List<RecommendationResponse> responses = gather(deadline, abstained);
+        abstainedNodes = List.copyOf(abstained);
+        return responses;
     }
 
     /**
-     * Determines the consensus recommendation using Majority Voting.
-     * The following rules apply:
-     * - If all responses are different, return null.
-     * - If only one response exists, return null.
-     * - If two responses exist and are different, return null.
-     * - If the most frequent recommendation has less than half of total responses, return null.
+     * Returns the nodes that abstained in the last round because they failed or did not answer in time.
      *
-     * @param responses List of responses received from nodes.
-     * @return The recommendation with the highest agreement, or null if no consensus is reached.
+     * @return The node IDs (RabbitMQ URIs for the collection phase).
      */
-    public String getConsensusDecision(List<RecommendationResponse> responses) {
-        if (responses.isEmpty()) {
+    public List<String> getAbstainedNodes() {
+        return abstainedNodes;
+    }
+
+    /**
+     * Returns the nodes that voted for another recommendation than the decision of the last round.
+     *
+     * @return The node IDs, empty if there was no decision.
+     */
+    public List<String> getDissentingNodes() {
+        return dissentingNodes;
+    }
+
+    /**
+     * Returns the RaftNode of the current leader, or null if there is no election, no leader, or the
+     * leader is not among this round's nodes.
+     */
+    private RaftNode currentLeader() {
+        String leaderId = election == null ? null : election.getLeader();
+        if (leaderId == null) {
             return null;
         }
+        for (RaftNode node : raftNodes) {
+            if (leaderId.equals(node.getNodeId())) {
+                return node;
+            }
+        }
+        return null;
+    }
 
-        // Check if all responses are the same
-        boolean allEqual = true;
-        String firstRecommendation = responses.get(0).getRecommendation();
-        for (RecommendationResponse rr : responses) {
-            if (!firstRecommendation.equals(rr.getRecommendation())) {
-                allEqual = false;
-                break;
+    /**
+     * Lets the leader compute the recommendation, then asks the other nodes to validate it and vote.
+     * The leader's proposal counts as its own vote.
+     */
+    private List<RecommendationResponse> requestLed(int spaceID, RaftNode leader, long proposeDeadline, long deadline,
+                                                    Consumer<RecommendationResponse> onVote) {
+        Future<String> proposing = SCATTER_EXECUTOR.submit(() -> leader.proposeRecommendation(spaceID));
+        String proposal = null;
+        try {
+            proposal = proposing.get(Math.max(0, proposeDeadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException | CancellationException e) {
+            proposing.cancel(true);
+        } catch (InterruptedException e) {
+            proposing.cancel(true);
+            Thread.currentThread().interrupt();
+        }
+        if (proposal == null) {
+            System.out.println("Leader " + leader.getNodeId() + " has no proposal for space " + spaceID + ", every node computes its own.");
+            return requestCorrelated(raftNodes, (node, queue, correlationId) ->
+                    node.sendRecommendation(spaceID, queue, correlationId), new VoteTally(clusterSize), deadline, onVote);
+        }
+
+        List<RaftNode> followers = new ArrayList<>(raftNodes);
+        followers.remove(leader);
+        final String proposed = proposal;
+        VoteTally tally = new VoteTally(clusterSize);
+        RecommendationResponse proposalVote = new RecommendationResponse(leader.getNodeId(), proposed.trim()); // As parsed from a reply
+        tally.add(proposalVote);
+        notifyVote(onVote, proposalVote); // The candidates can be shown while the followers validate
+        return requestCorrelated(followers, (node, queue, correlationId) ->
+                node.sendValidation(spaceID, proposed, queue, correlationId), tally, deadline, onVote);
+    }
+
+    /**
+     * One node's part of a correlated round: sends its reply to the queue with the correlation ID.
+     */
+    @FunctionalInterface
+    private interface NodeCall {
+        boolean send(RaftNode node, String replyQueue, String correlationId);
+    }
+
+    /**
+     * Makes the call on every node in parallel, the nodes replying to our reply queue with a fresh
+     * correlation ID, and counts the replies of this round as they arrive until the tally is decided
+     * or hopeless, or the deadline passes. Nodes that failed, or were still working then, abstain;
+     * the latter are cancelled.
+     *
+     * @return The votes counted, including those the tally already had.
+     */
+    private List<RecommendationResponse> requestCorrelated(List<RaftNode> nodes, NodeCall call, VoteTally tally,
+                                                           long deadline, Consumer<RecommendationResponse> onVote) {
+        try (ReplyQueue.PendingRequest request = replyQueue.expect(nodes.size())) {
+            // Per node: SENDING, then SENT or FAILED (set before the reply can be awaited past it)
+            AtomicIntegerArray status = new AtomicIntegerArray(nodes.size());
+            List<Future<?>> sends = new ArrayList<>(nodes.size());
+            for (int i = 0; i < nodes.size(); i++) {
+                final int index = i;
+                final RaftNode node = nodes.get(i);
+                sends.add(SCATTER_EXECUTOR.submit(() -> {
+                    boolean sent = false;
+                    try {
+                        sent = call.send(node, replyQueue.getQueueName(), request.correlationId());
+                    } finally {
+                        status.set(index, sent ? SENT : FAILED);
+                        if (!sent) {
+                            request.expectFewer(); // No reply will come, don't wait for it
+                        }
+                    }
+                }));
+            }
+
+            int received = 0;
+            try {
+                while (tally.getDecision() == null && System.nanoTime() - deadline < 0) {
+                    int failed = 0;
+                    for (int i = 0; i < nodes.size(); i++) {
+                        if (status.get(i) == FAILED) failed++;
+                    }
+                    int outstanding = nodes.size() - failed - received;
+                    if (outstanding <= 0 || tally.isHopeless(outstanding)) {
+                        break;
+                    }
+                    byte[] body = request.awaitReply(received, deadline); // Null: re-check the counts
+                    if (body != null) {
+                        received++;
+                        RecommendationResponse response = parseResponse(new String(body, StandardCharsets.UTF_8));
+                        if (response != null) {
+                            tally.add(response);
+                            notifyVote(onVote, response);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            // The round is over: nodes that failed abstain, those still computing are cancelled
+            List<String> abstained = new ArrayList<>();
+            List<String> cancelled = new ArrayList<>();
+            for (int i = 0; i < sends.size(); i++) {
+                if (status.get(i) == FAILED) {
+                    abstained.add(nodes.get(i).getNodeId());
+                } else if (status.get(i) == SENDING) {
+                    sends.get(i).cancel(true);
+                    abstained.add(nodes.get(i).getNodeId());
+                    cancelled.add(nodes.get(i).getNodeId());
+                }
             }
+            if (tally.getDecision() != null && !cancelled.isEmpty()) {
+                System.out.println("Majority reached with " + tally.getResponses().size() + " of " + clusterSize
+                        + " votes, cancelled: " + cancelled);
+            } else if (!abstained.isEmpty()) {
+                System.out.println("Nodes abstained (no recommendation before the deadline): " + abstained);
+            }
+            abstainedNodes = List.copyOf(abstained);
+
+            return tally.getResponses();
         }
+    }
 
-        // If all responses are not the same, return null (no consensus)
-        if (!allEqual) {
-            return null;
+    /**
+     * Passes a vote to the round's listener; a failing listener does not fail the round.
+     */
+    private static void notifyVote(Consumer<RecommendationResponse> onVote, RecommendationResponse response) {
+        if (onVote == null) {
+            return;
+        }
+        try {
+            onVote.accept(response);
+        } catch (RuntimeException e) {
+            System.err.println("❌ Vote listener failed: " + e.getMessage());
         }
+    }
 
-        // Count occurrences of each recommendation
-        Map<String, Integer> voteCount = new HashMap<>();
-        for (RecommendationResponse rr : responses) {
-            String rec = rr.getRecommendation();
-            voteCount.put(rec, voteCount.getOrDefault(rec, 0) + 1);
+    /**
+     * Asks every node for its recommendation in parallel.
+     *
+     * @return The IDs of the nodes that failed or were still running at the deadline (their tasks are cancelled).
+     */
+    private List<String> scatter(int spaceID, long deadline) {
+        List<Callable<Boolean>> tasks = new ArrayList<>(raftNodes.size());
+        for (RaftNode node : raftNodes) {
+            // Node שולח את תגובתו לתור RESPONSE_QUEUE
+            tasks.add(() -> node.sendRecommendation(spaceID, RESPONSE_QUEUE));
         }
+        List<Future<Boolean>> results = invokeAllUntil(tasks, deadline);
 
-        System.out.println("Responses: " + responses);
-        System.out.println("Responses size: " + responses.size());
+        List<String> abstained = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            if (resultOf(results.get(i)) == null) {
+                abstained.add(raftNodes.get(i).getNodeId());
+            }
+        }
+        if (!abstained.isEmpty()) {
+            System.out.println("Nodes abstained (no recommendation before the deadline): " + abstained);
+        }
+        return abstained;
+    }
 
-        // If there's only one response, return null (no consensus)
-        if (responses.size() == 1) {
-            return null;
+    /**
+     * Reads the response queue through every node's connection in parallel. Results are kept in
+     * node order; nodes that fail or miss the deadline are added to {@code abstained}.
+     */
+    private List<RecommendationResponse> gather(long deadline, List<String> abstained) {
+        List<Callable<List<String>>> tasks = new ArrayList<>(rabbitMQNodes.size());
+        for (RabbitMQUtil rmq : rabbitMQNodes) {
+            tasks.add(() -> rmq.fetchAndRepublishMessagesCitation(RESPONSE_QUEUE));
         }
+        List<Future<List<String>>> results = invokeAllUntil(tasks, deadline);
 
-        // If exactly two responses exist and they are different, return null
-        if (responses.size() == 2 && voteCount.size() == 2) {
-            return null;
+        List<String> rawMsgs = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            List<String> msgs = resultOf(results.get(i));
+            if (msgs != null) {
+                rawMsgs.addAll(msgs);
+            } else {
+                abstained.add(String.valueOf(rabbitMQNodes.get(i).getConnectedServer()));
+            }
+        }
+        return rawMsgs.stream()
+                .map(this::parseResponse)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Runs the tasks in parallel until they are all done or the deadline passes; unfinished tasks are cancelled.
+     */
+    private static <T> List<Future<T>> invokeAllUntil(List<Callable<T>> tasks, long deadline) {
+        long remaining = Math.max(0, deadline - System.nanoTime());
+        try {
+            return SCATTER_EXECUTOR.invokeAll(tasks, remaining, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return List.of();
         }
+    }
 
-        // If three responses exist and they are all different, return null
-        if (responses.size() == 3 && voteCount.size() == 3) {
+    /**
+     * Returns the result of a finished task, or null if it failed, was cancelled or returned false.
+     */
+    private static <T> T resultOf(Future<T> future) {
+        try {
+            T result = future.get();
+            return Boolean.FALSE.equals(result) ? null : result;
+        } catch (CancellationException | ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return null;
         }
+    }
 
-        // Find the recommendation with the highest vote count
-        int total = responses.size();
-        Optional<Map.Entry<String, Integer>> consensusEntry = voteCount.entrySet().stream()
-                .max(Map.Entry.comparingByValue());
+    /**
+     * Creates the executor for the per-node calls: one virtual thread per task where the JVM offers
+     * them (Java 21, or Java 19/20 with --enable-preview), otherwise a cached pool of daemon threads.
+     */
+    private static ExecutorService newScatterExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "consensus-scatter");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
 
-        if (consensusEntry.isPresent()) {
-            Map.Entry<String, Integer> bestCandidate = consensusEntry.get();
+    /**
+     * Determines the consensus recommendation using Majority Voting: the top choice that a
+     * majority of the cluster (see the {@code clusterSize} constructor argument) agrees on, with
+     * the alternates of the first node that voted for it.
+     * Responses that disagree with it do not veto it; their nodes are listed by
+     * {@link #getDissentingNodes()}.
+     *
+     * @param responses List of responses received from nodes.
+     * @return The ranking whose top choice has a majority, or null if no consensus is reached.
+     */
+    public String getConsensusDecision(List<RecommendationResponse> responses) {
+        if (responses.isEmpty()) {
+            dissentingNodes = List.of();
+            return null;
+        }
 
-            // If the highest-voted recommendation does not exceed half of total responses, return null
-            if (bestCandidate.getValue() < 2) {
-                return null;
-            }
+        System.out.println("Responses: " + responses);
+        System.out.println("Responses size: " + responses.size());
 
-            return bestCandidate.getKey();
+        VoteTally tally = new VoteTally(clusterSize);
+        for (RecommendationResponse rr : responses) {
+            tally.add(rr);
         }
 
-        return null;
+        List<String> dissenters = tally.getDissenters();
+        if (!dissenters.isEmpty()) {
+            System.out.println("Nodes dissented from the majority: " + dissenters);
+        }
+        dissentingNodes = List.copyOf(dissenters);
+        return tally.getDecision();
     }
 
 
@@ -142,28 +512,13 @@ public class ConsensusProtocol {
     /**
      * Parses a raw response string into a RecommendationResponse object.
      *
-     * Example format: "RESPONSE::Node=amqp://100.85.154.51,Rec=SpaceID=10,Citations=0,Dist=2"
+     * Example formats: "RESPONSE::Node=amqp://100.85.154.51,Rec=SpaceID=10,Citations=0,Dist=2", and the
+     * digest vote "RESPONSE::Node=amqp://100.85.154.51,Top=10,Digest=3f9c0a1b2c3d4e5f,Citations=0".
      *
      * @param msg Raw response string from RabbitMQ.
      * @return RecommendationResponse object or null if parsing fails.
      */
     private RecommendationResponse parseResponse(String msg) {
-        // דוגמה: "RESPONSE::Node=amqp://100.85.154.51,Rec=SpaceID=10,Citations=0,Dist=2"
-        if (!msg.startsWith("RESPONSE::")) {
-            return null;
-        }
-        String raw = msg.substring("RESPONSE::".length()); // Node=...,Rec=...
-        String[] parts = raw.split(",Rec=");
-        if (parts.length != 2) {
-            return null;
-        }
-        String nodePart = parts[0].trim();  // "Node=amqp://100.85.154.51"
-        String recPart  = parts[1].trim();  // "SpaceID=10,Citations=0,Dist=2"
-
-        if (!nodePart.startsWith("Node=")) {
-            return null;
-        }
-        String nodeId = nodePart.substring("Node=".length());
-        return new RecommendationResponse(nodeId, recPart);
+        return RecommendationResponse.parse(msg);
     }
 }
\ No newline at end of file
@@ -1,77 +1,667 @@
 package com.example.recommender;
 
+import com.example.shared.utils.ConsumerGroupMember;
 import com.example.shared.utils.RabbitMQUtil;
 
-import java.util.List;
-import java.util.Random;
-import java.util.stream.Collectors;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Handles Leader Election based on active connected nodes.
+ * Raft leader election among the recommender nodes.
+ *
+ * Every node runs one participant for the life of its own process ({@link Main}), and only there.
+ * Participants talk through per-node inbox queues ("raft.election.&lt;node&gt;"), each exclusive
+ * to its participant's connection: a second participant for the same node cannot open the inbox
+ * and stays out of the election, so no node votes twice in a term.
+ * - A follower that hears no heartbeat for a randomized election timeout
+ *   ({@code recommender.raft.electionTimeoutMs} to twice that) becomes a candidate for the next
+ *   term and asks every node for its vote.
+ * - A node grants at most one vote per term; its current term and vote are written to
+ *   {@code recommender.raft.stateDir} before it answers, so a restart cannot make it vote twice.
+ * - A candidate with the votes of a majority leads the term and sends heartbeats every
+ *   {@code recommender.raft.heartbeatMs}. Any message with a higher term turns a node back into
+ *   a follower.
+ * - A node that heard from its leader within the election timeout ignores vote requests, so a
+ *   node that was only cut off briefly cannot depose a working leader.
+ * - The leader holds a lease: {@link #isLeader()} is only true while a majority acknowledged a
+ *   heartbeat within the election timeout. Without it the leader steps down.
+ * - The leader also announces each heartbeat on {@link #LEADER_EXCHANGE}, so processes outside the
+ *   election (the UI) follow it with a {@link LeaderObserver} instead of taking part.
+ *
+ * The leader stays in office across requests, so a recommendation never pays for an election.
+ * With a {@link ReplicatedLog} attached ({@link #attachLog(LogPosition)}) a vote request carries
+ * the candidate's last log index and term, and a node only votes for a candidate whose log is at
+ * least as up to date as its own, so the leader holds every committed entry. Without one any node
+ * may win; the leader only decides who computes.
  */
-public class ElectionManager {
-    private final List<String> nodes;
-    private String leader;
+public class ElectionManager implements LeaderView, AutoCloseable {
 
+    /**
+     * Fanout exchange on which the leader announces its heartbeats to observers.
+     */
+    public static final String LEADER_EXCHANGE = "raft.leader";
 
+    /**
+     * The role of a participant in its current term.
+     */
+    public enum Role { FOLLOWER, CANDIDATE, LEADER }
 
     /**
-     * Constructor for the ElectionManager.
-     * It initializes the list of nodes and elects a leader.
-     *
-     * @param nodes The list of RabbitMQ nodes (URIs).
+     * The end of a node's replicated log, as far as an election needs to know it.
      */
-    public ElectionManager(List<String> nodes) {
-        this.nodes = nodes;
-        electLeader();
+    public interface LogPosition {
+        /**
+         * Returns the index of the last entry in the log.
+         *
+         * @return The index (0 if the log is empty).
+         */
+        long lastIndex();
+
+        /**
+         * Returns the term of the last entry in the log.
+         *
+         * @return The term (0 if the log is empty).
+         */
+        long lastTerm();
     }
 
+    private static final long HEARTBEAT_MS = Long.getLong("recommender.raft.heartbeatMs", 100);
+    private static final long ELECTION_TIMEOUT_MS = Long.getLong("recommender.raft.electionTimeoutMs", 500);
+    private static final String STATE_DIR = System.getProperty("recommender.raft.stateDir",
+            System.getProperty("java.io.tmpdir"));
+
+    private static final String INBOX_PREFIX = "raft.election.";
+
+    // One participant per node for the whole process
+    private static final Map<String, ElectionManager> MEMBERS = new ConcurrentHashMap<>();
+
+    // Drives the timers of all participants; message handling runs on the consumer threads
+    private static final ScheduledExecutorService TICKER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "raft-election");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String nodeId;
+    private final List<String> nodes;     // All members, this node included
+    private final Path stateFile;
+    private final long heartbeatNanos;
+    private final long electionTimeoutNanos;
+    private final RabbitMQUtil rabbitMQUtil;
+    private final ScheduledFuture<?> ticker;
+    private volatile ConsumerGroupMember inbox;
+    private volatile LogPosition log;     // Null: votes do not compare logs
+    // Used by the constructor, then only by the ticker
+    private long nextInboxAttempt;        // nanoTime before which a refused inbox is not tried again
+    private boolean inboxRefused;
+
+    // Guarded by this
+    private long currentTerm;
+    private String votedFor;
+    private Role role = Role.FOLLOWER;
+    private String leader;
+    private long electionDeadline;        // nanoTime at which a follower starts an election
+    private long lastLeaderContact;       // nanoTime of the last heartbeat from the leader
+    private long lastHeartbeatSent;
+    private final Set<String> votes = new HashSet<>();
+    private final Map<String, Long> lastAck = new HashMap<>(); // Peer -> nanoTime of its last ack this term
+    private boolean closed;
 
     /**
-     * Elects a leader from the list of active nodes.
+     * Returns the participant of a node, starting it on first use.
+     *
+     * @param nodeId The RabbitMQ node URI of this node.
+     * @param nodes  The URIs of all recommender nodes, this one included.
+     * @return The node's participant.
      */
-    public void electLeader() {
-        List<String> activeNodes = nodes.stream()
-                .filter(this::isNodeConnected) // מסנן צמתים מחוברים בלבד
-                .collect(Collectors.toList());
+    public static ElectionManager forNode(String nodeId, List<String> nodes) {
+        return MEMBERS.computeIfAbsent(nodeId, id -> new ElectionManager(id, nodes, statePath(id),
+                HEARTBEAT_MS, ELECTION_TIMEOUT_MS));
+    }
 
-        if (activeNodes.isEmpty()) {
-            System.err.println("❌ No active RabbitMQ nodes available for leader election!");
-            leader = null; // אין מנהיג אם אין חיבור
-            return;
+    /**
+     * Starts a participant.
+     *
+     * @param nodeId            This node's URI.
+     * @param nodes             The URIs of all members, this one included.
+     * @param stateFile         Where the term and vote are persisted (null to keep them in memory only).
+     * @param heartbeatMs       The leader's heartbeat interval.
+     * @param electionTimeoutMs The minimum election timeout.
+     */
+    ElectionManager(String nodeId, List<String> nodes, Path stateFile, long heartbeatMs, long electionTimeoutMs) {
+        this.nodeId = nodeId;
+        this.nodes = List.copyOf(nodes.contains(nodeId) ? nodes : concat(nodes, nodeId));
+        this.stateFile = stateFile;
+        this.heartbeatNanos = TimeUnit.MILLISECONDS.toNanos(heartbeatMs);
+        this.electionTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(electionTimeoutMs);
+        restore();
+        synchronized (this) {
+            resetElectionDeadline(System.nanoTime());
         }
-
-        Random rand = new Random();
-        this.leader = activeNodes.get(rand.nextInt(activeNodes.size()));
-        System.out.println("🏆 New Leader elected: " + leader);
+        this.rabbitMQUtil = new RabbitMQUtil(nodeId);
+        this.nextInboxAttempt = System.nanoTime();
+        openInbox();
+        this.ticker = TICKER.scheduleWithFixedDelay(this::tick, 0, Math.max(5, heartbeatMs / 4), TimeUnit.MILLISECONDS);
     }
 
     /**
-     * Initializes RabbitMQ connections for all nodes.
+     * Makes votes depend on the replicated log: candidates send the end of their log and are only
+     * granted a vote by nodes whose log is not more up to date. The log must not call back into
+     * this participant while it answers.
+     *
+     * @param log The end of this node's log.
      */
-    private boolean isNodeConnected(String node) {
-        RabbitMQUtil rabbitMQUtil = new RabbitMQUtil(node);
-        String connectedNode = rabbitMQUtil.getConnectedServer();
-        rabbitMQUtil.closeConnection();
-        return connectedNode != null;
+    public void attachLog(LogPosition log) {
+        this.log = log;
+    }
+
+    private static List<String> concat(List<String> nodes, String nodeId) {
+        List<String> all = new ArrayList<>(nodes);
+        all.add(nodeId);
+        return all;
     }
 
+    private static Path statePath(String nodeId) {
+        return Paths.get(STATE_DIR, "raft-" + nodeId.replaceAll("[^A-Za-z0-9.-]", "_") + ".state");
+    }
+
+    private static String inboxOf(String nodeId) {
+        return INBOX_PREFIX + nodeId.replaceAll("[^A-Za-z0-9.-]", "_");
+    }
+
+    // ------------------------------------------------------------------ queries
+
     /**
-     * Gets the current leader node.
+     * Checks whether this node leads and a majority confirmed it within the election timeout.
      *
-     * @return The leader node's URI, or null if no leader is available.
+     * @return True if this node may act as the leader.
      */
-    public String getLeader() {
-        return leader;
+    public synchronized boolean isLeader() {
+        return role == Role.LEADER && hasLease(System.nanoTime());
     }
 
     /**
-     * Checks if a given node is the elected leader.
+     * Checks if a given node is the current leader, as far as this node knows.
      *
      * @param nodeId The node ID (URI).
      * @return True if the node is the leader, otherwise false.
      */
     public boolean isLeader(String nodeId) {
-        return nodeId.equals(leader);
+        return nodeId.equals(getLeader());
+    }
+
+    /**
+     * Gets the current leader node, as far as this node knows: a leader that has not been heard
+     * from within the election timeout no longer counts.
+     *
+     * @return The leader node's URI, or null while there is no leader.
+     */
+    @Override
+    public synchronized String getLeader() {
+        long now = System.nanoTime();
+        if (role == Role.LEADER) {
+            return hasLease(now) ? nodeId : null;
+        }
+        return leader != null && now - lastLeaderContact < electionTimeoutNanos ? leader : null;
+    }
+
+    /**
+     * Waits until a leader is known.
+     *
+     * @param timeoutMs The longest time to wait, in milliseconds.
+     * @return The leader's URI, or null if none was elected in time.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public synchronized String awaitLeader(long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        String current;
+        while ((current = getLeader()) == null && !closed) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return current;
+    }
+
+    /**
+     * Returns the current term.
+     *
+     * @return The term.
+     */
+    public synchronized long getTerm() {
+        return currentTerm;
+    }
+
+    /**
+     * Returns this node's role in the current term.
+     *
+     * @return The role.
+     */
+    public synchronized Role getRole() {
+        return role;
+    }
+
+    /**
+     * Returns this node's URI.
+     *
+     * @return The node ID.
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    // ------------------------------------------------------------------ timers
+
+    /**
+     * Runs the timers: heartbeats of the leader, the lease check, and elections of the others.
+     */
+    private void tick() {
+        try {
+            if (inbox == null || !inbox.isOpen()) {
+                openInbox();
+                if (inbox == null) {
+                    return; // Without its inbox the participant hears no votes, so it must not run for office
+                }
+            }
+            String broadcast = null;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                long now = System.nanoTime();
+                if (role == Role.LEADER) {
+                    if (!hasLease(now)) {
+                        System.out.println("Leader " + nodeId + " lost its majority in term " + currentTerm + ", stepping down.");
+                        becomeFollower(now);
+                    } else if (now - lastHeartbeatSent >= heartbeatNanos) {
+                        lastHeartbeatSent = now;
+                        broadcast = "HEARTBEAT::Term=" + currentTerm + ",Leader=" + nodeId;
+                    }
+                } else if (now - electionDeadline >= 0) {
+                    broadcast = startElection(now);
+                }
+            }
+            if (broadcast != null) {
+                broadcast(broadcast);
+                if (broadcast.startsWith("HEARTBEAT::")) {
+                    announce(broadcast);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("❌ Election timer (" + nodeId + ") failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Becomes a candidate for the next term and votes for itself. Must hold the lock. If the new
+     * term and the own vote cannot be saved, the node stays a follower of its current term and
+     * tries again at the next election time.
+     *
+     * @return The vote request to send to the other nodes, or null if there is none to send.
+     */
+    private String startElection(long now) {
+        String previousVote = votedFor;
+        currentTerm++;
+        votedFor = nodeId;
+        if (!persist()) {
+            currentTerm--;
+            votedFor = previousVote;
+            resetElectionDeadline(now);
+            return null;
+        }
+        role = Role.CANDIDATE;
+        leader = null;
+        votes.clear();
+        votes.add(nodeId);
+        resetElectionDeadline(now);
+        System.out.println("🗳 " + nodeId + " is a candidate in term " + currentTerm + ".");
+        if (votes.size() >= majority()) {
+            becomeLeader(now); // Single-node cluster
+            return "HEARTBEAT::Term=" + currentTerm + ",Leader=" + nodeId;
+        }
+        LogPosition position = log;
+        return "VOTE_REQ::Term=" + currentTerm + ",Candidate=" + nodeId
+                + (position == null ? "" : ",LastIndex=" + position.lastIndex() + ",LastTerm=" + position.lastTerm());
+    }
+
+    /**
+     * Takes office for the current term. The voters count as having confirmed it. Must hold the lock.
+     */
+    private void becomeLeader(long now) {
+        role = Role.LEADER;
+        leader = nodeId;
+        lastAck.clear();
+        for (String voter : votes) {
+            lastAck.put(voter, now);
+        }
+        lastHeartbeatSent = now;
+        System.out.println("🏆 New Leader elected: " + nodeId + " (term " + currentTerm + ")");
+        notifyAll();
+    }
+
+    /**
+     * Becomes a follower without a known leader. Must hold the lock.
+     */
+    private void becomeFollower(long now) {
+        role = Role.FOLLOWER;
+        leader = null;
+        votes.clear();
+        lastAck.clear();
+        resetElectionDeadline(now);
+    }
+
+    /**
+     * Moves to a newer term seen in a message, as a follower that has not voted yet. Must hold the lock.
+     */
+    private void adoptTerm(long term, long now) {
+        currentTerm = term;
+        votedFor = null;
+        persist(); // No vote rides on it; if it fails, the next vote saves the term along with it
+        becomeFollower(now);
+    }
+
+    /**
+     * Picks the next election time at random between one and two election timeouts. Must hold the lock.
+     */
+    private void resetElectionDeadline(long now) {
+        electionDeadline = now + electionTimeoutNanos + ThreadLocalRandom.current().nextLong(electionTimeoutNanos);
+    }
+
+    /**
+     * Checks whether a majority, this node included, confirmed the leader within the election timeout.
+     * Must hold the lock.
+     */
+    private boolean hasLease(long now) {
+        int confirmed = 1;
+        for (Map.Entry<String, Long> ack : lastAck.entrySet()) {
+            if (!ack.getKey().equals(nodeId) && now - ack.getValue() < electionTimeoutNanos) {
+                confirmed++;
+            }
+        }
+        return confirmed >= majority();
+    }
+
+    private int majority() {
+        return nodes.size() / 2 + 1;
+    }
+
+    // ------------------------------------------------------------------ messages
+
+    /**
+     * Handles a message from the inbox. Replies are sent after the state is updated, outside the lock.
+     */
+    private void onMessage(byte[] body) {
+        String msg = new String(body, StandardCharsets.UTF_8);
+        int sep = msg.indexOf("::");
+        if (sep < 0) {
+            return;
+        }
+        Map<String, String> fields = new HashMap<>();
+        for (String part : msg.substring(sep + 2).split(",")) {
+            int eq = part.indexOf('=');
+            if (eq > 0) {
+                fields.put(part.substring(0, eq), part.substring(eq + 1));
+            }
+        }
+        long term;
+        try {
+            term = Long.parseLong(fields.getOrDefault("Term", ""));
+        } catch (NumberFormatException e) {
+            System.err.println("❌ Ignoring election message without a term: " + msg);
+            return;
+        }
+        switch (msg.substring(0, sep)) {
+            case "VOTE_REQ" -> onVoteRequest(term, fields.get("Candidate"),
+                    parseLong(fields.get("LastIndex")), parseLong(fields.get("LastTerm")));
+            case "VOTE" -> onVote(term, fields.get("From"), Boolean.parseBoolean(fields.get("Granted")));
+            case "HEARTBEAT" -> onHeartbeat(term, fields.get("Leader"));
+            case "HB_ACK" -> onHeartbeatAck(term, fields.get("From"), Boolean.parseBoolean(fields.get("Success")));
+            default -> System.err.println("❌ Unknown election message: " + msg);
+        }
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return value == null ? -1 : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Checks whether a candidate's log is at least as up to date as this node's: a later last
+     * term, or the same last term and at least as many entries.
+     */
+    private boolean logUpToDate(long lastIndex, long lastTerm) {
+        LogPosition position = log;
+        if (position == null) {
+            return true;
+        }
+        if (lastIndex < 0 || lastTerm < 0) {
+            return false; // The candidate does not replicate
+        }
+        long ownTerm = position.lastTerm();
+        return lastTerm > ownTerm || (lastTerm == ownTerm && lastIndex >= position.lastIndex());
+    }
+
+    private void onVoteRequest(long term, String candidate, long lastIndex, long lastTerm) {
+        if (candidate == null) {
+            return;
+        }
+        boolean granted;
+        long replyTerm;
+        synchronized (this) {
+            long now = System.nanoTime();
+            boolean leaderAlive = role == Role.LEADER
+                    ? hasLease(now)
+                    : leader != null && now - lastLeaderContact < electionTimeoutNanos;
+            if (leaderAlive) {
+                return; // Keep the working leader; the candidate will hear its heartbeats
+            }
+            if (term > currentTerm) {
+                adoptTerm(term, now);
+            }
+            granted = term == currentTerm && (votedFor == null || votedFor.equals(candidate))
+                    && logUpToDate(lastIndex, lastTerm);
+            if (granted) {
+                String previousVote = votedFor;
+                votedFor = candidate;
+                if (persist()) {
+                    resetElectionDeadline(now);
+                } else {
+                    votedFor = previousVote; // A vote that a restart could forget is not given
+                    granted = false;
+                }
+            }
+            replyTerm = currentTerm;
+        }
+        send(candidate, "VOTE::Term=" + replyTerm + ",From=" + nodeId + ",Granted=" + granted);
+    }
+
+    private void onVote(long term, String from, boolean granted) {
+        String heartbeat = null;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (term > currentTerm) {
+                adoptTerm(term, now);
+                return;
+            }
+            if (role != Role.CANDIDATE || term != currentTerm || !granted || from == null) {
+                return;
+            }
+            votes.add(from);
+            if (votes.size() >= majority()) {
+                becomeLeader(now);
+                heartbeat = "HEARTBEAT::Term=" + currentTerm + ",Leader=" + nodeId;
+            }
+        }
+        if (heartbeat != null) {
+            broadcast(heartbeat); // Announce at once instead of waiting for the next tick
+            announce(heartbeat);
+        }
+    }
+
+    private void onHeartbeat(long term, String from) {
+        if (from == null) {
+            return;
+        }
+        boolean success;
+        long replyTerm;
+        synchronized (this) {
+            long now = System.nanoTime();
+            success = term >= currentTerm;
+            if (success) {
+                if (term > currentTerm) {
+                    adoptTerm(term, now);
+                }
+                role = Role.FOLLOWER;
+                if (!from.equals(leader)) {
+                    leader = from;
+                    System.out.println(nodeId + " follows leader " + from + " (term " + term + ")");
+                    notifyAll();
+                }
+                lastLeaderContact = now;
+                resetElectionDeadline(now);
+            }
+            replyTerm = currentTerm;
+        }
+        send(from, "HB_ACK::Term=" + replyTerm + ",From=" + nodeId + ",Success=" + success);
+    }
+
+    private void onHeartbeatAck(long term, String from, boolean success) {
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (term > currentTerm) {
+                adoptTerm(term, now); // A newer leader exists
+            } else if (role == Role.LEADER && term == currentTerm && success && from != null) {
+                lastAck.put(from, now);
+            }
+        }
+    }
+
+    private void broadcast(String msg) {
+        for (String node : nodes) {
+            if (!node.equals(nodeId)) {
+                send(node, msg);
+            }
+        }
+    }
+
+    private void send(String node, String msg) {
+        rabbitMQUtil.sendTransient(inboxOf(node), msg); // Lost messages are covered by the timers
+    }
+
+    private void announce(String heartbeat) {
+        rabbitMQUtil.announceTransient(LEADER_EXCHANGE, heartbeat);
+    }
+
+    /**
+     * Subscribes to this node's inbox; undelivered messages expire after one election timeout.
+     * A refused inbox, e.g. held by another participant for this node, is tried again once per
+     * election timeout.
+     */
+    private void openInbox() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+        }
+        long now = System.nanoTime();
+        if (now - nextInboxAttempt < 0) {
+            return;
+        }
+        try {
+            if (inbox != null) {
+                inbox.close();
+            }
+            inbox = rabbitMQUtil.openInbox(inboxOf(nodeId), TimeUnit.NANOSECONDS.toMillis(electionTimeoutNanos), this::onMessage);
+            inboxRefused = false;
+        } catch (IOException e) {
+            inbox = null;
+            nextInboxAttempt = now + electionTimeoutNanos;
+            if (!inboxRefused) {
+                inboxRefused = true;
+                System.err.println("❌ " + nodeId + " cannot open its election inbox and stays out of the election "
+                        + "(is another participant for this node running?): " + e.getMessage());
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------ persistence
+
+    /**
+     * Writes the current term and vote, replacing the previous state atomically. Must hold the lock.
+     * A vote may only be sent once this succeeded, so that a restarted node cannot vote twice in a term.
+     *
+     * @return True if the state was saved (or is kept in memory only), false if it could not be written.
+     */
+    private boolean persist() {
+        if (stateFile == null) {
+            return true;
+        }
+        try {
+            Path tmp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+            try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+                 DataOutputStream out = new DataOutputStream(file)) {
+                out.writeLong(currentTerm);
+                out.writeUTF(votedFor == null ? "" : votedFor);
+                out.flush();
+                file.getFD().sync(); // The vote must survive a crash before it is sent
+            }
+            Files.move(tmp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            System.err.println("❌ Could not persist election state " + stateFile + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Loads the persisted term and vote, if any.
+     */
+    private synchronized void restore() {
+        if (stateFile == null || !Files.exists(stateFile)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(stateFile))) {
+            currentTerm = in.readLong();
+            String vote = in.readUTF();
+            votedFor = vote.isEmpty() ? null : vote;
+        } catch (IOException e) {
+            System.err.println("❌ Could not read election state " + stateFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Leaves the election: stops the timers and the inbox and closes the connection.
+     * A leader that closes simply stops sending heartbeats; the others elect a new one.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            role = Role.FOLLOWER;
+            leader = null;
+            notifyAll();
+        }
+        ticker.cancel(false);
+        if (inbox != null) {
+            inbox.close();
+        }
+        rabbitMQUtil.closeConnection();
+        MEMBERS.remove(nodeId, this);
     }
 }
@@ -0,0 +1,165 @@
+package com.example.recommender;
+
+import com.example.shared.utils.ConsumerGroupMember;
+import com.example.shared.utils.RabbitMQUtil;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows the recommender nodes' election from outside it, e.g. in the UI.
+ *
+ * The leader announces every heartbeat on {@link ElectionManager#LEADER_EXCHANGE}. The observer
+ * keeps the leader of the highest term it has heard of, and counts it as current for one election
+ * timeout ({@code recommender.raft.electionTimeoutMs}) after its last announcement. It has no inbox
+ * and no vote, so any number of processes can observe the election without changing its outcome.
+ * While the subscription is down no leader is known; it is opened again on the next query.
+ */
+public class LeaderObserver implements LeaderView, AutoCloseable {
+
+    private static final long ELECTION_TIMEOUT_MS = Long.getLong("recommender.raft.electionTimeoutMs", 500);
+
+    private final RabbitMQUtil rabbitMQUtil;
+    private final long electionTimeoutNanos;
+
+    // Guarded by this
+    private ConsumerGroupMember announcements;
+    private long term = -1;
+    private String leader;
+    private long lastAnnouncement;      // nanoTime of the leader's last announcement
+    private boolean closed;
+
+    /**
+     * Starts observing the election.
+     *
+     * @param rabbitMQUtil The connection to subscribe on; it stays owned by the caller.
+     */
+    public LeaderObserver(RabbitMQUtil rabbitMQUtil) {
+        this(rabbitMQUtil, ELECTION_TIMEOUT_MS);
+    }
+
+    /**
+     * Starts observing the election.
+     *
+     * @param rabbitMQUtil      The connection to subscribe on.
+     * @param electionTimeoutMs How long an announced leader stays current without another announcement.
+     */
+    LeaderObserver(RabbitMQUtil rabbitMQUtil, long electionTimeoutMs) {
+        this.rabbitMQUtil = rabbitMQUtil;
+        this.electionTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(electionTimeoutMs);
+    }
+
+    /**
+     * Gets the current leader: the last one announced, if it was heard from within the election timeout.
+     *
+     * @return The leader node's URI, or null while there is no leader (or none is known).
+     */
+    @Override
+    public synchronized String getLeader() {
+        subscribe();
+        return current(System.nanoTime());
+    }
+
+    /**
+     * Waits until a leader is known.
+     *
+     * @param timeoutMs The longest time to wait, in milliseconds.
+     * @return The leader's URI, or null if none was announced in time.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public synchronized String awaitLeader(long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        subscribe();
+        String current;
+        while ((current = current(System.nanoTime())) == null && !closed) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return current;
+    }
+
+    /**
+     * Returns the announced leader if it is still current. Must hold the lock.
+     */
+    private String current(long now) {
+        return leader != null && now - lastAnnouncement < electionTimeoutNanos ? leader : null;
+    }
+
+    /**
+     * Makes sure announcements are being received, subscribing again after the subscription was
+     * lost. Must hold the lock.
+     */
+    private void subscribe() {
+        if (closed || (announcements != null && announcements.isOpen())) {
+            return;
+        }
+        if (announcements != null) {
+            announcements.close();
+            announcements = null;
+        }
+        try {
+            announcements = rabbitMQUtil.subscribe(ElectionManager.LEADER_EXCHANGE, this::onAnnouncement);
+        } catch (IOException e) {
+            System.err.println("❌ Could not subscribe to leader announcements: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Handles "HEARTBEAT::Term=3,Leader=amqp://...". An older term is ignored while the leader of
+     * the newer one is current; after that it is taken, e.g. from a cluster whose state was reset.
+     */
+    void onAnnouncement(byte[] body) {
+        String msg = new String(body, StandardCharsets.UTF_8);
+        int sep = msg.indexOf("::");
+        if (sep < 0) {
+            return;
+        }
+        Map<String, String> fields = new HashMap<>();
+        for (String part : msg.substring(sep + 2).split(",")) {
+            int eq = part.indexOf('=');
+            if (eq > 0) {
+                fields.put(part.substring(0, eq), part.substring(eq + 1));
+            }
+        }
+        String from = fields.get("Leader");
+        long announcedTerm;
+        try {
+            announcedTerm = Long.parseLong(fields.getOrDefault("Term", ""));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (from == null) {
+            return;
+        }
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (announcedTerm < term && current(now) != null) {
+                return;
+            }
+            term = announcedTerm;
+            leader = from;
+            lastAnnouncement = now;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Stops observing. The connection is left open.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        leader = null;
+        notifyAll();
+        if (announcements != null) {
+            announcements.close();
+            announcements = null;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.recommender;
+
+/**
+ * Who leads the recommender nodes' election, as far as a participant ({@link ElectionManager}) or
+ * an observer ({@link LeaderObserver}) knows.
+ */
+public interface LeaderView {
+
+    /**
+     * Returns the current leader.
+     *
+     * @return The leader node's URI, or null while there is no leader.
+     */
+    String getLeader();
+}
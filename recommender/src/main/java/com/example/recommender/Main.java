@@ -0,0 +1,45 @@
+package com.example.recommender;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * The process of one recommender node: runs the node's {@link ElectionManager} participant and,
+ * with {@code recommender.raft.replicate}, its {@link ReplicatedLog} next to it, until it is stopped.
+ *
+ * Usage: {@code Main <this node's URI> <URI of every node, this one included>...}, e.g.
+ * {@code Main amqp://10.0.0.1 amqp://10.0.0.1 amqp://10.0.0.2 amqp://10.0.0.3}.
+ * Start exactly one process per node, each with the same node list. The UI does not take part in
+ * the election; it follows the leader with a {@link LeaderObserver}.
+ */
+public class Main {
+
+    /**
+     * Runs the node.
+     *
+     * @param args This node's URI, then the URIs of all nodes.
+     * @throws InterruptedException If interrupted while running.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            System.err.println("❌ Usage: Main <this node's URI> <URI of every node>...");
+            System.exit(2);
+        }
+        String nodeId = args[0];
+        List<String> nodes = args.length > 1 ? List.of(args).subList(1, args.length) : List.of(nodeId);
+
+        ElectionManager election = ElectionManager.forNode(nodeId, nodes);
+        ReplicatedLog log = ReplicatedLog.isEnabled() ? ReplicatedLog.forNode(nodeId, nodes) : null;
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (log != null) {
+                log.close();
+            }
+            election.close();
+            stopped.countDown();
+        }, "recommender-shutdown"));
+        System.out.println("Recommender node " + nodeId + " is running (" + nodes.size() + " nodes"
+                + (log != null ? ", replicating" : "") + ").");
+        stopped.await();
+    }
+}
@@ -0,0 +1,303 @@
+package com.example.recommender;
+
+import com.example.shared.utils.ConsumerGroupMember;
+import com.example.shared.utils.OccupancyEvent;
+import com.example.shared.utils.RabbitMQUtil;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Forecasts how many spaces of a zone will still be free in a few minutes, from the arrival and
+ * departure rates learned per zone and time of day.
+ *
+ * The day is cut into bins of {@code recommender.forecast.binMinutes}. Every arrival (a space
+ * taken) and departure (a space freed) adds one to its zone's counter for its bin, an O(1)
+ * update, and a bin's rate is its count divided by the number of days observed. The expected
+ * change over the next N minutes is the sum of (arrivals - departures) over the bins it covers,
+ * the partly covered ones pro rata.
+ *
+ * A node's forecast is trained once from the ParkingEvents history (one streaming pass, StartTime
+ * is an arrival and EndTime a departure) and then follows the live occupancy changes on
+ * {@link RabbitMQUtil#OCCUPANCY_EXCHANGE}. Changes published during the training are counted
+ * once: the training only reads what happened before the subscription started. Until it is
+ * trained a forecast predicts no change.
+ */
+public class OccupancyForecast implements AutoCloseable {
+    private static final int BIN_MINUTES = Integer.getInteger("recommender.forecast.binMinutes", 15);
+    private static final long RESUBSCRIBE_MS = Long.getLong("recommender.forecast.resubscribeMs", 5000);
+
+    private static final String HISTORY_SQL = """
+            SELECT ps.ZoneID, pe.StartTime, pe.EndTime
+            FROM ParkingEvents pe
+            JOIN ParkingSpaces ps ON ps.SpaceID = pe.SpaceID
+        """;
+
+    // One forecast per node for the whole process
+    private static final Map<String, OccupancyForecast> FORECASTS = new ConcurrentHashMap<>();
+
+    private final String nodeId;
+    private final int binMinutes;
+    private final int bins;
+
+    // Guarded by this: the counters and the days observed
+    private final Map<Integer, long[]> arrivals = new HashMap<>();   // ZoneID -> count per bin
+    private final Map<Integer, long[]> departures = new HashMap<>();
+    private long firstDay = Long.MAX_VALUE;
+    private long lastDay = Long.MIN_VALUE;
+    private long events;
+
+    private volatile boolean trained;
+    private volatile boolean closed;
+    private Thread updater;
+    private RabbitMQUtil rabbitMQUtil;      // Owned by the background thread
+    private ConsumerGroupMember occupancyEvents;
+
+    /**
+     * Returns the forecast of a node, training it from the node's database and starting to follow
+     * occupancy changes in the background on first use.
+     *
+     * @param nodeId      The RabbitMQ node URI.
+     * @param connections Opens connections to the node's database.
+     * @return The node's forecast (untrained until the history has been read).
+     */
+    public static OccupancyForecast forNode(String nodeId, SpaceIndex.ConnectionSource connections) {
+        return FORECASTS.computeIfAbsent(nodeId, id -> {
+            OccupancyForecast forecast = new OccupancyForecast(id, BIN_MINUTES);
+            forecast.start(connections);
+            return forecast;
+        });
+    }
+
+    /**
+     * Creates an empty forecast without background updates.
+     *
+     * @param nodeId     The node the forecast belongs to.
+     * @param binMinutes The length of a time-of-day bin; divides a day (e.g. 15).
+     */
+    OccupancyForecast(String nodeId, int binMinutes) {
+        this.nodeId = nodeId;
+        this.binMinutes = binMinutes;
+        this.bins = 24 * 60 / binMinutes;
+    }
+
+    // ------------------------------------------------------------------ learning
+
+    /**
+     * Counts an arrival or a departure in O(1).
+     *
+     * @param zoneId  The ZoneID of the space.
+     * @param at      When the space was taken or freed, local time.
+     * @param arrival True if the space was taken, false if it was freed.
+     */
+    public synchronized void record(int zoneId, LocalDateTime at, boolean arrival) {
+        long[] counts = (arrival ? arrivals : departures).computeIfAbsent(zoneId, z -> new long[bins]);
+        counts[binOf(at)]++;
+        long day = at.toLocalDate().toEpochDay();
+        firstDay = Math.min(firstDay, day);
+        lastDay = Math.max(lastDay, day);
+        events++;
+    }
+
+    /**
+     * Trains from the ParkingEvents history in one streaming pass: rows are counted as they are
+     * read, so memory does not grow with the history.
+     *
+     * @param conn   An open database connection.
+     * @param before Only arrivals and departures before this time are counted.
+     * @return The number of arrivals and departures counted.
+     * @throws SQLException If the history cannot be read.
+     */
+    public long train(Connection conn, LocalDateTime before) throws SQLException {
+        long counted = 0;
+        try (PreparedStatement stmt = conn.prepareStatement(HISTORY_SQL,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(Integer.MIN_VALUE); // MySQL: stream the rows instead of buffering them all
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int zoneId = rs.getInt("ZoneID");
+                    Timestamp start = rs.getTimestamp("StartTime");
+                    Timestamp end = rs.getTimestamp("EndTime");
+                    if (start != null && start.toLocalDateTime().isBefore(before)) {
+                        record(zoneId, start.toLocalDateTime(), true);
+                        counted++;
+                    }
+                    if (end != null && end.toLocalDateTime().isBefore(before)) {
+                        record(zoneId, end.toLocalDateTime(), false);
+                        counted++;
+                    }
+                }
+            }
+        }
+        trained = true;
+        return counted;
+    }
+
+    /**
+     * Marks the forecast trained without reading a database, after its history was recorded directly.
+     */
+    void markTrained() {
+        trained = true;
+    }
+
+    // ------------------------------------------------------------------ forecasting
+
+    /**
+     * Returns the expected number of arrivals minus departures in a zone over the next minutes.
+     *
+     * @param zoneId  The ZoneID.
+     * @param from    The start of the period, local time.
+     * @param minutes The length of the period.
+     * @return The expected net arrivals (negative if more spaces are expected to be freed).
+     */
+    public synchronized double expectedNetArrivals(int zoneId, LocalDateTime from, int minutes) {
+        if (!trained || events == 0) {
+            return 0;
+        }
+        long[] in = arrivals.get(zoneId);
+        long[] out = departures.get(zoneId);
+        if (in == null && out == null) {
+            return 0;
+        }
+        double days = lastDay - firstDay + 1;
+        double net = 0;
+        int minuteOfDay = from.getHour() * 60 + from.getMinute();
+        int remaining = minutes;
+        while (remaining > 0) {
+            int bin = (minuteOfDay / binMinutes) % bins;
+            int covered = Math.min(remaining, binMinutes - minuteOfDay % binMinutes);
+            long count = (in == null ? 0 : in[bin]) - (out == null ? 0 : out[bin]);
+            net += count * ((double) covered / binMinutes);
+            minuteOfDay = (minuteOfDay + covered) % (24 * 60);
+            remaining -= covered;
+        }
+        return net / days;
+    }
+
+    /**
+     * Predicts how many spaces of a zone will be free a few minutes from now.
+     *
+     * @param zoneId       The ZoneID.
+     * @param freeNow      The number of free spaces now.
+     * @param minutesAhead How far ahead.
+     * @param now          The current local time.
+     * @return The expected free spaces, at least 0.
+     */
+    public double predictFree(int zoneId, int freeNow, int minutesAhead, LocalDateTime now) {
+        return Math.max(0, freeNow - expectedNetArrivals(zoneId, now, minutesAhead));
+    }
+
+    /**
+     * Checks whether the history has been read.
+     *
+     * @return True once trained.
+     */
+    public boolean isTrained() {
+        return trained;
+    }
+
+    /**
+     * Returns the number of arrivals and departures learned so far.
+     *
+     * @return The event count.
+     */
+    public synchronized long size() {
+        return events;
+    }
+
+    private int binOf(LocalDateTime at) {
+        return (at.getHour() * 60 + at.getMinute()) / binMinutes;
+    }
+
+    // ------------------------------------------------------------------ background updates
+
+    /**
+     * Starts the background thread that subscribes to occupancy changes, then trains.
+     */
+    private void start(SpaceIndex.ConnectionSource connections) {
+        updater = new Thread(() -> run(connections), "occupancy-forecast-" + nodeId);
+        updater.setDaemon(true);
+        updater.start();
+    }
+
+    private void run(SpaceIndex.ConnectionSource connections) {
+        while (!closed) {
+            try {
+                if (rabbitMQUtil == null) {
+                    rabbitMQUtil = new RabbitMQUtil(nodeId);
+                }
+                if (occupancyEvents == null || !occupancyEvents.isOpen()) {
+                    subscribe();
+                }
+                if (!trained) {
+                    // Subscribed first: what happens from now on arrives as events, the history is everything before
+                    LocalDateTime before = LocalDateTime.now();
+                    long start = System.currentTimeMillis();
+                    long counted;
+                    try (Connection conn = connections.open()) {
+                        counted = train(conn, before);
+                    }
+                    System.out.println("Occupancy forecast (" + nodeId + ") learned " + counted + " arrivals and departures in "
+                            + (System.currentTimeMillis() - start) + " ms");
+                }
+                Thread.sleep(RESUBSCRIBE_MS);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                System.err.println("❌ Occupancy forecast (" + nodeId + ") update failed: " + e.getMessage());
+                try {
+                    Thread.sleep(RESUBSCRIBE_MS);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * (Re)subscribes to the occupancy changes. Changes missed while unsubscribed are not learned,
+     * which only makes the rates slightly low.
+     */
+    private void subscribe() throws IOException {
+        if (occupancyEvents != null) {
+            occupancyEvents.close();
+        }
+        occupancyEvents = rabbitMQUtil.subscribe(RabbitMQUtil.OCCUPANCY_EXCHANGE, this::onOccupancyEvent);
+    }
+
+    /**
+     * Learns from an {@link OccupancyEvent}.
+     */
+    private void onOccupancyEvent(byte[] body) {
+        OccupancyEvent event = OccupancyEvent.parse(body);
+        if (event != null) {
+            record(event.zoneId(), LocalDateTime.now(), event.occupied());
+        }
+    }
+
+    /**
+     * Stops following occupancy changes and closes the forecast's connection.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (updater != null) {
+            updater.interrupt();
+        }
+        if (occupancyEvents != null) {
+            occupancyEvents.close();
+        }
+        if (rabbitMQUtil != null) {
+            rabbitMQUtil.closeConnection();
+        }
+        FORECASTS.remove(nodeId, this);
+    }
+}
@@ -1,28 +1,60 @@
 package com.example.recommender;
 
+import com.example.shared.utils.PooledDatabase;
 import com.example.shared.utils.RabbitMQUtil;
 
 import java.sql.*;
+import java.time.LocalDateTime;
 import java.util.*;
 
 /**
  * Represents a Raft Node that:
  * - Connects to a database.
- * - Reads violation reports from citationsQueue.
- * - Computes the best parking recommendation.
+ * - Looks up violation reports in its {@link CitationIndex}, kept current from citationsQueue.
+ * - Ranks the best free spaces for a request: the top choice and a few alternates, avoiding zones
+ *   its {@link OccupancyForecast} expects to be full by the time the driver arrives.
  * - Sends the recommendation to a response queue.
+ * - When another node leads the round, validates the leader's proposal instead of computing its own.
  */
 public class RaftNode {
+    // Number of nearest free spaces ranked per recommendation
+    private static final int NEAREST_K = Integer.getInteger("recommender.nearestK", 10);
+    // Number of candidates per recommendation: the top choice, which is voted on, and the alternates
+    private static final int TOP_K = Integer.getInteger("recommender.topK", 3);
+    // How far ahead zones are forecast (about the drive to the space), and what a likely full zone adds to the score
+    private static final int FORECAST_MINUTES = Integer.getInteger("recommender.forecast.minutesAhead", 10);
+    private static final double FULL_ZONE_PENALTY = Double.parseDouble(System.getProperty("recommender.forecast.fullZonePenalty", "1000"));
+    // Rounds of "find nearest, check occupancy in the DB" before giving up on stale occupancy
+    private static final int NEAREST_ATTEMPTS = 3;
+    // Connections per node-local database pool
+    private static final int DB_POOL_SIZE = Integer.getInteger("recommender.db.poolSize", 4);
+    // How far a leader's citation count may be from ours before we reject its proposal (indexes lag a little)
+    private static final int CITATION_SLACK = Integer.getInteger("recommender.validate.citationSlack", 2);
+
+    private static final String ZONE_OF_SPACE_SQL = "SELECT ZoneID FROM parkingspaces WHERE SpaceID = ?";
+    private static final String FREE_SPACES_IN_ZONE_SQL = """
+            SELECT SpaceID
+            FROM parkingspaces
+            WHERE ZoneID = ?
+              AND (Occupied = 0)
+        """;
+    private static final String SPACE_OCCUPIED_SQL = "SELECT Occupied FROM parkingspaces WHERE SpaceID = ?";
+
     private final String nodeId;          // למשל URI של RabbitMQ
     private final RabbitMQUtil rabbitMQUtil;
 
-    // Database connection details (unique per node)
-    private final String dbUrl;
-    private final String dbUser;
-    private final String dbPass;
+    // Pool of the node-local database, shared by every RaftNode of the same URL (null without a database)
+    private final PooledDatabase database;
+
+    // Citation counts of this node, shared by every RaftNode of the same node ID (opened on first use)
+    private CitationIndex citationIndex;
+    // Occupancy forecast of this node, shared like the citation index (trained on first use)
+    private OccupancyForecast occupancyForecast;
 
     /**
      * Initializes the Raft node with necessary details.
+     * The node's database pool is created and warmed up here (once per database URL), so
+     * recommendations only borrow a pooled connection and run already prepared statements.
      *
      * @param nodeId        The RabbitMQ node URI.
      * @param rabbitMQUtil  The RabbitMQ utility instance for messaging.
@@ -37,15 +69,24 @@ public class RaftNode {
                     String dbPass) {
         this.nodeId = nodeId;
         this.rabbitMQUtil = rabbitMQUtil;
-        this.dbUrl = dbUrl;
-        this.dbUser = dbUser;
-        this.dbPass = dbPass;
+        this.database = dbUrl == null ? null : PooledDatabase.shared(dbUrl, dbUser, dbPass, DB_POOL_SIZE,
+                List.of(ZONE_OF_SPACE_SQL, FREE_SPACES_IN_ZONE_SQL, SPACE_OCCUPIED_SQL,
+                        SpaceIndex.occupancySql(NEAREST_K)));
     }
 
     public String getNodeId() {
         return nodeId;
     }
 
+    /**
+     * Returns the statistics of this node's database pool.
+     *
+     * @return The pool metrics, or null if the node has no database.
+     */
+    public PooledDatabase.PoolMetrics getPoolMetrics() {
+        return database == null ? null : database.getMetrics();
+    }
+
     /**
      * Computes the best parking recommendation and sends it to the response queue.
      *
@@ -54,48 +95,163 @@ public class RaftNode {
      * @return True if a recommendation was sent, otherwise false.
      */
     public boolean sendRecommendation(int requestedSpaceID, String responseQueue) {
-        List<String> recommendations = computeBestParking(requestedSpaceID);
-        if (recommendations == null || recommendations.isEmpty()) {
+        return sendRecommendation(requestedSpaceID, responseQueue, null);
+    }
+
+    /**
+     * Computes the best parking recommendation and replies to a request with it.
+     * The reply carries the request's correlation ID, so the requester can tell its replies
+     * apart from those of concurrent requests on the same reply queue.
+     *
+     * @param requestedSpaceID The requested parking space ID.
+     * @param replyQueue       The requester's reply queue.
+     * @param correlationId    The correlation ID of the request (null to send a plain message).
+     * @return True if a recommendation was sent, otherwise false.
+     */
+    public boolean sendRecommendation(int requestedSpaceID, String replyQueue, String correlationId) {
+        List<RankedCandidate> ranking = rankCandidates(requestedSpaceID);
+        if (ranking == null || ranking.isEmpty()) {
             System.out.println("🚫 " + nodeId + " found no available parking.");
             return false;
         }
         StringBuilder response = new StringBuilder("RESPONSE::Node=" + nodeId + ",Rec=");
-        System.out.println(">>>>>>>  " + rabbitMQUtil.getConnectedServer());
 
-        if(rabbitMQUtil.getConnectedServer().equals("Connected to RabbitMQ node: 100.78.144.87"))
-        {
-            rabbitMQUtil.sendMessage(responseQueue, "RESPONSE::Node=100.78.144.87,Rec=spaceis:150,citations:100");
-            return true;
-        }
-        if(rabbitMQUtil.getConnectedServer().equals("Connected to RabbitMQ node: 100.85.154.51"))
-        {
-            rabbitMQUtil.sendMessage(responseQueue, "RESPONSE::Node=100.85.154.51,Rec=spaceis:1036,citations:100");
-            return true;
+        // שליחת כל ההמלצות לתור
+        response.append(RankedCandidate.formatRanking(ranking));
+
+        return reply(replyQueue, correlationId, response.toString());
+    }
+
+    /**
+     * Computes the best parking recommendation as the leader of a round, for the followers to validate.
+     *
+     * @param requestedSpaceID The requested parking space ID.
+     * @return The ranking in the form sent after "Rec=", or null if there is none.
+     */
+    public String proposeRecommendation(int requestedSpaceID) {
+        List<RankedCandidate> ranking = rankCandidates(requestedSpaceID);
+        if (ranking == null || ranking.isEmpty()) {
+            System.out.println("🚫 " + nodeId + " found no available parking.");
+            return null;
         }
+        return RankedCandidate.formatRanking(ranking);
+    }
 
-        // שליחת כל ההמלצות לתור
-        for (String rec : recommendations) {
-            response.append(rec).append("\n");
+    /**
+     * Checks the leader's proposal against this node's own data and, if it holds, votes for it with
+     * a digest vote: the top choice, the digest of the proposal and this node's citation counts for
+     * its spaces, but not the proposal itself, which the requester already has. Checking costs one
+     * point lookup instead of a full ranking. Only the top choice is voted on, so only it is checked: the proposal is rejected (no
+     * reply, the node abstains) if the top choice is taken or its citation count differs from ours
+     * by more than {@code recommender.validate.citationSlack}. The alternates are shown as the
+     * leader ranked them.
+     *
+     * @param requestedSpaceID The requested parking space ID.
+     * @param proposal         The leader's recommendation, as returned by {@link #proposeRecommendation(int)}.
+     * @param replyQueue       The requester's reply queue.
+     * @param correlationId    The correlation ID of the request.
+     * @return True if the proposal was accepted and the vote sent, otherwise false.
+     */
+    public boolean sendValidation(int requestedSpaceID, String proposal, String replyQueue, String correlationId) {
+        List<RankedCandidate> ranking = RankedCandidate.parseRanking(proposal);
+        String problem = validate(ranking, proposal);
+        if (problem != null) {
+            System.out.println("🚫 " + nodeId + " rejects the proposal for space " + requestedSpaceID + ": " + problem);
+            return false;
+        }
+        CitationIndex citations = citationIndex();
+        int[] ours = new int[ranking.size()];
+        for (int i = 0; i < ours.length; i++) {
+            ours[i] = citations.count(ranking.get(i).spaceId());
+        }
+        return reply(replyQueue, correlationId, RecommendationResponse.formatDigestVote(nodeId, ranking, ours));
+    }
 
+    /**
+     * Checks the proposed top choice.
+     *
+     * @return Why the proposal is rejected, or null if it holds.
+     */
+    private String validate(List<RankedCandidate> ranking, String proposal) {
+        if (database == null) {
+            return "no database";
+        }
+        if (ranking.isEmpty()) {
+            return "unreadable recommendation " + proposal;
+        }
+        RankedCandidate top = ranking.get(0);
+        try (Connection conn = database.connect();
+             PreparedStatement stmt = conn.prepareStatement(SPACE_OCCUPIED_SQL)) {
+            stmt.setInt(1, top.spaceId());
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return "space " + top.spaceId() + " does not exist";
+                }
+                if (rs.getInt("Occupied") != 0) {
+                    return "space " + top.spaceId() + " is taken";
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("❌ DB Error (" + nodeId + "): " + e.getMessage());
+            return "database error";
         }
+        int ours = citationIndex().count(top.spaceId());
+        if (Math.abs(ours - top.citations()) > CITATION_SLACK) {
+            return "space " + top.spaceId() + " has " + ours + " citations here, not " + top.citations();
+        }
+        return null;
+    }
 
-        rabbitMQUtil.sendMessage(responseQueue, response.toString());
-        return true;
+    /**
+     * Sends a response: as a reply tagged with the correlation ID, or as a plain message when there is none.
+     */
+    private boolean reply(String replyQueue, String correlationId, String response) {
+        if (correlationId == null) {
+            rabbitMQUtil.sendMessage(replyQueue, response);
+            return true;
+        }
+        return rabbitMQUtil.sendReply(replyQueue, correlationId, response);
     }
 
     /**
-     * Computes the best available parking spot based on:
-     * - Zone ID of the requested space.
-     * - Available parking spots in that zone.
-     * - Citation history from citationsQueue.
+     * Computes the best available parking spots, formatted as by {@link RankedCandidate#format()}.
      *
      * @param requestedSpaceID The requested parking space ID.
-     * @return A list of recommended parking spaces.
+     * @return The recommended parking spaces, best first, or null if there are none.
+     * @see #rankCandidates(int)
      */
     public List<String> computeBestParking(int requestedSpaceID) {
-        if(rabbitMQUtil.getConnectedServer() == null)
+        List<RankedCandidate> ranking = rankCandidates(requestedSpaceID);
+        if (ranking == null) {
+            return null;
+        }
+        List<String> recommendations = new ArrayList<>(ranking.size());
+        for (RankedCandidate candidate : ranking) {
+            recommendations.add(candidate.format());
+        }
+        return recommendations;
+    }
+
+    /**
+     * Ranks the best available parking spots (at most {@code recommender.topK}) based on:
+     * - The free spaces nearest to the requested space by true distance, in any zone, from the
+     *   {@link SpaceIndex}. Spaces without coordinates fall back to the free spots of their zone,
+     *   with the difference of SpaceIDs as distance.
+     * - Citation history from the node's {@link CitationIndex} (no queue I/O).
+     * The first candidate is the top choice, the others are alternates (see {@link RankedCandidate#ORDER}).
+     *
+     * @param requestedSpaceID The requested parking space ID.
+     * @return The candidates, best first, or null if there are none.
+     */
+    public List<RankedCandidate> rankCandidates(int requestedSpaceID) {
+        if(rabbitMQUtil.getConnectedServer() == null || database == null)
             return null;
-        try (Connection conn = DriverManager.getConnection(dbUrl, dbUser, dbPass)) {
+        try (Connection conn = database.connect()) {
+            List<RankedCandidate> nearest = recommendNearest(conn, requestedSpaceID);
+            if (nearest != null) {
+                return nearest;
+            }
+
             int zoneID = getZoneID(conn, requestedSpaceID);
             if (zoneID == -1) {
                 return null;
@@ -105,11 +261,8 @@ public class RaftNode {
                 return null;
             }
 
-            // בונים מפת (SpaceID -> דוחות) מקריאת התור citationsQueue
-            Map<Integer, Integer> citationsMap = buildCitationsMapFromQueue();
-
-            // בוחרים את החניה עם מספר הדוחות המינימלי והמרחק הקטן מ-requestedSpaceID
-            return pickBestSpace(freeSpaces, citationsMap, requestedSpaceID);
+            // בוחרים את החניה עם מספר הדוחות המינימלי והמרחק הקטן מ-requestedSpaceID, לפי האינדקס
+            return rankZone(freeSpaces, citationIndex(), requestedSpaceID);
 
         } catch (SQLException e) {
             System.err.println("❌ DB Error (" + nodeId + "): " + e.getMessage());
@@ -118,12 +271,83 @@ public class RaftNode {
     }
 
 
+    /**
+     * Recommends among the nearest free spaces: finds them in the space index, confirms they are
+     * still free in the database, and ranks them by citations, then distance.
+     *
+     * @return The best candidates, or null if the requested space has no coordinates (or the index is unavailable).
+     */
+    private List<RankedCandidate> recommendNearest(Connection conn, int requestedSpaceID) {
+        SpaceIndex spaces;
+        try {
+            spaces = SpaceIndex.forNode(nodeId, database::connect);
+        } catch (SQLException e) {
+            System.err.println("❌ Space index unavailable (" + nodeId + "), ranking by zone: " + e.getMessage());
+            return null;
+        }
+        if (!spaces.contains(requestedSpaceID)) {
+            return null;
+        }
+
+        int[] ids = new int[NEAREST_K];
+        double[] dists = new double[NEAREST_K];
+        try {
+            for (int attempt = 0; attempt < NEAREST_ATTEMPTS; attempt++) {
+                int found = spaces.nearestFree(requestedSpaceID, NEAREST_K, ids, dists);
+                if (found <= 0) {
+                    return null;
+                }
+                // The index may be behind the DB: drop spaces taken since, the index is updated with them
+                List<Integer> taken = spaces.refreshOccupancy(conn, ids, found);
+                int free = 0;
+                for (int i = 0; i < found; i++) {
+                    if (!taken.contains(ids[i])) {
+                        ids[free] = ids[i];
+                        dists[free++] = dists[i];
+                    }
+                }
+                if (free > 0) {
+                    return rankNearest(ids, dists, free, citationIndex(), spaces);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("❌ DB Error (" + nodeId + "): " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Ranks the nearest free spaces by citations, then distance, keeping the best {@code recommender.topK}.
+     * A space in a zone forecast to have no free space left in {@code recommender.forecast.minutesAhead}
+     * gets {@code recommender.forecast.fullZonePenalty} added to its score, so it is only recommended
+     * when every candidate's zone is expected to fill up.
+     */
+    private List<RankedCandidate> rankNearest(int[] ids, double[] dists, int count, CitationIndex citations,
+                                              SpaceIndex spaces) {
+        OccupancyForecast forecast = occupancyForecast();
+        LocalDateTime now = LocalDateTime.now();
+        Map<Integer, Boolean> likelyFull = new HashMap<>(); // Per zone, forecast once per request
+        TopK<RankedCandidate> best = new TopK<>(TOP_K, RankedCandidate.ORDER);
+        for (int i = 0; i < count; i++) {
+            double score = citations.score(ids[i]);
+            int zone = spaces.zoneOf(ids[i]);
+            if (likelyFull.computeIfAbsent(zone, z -> {
+                int freeNow = spaces.freeInZone(z);
+                return freeNow >= 0 && forecast.predictFree(z, freeNow, FORECAST_MINUTES, now) < 1;
+            })) {
+                score += FULL_ZONE_PENALTY;
+            }
+            // Meters; spaces within the same meter are ordered by SpaceID
+            best.offer(new RankedCandidate(ids[i], citations.count(ids[i]), score, Math.round(dists[i])));
+        }
+        return best.size() == 0 ? null : best.toSortedList();
+    }
+
     /**
      * Retrieves the ZoneID for a given SpaceID.
      */
     private int getZoneID(Connection conn, int spaceID) throws SQLException {
-        String sql = "SELECT ZoneID FROM parkingspaces WHERE SpaceID = ?";
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (PreparedStatement stmt = conn.prepareStatement(ZONE_OF_SPACE_SQL)) {
             stmt.setInt(1, spaceID);
             ResultSet rs = stmt.executeQuery();
             if (rs.next()) {
@@ -138,13 +362,7 @@ public class RaftNode {
      */
     private List<Integer> getFreeSpaces(Connection conn, int zoneID, int requestedSpaceID) throws SQLException {
         List<Integer> result = new ArrayList<>();
-        String sql = """
-            SELECT SpaceID
-            FROM parkingspaces
-            WHERE ZoneID = ?
-              AND (Occupied = 0)
-        """;
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (PreparedStatement stmt = conn.prepareStatement(FREE_SPACES_IN_ZONE_SQL)) {
             stmt.setInt(1, zoneID);
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
@@ -155,66 +373,78 @@ public class RaftNode {
     }
 
     /**
-     * Reads citations from RabbitMQ and maps SpaceID -> Number of violations.
+     * Returns the zone of a space, from the space index or else from the database.
+     *
+     * @param spaceId The SpaceID.
+     * @return The ZoneID, or -1 if the space is unknown or there is no database.
      */
-    private Map<Integer, Integer> buildCitationsMapFromQueue() {
-        Map<Integer, Integer> citationsMap = new HashMap<>();
-        List<String> msgs = rabbitMQUtil.fetchAndRepublishMessagesCitation("citationsQueue"); // שם התור של הדוחות
-        for (String msg : msgs) {
-            int sid = parseSpaceIDFromMessage(msg);
-            if (sid != -1) {
-                citationsMap.put(sid, citationsMap.getOrDefault(sid, 0) + 1);
+    public int zoneOf(int spaceId) {
+        if (database == null) {
+            return -1;
+        }
+        try {
+            SpaceIndex spaces = SpaceIndex.forNode(nodeId, database::connect);
+            if (spaces.contains(spaceId)) {
+                return spaces.zoneOf(spaceId);
             }
+        } catch (SQLException e) {
+            // The index is unavailable, ask the database
+        }
+        try (Connection conn = database.connect()) {
+            return getZoneID(conn, spaceId);
+        } catch (SQLException e) {
+            System.err.println("❌ DB Error (" + nodeId + "): " + e.getMessage());
+            return -1;
         }
-        return citationsMap;
     }
 
+    /**
+     * Returns the version of this node's citation counts (see {@link CitationIndex#version()}).
+     *
+     * @return The citation index version.
+     */
+    public long citationVersion() {
+        return citationIndex().version();
+    }
 
     /**
-     * Parses a SpaceID from a violation message.
-     * Expected format: "SpaceID=10,VehicleID=205,inspectionTimes=2025-01-29 15:28:11,totalCost=654.00"
+     * Returns this node's occupancy forecast, starting its training on first use.
      */
-    private int parseSpaceIDFromMessage(String msg) {
-        // "SpaceID=10,VehicleID=205,inspectionTimes=...,totalCost=..."
-        String[] parts = msg.split(",");
-        for (String p : parts) {
-            if (p.trim().startsWith("SpaceID: ")) {
-                String val = p.trim().substring("SpaceID: ".length());
-                try {
-                    return Integer.parseInt(val);
-                } catch (NumberFormatException e) {
-                    return -1;
-                }
-            }
+    private synchronized OccupancyForecast occupancyForecast() {
+        if (occupancyForecast == null) {
+            occupancyForecast = OccupancyForecast.forNode(nodeId, database::connect);
         }
-        return -1;
+        return occupancyForecast;
     }
 
     /**
-     * Selects the best parking space based on the fewest citations and shortest distance.
+     * Returns this node's citation index, opening it on first use. If the node's
+     * {@link ReplicatedLog} runs in this process (the node's own, see {@link Main}), the index
+     * follows it; otherwise it reads the broker.
      */
-    private List<String> pickBestSpace(List<Integer> freeSpaces, Map<Integer, Integer> citationsMap, int requestedSpaceID) {
-        List<String> bestSpaces = new ArrayList<>();
-        int minCitations = Integer.MAX_VALUE;
-        int minDist = Integer.MAX_VALUE;
-
-        for (int spaceId : freeSpaces) {
-            int c = citationsMap.getOrDefault(spaceId, 0);
-            int dist = Math.abs(spaceId - requestedSpaceID);
-
-            if (c < minCitations || (c == minCitations && dist < minDist)) {
-                // מצאנו חניה טובה יותר -> ננקה את הרשימה ונוסיף רק אותה
-                bestSpaces.clear();
-                bestSpaces.add("SpaceID=" + spaceId + ",Citations=" + c);
-                minCitations = c;
-                minDist = dist;
-            } else if (c == minCitations && dist == minDist) {
-                // אם היא טובה כמו האחרות, נוסיף אותה לרשימה
-                bestSpaces.add("SpaceID=" + spaceId + ",Citations=" + c);
+    private synchronized CitationIndex citationIndex() {
+        if (citationIndex == null) {
+            citationIndex = CitationIndex.forNode(nodeId);
+            ReplicatedLog log = ReplicatedLog.get(nodeId);
+            if (log != null) {
+                citationIndex.followReplicatedLog(log);
             }
         }
+        return citationIndex;
+    }
 
-        return bestSpaces.isEmpty() ? null : bestSpaces;
+    /**
+     * Ranks the free spaces of a zone by the fewest citations and shortest distance, keeping the
+     * best {@code recommender.topK} in a bounded heap: O(n log k) for n free spaces.
+     */
+    private List<RankedCandidate> rankZone(List<Integer> freeSpaces, CitationIndex citations, int requestedSpaceID) {
+        TopK<RankedCandidate> best = new TopK<>(TOP_K, RankedCandidate.ORDER);
+        for (int spaceId : freeSpaces) {
+            double score = citations.score(spaceId); // The citation count, unless decay is enabled
+            // מועמדת נכנסת לערימה רק אם היא טובה מהגרועה מבין הטובות עד כה
+            best.offer(new RankedCandidate(spaceId, citations.count(spaceId), score, Math.abs(spaceId - requestedSpaceID)));
+        }
+        return best.size() == 0 ? null : best.toSortedList();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,106 @@
+package com.example.recommender;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A free parking space offered as a recommendation, with what it was ranked by.
+ *
+ * Candidates are ranked by {@link #ORDER}: the lowest citation score first, then the shortest
+ * distance, then the lowest SpaceID, so every node ranks the same data in the same order (there
+ * are no ties). On the wire a candidate is one line, "SpaceID=12,Citations=1,Dist=40"; a ranking
+ * is one such line per candidate, best first.
+ *
+ * @param spaceId   The SpaceID.
+ * @param citations The number of citations issued at the space.
+ * @param score     The citation score it was ranked by (see {@link CitationIndex#score(int)}); node-local,
+ *                  so a parsed candidate carries its citation count instead.
+ * @param distance  The distance from the requested space: meters, or the SpaceID difference within a zone.
+ */
+public record RankedCandidate(int spaceId, int citations, double score, long distance) {
+
+    /** Best first: fewest citations, then nearest, then lowest SpaceID. */
+    public static final Comparator<RankedCandidate> ORDER = Comparator
+            .comparingDouble(RankedCandidate::score)
+            .thenComparingLong(RankedCandidate::distance)
+            .thenComparingInt(RankedCandidate::spaceId);
+
+    /**
+     * Formats the candidate as a line of a response.
+     *
+     * @return "SpaceID=..,Citations=..,Dist=..".
+     */
+    public String format() {
+        return "SpaceID=" + spaceId + ",Citations=" + citations + ",Dist=" + distance;
+    }
+
+    /**
+     * Parses a line written by {@link #format()}; Dist may be missing (0).
+     *
+     * @param line The line.
+     * @return The candidate, or null if the line is not one.
+     */
+    public static RankedCandidate parse(String line) {
+        int spaceId = -1, citations = -1;
+        long distance = 0;
+        try {
+            for (String part : line.split(",")) {
+                String[] kv = part.split("=", 2);
+                if (kv.length != 2) {
+                    continue;
+                }
+                switch (kv[0].trim()) {
+                    case "SpaceID" -> spaceId = Integer.parseInt(kv[1].trim());
+                    case "Citations" -> citations = Integer.parseInt(kv[1].trim());
+                    case "Dist" -> distance = Long.parseLong(kv[1].trim());
+                    default -> { }
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (spaceId < 0 || citations < 0) {
+            return null;
+        }
+        return new RankedCandidate(spaceId, citations, citations, distance);
+    }
+
+    /**
+     * Formats a ranking, one candidate per line, best first.
+     *
+     * @param ranking The candidates.
+     * @return The ranking as sent after "Rec=".
+     */
+    public static String formatRanking(List<RankedCandidate> ranking) {
+        StringBuilder joined = new StringBuilder();
+        for (RankedCandidate candidate : ranking) {
+            joined.append(candidate.format()).append("\n");
+        }
+        return joined.toString();
+    }
+
+    /**
+     * Parses a ranking written by {@link #formatRanking(List)}.
+     *
+     * @param ranking The ranking.
+     * @return The candidates, best first; empty if a line is not a candidate.
+     */
+    public static List<RankedCandidate> parseRanking(String ranking) {
+        List<RankedCandidate> candidates = new ArrayList<>();
+        if (ranking == null) {
+            return candidates;
+        }
+        for (String line : ranking.split("\n")) {
+            if (line.isBlank()) {
+                continue;
+            }
+            RankedCandidate candidate = parse(line);
+            if (candidate == null) {
+                return List.of();
+            }
+            candidates.add(candidate);
+        }
+        return candidates;
+    }
+}
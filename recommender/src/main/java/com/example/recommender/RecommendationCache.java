@@ -0,0 +1,215 @@
+package com.example.recommender;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongSupplier;
+
+/**
+ * Caches consensus recommendations, for the bursts of identical requests at event venues.
+ *
+ * An entry is the decision for a requested space. It depends on the occupancy of the zones
+ * involved (the requested space's zone and those of the recommended spaces) and on the citation
+ * counts, and it is only served while none of them changed:
+ * - Every occupancy change, reported with {@link #onOccupancyChanged(int)}, stamps its zone with
+ *   the next value of a global sequence. An entry records the sequence value from before its
+ *   computation started and is stale once any of its zones carries a later stamp. A change that
+ *   happens during the computation therefore invalidates the result at once.
+ * - The citation version (e.g. the sum of the nodes' {@link CitationIndex#version()}) must still
+ *   be the one read before the computation.
+ * - {@link #invalidateAll()} drops everything, e.g. when occupancy events may have been missed.
+ * - Entries also expire after {@code maxAgeMs}, in case an event was lost after all.
+ *
+ * Concurrent misses for the same space are coalesced: one caller computes, the others wait for its
+ * result (single flight). "No consensus" is not cached. The cache holds at most {@code maxEntries}
+ * entries and evicts the least recently used.
+ */
+public class RecommendationCache {
+
+    /**
+     * Cache statistics at one point in time.
+     *
+     * @param hits      Requests answered from the cache.
+     * @param misses    Requests that computed a recommendation.
+     * @param coalesced Requests that waited for another request's computation.
+     * @param stale     Entries found but no longer valid.
+     * @param size      Entries currently held.
+     */
+    public record CacheStats(long hits, long misses, long coalesced, long stale, int size) {
+    }
+
+    private record CachedDecision(String recommendation, int[] zones, long sequence, long citationVersion, long createdNanos) {
+    }
+
+    private final long maxAgeNanos;
+    private final IntUnaryOperator zoneOf;
+    private final LongSupplier citationVersion;
+
+    private final Map<Integer, CachedDecision> entries; // Guarded by itself, in access order
+    private final Map<Integer, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> zoneChangedAt = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile long validFrom;            // Entries computed before this sequence value are dropped
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxEntries      The most entries kept; the least recently used are evicted.
+     * @param maxAgeMs        The longest time an entry is served, in milliseconds.
+     * @param zoneOf          Maps a SpaceID to its ZoneID (-1 if unknown; such results are not cached).
+     * @param citationVersion Returns the current version of the citation counts.
+     */
+    public RecommendationCache(int maxEntries, long maxAgeMs, IntUnaryOperator zoneOf, LongSupplier citationVersion) {
+        this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMs);
+        this.zoneOf = zoneOf;
+        this.citationVersion = citationVersion;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, CachedDecision> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the recommendation for a space from the cache, or computes it once for all concurrent
+     * callers that ask for the same space.
+     *
+     * @param spaceId The requested SpaceID.
+     * @param loader  Computes the recommendation on a miss (may return null for "no consensus").
+     * @return The recommendation, or null if there is none.
+     */
+    public String get(int spaceId, IntFunction<String> loader) {
+        CachedDecision entry;
+        synchronized (entries) {
+            entry = entries.get(spaceId);
+        }
+        if (entry != null) {
+            if (isValid(entry)) {
+                hits.incrementAndGet();
+                return entry.recommendation();
+            }
+            stale.incrementAndGet();
+            synchronized (entries) {
+                entries.remove(spaceId, entry);
+            }
+        }
+
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlight.putIfAbsent(spaceId, mine);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            return running.join();
+        }
+        misses.incrementAndGet();
+        String recommendation = null;
+        try {
+            // Read the versions before computing, so changes made meanwhile make the result stale
+            long startSequence = sequence.get();
+            long startCitations = citationVersion.getAsLong();
+            recommendation = loader.apply(spaceId);
+            if (recommendation != null) {
+                int[] zones = zonesOf(spaceId, recommendation);
+                if (zones != null) {
+                    CachedDecision fresh = new CachedDecision(recommendation, zones, startSequence, startCitations, System.nanoTime());
+                    if (isValid(fresh)) {
+                        synchronized (entries) {
+                            entries.put(spaceId, fresh);
+                        }
+                    }
+                }
+            }
+            return recommendation;
+        } finally {
+            inFlight.remove(spaceId, mine);
+            mine.complete(recommendation);
+        }
+    }
+
+    /**
+     * Records that a space of a zone was taken or freed; the zone's entries become stale.
+     *
+     * @param zoneId The ZoneID.
+     */
+    public void onOccupancyChanged(int zoneId) {
+        long stamp = sequence.incrementAndGet();
+        zoneChangedAt.merge(zoneId, stamp, Math::max);
+    }
+
+    /**
+     * Drops every entry, including those being computed right now.
+     */
+    public void invalidateAll() {
+        validFrom = sequence.incrementAndGet();
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Returns the cache statistics.
+     *
+     * @return The statistics.
+     */
+    public CacheStats getStats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new CacheStats(hits.get(), misses.get(), coalesced.get(), stale.get(), size);
+    }
+
+    private boolean isValid(CachedDecision entry) {
+        if (entry.sequence() < validFrom
+                || System.nanoTime() - entry.createdNanos() > maxAgeNanos
+                || entry.citationVersion() != citationVersion.getAsLong()) {
+            return false;
+        }
+        for (int zone : entry.zones()) {
+            if (zoneChangedAt.getOrDefault(zone, 0L) > entry.sequence()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the zones a recommendation depends on: the requested space's and the recommended spaces'.
+     *
+     * @return The ZoneIDs, or null if one of them is unknown.
+     */
+    private int[] zonesOf(int spaceId, String recommendation) {
+        List<Integer> zones = new ArrayList<>();
+        zones.add(zoneOf.applyAsInt(spaceId));
+        for (String rec : recommendation.split("\n")) {
+            for (String field : rec.split(",")) {
+                if (field.trim().startsWith("SpaceID=")) {
+                    try {
+                        int zone = zoneOf.applyAsInt(Integer.parseInt(field.trim().substring("SpaceID=".length())));
+                        if (!zones.contains(zone)) {
+                            zones.add(zone);
+                        }
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                }
+            }
+        }
+        if (zones.contains(-1)) {
+            return null;
+        }
+        return zones.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
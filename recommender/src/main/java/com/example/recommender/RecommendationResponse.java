@@ -1,12 +1,32 @@
 package com.example.recommender;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
 /**
  * Represents a response message from a node (a single recommendation).
- * This response includes the node identifier and the recommended parking space details.
+ * This response includes the node identifier and the recommended parking space details: a ranking
+ * of {@link RankedCandidate}s, the first of which is the node's top choice.
+ *
+ * A response is either a full one, carrying the ranking itself, or a digest vote, which carries
+ * only what the vote needs: the top choice, a digest of the canonical ranking (see
+ * {@link #digestOf(List)}) and the node's citation counts for the ranked spaces. Only one node per
+ * round needs to ship the ranking (the leader, or every node when there is none); the others
+ * vote by digest.
  */
 public class RecommendationResponse {
+    private static final HexFormat HEX = HexFormat.of();
+    private static final int DIGEST_BYTES = 8;
+
     private String nodeId;         // מזהה ה-Node (למשל URI של RabbitMQ)
-    private String recommendation; // לדוגמה: "SpaceID=12,Citations=1,Dist=2"
+    private String recommendation; // לדוגמה: "SpaceID=12,Citations=1,Dist=2"; null in a digest vote
+    private List<RankedCandidate> ranking; // Parsed on first use
+    private final int topChoice;   // -2: taken from the ranking
+    private final String digest;   // Null: computed from the ranking
+    private final int[] citations; // The node's counts for the ranked spaces, null if not sent
 
 
     /**
@@ -16,8 +36,24 @@ public class RecommendationResponse {
      * @param recommendation The recommended parking space details in a formatted string.
      */
     public RecommendationResponse(String nodeId, String recommendation) {
+        this(nodeId, recommendation, -2, null, null);
+    }
+
+    /**
+     * Constructs a digest vote, or a full response with its vote fields already known.
+     *
+     * @param nodeId         The unique identifier of the responding node (e.g., RabbitMQ URI).
+     * @param recommendation The ranking, or null for a digest vote.
+     * @param topChoice      The SpaceID voted for.
+     * @param digest         The digest of the ranking.
+     * @param citations      The node's citation counts for the ranked spaces.
+     */
+    public RecommendationResponse(String nodeId, String recommendation, int topChoice, String digest, int[] citations) {
         this.nodeId = nodeId;
         this.recommendation = recommendation;
+        this.topChoice = topChoice;
+        this.digest = digest;
+        this.citations = citations;
     }
 
     /**
@@ -32,20 +68,182 @@ public class RecommendationResponse {
     /**
      * Retrieves the recommendation details.
      *
-     * @return A formatted string containing parking space recommendation details.
+     * @return A formatted string containing parking space recommendation details, or null for a digest vote.
      */
     public String getRecommendation() {
         return recommendation;
     }
 
+    /**
+     * Checks whether the response carries the ranking itself.
+     *
+     * @return False for a digest vote.
+     */
+    public boolean hasRanking() {
+        return recommendation != null;
+    }
+
+    /**
+     * Retrieves the recommended spaces.
+     *
+     * @return The candidates, best first; empty for a digest vote or if the recommendation is not a ranking.
+     */
+    public synchronized List<RankedCandidate> getRanking() {
+        if (ranking == null) {
+            ranking = List.copyOf(RankedCandidate.parseRanking(recommendation));
+        }
+        return ranking;
+    }
+
+    /**
+     * Retrieves the node's top choice, the space it votes for.
+     *
+     * @return The SpaceID, or -1 if the recommendation is not a ranking.
+     */
+    public int getTopChoice() {
+        if (topChoice != -2) {
+            return topChoice;
+        }
+        List<RankedCandidate> candidates = getRanking();
+        return candidates.isEmpty() ? -1 : candidates.get(0).spaceId();
+    }
+
+    /**
+     * Retrieves the digest of the node's ranking; equal digests mean equal rankings.
+     *
+     * @return The digest, or null if the recommendation is not a ranking.
+     */
+    public String getDigest() {
+        if (digest != null) {
+            return digest;
+        }
+        List<RankedCandidate> candidates = getRanking();
+        return candidates.isEmpty() ? null : digestOf(candidates);
+    }
+
+    /**
+     * Retrieves the node's citation counts for the ranked spaces, in rank order.
+     *
+     * @return The counts.
+     */
+    public int[] getCitations() {
+        if (citations != null) {
+            return citations.clone();
+        }
+        return getRanking().stream().mapToInt(RankedCandidate::citations).toArray();
+    }
+
+    /**
+     * Computes the digest of a ranking: the first 8 bytes of the SHA-256 of its canonical form
+     * ({@link RankedCandidate#formatRanking(List)}), in hex.
+     *
+     * @param ranking The candidates, best first.
+     * @return The digest.
+     */
+    public static String digestOf(List<RankedCandidate> ranking) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            byte[] hash = sha.digest(RankedCandidate.formatRanking(ranking).getBytes(StandardCharsets.UTF_8));
+            return HEX.formatHex(hash, 0, DIGEST_BYTES);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e); // Every JVM has it
+        }
+    }
+
+    /**
+     * Formats a digest vote for a ranking, with the voting node's citation counts.
+     *
+     * @param nodeId    The voting node.
+     * @param ranking   The ranking voted for (non-empty).
+     * @param citations The node's citation counts for the ranked spaces.
+     * @return "RESPONSE::Node=..,Top=..,Digest=..,Citations=1;0;2".
+     */
+    public static String formatDigestVote(String nodeId, List<RankedCandidate> ranking, int[] citations) {
+        StringBuilder vote = new StringBuilder("RESPONSE::Node=").append(nodeId)
+                .append(",Top=").append(ranking.get(0).spaceId())
+                .append(",Digest=").append(digestOf(ranking))
+                .append(",Citations=");
+        for (int i = 0; i < citations.length; i++) {
+            vote.append(i == 0 ? "" : ";").append(citations[i]);
+        }
+        return vote.toString();
+    }
+
+    /**
+     * Parses a raw response: a full one ("RESPONSE::Node=..,Rec=<ranking>") or a digest vote (see
+     * {@link #formatDigestVote(String, List, int[])}).
+     *
+     * @param msg Raw response string from RabbitMQ.
+     * @return The response, or null if the message is not one.
+     */
+    public static RecommendationResponse parse(String msg) {
+        // דוגמה: "RESPONSE::Node=amqp://100.85.154.51,Rec=SpaceID=10,Citations=0,Dist=2"
+        if (!msg.startsWith("RESPONSE::")) {
+            return null;
+        }
+        String raw = msg.substring("RESPONSE::".length()); // Node=...,Rec=... or Node=...,Top=...
+        int rec = raw.indexOf(",Rec=");
+        if (rec >= 0) {
+            String nodePart = raw.substring(0, rec).trim();   // "Node=amqp://100.85.154.51"
+            String recPart = raw.substring(rec + ",Rec=".length()).trim(); // "SpaceID=10,Citations=0,Dist=2"
+            if (!nodePart.startsWith("Node=") || recPart.contains(",Rec=")) {
+                return null;
+            }
+            return new RecommendationResponse(nodePart.substring("Node=".length()), recPart);
+        }
+
+        String nodeId = null, digest = null;
+        int top = -1;
+        int[] citations = null;
+        try {
+            for (String part : raw.split(",")) {
+                String[] kv = part.split("=", 2);
+                if (kv.length != 2) {
+                    return null;
+                }
+                switch (kv[0].trim()) {
+                    case "Node" -> nodeId = kv[1].trim();
+                    case "Top" -> top = Integer.parseInt(kv[1].trim());
+                    case "Digest" -> digest = kv[1].trim();
+                    case "Citations" -> {
+                        String[] counts = kv[1].trim().split(";");
+                        citations = new int[counts.length];
+                        for (int i = 0; i < counts.length; i++) {
+                            citations[i] = Integer.parseInt(counts[i]);
+                        }
+                    }
+                    default -> { }
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (nodeId == null || digest == null || top < 0) {
+            return null;
+        }
+        return new RecommendationResponse(nodeId, null, top, digest, citations);
+    }
+
     /**
      * Returns a string representation of the response.
-     * The format follows: {@code RESPONSE::Node=<nodeId>,Rec=<recommendation>}
+     * The format follows: {@code RESPONSE::Node=<nodeId>,Rec=<recommendation>}, or that of
+     * {@link #formatDigestVote(String, List, int[])} for a digest vote.
      *
      * @return A formatted string representing the recommendation response.
      */
     @Override
     public String toString() {
+        if (recommendation == null) {
+            StringBuilder vote = new StringBuilder("RESPONSE::Node=").append(nodeId)
+                    .append(",Top=").append(topChoice).append(",Digest=").append(digest);
+            if (citations != null) {
+                vote.append(",Citations=");
+                for (int i = 0; i < citations.length; i++) {
+                    vote.append(i == 0 ? "" : ";").append(citations[i]);
+                }
+            }
+            return vote.toString();
+        }
         // פורמט טקסטואלי לדוגמה
         return "RESPONSE::Node=" + nodeId + ",Rec=" + recommendation;
     }
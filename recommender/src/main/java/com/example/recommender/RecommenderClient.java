@@ -0,0 +1,302 @@
+package com.example.recommender;
+
+import com.example.shared.utils.ConsumerGroupMember;
+import com.example.shared.utils.OccupancyEvent;
+import com.example.shared.utils.RabbitMQUtil;
+import com.example.shared.utils.ReplyQueue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Entry point of the UI into the recommender cluster, created once per application and shared by
+ * all requests.
+ *
+ * Building the cluster handles used to be most of a request's latency: a connection per node, a
+ * leader election, the reply queue. The client sets these up once and keeps them warm:
+ * - one {@link RabbitMQUtil} and {@link RaftNode} per node; a lost connection is restored by the
+ *   reconnect supervisor and the node simply sits out the rounds until then,
+ * - a {@link LeaderObserver} of the nodes' election, which runs in the nodes' own processes
+ *   ({@link Main}), so the leader persists across requests and the UI never votes,
+ * - one {@link ReplyQueue} for all requests, reopened after its connection was lost.
+ * With {@code recommender.raft.replicate} the nodes' {@link ReplicatedLog}s also run in the nodes'
+ * processes, next to their election participants; the UI's nodes read the citations from the broker.
+ * A request only creates a {@link ConsensusProtocol} for its round, which is cheap.
+ *
+ * Decisions are cached in a {@link RecommendationCache}, which learns of occupancy changes from
+ * {@link RabbitMQUtil#OCCUPANCY_EXCHANGE}. While that subscription is down nothing is served from
+ * the cache, and it is cleared when the subscription is restored, since events may have been missed.
+ * Set {@code recommender.cache.maxEntries} to 0 to disable caching.
+ */
+public class RecommenderClient implements AutoCloseable {
+    // How long a request waits for a leader before every node computes its own recommendation
+    private static final long LEADER_WAIT_MS = Long.getLong("recommender.client.leaderWaitMs", 1000);
+
+    private static final String RESPONSE_QUEUE = "recommendationResponsesQueue";
+
+    private static final int CACHE_MAX_ENTRIES = Integer.getInteger("recommender.cache.maxEntries", 10_000);
+    private static final long CACHE_MAX_AGE_MS = Long.getLong("recommender.cache.maxAgeMs", 30_000);
+
+    private final List<RabbitMQUtil> rabbitMQs = new ArrayList<>();
+    private final List<RaftNode> raftNodes = new ArrayList<>();
+
+    private RabbitMQUtil replyConnection; // Guarded by this, with replyQueue
+    private ReplyQueue replyQueue;
+    private final LeaderObserver leaders;
+    private ConsumerGroupMember occupancyEvents; // Guarded by this
+    private final RecommendationCache cache;    // Null: caching disabled
+    private volatile ConsensusProtocol lastRound;
+
+    /**
+     * Connects to every node and follows their election.
+     *
+     * @param nodeUris  The RabbitMQ URIs of the recommender nodes.
+     * @param dbUrlForm The JDBC URL of a node's database, with %s for the node's host.
+     * @param dbUser    The database username.
+     * @param dbPass    The database password.
+     */
+    public RecommenderClient(List<String> nodeUris, String dbUrlForm, String dbUser, String dbPass) {
+        this(nodeUris, (uri, rmq) -> new RaftNode(uri, rmq,
+                String.format(dbUrlForm, uri.replace("amqp://", "")), dbUser, dbPass), CACHE_MAX_ENTRIES > 0);
+    }
+
+    /**
+     * Connects to every node and follows their election, with nodes made by a factory.
+     *
+     * @param nodeUris    The RabbitMQ URIs of the recommender nodes.
+     * @param nodeFactory Creates the RaftNode of a URI on its connection.
+     * @param cached      Whether decisions are cached.
+     */
+    RecommenderClient(List<String> nodeUris, BiFunction<String, RabbitMQUtil, RaftNode> nodeFactory, boolean cached) {
+        for (String uri : nodeUris) {
+            RabbitMQUtil rmq = new RabbitMQUtil(uri);
+            rabbitMQs.add(rmq);
+            raftNodes.add(nodeFactory.apply(uri, rmq));
+        }
+        cache = cached
+                ? new RecommendationCache(CACHE_MAX_ENTRIES, CACHE_MAX_AGE_MS, this::zoneOf, this::citationVersion)
+                : null;
+        getReplyQueue();
+        leaders = new LeaderObserver(replyConnection);
+        leaders.getLeader(); // Subscribes, so the first request hears the leader's next heartbeat
+        if (cache != null) {
+            subscribeToOccupancy();
+        }
+    }
+
+    /**
+     * Asks the connected nodes for a recommendation and returns the majority decision.
+     *
+     * @param spaceID The requested parking space ID.
+     * @return The consensus recommendation, or null if no consensus was reached.
+     */
+    public String recommend(int spaceID) {
+        return recommend(spaceID, ConsensusProtocol.DEFAULT_DEADLINE_MS);
+    }
+
+    /**
+     * Asks the connected nodes for a recommendation within a deadline and returns the majority decision.
+     * A majority of all configured nodes is needed, so unreachable nodes count as abstaining.
+     *
+     * @param spaceID    The requested parking space ID.
+     * @param deadlineMs The time budget of the round, in milliseconds.
+     * @return The consensus recommendation, or null if no consensus was reached.
+     */
+    public String recommend(int spaceID, long deadlineMs) {
+        return recommend(spaceID, deadlineMs, null);
+    }
+
+    /**
+     * Asks the connected nodes for a recommendation within a deadline and returns the majority
+     * decision, passing each node's ranking to a listener as it arrives. The listener is not called
+     * when the decision comes from the cache or from a concurrent request for the same space.
+     *
+     * @param spaceID    The requested parking space ID.
+     * @param deadlineMs The time budget of the round, in milliseconds.
+     * @param onVote     Sees each node's response before the round is decided (null for none).
+     * @return The consensus ranking (see {@link RankedCandidate#parseRanking(String)}), or null if
+     *         no consensus was reached.
+     */
+    public String recommend(int spaceID, long deadlineMs, Consumer<RecommendationResponse> onVote) {
+        if (cache != null && subscribeToOccupancy()) {
+            return cache.get(spaceID, id -> requestRound(id, deadlineMs, onVote));
+        }
+        return requestRound(spaceID, deadlineMs, onVote);
+    }
+
+    /**
+     * Runs one consensus round among the connected nodes.
+     */
+    private String requestRound(int spaceID, long deadlineMs, Consumer<RecommendationResponse> onVote) {
+        List<RabbitMQUtil> connected = new ArrayList<>();
+        List<RaftNode> nodes = new ArrayList<>();
+        for (int i = 0; i < raftNodes.size(); i++) {
+            if (rabbitMQs.get(i).getConnectedServer() == null) {
+                continue;
+            }
+            connected.add(rabbitMQs.get(i));
+            nodes.add(raftNodes.get(i));
+        }
+        if (leaders.getLeader() == null) {
+            try {
+                leaders.awaitLeader(LEADER_WAIT_MS); // Only right after start-up or a failover
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        ReplyQueue replies = getReplyQueue();
+        ConsensusProtocol protocol = new ConsensusProtocol(nodes, connected, replies, leaders, raftNodes.size());
+        lastRound = protocol;
+        List<RecommendationResponse> responses = protocol.requestRecommendations(spaceID, deadlineMs, onVote);
+        if (replies == null) {
+            // No reply queue: the answers went through the shared queue, clear it for the next request
+            for (RabbitMQUtil rmq : connected) {
+                rmq.purgeQueue(RESPONSE_QUEUE);
+            }
+        }
+        return protocol.getConsensusDecision(responses);
+    }
+
+    /**
+     * Returns the nodes that abstained in the most recent round.
+     *
+     * @return The node IDs.
+     */
+    public List<String> getAbstainedNodes() {
+        ConsensusProtocol round = lastRound;
+        return round == null ? List.of() : round.getAbstainedNodes();
+    }
+
+    /**
+     * Returns the nodes that voted against the decision in the most recent round.
+     *
+     * @return The node IDs.
+     */
+    public List<String> getDissentingNodes() {
+        ConsensusProtocol round = lastRound;
+        return round == null ? List.of() : round.getDissentingNodes();
+    }
+
+    /**
+     * Returns the statistics of the decision cache.
+     *
+     * @return The statistics, or null if caching is disabled.
+     */
+    public RecommendationCache.CacheStats getCacheStats() {
+        return cache == null ? null : cache.getStats();
+    }
+
+    /**
+     * Makes sure occupancy events are being received, subscribing again (and clearing the cache,
+     * which may have missed events) after the subscription was lost.
+     *
+     * @return True if the cache can be trusted.
+     */
+    private synchronized boolean subscribeToOccupancy() {
+        if (occupancyEvents != null && occupancyEvents.isOpen()) {
+            return true;
+        }
+        cache.invalidateAll();
+        if (occupancyEvents != null) {
+            occupancyEvents.close();
+            occupancyEvents = null;
+        }
+        if (replyConnection == null) {
+            replyConnection = new RabbitMQUtil();
+        }
+        try {
+            occupancyEvents = replyConnection.subscribe(RabbitMQUtil.OCCUPANCY_EXCHANGE, this::onOccupancyEvent);
+            return true;
+        } catch (IOException e) {
+            System.err.println(" Could not subscribe to occupancy events, not caching: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Handles an {@link OccupancyEvent}.
+     */
+    private void onOccupancyEvent(byte[] body) {
+        OccupancyEvent event = OccupancyEvent.parse(body);
+        if (event != null) {
+            cache.onOccupancyChanged(event.zoneId());
+            return;
+        }
+        System.err.println(" Unreadable occupancy event, clearing the recommendation cache: "
+                + new String(body, StandardCharsets.UTF_8));
+        cache.invalidateAll();
+    }
+
+    /**
+     * Looks up the zone of a space through the first node that knows it.
+     */
+    private int zoneOf(int spaceId) {
+        for (RaftNode node : raftNodes) {
+            int zone = node.zoneOf(spaceId);
+            if (zone != -1) {
+                return zone;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Sums the nodes' citation index versions; it changes whenever any node's counts change.
+     */
+    private long citationVersion() {
+        long version = 0;
+        for (RaftNode node : raftNodes) {
+            version += node.citationVersion();
+        }
+        return version;
+    }
+
+    /**
+     * Returns the reply queue, opening it on first use and again after its connection was lost.
+     *
+     * @return The reply queue, or null if no RabbitMQ node is reachable.
+     */
+    private synchronized ReplyQueue getReplyQueue() {
+        if (replyQueue != null && replyQueue.isOpen()) {
+            return replyQueue;
+        }
+        if (replyQueue != null) {
+            replyQueue.close();
+        }
+        if (replyConnection == null) {
+            replyConnection = new RabbitMQUtil();
+        }
+        try {
+            replyQueue = replyConnection.openReplyQueue();
+        } catch (IOException e) {
+            System.err.println(" Could not open a reply queue, using the shared response queue: " + e.getMessage());
+            replyQueue = null;
+        }
+        return replyQueue;
+    }
+
+    /**
+     * Stops following the election and closes every connection.
+     */
+    @Override
+    public synchronized void close() {
+        leaders.close();
+        if (occupancyEvents != null) {
+            occupancyEvents.close();
+        }
+        if (replyQueue != null) {
+            replyQueue.close();
+        }
+        if (replyConnection != null) {
+            replyConnection.closeConnection();
+        }
+        for (RabbitMQUtil rmq : rabbitMQs) {
+            rmq.closeConnection();
+        }
+    }
+}
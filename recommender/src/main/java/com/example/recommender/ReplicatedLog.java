@@ -0,0 +1,975 @@
+package com.example.recommender;
+
+import com.example.shared.utils.ConsumerGroupMember;
+import com.example.shared.utils.LegacyMessageCursor;
+import com.example.shared.utils.OccupancyEvent;
+import com.example.shared.utils.RabbitMQUtil;
+import com.example.shared.utils.StreamFollower;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Raft log replication of citation and occupancy changes among the recommender nodes.
+ *
+ * The {@link ElectionManager} of the node decides who leads; this class replicates what the leader
+ * appends and applies committed entries, in order, to a {@link ReplicatedState}:
+ * - The leader reads the citation stream (from the offsets already in the log) and the occupancy
+ *   events, and appends one entry per change. It starts each term with a no-op entry.
+ * - It sends new entries to every follower through their inboxes ("raft.log.&lt;node&gt;"), in
+ *   batches of {@code recommender.raft.log.batch}, with the index and term of the entry before
+ *   them. A follower only accepts entries that continue its log, writes them to its log file
+ *   (fsync) and acknowledges. On a mismatch the leader goes back until the logs agree; the
+ *   follower drops its conflicting entries.
+ * - An entry of the current term that a majority stored is committed, and with it everything
+ *   before it; every node applies committed entries to its state and tells its listeners.
+ * - Every {@code recommender.raft.log.snapshotEntries} applied entries the state is written to a
+ *   binary snapshot and the log file is compacted to the entries after it. A follower that needs
+ *   compacted entries is sent the snapshot instead.
+ * Votes go only to candidates whose log is at least as up to date (see
+ * {@link ElectionManager#attachLog(ElectionManager.LogPosition)}), so a new leader has every
+ * committed entry.
+ *
+ * A restarted node loads its snapshot and the log tail from disk and is current after one round
+ * trip to the leader, instead of reading the whole citation history again.
+ * Enabled with {@code -Drecommender.raft.replicate=true}; citations are only replicated in stream
+ * mode (see {@link RabbitMQUtil#isStreamMode()}).
+ */
+public class ReplicatedLog implements AutoCloseable {
+
+    /** A no-op, appended by each new leader. */
+    public static final byte NOOP = 0;
+    /** A citation: SpaceID, stream partition and offset. */
+    public static final byte CITATION = 1;
+    /** An occupancy change: SpaceID and 1 (taken) or 0 (freed). */
+    public static final byte OCCUPANCY = 2;
+
+    /**
+     * Learns of the state's changes, under the log's lock and in log order.
+     */
+    public interface Listener {
+        /**
+         * Called when the listener subscribes and whenever the state was replaced by a snapshot.
+         *
+         * @param state The state; only valid during the call.
+         */
+        void onReset(ReplicatedState state);
+
+        /**
+         * Called for every committed entry after it was applied.
+         *
+         * @param type      The entry type.
+         * @param spaceId   The SpaceID.
+         * @param partition The citation's stream partition.
+         * @param value     The citation's offset, or 1/0 for occupied/free.
+         */
+        void onCommitted(byte type, int spaceId, int partition, long value);
+    }
+
+    private static final boolean ENABLED = Boolean.getBoolean("recommender.raft.replicate");
+    private static final long TICK_MS = Long.getLong("recommender.raft.heartbeatMs", 100);
+    private static final long ELECTION_TIMEOUT_MS = Long.getLong("recommender.raft.electionTimeoutMs", 500);
+    private static final int BATCH = Integer.getInteger("recommender.raft.log.batch", 4096);
+    private static final long SNAPSHOT_ENTRIES = Long.getLong("recommender.raft.log.snapshotEntries", 100_000);
+    private static final String STATE_DIR = System.getProperty("recommender.raft.stateDir",
+            System.getProperty("java.io.tmpdir"));
+
+    private static final String INBOX_PREFIX = "raft.log.";
+    private static final String CITATIONS_QUEUE = "citationsQueue";
+    private static final int ENTRY_BYTES = 8 + 1 + 4 + 4 + 8;      // term, type, space, partition, value
+    private static final int RECORD_BYTES = 8 + ENTRY_BYTES;        // On disk the index comes first
+    private static final int SNAPSHOT_MAGIC = 0x524C5331;           // "RLS1"
+
+    // One log per node for the whole process
+    private static final Map<String, ReplicatedLog> LOGS = new ConcurrentHashMap<>();
+
+    private static final ScheduledExecutorService TICKER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "raft-log");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String nodeId;
+    private final List<String> nodes;       // All members, this node included
+    private final ElectionManager election;
+    private final Path logFile;
+    private final Path snapshotFile;
+    private final long retryNanos;
+    private final long snapshotEntries;
+    private final boolean ingest;           // Whether the leader reads the broker (off in benchmarks)
+    private final RabbitMQUtil rabbitMQUtil;
+    private final ScheduledFuture<?> ticker;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile ConsumerGroupMember inbox;
+    // Used by the constructor, then only by the ticker
+    private long nextInboxAttempt;          // nanoTime before which a refused inbox is not tried again
+    private boolean inboxRefused;
+
+    // Read by the election without the lock
+    private volatile long lastIndexSeen;
+    private volatile long lastTermSeen;
+
+    // Guarded by this: the log, in memory from snapshotIndex + 1, and the state
+    private final ReplicatedState state;
+    private long snapshotIndex;
+    private long snapshotTerm;
+    private long[] terms = new long[1024];
+    private byte[] types = new byte[1024];
+    private int[] spaces = new int[1024];
+    private int[] partitions = new int[1024];
+    private long[] values = new long[1024];
+    private int count;
+    private long commitIndex;
+    private long lastApplied;
+    private FileChannel channel;
+    private long fileBase;                  // Index of the first record in the log file
+    private ByteBuffer unwritten = ByteBuffer.allocate(RECORD_BYTES * 256);
+    private long flushedIndex;              // Last index written and synced
+    private boolean closed;
+    private final LegacyMessageCursor cursor = new LegacyMessageCursor();
+
+    // Guarded by this: leader state, for leaderTerm (-1 when not leading)
+    private long leaderTerm = -1;
+    private final Map<String, Long> nextIndex = new HashMap<>();
+    private final Map<String, Long> matchIndex = new HashMap<>();
+    private final Map<String, Long> inFlightSince = new HashMap<>();
+
+    // Owned by the ticker: the leader's readers of the broker
+    private StreamFollower citationFollower;
+    private ConsumerGroupMember occupancyEvents;
+
+    /**
+     * Checks whether replication is enabled ({@code recommender.raft.replicate}).
+     *
+     * @return True if the nodes replicate their state.
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Returns the log of a node, restoring it from disk and joining the replication on first use.
+     * Like the node's election participant, which it starts too, it must only run in the node's
+     * own process ({@link Main}); its inbox is exclusive, so a second log for the node receives nothing.
+     *
+     * @param nodeId The RabbitMQ node URI of this node.
+     * @param nodes  The URIs of all recommender nodes, this one included.
+     * @return The node's log.
+     */
+    public static ReplicatedLog forNode(String nodeId, List<String> nodes) {
+        return LOGS.computeIfAbsent(nodeId, id -> new ReplicatedLog(id, nodes, ElectionManager.forNode(id, nodes),
+                Paths.get(STATE_DIR), TICK_MS, ELECTION_TIMEOUT_MS, SNAPSHOT_ENTRIES, true));
+    }
+
+    /**
+     * Returns the log of a node if it was started.
+     *
+     * @param nodeId The RabbitMQ node URI.
+     * @return The log, or null.
+     */
+    public static ReplicatedLog get(String nodeId) {
+        return LOGS.get(nodeId);
+    }
+
+    /**
+     * Starts a participant.
+     *
+     * @param nodeId            This node's URI.
+     * @param nodes             The URIs of all members, this one included.
+     * @param election          This node's election participant.
+     * @param dir               Where the log and snapshot files are kept.
+     * @param tickMs            How often the leader replicates (and the followers' commit index advances).
+     * @param electionTimeoutMs After how long an unacknowledged batch is sent again.
+     * @param snapshotEntries   After how many applied entries a snapshot is taken.
+     * @param ingest            Whether the leader appends the broker's citations and occupancy events.
+     */
+    ReplicatedLog(String nodeId, List<String> nodes, ElectionManager election, Path dir, long tickMs,
+                  long electionTimeoutMs, long snapshotEntries, boolean ingest) {
+        this.nodeId = nodeId;
+        this.nodes = List.copyOf(nodes);
+        this.election = election;
+        String name = nodeId.replaceAll("[^A-Za-z0-9.-]", "_");
+        this.logFile = dir.resolve("raftlog-" + name + ".log");
+        this.snapshotFile = dir.resolve("raftlog-" + name + ".snap");
+        this.retryNanos = TimeUnit.MILLISECONDS.toNanos(electionTimeoutMs);
+        this.snapshotEntries = snapshotEntries;
+        this.ingest = ingest;
+        this.state = new ReplicatedState(RabbitMQUtil.partitionQueues(CITATIONS_QUEUE).size());
+        restore();
+        election.attachLog(new ElectionManager.LogPosition() {
+            @Override
+            public long lastIndex() {
+                return lastIndexSeen;
+            }
+
+            @Override
+            public long lastTerm() {
+                return lastTermSeen;
+            }
+        });
+        this.rabbitMQUtil = new RabbitMQUtil(nodeId);
+        this.nextInboxAttempt = System.nanoTime();
+        openInbox();
+        this.ticker = TICKER.scheduleWithFixedDelay(this::tick, 0, Math.max(5, tickMs), TimeUnit.MILLISECONDS);
+    }
+
+    private static String inboxOf(String nodeId) {
+        return INBOX_PREFIX + nodeId.replaceAll("[^A-Za-z0-9.-]", "_");
+    }
+
+    // ------------------------------------------------------------------ queries
+
+    /**
+     * Appends a change as the leader; it is replicated on the next tick.
+     *
+     * @param type      {@link #CITATION} or {@link #OCCUPANCY}.
+     * @param spaceId   The SpaceID.
+     * @param partition The citation's stream partition (0 for occupancy).
+     * @param value     The citation's offset, or 1/0 for occupied/free.
+     * @return The entry's index, or -1 if this node does not lead.
+     */
+    public synchronized long propose(byte type, int spaceId, int partition, long value) {
+        if (leaderTerm < 0 || closed) {
+            return -1;
+        }
+        return append(leaderTerm, type, spaceId, partition, value);
+    }
+
+    /**
+     * Registers a listener; it is reset to the current state at once.
+     *
+     * @param listener The listener.
+     */
+    public synchronized void subscribe(Listener listener) {
+        listeners.add(listener);
+        listener.onReset(state);
+    }
+
+    /**
+     * Returns the replicated citation count of a space.
+     *
+     * @param spaceId The SpaceID.
+     * @return The count as of the last applied entry.
+     */
+    public synchronized int count(int spaceId) {
+        return state.count(spaceId);
+    }
+
+    /**
+     * Returns the index of the last entry in the log.
+     *
+     * @return The index (0 if the log is empty).
+     */
+    public synchronized long getLastIndex() {
+        return lastIndex();
+    }
+
+    /**
+     * Returns the index of the last committed entry.
+     *
+     * @return The commit index.
+     */
+    public synchronized long getCommitIndex() {
+        return commitIndex;
+    }
+
+    /**
+     * Returns the index of the last applied entry.
+     *
+     * @return The index.
+     */
+    public synchronized long getLastApplied() {
+        return lastApplied;
+    }
+
+    /**
+     * Returns the index of the last entry covered by the snapshot.
+     *
+     * @return The index (0 without a snapshot).
+     */
+    public synchronized long getSnapshotIndex() {
+        return snapshotIndex;
+    }
+
+    /**
+     * Waits until an entry has been applied.
+     *
+     * @param index     The index.
+     * @param timeoutMs The longest time to wait, in milliseconds.
+     * @return True if it was applied in time.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public synchronized boolean awaitApplied(long index, long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (lastApplied < index && !closed) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return lastApplied >= index;
+    }
+
+    // ------------------------------------------------------------------ the log in memory
+
+    private long lastIndex() {
+        return snapshotIndex + count;
+    }
+
+    private long termAt(long index) {
+        if (index == snapshotIndex) {
+            return snapshotTerm;
+        }
+        if (index < snapshotIndex || index > lastIndex()) {
+            return -1;
+        }
+        return terms[(int) (index - snapshotIndex - 1)];
+    }
+
+    /**
+     * Appends an entry in memory and to the write buffer of the log file. Must hold the lock.
+     */
+    private long append(long term, byte type, int spaceId, int partition, long value) {
+        if (count == terms.length) {
+            int capacity = count * 2;
+            terms = Arrays.copyOf(terms, capacity);
+            types = Arrays.copyOf(types, capacity);
+            spaces = Arrays.copyOf(spaces, capacity);
+            partitions = Arrays.copyOf(partitions, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        terms[count] = term;
+        types[count] = type;
+        spaces[count] = spaceId;
+        partitions[count] = partition;
+        values[count] = value;
+        count++;
+        long index = lastIndex();
+        if (unwritten.remaining() < RECORD_BYTES) {
+            unwritten = ByteBuffer.allocate(unwritten.capacity() * 2).put(unwritten.flip());
+        }
+        unwritten.putLong(index);
+        putEntry(unwritten, term, type, spaceId, partition, value);
+        lastIndexSeen = index;
+        lastTermSeen = term;
+        return index;
+    }
+
+    private static void putEntry(ByteBuffer buffer, long term, byte type, int spaceId, int partition, long value) {
+        buffer.putLong(term).put(type).putInt(spaceId).putInt(partition).putLong(value);
+    }
+
+    /**
+     * Drops the entries from an index on, in memory and in the log file. Must hold the lock.
+     */
+    private void truncateFrom(long index) throws IOException {
+        flush();
+        count = (int) (index - snapshotIndex - 1);
+        channel.truncate(Math.max(0, index - fileBase) * RECORD_BYTES);
+        flushedIndex = Math.min(flushedIndex, index - 1);
+        lastIndexSeen = lastIndex();
+        lastTermSeen = termAt(lastIndex());
+    }
+
+    /**
+     * Writes the buffered entries to the log file and syncs it. Must hold the lock.
+     */
+    private void flush() throws IOException {
+        if (unwritten.position() == 0) {
+            return;
+        }
+        unwritten.flip();
+        while (unwritten.hasRemaining()) {
+            channel.write(unwritten);
+        }
+        unwritten.clear();
+        channel.force(false);
+        flushedIndex = lastIndex();
+    }
+
+    // ------------------------------------------------------------------ applying
+
+    /**
+     * Applies the committed entries not applied yet, and takes a snapshot when due. Must hold the lock.
+     */
+    private void applyCommitted() {
+        while (lastApplied < commitIndex) {
+            lastApplied++;
+            int i = (int) (lastApplied - snapshotIndex - 1);
+            state.apply(types[i], spaces[i], partitions[i], values[i]);
+            for (Listener listener : listeners) {
+                try {
+                    listener.onCommitted(types[i], spaces[i], partitions[i], values[i]);
+                } catch (RuntimeException e) {
+                    System.err.println("❌ Replicated log listener failed (" + nodeId + "): " + e.getMessage());
+                }
+            }
+        }
+        notifyAll();
+        if (lastApplied - snapshotIndex >= snapshotEntries) {
+            try {
+                takeSnapshot();
+            } catch (IOException e) {
+                System.err.println("❌ Could not snapshot the replicated log (" + nodeId + "): " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes the state as of the last applied entry to the snapshot file and compacts the log to
+     * the entries after it. Must hold the lock.
+     */
+    private void takeSnapshot() throws IOException {
+        flush();
+        long index = lastApplied;
+        long term = termAt(index);
+        writeSnapshotFile(snapshotBytes(index, term));
+
+        int dropped = (int) (index - snapshotIndex);
+        int kept = count - dropped;
+        System.arraycopy(terms, dropped, terms, 0, kept);
+        System.arraycopy(types, dropped, types, 0, kept);
+        System.arraycopy(spaces, dropped, spaces, 0, kept);
+        System.arraycopy(partitions, dropped, partitions, 0, kept);
+        System.arraycopy(values, dropped, values, 0, kept);
+        count = kept;
+        snapshotIndex = index;
+        snapshotTerm = term;
+        rewriteLogFile();
+    }
+
+    private byte[] snapshotBytes(long index, long term) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(index);
+            out.writeLong(term);
+            state.write(out);
+        }
+        return buffer.toByteArray();
+    }
+
+    private void writeSnapshotFile(byte[] bytes) throws IOException {
+        Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Replaces the log file with the entries in memory (those after the snapshot). Must hold the lock.
+     */
+    private void rewriteLogFile() throws IOException {
+        Path tmp = logFile.resolveSibling(logFile.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES * 4096);
+            for (int i = 0; i < count; i++) {
+                if (buffer.remaining() < RECORD_BYTES) {
+                    out.write(buffer.flip());
+                    buffer.clear();
+                }
+                buffer.putLong(snapshotIndex + 1 + i);
+                putEntry(buffer, terms[i], types[i], spaces[i], partitions[i], values[i]);
+            }
+            out.write(buffer.flip());
+            out.force(true);
+        }
+        if (channel != null) {
+            channel.close();
+        }
+        Files.move(tmp, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        openLogFile();
+        fileBase = snapshotIndex + 1;
+        flushedIndex = lastIndex();
+    }
+
+    private void openLogFile() throws IOException {
+        channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        channel.position(channel.size());
+    }
+
+    // ------------------------------------------------------------------ restart
+
+    /**
+     * Loads the snapshot, then the log entries after it. Entries are applied once the leader
+     * reports them committed.
+     */
+    private synchronized void restore() {
+        try {
+            if (Files.exists(snapshotFile)) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+                    if (in.readInt() != SNAPSHOT_MAGIC) {
+                        throw new IOException("not a log snapshot");
+                    }
+                    snapshotIndex = in.readLong();
+                    snapshotTerm = in.readLong();
+                    state.read(in);
+                }
+            }
+            commitIndex = lastApplied = flushedIndex = snapshotIndex;
+            fileBase = snapshotIndex + 1;
+            long validBytes = 0;
+            if (Files.exists(logFile)) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(logFile), 1 << 16))) {
+                    long size = Files.size(logFile);
+                    boolean first = true;
+                    while (validBytes + RECORD_BYTES <= size) {
+                        long index = in.readLong();
+                        long term = in.readLong();
+                        byte type = in.readByte();
+                        int spaceId = in.readInt();
+                        int partition = in.readInt();
+                        long value = in.readLong();
+                        if (first) {
+                            fileBase = index;
+                            first = false;
+                        }
+                        if (index != fileBase + validBytes / RECORD_BYTES) {
+                            break; // Not a record of this file
+                        }
+                        validBytes += RECORD_BYTES;
+                        if (index == lastIndex() + 1) {
+                            append(term, type, spaceId, partition, value);
+                        }
+                    }
+                }
+            }
+            unwritten.clear(); // Already on disk
+            flushedIndex = lastIndex();
+            openLogFile();
+            if (channel.size() != validBytes) {
+                channel.truncate(validBytes); // A record cut short by a crash
+                channel.position(validBytes);
+            }
+            lastIndexSeen = lastIndex();
+            lastTermSeen = termAt(lastIndex());
+            if (snapshotIndex > 0 || count > 0) {
+                System.out.println("Replicated log (" + nodeId + ") restored: snapshot at " + snapshotIndex
+                        + ", " + count + " entries after it.");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not restore the replicated log of " + nodeId, e);
+        }
+    }
+
+    // ------------------------------------------------------------------ the leader
+
+    /**
+     * Runs the leader's replication, or keeps a follower's leader state cleared.
+     */
+    private void tick() {
+        try {
+            if (inbox == null || !inbox.isOpen()) {
+                openInbox();
+            }
+            boolean leading = election.isLeader();
+            long term = election.getTerm();
+            if (ingest) {
+                manageIngest(leading);
+            }
+            List<String[]> outgoing = new ArrayList<>();
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (leading) {
+                    if (leaderTerm != term) {
+                        becomeLeader(term);
+                    }
+                    flush();
+                    advanceCommit();
+                    long now = System.nanoTime();
+                    for (String peer : nodes) {
+                        if (!peer.equals(nodeId)) {
+                            String msg = nextMessage(peer, now, true);
+                            if (msg != null) {
+                                outgoing.add(new String[]{peer, msg});
+                            }
+                        }
+                    }
+                } else {
+                    leaderTerm = -1;
+                    flush();
+                }
+            }
+            for (String[] out : outgoing) {
+                send(out[0], out[1]);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("❌ Replicated log (" + nodeId + ") tick failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts leading a term: every follower is assumed up to date until it says otherwise, and a
+     * no-op entry of the term lets the entries of earlier terms commit. Must hold the lock.
+     */
+    private void becomeLeader(long term) {
+        leaderTerm = term;
+        nextIndex.clear();
+        matchIndex.clear();
+        inFlightSince.clear();
+        for (String peer : nodes) {
+            nextIndex.put(peer, lastIndex() + 1);
+            matchIndex.put(peer, 0L);
+        }
+        append(term, NOOP, 0, 0, 0);
+        System.out.println("Replicated log (" + nodeId + ") leads term " + term + " from index " + lastIndex());
+    }
+
+    /**
+     * Commits the highest entry of the current term that a majority stored. Must hold the lock.
+     */
+    private void advanceCommit() {
+        long[] matched = new long[nodes.size()];
+        int i = 0;
+        for (String peer : nodes) {
+            matched[i++] = peer.equals(nodeId) ? flushedIndex : matchIndex.getOrDefault(peer, 0L);
+        }
+        Arrays.sort(matched);
+        long majorityIndex = matched[matched.length - (nodes.size() / 2 + 1)];
+        if (majorityIndex > commitIndex && termAt(majorityIndex) == leaderTerm) {
+            commitIndex = majorityIndex;
+            applyCommitted();
+        }
+    }
+
+    /**
+     * Builds the next message for a follower: the entries it lacks (or the snapshot, if they were
+     * compacted), or an empty append that carries the commit index. Must hold the lock.
+     *
+     * @param idle Whether an empty append may be sent.
+     * @return The message, or null if a batch is still unacknowledged or there is nothing to send.
+     */
+    private String nextMessage(String peer, long now, boolean idle) throws IOException {
+        Long since = inFlightSince.get(peer);
+        if (since != null && now - since < retryNanos) {
+            return null;
+        }
+        long next = nextIndex.getOrDefault(peer, lastIndex() + 1);
+        if (next <= snapshotIndex) {
+            inFlightSince.put(peer, now);
+            return "SNAPSHOT::Term=" + leaderTerm + ",Leader=" + nodeId + ",Index=" + snapshotIndex
+                    + ",Data=" + Base64.getEncoder().encodeToString(Files.readAllBytes(snapshotFile));
+        }
+        long prev = next - 1;
+        int n = (int) Math.min(BATCH, Math.min(lastIndex(), flushedIndex) - prev);
+        if (n <= 0 && !idle) {
+            return null;
+        }
+        n = Math.max(0, n);
+        ByteBuffer entries = ByteBuffer.allocate(n * ENTRY_BYTES);
+        for (int k = 0; k < n; k++) {
+            int i = (int) (next + k - snapshotIndex - 1);
+            putEntry(entries, terms[i], types[i], spaces[i], partitions[i], values[i]);
+        }
+        inFlightSince.put(peer, now);
+        return "APPEND::Term=" + leaderTerm + ",Leader=" + nodeId + ",Prev=" + prev + ",PrevTerm=" + termAt(prev)
+                + ",Commit=" + commitIndex + ",Entries=" + Base64.getEncoder().encodeToString(entries.array());
+    }
+
+    private void onAppendAck(long term, String from, long match, boolean success) {
+        String next = null;
+        synchronized (this) {
+            if (term != leaderTerm || from == null || !nextIndex.containsKey(from)) {
+                return;
+            }
+            inFlightSince.remove(from);
+            if (success) {
+                matchIndex.merge(from, match, Math::max);
+                nextIndex.put(from, match + 1);
+                advanceCommit();
+            } else {
+                // The follower's log ends earlier or disagrees: go back, at most to where it ends
+                nextIndex.put(from, Math.max(1, Math.min(nextIndex.get(from) - 1, match + 1)));
+            }
+            try {
+                next = nextMessage(from, System.nanoTime(), false); // Keep a lagging follower busy
+            } catch (IOException e) {
+                System.err.println("❌ Replicated log (" + nodeId + ") could not read its snapshot: " + e.getMessage());
+            }
+        }
+        if (next != null) {
+            send(from, next);
+        }
+    }
+
+    // ------------------------------------------------------------------ the followers
+
+    private void onAppend(long term, String leader, long prev, long prevTerm, long leaderCommit, byte[] entries) {
+        boolean success = false;
+        long match;
+        long replyTerm;
+        synchronized (this) {
+            long currentTerm = election.getTerm();
+            replyTerm = Math.max(term, currentTerm);
+            match = lastIndex();
+            if (term >= currentTerm && prev <= lastIndex() && (prev < snapshotIndex || termAt(prev) == prevTerm)) {
+                try {
+                    ByteBuffer buffer = ByteBuffer.wrap(entries);
+                    long index = prev;
+                    while (buffer.remaining() >= ENTRY_BYTES) {
+                        index++;
+                        long entryTerm = buffer.getLong();
+                        byte type = buffer.get();
+                        int spaceId = buffer.getInt();
+                        int partition = buffer.getInt();
+                        long value = buffer.getLong();
+                        if (index <= snapshotIndex) {
+                            continue; // Committed and compacted here already
+                        }
+                        if (index <= lastIndex()) {
+                            if (termAt(index) == entryTerm) {
+                                continue;
+                            }
+                            truncateFrom(index); // A conflicting entry and everything after it
+                        }
+                        append(entryTerm, type, spaceId, partition, value);
+                    }
+                    flush();
+                    match = index;
+                    success = true;
+                    if (leaderCommit > commitIndex) {
+                        commitIndex = Math.min(leaderCommit, index);
+                        applyCommitted();
+                    }
+                } catch (IOException e) {
+                    System.err.println("❌ Replicated log (" + nodeId + ") could not store entries: " + e.getMessage());
+                    match = Math.min(flushedIndex, lastIndex());
+                }
+            } else if (prev <= lastIndex()) {
+                match = Math.max(snapshotIndex, prev - 1); // Disagrees at prev: the leader goes back
+            }
+        }
+        send(leader, "APPEND_ACK::Term=" + replyTerm + ",From=" + nodeId + ",Match=" + match + ",Success=" + success);
+    }
+
+    private void onSnapshot(long term, String leader, long index, byte[] data) {
+        boolean success = false;
+        long replyTerm;
+        synchronized (this) {
+            long currentTerm = election.getTerm();
+            replyTerm = Math.max(term, currentTerm);
+            if (term >= currentTerm) {
+                if (index <= snapshotIndex) {
+                    success = true;
+                } else {
+                    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+                        if (in.readInt() != SNAPSHOT_MAGIC || in.readLong() != index) {
+                            throw new IOException("snapshot does not match its index");
+                        }
+                        long lastTerm = in.readLong();
+                        state.read(in);
+                        writeSnapshotFile(data);
+                        snapshotIndex = index;
+                        snapshotTerm = lastTerm;
+                        count = 0; // The whole log is older than the snapshot or unconfirmed
+                        unwritten.clear();
+                        commitIndex = lastApplied = index;
+                        rewriteLogFile();
+                        lastIndexSeen = index;
+                        lastTermSeen = lastTerm;
+                        for (Listener listener : listeners) {
+                            listener.onReset(state);
+                        }
+                        notifyAll();
+                        success = true;
+                    } catch (IOException e) {
+                        System.err.println("❌ Replicated log (" + nodeId + ") could not install a snapshot: " + e.getMessage());
+                    }
+                }
+            }
+        }
+        send(leader, "APPEND_ACK::Term=" + replyTerm + ",From=" + nodeId + ",Match=" + (success ? index : 0)
+                + ",Success=" + success);
+    }
+
+    // ------------------------------------------------------------------ the leader's input
+
+    /**
+     * Makes the leader read the citation stream and the occupancy events, and stops a follower
+     * from reading them. Runs on the ticker.
+     */
+    private void manageIngest(boolean leading) {
+        try {
+            if (leading) {
+                if (occupancyEvents == null || !occupancyEvents.isOpen()) {
+                    occupancyEvents = rabbitMQUtil.subscribe(RabbitMQUtil.OCCUPANCY_EXCHANGE, this::onOccupancyEvent);
+                }
+                if (RabbitMQUtil.isStreamMode() && (citationFollower == null || !citationFollower.isOpen())) {
+                    citationFollower = rabbitMQUtil.followStream(CITATIONS_QUEUE, proposedOffsets(), this::onCitation);
+                }
+            } else {
+                if (occupancyEvents != null) {
+                    occupancyEvents.close();
+                    occupancyEvents = null;
+                }
+                if (citationFollower != null) {
+                    citationFollower.close();
+                    citationFollower = null;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("❌ Replicated log (" + nodeId + ") cannot read the broker: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the citation stream offsets already in the log, committed or not.
+     */
+    private synchronized long[] proposedOffsets() {
+        long[] offsets = state.offsets();
+        for (long index = lastApplied + 1; index <= lastIndex(); index++) {
+            int i = (int) (index - snapshotIndex - 1);
+            if (types[i] == CITATION && partitions[i] < offsets.length) {
+                offsets[partitions[i]] = Math.max(offsets[partitions[i]], values[i] + 1);
+            }
+        }
+        return offsets;
+    }
+
+    private synchronized void onCitation(int partition, long offset, byte[] body) {
+        int spaceId = CitationIndex.parseSpaceID(cursor.reset(body));
+        if (spaceId != -1) {
+            propose(CITATION, spaceId, partition, offset);
+        }
+    }
+
+    /**
+     * Appends an {@link OccupancyEvent}.
+     */
+    private void onOccupancyEvent(byte[] body) {
+        OccupancyEvent event = OccupancyEvent.parse(body);
+        if (event != null) {
+            propose(OCCUPANCY, event.spaceId(), 0, event.occupied() ? 1 : 0);
+        }
+    }
+
+    // ------------------------------------------------------------------ messages
+
+    /**
+     * Handles a message from the inbox.
+     */
+    private void onMessage(byte[] body) {
+        String msg = new String(body, StandardCharsets.UTF_8);
+        int sep = msg.indexOf("::");
+        if (sep < 0) {
+            return;
+        }
+        Map<String, String> fields = new HashMap<>();
+        for (String part : msg.substring(sep + 2).split(",")) {
+            int eq = part.indexOf('=');
+            if (eq > 0) {
+                fields.put(part.substring(0, eq), part.substring(eq + 1));
+            }
+        }
+        try {
+            long term = Long.parseLong(fields.getOrDefault("Term", ""));
+            switch (msg.substring(0, sep)) {
+                case "APPEND" -> onAppend(term, fields.get("Leader"), Long.parseLong(fields.get("Prev")),
+                        Long.parseLong(fields.get("PrevTerm")), Long.parseLong(fields.get("Commit")),
+                        Base64.getDecoder().decode(fields.getOrDefault("Entries", "")));
+                case "APPEND_ACK" -> onAppendAck(term, fields.get("From"), Long.parseLong(fields.get("Match")),
+                        Boolean.parseBoolean(fields.get("Success")));
+                case "SNAPSHOT" -> onSnapshot(term, fields.get("Leader"), Long.parseLong(fields.get("Index")),
+                        Base64.getDecoder().decode(fields.getOrDefault("Data", "")));
+                default -> System.err.println("❌ Unknown replicated log message: " + msg.substring(0, sep));
+            }
+        } catch (NumberFormatException | NullPointerException e) {
+            System.err.println("❌ Ignoring malformed replicated log message: " + msg.substring(0, Math.min(msg.length(), 120)));
+        }
+    }
+
+    private void send(String node, String msg) {
+        if (node != null) {
+            rabbitMQUtil.sendTransient(inboxOf(node), msg); // Lost messages are sent again after the retry time
+        }
+    }
+
+    /**
+     * Subscribes to this node's inbox; undelivered messages expire after the retry time. A refused
+     * inbox, e.g. held by another log for this node, is tried again once per retry time.
+     */
+    private void openInbox() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+        }
+        long now = System.nanoTime();
+        if (now - nextInboxAttempt < 0) {
+            return;
+        }
+        try {
+            if (inbox != null) {
+                inbox.close();
+            }
+            inbox = rabbitMQUtil.openInbox(inboxOf(nodeId), TimeUnit.NANOSECONDS.toMillis(retryNanos), this::onMessage);
+            inboxRefused = false;
+        } catch (IOException e) {
+            inbox = null;
+            nextInboxAttempt = now + retryNanos;
+            if (!inboxRefused) {
+                inboxRefused = true;
+                System.err.println("❌ Replicated log (" + nodeId + ") cannot open its inbox "
+                        + "(is another log for this node running?): " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Stops replicating: writes the buffered entries, closes the inbox, the broker readers, the log
+     * file and the connection. The election participant is left running.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            leaderTerm = -1;
+            try {
+                flush();
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("❌ Could not close the replicated log (" + nodeId + "): " + e.getMessage());
+            }
+            notifyAll();
+        }
+        ticker.cancel(false);
+        if (inbox != null) {
+            inbox.close();
+        }
+        if (occupancyEvents != null) {
+            occupancyEvents.close();
+        }
+        if (citationFollower != null) {
+            citationFollower.close();
+        }
+        rabbitMQUtil.closeConnection();
+        LOGS.remove(nodeId, this);
+    }
+}
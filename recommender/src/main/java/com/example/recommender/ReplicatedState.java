@@ -0,0 +1,161 @@
+package com.example.recommender;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The state the recommender nodes replicate through their {@link ReplicatedLog}: citation counts
+ * per space, with the citation stream offsets they cover, and the occupancy of spaces.
+ *
+ * Entries are applied in log order, so every node that applied the same prefix of the log has the
+ * same state. A citation is counted once even if it was proposed twice (e.g. by an old and a new
+ * leader reading the same stream): its offset must be past the partition's offset. Not
+ * thread-safe; the log serializes access.
+ */
+public class ReplicatedState {
+    private static final int SNAPSHOT_MAGIC = 0x52535431; // "RST1"
+
+    private final Map<Integer, Integer> citations = new HashMap<>();
+    private final Map<Integer, Boolean> occupied = new HashMap<>();
+    private long[] offsets;                 // Per citation stream partition: the next offset to count
+
+    /**
+     * Creates an empty state.
+     *
+     * @param partitions The number of citation stream partitions.
+     */
+    public ReplicatedState(int partitions) {
+        this.offsets = new long[partitions];
+    }
+
+    /**
+     * Applies a committed entry.
+     *
+     * @param type      {@link ReplicatedLog#CITATION}, {@link ReplicatedLog#OCCUPANCY} or {@link ReplicatedLog#NOOP}.
+     * @param spaceId   The SpaceID.
+     * @param partition The citation's stream partition.
+     * @param value     The citation's offset, or 1/0 for occupied/free.
+     * @return True if the state changed.
+     */
+    public boolean apply(byte type, int spaceId, int partition, long value) {
+        switch (type) {
+            case ReplicatedLog.CITATION -> {
+                if (partition < 0 || partition >= offsets.length || value < offsets[partition]) {
+                    return false; // Already counted
+                }
+                offsets[partition] = value + 1;
+                citations.merge(spaceId, 1, Integer::sum);
+                return true;
+            }
+            case ReplicatedLog.OCCUPANCY -> {
+                Boolean before = occupied.put(spaceId, value != 0);
+                return before == null || before != (value != 0);
+            }
+            default -> {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of citations of a space.
+     *
+     * @param spaceId The SpaceID.
+     * @return The count (0 if none).
+     */
+    public int count(int spaceId) {
+        return citations.getOrDefault(spaceId, 0);
+    }
+
+    /**
+     * Returns the last replicated occupancy of a space.
+     *
+     * @param spaceId The SpaceID.
+     * @return True if occupied, false if free, null if no change was replicated.
+     */
+    public Boolean isOccupied(int spaceId) {
+        return occupied.get(spaceId);
+    }
+
+    /**
+     * Returns the citation stream offsets counted so far.
+     *
+     * @return Per partition, the next offset to count.
+     */
+    public long[] offsets() {
+        return offsets.clone();
+    }
+
+    /**
+     * Returns the citation counts.
+     *
+     * @return A copy, SpaceID to count.
+     */
+    public Map<Integer, Integer> citations() {
+        return new HashMap<>(citations);
+    }
+
+    /**
+     * Writes the state in binary form.
+     *
+     * @param out The stream.
+     * @throws IOException If the stream fails.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(offsets.length);
+        for (long offset : offsets) {
+            out.writeLong(offset);
+        }
+        out.writeInt(citations.size());
+        for (Map.Entry<Integer, Integer> e : citations.entrySet()) {
+            out.writeInt(e.getKey());
+            out.writeInt(e.getValue());
+        }
+        out.writeInt(occupied.size());
+        for (Map.Entry<Integer, Boolean> e : occupied.entrySet()) {
+            out.writeInt(e.getKey());
+            out.writeBoolean(e.getValue());
+        }
+    }
+
+    /**
+     * Replaces the state with one written by {@link #write(DataOutputStream)}.
+     *
+     * @param in The stream.
+     * @throws IOException If the stream fails or does not hold a state.
+     */
+    public void read(DataInputStream in) throws IOException {
+        if (in.readInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("Not a replicated state snapshot");
+        }
+        long[] readOffsets = new long[in.readInt()];
+        for (int i = 0; i < readOffsets.length; i++) {
+            readOffsets[i] = in.readLong();
+        }
+        Map<Integer, Integer> readCitations = new HashMap<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            readCitations.put(in.readInt(), in.readInt());
+        }
+        Map<Integer, Boolean> readOccupied = new HashMap<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            readOccupied.put(in.readInt(), in.readBoolean());
+        }
+        // Another partition count means another stream layout: its offsets do not apply here
+        offsets = readOffsets.length == offsets.length ? readOffsets : new long[offsets.length];
+        citations.clear();
+        citations.putAll(readCitations);
+        occupied.clear();
+        occupied.putAll(readOccupied);
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicatedState[spaces=" + citations.size() + ", occupancy=" + occupied.size()
+                + ", offsets=" + Arrays.toString(offsets) + "]";
+    }
+}
@@ -0,0 +1,526 @@
+package com.example.recommender;
+
+import com.example.shared.utils.SchemaVersion;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Spatial index of parking spaces for nearest-free-space queries.
+ *
+ * The spaces are stored as an implicit 2-d tree (KD-tree) over their coordinates: the array range
+ * of every subtree is split at its median along x or y, alternating by depth. Each subtree also
+ * keeps its number of free spaces, so {@link #nearestFree(int, int, int[], double[])} skips
+ * subtrees that are completely occupied and answers in O(log n + k) on typical data, instead of
+ * scanning every space. Zones play no role, so the nearest spaces may lie in a neighbouring zone.
+ *
+ * Latitude and longitude are projected to meters (equirectangular around the mean latitude), which
+ * is accurate to well under a meter at city scale. Occupancy can be updated in place in O(log n).
+ *
+ * One index per node is kept for the whole process ({@link #forNode(String, ConnectionSource)})
+ * and reloaded from the database in the background every {@code recommender.spaces.reloadMs}.
+ */
+public class SpaceIndex {
+    private static final double EARTH_RADIUS_M = 6_371_000;
+    private static final long RELOAD_MS = Long.getLong("recommender.spaces.reloadMs", 60_000);
+
+    // One index per node for the whole process, reloaded in the background
+    private static final Map<String, SpaceIndex> INDEXES = new ConcurrentHashMap<>();
+    private static final Map<String, AtomicBoolean> RELOADING = new ConcurrentHashMap<>();
+    private static final ExecutorService RELOADER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "space-index-reload");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Opens a database connection, e.g. {@code pooledDatabase::connect}.
+     */
+    @FunctionalInterface
+    public interface ConnectionSource {
+        /**
+         * Opens a connection, closed by the caller.
+         *
+         * @return The connection.
+         * @throws SQLException If the database cannot be reached.
+         */
+        Connection open() throws SQLException;
+    }
+
+    // The tree, in tree order: position (lo + hi) >>> 1 is the root of the subtree [lo, hi)
+    private final int n;
+    private final double[] x;
+    private final double[] y;
+    private final int[] ids;
+    private final int[] zones;
+    private final boolean[] free;
+    private final int[] freeInSubtree; // Indexed by subtree root
+    private final Map<Integer, Integer> freeInZone = new HashMap<>(); // ZoneID -> free spaces
+    // SpaceID -> position, as SpaceIDs sorted with their positions
+    private final int[] sortedIds;
+    private final int[] positionOfSorted;
+    // Projection parameters
+    private final double cosLat0;
+    private final long loadedAt = System.currentTimeMillis();
+
+    /**
+     * Builds an index. The arrays are copied.
+     *
+     * @param spaceIds   The SpaceIDs.
+     * @param latitudes  Their latitudes in degrees.
+     * @param longitudes Their longitudes in degrees.
+     * @param zoneIds    Their ZoneIDs.
+     * @param occupied   Their current occupancy.
+     * @param count      The number of spaces in the arrays.
+     */
+    public SpaceIndex(int[] spaceIds, double[] latitudes, double[] longitudes, int[] zoneIds, boolean[] occupied, int count) {
+        n = count;
+        x = new double[n];
+        y = new double[n];
+        ids = Arrays.copyOf(spaceIds, n);
+        zones = Arrays.copyOf(zoneIds, n);
+        free = new boolean[n];
+        freeInSubtree = new int[n];
+
+        double latSum = 0;
+        for (int i = 0; i < n; i++) {
+            latSum += latitudes[i];
+        }
+        cosLat0 = Math.cos(Math.toRadians(n == 0 ? 0 : latSum / n));
+        for (int i = 0; i < n; i++) {
+            x[i] = Math.toRadians(longitudes[i]) * cosLat0 * EARTH_RADIUS_M;
+            y[i] = Math.toRadians(latitudes[i]) * EARTH_RADIUS_M;
+            free[i] = !occupied[i];
+            freeInZone.merge(zones[i], free[i] ? 1 : 0, Integer::sum);
+        }
+
+        build(0, n, 0);
+        countFree(0, n);
+
+        // Position lookup by SpaceID
+        long[] pairs = new long[n];
+        for (int i = 0; i < n; i++) {
+            pairs[i] = ((long) ids[i] << 32) | i;
+        }
+        Arrays.sort(pairs);
+        sortedIds = new int[n];
+        positionOfSorted = new int[n];
+        for (int i = 0; i < n; i++) {
+            sortedIds[i] = (int) (pairs[i] >> 32);
+            positionOfSorted[i] = (int) pairs[i];
+        }
+    }
+
+    // ------------------------------------------------------------------ queries
+
+    /**
+     * Returns the number of indexed spaces.
+     *
+     * @return The space count.
+     */
+    public int size() {
+        return n;
+    }
+
+    /**
+     * Checks whether a space has coordinates in the index.
+     *
+     * @param spaceId The SpaceID.
+     * @return True if the space is indexed.
+     */
+    public boolean contains(int spaceId) {
+        return positionOf(spaceId) >= 0;
+    }
+
+    /**
+     * Returns the zone of an indexed space.
+     *
+     * @param spaceId The SpaceID.
+     * @return The ZoneID, or -1 if the space is not indexed.
+     */
+    public int zoneOf(int spaceId) {
+        int pos = positionOf(spaceId);
+        return pos < 0 ? -1 : zones[pos];
+    }
+
+    /**
+     * Returns the number of free spaces of a zone.
+     *
+     * @param zoneId The ZoneID.
+     * @return The free spaces, or -1 if the zone has no indexed spaces.
+     */
+    public synchronized int freeInZone(int zoneId) {
+        Integer count = freeInZone.get(zoneId);
+        return count == null ? -1 : count;
+    }
+
+    /**
+     * Finds the free spaces nearest to a space, nearest first. The space itself is included if it is free.
+     *
+     * @param spaceId       The SpaceID to search around.
+     * @param k             The maximum number of spaces to return.
+     * @param outIds        Receives the SpaceIDs (length at least k).
+     * @param outDistMeters Receives their distances in meters (length at least k).
+     * @return The number of spaces found (less than k if fewer are free), or -1 if the space is not indexed.
+     */
+    public synchronized int nearestFree(int spaceId, int k, int[] outIds, double[] outDistMeters) {
+        int pos = positionOf(spaceId);
+        if (pos < 0) {
+            return -1;
+        }
+        return nearestFreeAt(x[pos], y[pos], k, outIds, outDistMeters);
+    }
+
+    /**
+     * Finds the free spaces nearest to a coordinate, nearest first.
+     *
+     * @param latitude      The latitude in degrees.
+     * @param longitude     The longitude in degrees.
+     * @param k             The maximum number of spaces to return.
+     * @param outIds        Receives the SpaceIDs (length at least k).
+     * @param outDistMeters Receives their distances in meters (length at least k).
+     * @return The number of spaces found.
+     */
+    public synchronized int nearestFree(double latitude, double longitude, int k, int[] outIds, double[] outDistMeters) {
+        return nearestFreeAt(Math.toRadians(longitude) * cosLat0 * EARTH_RADIUS_M,
+                Math.toRadians(latitude) * EARTH_RADIUS_M, k, outIds, outDistMeters);
+    }
+
+    private int nearestFreeAt(double qx, double qy, int k, int[] outIds, double[] outDistMeters) {
+        if (k <= 0) {
+            return 0;
+        }
+        Heap heap = new Heap(k);
+        search(0, n, 0, qx, qy, heap);
+        int found = heap.size;
+        // Pop the farthest first to fill the output nearest first
+        for (int i = found - 1; i >= 0; i--) {
+            outIds[i] = ids[heap.pos[0]];
+            outDistMeters[i] = Math.sqrt(heap.dist[0]);
+            heap.pop();
+        }
+        return found;
+    }
+
+    private void search(int lo, int hi, int depth, double qx, double qy, Heap heap) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        if (freeInSubtree[mid] == 0) {
+            return; // Everything below is occupied
+        }
+        if (free[mid]) {
+            double dx = x[mid] - qx;
+            double dy = y[mid] - qy;
+            heap.offer(mid, dx * dx + dy * dy);
+        }
+        double diff = (depth & 1) == 0 ? qx - x[mid] : qy - y[mid];
+        if (diff < 0) {
+            search(lo, mid, depth + 1, qx, qy, heap);
+            if (heap.size < heap.capacity || diff * diff < heap.dist[0]) {
+                search(mid + 1, hi, depth + 1, qx, qy, heap);
+            }
+        } else {
+            search(mid + 1, hi, depth + 1, qx, qy, heap);
+            if (heap.size < heap.capacity || diff * diff < heap.dist[0]) {
+                search(lo, mid, depth + 1, qx, qy, heap);
+            }
+        }
+    }
+
+    /**
+     * A bounded max-heap of squared distances, keeping the k nearest candidates.
+     */
+    private static final class Heap {
+        final int capacity;
+        final int[] pos;
+        final double[] dist;
+        int size;
+
+        Heap(int capacity) {
+            this.capacity = capacity;
+            this.pos = new int[capacity];
+            this.dist = new double[capacity];
+        }
+
+        void offer(int p, double d) {
+            if (size < capacity) {
+                int i = size++;
+                while (i > 0 && dist[(i - 1) >>> 1] < d) { // Sift up
+                    int parent = (i - 1) >>> 1;
+                    pos[i] = pos[parent];
+                    dist[i] = dist[parent];
+                    i = parent;
+                }
+                pos[i] = p;
+                dist[i] = d;
+            } else if (d < dist[0]) {
+                siftDown(p, d);
+            }
+        }
+
+        void pop() {
+            size--;
+            if (size > 0) {
+                siftDown(pos[size], dist[size]);
+            }
+        }
+
+        private void siftDown(int p, double d) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && dist[child + 1] > dist[child]) child++;
+                if (dist[child] <= d) break;
+                pos[i] = pos[child];
+                dist[i] = dist[child];
+                i = child;
+            }
+            pos[i] = p;
+            dist[i] = d;
+        }
+    }
+
+    // ------------------------------------------------------------------ occupancy
+
+    /**
+     * Marks a space occupied or free.
+     *
+     * @param spaceId  The SpaceID.
+     * @param occupied The new occupancy.
+     * @return False if the space is not indexed.
+     */
+    public synchronized boolean setOccupied(int spaceId, boolean occupied) {
+        int pos = positionOf(spaceId);
+        if (pos < 0) {
+            return false;
+        }
+        if (free[pos] == !occupied) {
+            return true;
+        }
+        free[pos] = !occupied;
+        int delta = occupied ? -1 : 1;
+        freeInZone.merge(zones[pos], delta, Integer::sum);
+        int lo = 0, hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            freeInSubtree[mid] += delta;
+            if (pos == mid) break;
+            if (pos < mid) hi = mid; else lo = mid + 1;
+        }
+        return true;
+    }
+
+    // ------------------------------------------------------------------ construction
+
+    /**
+     * Arranges [lo, hi) so that its middle element is the median along the depth's axis, with
+     * smaller elements before it and larger ones after, then does the same for both halves.
+     */
+    private void build(int lo, int hi, int depth) {
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            select(lo, hi - 1, mid, (depth & 1) == 0 ? x : y);
+            build(lo, mid, depth + 1);
+            lo = mid + 1; // Loop instead of recursing on the right half
+            depth++;
+        }
+    }
+
+    /**
+     * Quickselect: moves the k-th smallest element of [left, right] by {@code key} to position k.
+     * Partitions three ways, so many spaces with the same coordinate do not make it quadratic.
+     */
+    private void select(int left, int right, int k, double[] key) {
+        while (right > left) {
+            double pivot = key[left + ((right - left) >>> 1)];
+            int lt = left, i = left, gt = right;
+            while (i <= gt) {
+                if (key[i] < pivot) {
+                    swap(lt++, i++);
+                } else if (key[i] > pivot) {
+                    swap(i, gt--);
+                } else {
+                    i++;
+                }
+            }
+            // [left, lt) < pivot, [lt, gt] == pivot, (gt, right] > pivot
+            if (k < lt) {
+                right = lt - 1;
+            } else if (k > gt) {
+                left = gt + 1;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        double tx = x[i]; x[i] = x[j]; x[j] = tx;
+        double ty = y[i]; y[i] = y[j]; y[j] = ty;
+        int ti = ids[i]; ids[i] = ids[j]; ids[j] = ti;
+        int tz = zones[i]; zones[i] = zones[j]; zones[j] = tz;
+        boolean tf = free[i]; free[i] = free[j]; free[j] = tf;
+    }
+
+    private int countFree(int lo, int hi) {
+        if (lo >= hi) {
+            return 0;
+        }
+        int mid = (lo + hi) >>> 1;
+        int count = (free[mid] ? 1 : 0) + countFree(lo, mid) + countFree(mid + 1, hi);
+        freeInSubtree[mid] = count;
+        return count;
+    }
+
+    private int positionOf(int spaceId) {
+        int i = Arrays.binarySearch(sortedIds, spaceId);
+        return i < 0 ? -1 : positionOfSorted[i];
+    }
+
+    // ------------------------------------------------------------------ loading
+
+    /**
+     * Returns the index of a node, loading it on first use. An index older than
+     * {@code recommender.spaces.reloadMs} is returned as is while a fresh one loads in the background.
+     *
+     * @param nodeId      The node the index belongs to.
+     * @param connections Opens connections to the node's database.
+     * @return The node's index.
+     * @throws SQLException If the first load fails.
+     */
+    public static SpaceIndex forNode(String nodeId, ConnectionSource connections) throws SQLException {
+        SpaceIndex index = INDEXES.get(nodeId);
+        if (index == null) {
+            synchronized (INDEXES) {
+                index = INDEXES.get(nodeId);
+                if (index == null) {
+                    try (Connection conn = connections.open()) {
+                        index = load(conn);
+                    }
+                    INDEXES.put(nodeId, index);
+                }
+            }
+        } else if (System.currentTimeMillis() - index.loadedAt > RELOAD_MS) {
+            AtomicBoolean reloading = RELOADING.computeIfAbsent(nodeId, id -> new AtomicBoolean());
+            if (reloading.compareAndSet(false, true)) {
+                RELOADER.execute(() -> {
+                    try (Connection conn = connections.open()) {
+                        INDEXES.put(nodeId, load(conn));
+                    } catch (SQLException e) {
+                        System.err.println("❌ Space index reload failed (" + nodeId + "): " + e.getMessage());
+                    } finally {
+                        reloading.set(false);
+                    }
+                });
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Loads every space with coordinates from the database.
+     * Spaces without coordinates are not indexed and are recommended by zone as before.
+     *
+     * @param conn An open database connection.
+     * @return The new index.
+     * @throws SQLException If the query fails, or the schema has no coordinate columns yet
+     *                      ({@link SchemaVersion#SPACE_COORDINATES}).
+     */
+    public static SpaceIndex load(Connection conn) throws SQLException {
+        SchemaVersion.require(SchemaVersion.SPACE_COORDINATES, "The space index");
+        String sql = """
+            SELECT SpaceID, ZoneID, Latitude, Longitude, Occupied
+            FROM parkingspaces
+            WHERE Latitude IS NOT NULL AND Longitude IS NOT NULL
+        """;
+        int capacity = 1024;
+        int[] spaceIds = new int[capacity];
+        int[] zoneIds = new int[capacity];
+        double[] lats = new double[capacity];
+        double[] lons = new double[capacity];
+        boolean[] occupied = new boolean[capacity];
+        int count = 0;
+        try (PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                if (count == capacity) {
+                    capacity *= 2;
+                    spaceIds = Arrays.copyOf(spaceIds, capacity);
+                    zoneIds = Arrays.copyOf(zoneIds, capacity);
+                    lats = Arrays.copyOf(lats, capacity);
+                    lons = Arrays.copyOf(lons, capacity);
+                    occupied = Arrays.copyOf(occupied, capacity);
+                }
+                spaceIds[count] = rs.getInt(1);
+                zoneIds[count] = rs.getInt(2);
+                lats[count] = rs.getDouble(3);
+                lons[count] = rs.getDouble(4);
+                occupied[count] = rs.getBoolean(5);
+                count++;
+            }
+        }
+        SpaceIndex index = new SpaceIndex(spaceIds, lats, lons, zoneIds, occupied, count);
+        System.out.println("Loaded space index with " + count + " spaces.");
+        return index;
+    }
+
+    /**
+     * Returns the occupancy query for a fixed number of SpaceIDs. The number of placeholders never
+     * changes for a caller, so the statement is prepared once per pooled connection.
+     *
+     * @param placeholders The number of SpaceIDs the query takes.
+     * @return The SQL text.
+     */
+    public static String occupancySql(int placeholders) {
+        StringBuilder sql = new StringBuilder("SELECT SpaceID, Occupied FROM parkingspaces WHERE SpaceID IN (");
+        for (int i = 0; i < placeholders; i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        return sql.append(')').toString();
+    }
+
+    /**
+     * Reads the current occupancy of some spaces and updates the index with it.
+     * The query always has {@code spaceIds.length} placeholders (unused ones repeat the last ID),
+     * see {@link #occupancySql(int)}.
+     *
+     * @param conn     An open database connection.
+     * @param spaceIds The SpaceIDs to check.
+     * @param count    The number of SpaceIDs in the array.
+     * @return The SpaceIDs among them that are occupied.
+     * @throws SQLException If the query fails.
+     */
+    public List<Integer> refreshOccupancy(Connection conn, int[] spaceIds, int count) throws SQLException {
+        List<Integer> occupied = new ArrayList<>();
+        if (count == 0) {
+            return occupied;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(occupancySql(spaceIds.length))) {
+            for (int i = 0; i < spaceIds.length; i++) {
+                stmt.setInt(i + 1, spaceIds[Math.min(i, count - 1)]);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int spaceId = rs.getInt(1);
+                    boolean isOccupied = rs.getBoolean(2);
+                    setOccupied(spaceId, isOccupied);
+                    if (isOccupied) {
+                        occupied.add(spaceId);
+                    }
+                }
+            }
+        }
+        return occupied;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.recommender;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Selects the k best of a stream of elements in O(n log k) time and O(k) space.
+ *
+ * The k best so far are kept in a heap with the worst of them on top; a new element only enters
+ * (replacing the top) if it is better than that one. Not thread-safe.
+ *
+ * @param <T> The element type.
+ */
+public class TopK<T> {
+    private final int k;
+    private final Comparator<? super T> order;
+    private final PriorityQueue<T> heap; // Worst on top
+
+    /**
+     * Creates an empty selection.
+     *
+     * @param k     The number of elements kept (at least 1).
+     * @param order Best first.
+     */
+    public TopK(int k, Comparator<? super T> order) {
+        this.k = Math.max(1, k);
+        this.order = order;
+        this.heap = new PriorityQueue<>(this.k + 1, order.reversed());
+    }
+
+    /**
+     * Offers an element.
+     *
+     * @param element The element.
+     * @return True if it is among the k best so far.
+     */
+    public boolean offer(T element) {
+        if (heap.size() < k) {
+            heap.add(element);
+            return true;
+        }
+        if (order.compare(element, heap.peek()) >= 0) {
+            return false;
+        }
+        heap.poll();
+        heap.add(element);
+        return true;
+    }
+
+    /**
+     * Returns the number of elements kept.
+     *
+     * @return At most k.
+     */
+    public int size() {
+        return heap.size();
+    }
+
+    /**
+     * Returns the elements kept, best first.
+     *
+     * @return A new list.
+     */
+    public List<T> toSortedList() {
+        List<T> sorted = new ArrayList<>(heap);
+        sorted.sort(order);
+        return sorted;
+    }
+}
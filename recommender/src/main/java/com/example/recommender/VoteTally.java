@@ -0,0 +1,174 @@
+package com.example.recommender;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Counts the votes of a recommendation round as they arrive.
+ *
+ * A recommendation wins as soon as a majority of the configured cluster (not just of the nodes
+ * that answered) voted for it, so the round can stop without waiting for the remaining nodes.
+ * Likewise, once no recommendation can reach a majority with the votes still outstanding, the
+ * round is known to fail. Each node's first vote counts; later ones are ignored.
+ *
+ * A full response votes for the node's top choice ({@link RecommendationResponse#getTopChoice()}),
+ * not for its whole ranking: nodes that agree on the space agree, even if their alternates or
+ * distances differ. The first full response for a space sets its ranking (in a led round, the
+ * leader's proposal), which is the decision if the space wins. A digest vote carries no ranking,
+ * only the digest of the one it endorses, so it counts for its space only if that digest is the
+ * digest of the space's ranking ({@link RecommendationResponse#digestOf(List)}); otherwise it
+ * endorsed a ranking nobody shipped and dissents. A digest vote that arrives before any ranking
+ * for its space waits for one. A response that is not a ranking counts as a vote against every
+ * space.
+ */
+public class VoteTally {
+    private final int quorum;
+    private final Map<Integer, Integer> votes = new HashMap<>();  // Top choice SpaceID -> votes
+    private final Map<Integer, String> firstRanking = new HashMap<>(); // Top choice SpaceID -> first ranking voted
+    private final Map<Integer, String> rankingDigest = new HashMap<>(); // Top choice SpaceID -> digest of that ranking
+    private final Map<Integer, List<RecommendationResponse>> waiting = new HashMap<>(); // Digest votes without a ranking yet
+    private final Set<String> voters = new HashSet<>();
+    private final List<RecommendationResponse> responses = new ArrayList<>();
+    private String decision;
+    private int decidedSpace = -1;
+
+    /**
+     * Creates an empty tally.
+     *
+     * @param clusterSize The number of nodes in the cluster; a majority of it decides.
+     */
+    public VoteTally(int clusterSize) {
+        this.quorum = clusterSize / 2 + 1;
+    }
+
+    /**
+     * Counts a vote.
+     *
+     * @param response A node's response.
+     * @return The decision if this vote (or an earlier one) completed a majority, otherwise null.
+     */
+    public String add(RecommendationResponse response) {
+        if (!voters.add(response.getNodeId())) {
+            return decision; // The node already voted
+        }
+        responses.add(response);
+        int choice = response.getTopChoice();
+        if (choice < 0) {
+            return decision; // Not a ranking, agrees with nobody
+        }
+        if (response.hasRanking()) {
+            if (firstRanking.putIfAbsent(choice, response.getRecommendation()) == null) {
+                rankingDigest.put(choice, response.getDigest());
+                for (RecommendationResponse vote : waiting.getOrDefault(choice, List.of())) {
+                    if (endorses(vote, choice)) {
+                        count(choice);
+                    }
+                }
+                waiting.remove(choice);
+            }
+            count(choice);
+        } else if (!rankingDigest.containsKey(choice)) {
+            waiting.computeIfAbsent(choice, c -> new ArrayList<>()).add(response);
+        } else if (endorses(response, choice)) {
+            count(choice);
+        }
+        return decision;
+    }
+
+    /**
+     * Checks whether a digest vote endorses the ranking of its space.
+     */
+    private boolean endorses(RecommendationResponse vote, int choice) {
+        return rankingDigest.get(choice).equals(vote.getDigest());
+    }
+
+    /**
+     * Counts an agreeing vote for a space that has a ranking, deciding if it completes a majority.
+     */
+    private void count(int choice) {
+        int count = votes.merge(choice, 1, Integer::sum);
+        if (decision == null && count >= quorum) {
+            decidedSpace = choice;
+            decision = firstRanking.get(choice);
+        }
+    }
+
+    /**
+     * Checks whether a majority can no longer be reached.
+     *
+     * @param outstanding The number of votes that may still arrive.
+     * @return True if no recommendation can get a majority.
+     */
+    public boolean isHopeless(int outstanding) {
+        if (decision != null) {
+            return false;
+        }
+        int leading = 0; // Counted votes, plus digest votes that may still count once their ranking arrives
+        for (Map.Entry<Integer, Integer> entry : votes.entrySet()) {
+            leading = Math.max(leading, entry.getValue() + waiting.getOrDefault(entry.getKey(), List.of()).size());
+        }
+        for (List<RecommendationResponse> votesWaiting : waiting.values()) {
+            leading = Math.max(leading, votesWaiting.size());
+        }
+        return leading + outstanding < quorum;
+    }
+
+    /**
+     * Returns the recommendation a majority agreed on.
+     *
+     * @return The decision, or null if there is none (yet).
+     */
+    public String getDecision() {
+        return decision;
+    }
+
+    /**
+     * Returns the space a majority agreed on.
+     *
+     * @return The SpaceID, or -1 if there is no decision (yet).
+     */
+    public int getDecidedSpace() {
+        return decidedSpace;
+    }
+
+    /**
+     * Returns the nodes that voted for something other than the decision: for another space, or by
+     * a digest that is not the decision's.
+     *
+     * @return The node IDs, empty if there is no decision.
+     */
+    public List<String> getDissenters() {
+        List<String> dissenters = new ArrayList<>();
+        if (decision != null) {
+            for (RecommendationResponse response : responses) {
+                if (response.getTopChoice() != decidedSpace
+                        || (!response.hasRanking() && !endorses(response, decidedSpace))) {
+                    dissenters.add(response.getNodeId());
+                }
+            }
+        }
+        return dissenters;
+    }
+
+    /**
+     * Returns the votes counted, in arrival order.
+     *
+     * @return The responses.
+     */
+    public List<RecommendationResponse> getResponses() {
+        return new ArrayList<>(responses);
+    }
+
+    /**
+     * Returns the number of agreeing votes that decides.
+     *
+     * @return The quorum.
+     */
+    public int getQuorum() {
+        return quorum;
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.recommender;
+
+import com.example.shared.utils.LegacyMessageCursor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for CitationIndex.
+ * This class tests the counting of citations as they are read, the full recount of queue mode,
+ * and the snapshot a restarted node serves from. The indexes have no background thread; the
+ * tests feed them directly.
+ */
+class CitationIndexTests {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Tests that citations are counted once per offset, so a re-delivered citation is not counted
+     * again, and that a message without a space only moves the offset on.
+     */
+    @Test
+    void addCitation_countsEachOffsetOnce() {
+        CitationIndex index = new CitationIndex("node", null, 0);
+        index.addCitation(0, 0, 7);
+        index.addCitation(0, 1, 7);
+        index.addCitation(0, 2, 9);
+        long version = index.version();
+
+        index.addCitation(0, 1, 7); // Re-delivered
+        index.addCitation(0, 3, -1);
+        assertEquals(version, index.version(), "Nothing was counted, yet the version changed.");
+
+        index.addCitation(0, 4, 9);
+        assertEquals(2, index.count(7));
+        assertEquals(2, index.count(9));
+        assertEquals(0, index.count(8));
+        assertEquals(2, index.size());
+        assertNotEquals(version, index.version());
+    }
+
+    /**
+     * Tests that the table keeps every count as it grows far past its initial capacity.
+     */
+    @Test
+    void addCitation_keepsCountsWhileGrowing() {
+        CitationIndex index = new CitationIndex("node", null, 0);
+        long offset = 0;
+        for (int spaceId = 0; spaceId < 5000; spaceId++) {
+            for (int i = 0; i <= spaceId % 3; i++) {
+                index.addCitation(0, offset++, spaceId * 64); // Keys that collide in a small table
+            }
+        }
+        assertEquals(5000, index.size());
+        for (int spaceId = 0; spaceId < 5000; spaceId++) {
+            assertEquals(spaceId % 3 + 1, index.count(spaceId * 64), "Space " + spaceId * 64);
+        }
+        assertEquals(index.count(0), index.score(0), "Without decay the score is the count.");
+    }
+
+    /**
+     * Tests that a recount replaces the counts, including spaces that are no longer cited, and
+     * leaves the version alone when nothing changed.
+     */
+    @Test
+    void replaceAll_takesTheRecount() {
+        CitationIndex index = new CitationIndex("node", null, 0);
+        index.replaceAll(new int[]{1, 2, 3}, new int[]{4, 5, 6}, 3);
+        long version = index.version();
+
+        index.replaceAll(new int[]{1, 2, 3}, new int[]{4, 5, 6}, 3);
+        assertEquals(version, index.version());
+
+        index.replaceAll(new int[]{2, 3, 4, 99}, new int[]{5, 2, 1, 0}, 3); // Only the first three count
+        assertEquals(0, index.count(1));
+        assertEquals(5, index.count(2));
+        assertEquals(2, index.count(3));
+        assertEquals(1, index.count(4));
+        assertEquals(0, index.count(99));
+        assertNotEquals(version, index.version());
+    }
+
+    /**
+     * Tests that an index restored from the snapshot of a closed one has its counts and offsets,
+     * so it neither loses nor double counts what was read before the restart.
+     */
+    @Test
+    void restore_resumesFromSnapshot() throws Exception {
+        Path snapshot = dir.resolve("citations.idx");
+        CitationIndex before = new CitationIndex("node", snapshot, 0);
+        before.addCitation(0, 0, 10);
+        before.addCitation(0, 1, 10);
+        before.addCitation(0, 2, 11);
+        before.close();
+        assertTrue(Files.exists(snapshot));
+
+        CitationIndex after = new CitationIndex("node", snapshot, 0);
+        after.restore();
+        assertEquals(2, after.count(10));
+        assertEquals(1, after.count(11));
+
+        after.addCitation(0, 2, 11); // Already in the snapshot
+        after.addCitation(0, 3, 11);
+        assertEquals(2, after.count(11));
+    }
+
+    /**
+     * Tests that a damaged snapshot is ignored and the index starts empty.
+     */
+    @Test
+    void restore_ignoresUnknownFormat() throws Exception {
+        Path snapshot = Files.write(dir.resolve("citations.idx"), "not a snapshot".getBytes(StandardCharsets.UTF_8));
+        CitationIndex index = new CitationIndex("node", snapshot, 0);
+        index.restore();
+        assertEquals(0, index.size());
+    }
+
+    /**
+     * Tests that the SpaceID is read from a citation message, and -1 is returned without one.
+     */
+    @Test
+    void parseSpaceID_readsCitationMessage() {
+        LegacyMessageCursor cursor = new LegacyMessageCursor();
+        byte[] citation = "VehicleID: 12, SpaceID: 345, ParkingZone: North, inspectionTimes: 2024-01-01 10:00:00, totalCost: 50.00"
+                .getBytes(StandardCharsets.UTF_8);
+        assertEquals(345, CitationIndex.parseSpaceID(cursor.reset(citation)));
+        assertEquals(-1, CitationIndex.parseSpaceID(cursor.reset("VehicleID: 12".getBytes(StandardCharsets.UTF_8))));
+        assertEquals(-1, CitationIndex.parseSpaceID(cursor.reset("SpaceID: abc".getBytes(StandardCharsets.UTF_8))));
+    }
+}
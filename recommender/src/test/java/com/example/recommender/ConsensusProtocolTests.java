@@ -0,0 +1,110 @@
+package com.example.recommender;
+
+import com.example.shared.utils.BrokerTransport;
+import com.example.shared.utils.InProcessBroker;
+import com.example.shared.utils.RabbitMQUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ConsensusProtocol.
+ * This class tests that a round asks the nodes in parallel rather than one after the other, and
+ * that a node still working at the deadline abstains instead of holding up the round. The nodes
+ * are stand-ins that answer through the embedded broker after a set delay.
+ */
+class ConsensusProtocolTests {
+
+    private BrokerTransport previousTransport;
+    private RabbitMQUtil rabbitMQUtil;
+
+    /**
+     * A node that recommends the next space after a delay instead of asking the database.
+     */
+    private static final class SlowNode extends RaftNode {
+        private final RabbitMQUtil rabbitMQUtil;
+        private final long delayMs;
+
+        SlowNode(String nodeId, RabbitMQUtil rabbitMQUtil, long delayMs) {
+            super(nodeId, rabbitMQUtil, null, null, null);
+            this.rabbitMQUtil = rabbitMQUtil;
+            this.delayMs = delayMs;
+        }
+
+        @Override
+        public boolean sendRecommendation(int requestedSpaceID, String replyQueue, String correlationId) {
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false; // Cancelled at the deadline
+            }
+            return rabbitMQUtil.sendMessage(replyQueue,
+                    "RESPONSE::Node=" + getNodeId() + ",Rec=SpaceID=" + (requestedSpaceID + 1) + ",Citations=0,Dist=1");
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        previousTransport = RabbitMQUtil.getTransport();
+        RabbitMQUtil.setTransport(new InProcessBroker());
+        rabbitMQUtil = new RabbitMQUtil("amqp://consensus-test");
+        rabbitMQUtil.initializeQueues();
+    }
+
+    @AfterEach
+    void tearDown() {
+        rabbitMQUtil.closeConnection();
+        RabbitMQUtil.setTransport(previousTransport);
+    }
+
+    private ConsensusProtocol protocol(long... delaysMs) {
+        List<RaftNode> nodes = new ArrayList<>();
+        for (int i = 0; i < delaysMs.length; i++) {
+            nodes.add(new SlowNode("node" + i, rabbitMQUtil, delaysMs[i]));
+        }
+        // One connection reads the shared response queue, so every response is collected once
+        return new ConsensusProtocol(nodes, List.of(rabbitMQUtil));
+    }
+
+    /**
+     * Tests that three nodes that each take 300 ms answer in about 300 ms together, not 900 ms.
+     */
+    @Test
+    void requestRecommendations_asksNodesInParallel() {
+        ConsensusProtocol protocol = protocol(300, 300, 300);
+
+        long start = System.nanoTime();
+        List<RecommendationResponse> responses = protocol.requestRecommendations(10, 3000);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(3, responses.size());
+        assertEquals(List.of(), protocol.getAbstainedNodes());
+        assertTrue(elapsedMs < 850, "The round took " + elapsedMs + " ms, the nodes were asked in turn.");
+        assertEquals("SpaceID=11,Citations=0,Dist=1", protocol.getConsensusDecision(responses));
+    }
+
+    /**
+     * Tests that a node far slower than the deadline abstains, and the round ends at the deadline
+     * with the answers of the others.
+     */
+    @Test
+    void requestRecommendations_slowNodeAbstainsAtDeadline() {
+        ConsensusProtocol protocol = protocol(20, 40, 10_000);
+
+        long start = System.nanoTime();
+        List<RecommendationResponse> responses = protocol.requestRecommendations(10, 1500);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(2, responses.size());
+        assertEquals(List.of("node2"), protocol.getAbstainedNodes());
+        assertTrue(elapsedMs < 3000, "The round waited " + elapsedMs + " ms for the slow node.");
+        assertNotNull(protocol.getConsensusDecision(responses), "Two of three nodes are a majority.");
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.recommender;
+
+import com.example.shared.utils.BrokerTransport;
+import com.example.shared.utils.ConsumerGroupMember;
+import com.example.shared.utils.InProcessBroker;
+import com.example.shared.utils.RabbitMQUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ElectionManager.
+ * This class runs participants on the embedded broker and plays the other members where needed:
+ * it tests that a cluster agrees on one leader that keeps office through its heartbeats and is
+ * replaced when it leaves, and that a node neither votes nor stands for election unless it saved
+ * its term and vote.
+ */
+class ElectionManagerTests {
+
+    private static final String NODE = "amqp://election-test-a";
+    private static final String CANDIDATE = "amqp://election-test-b";
+    private static final List<String> NODES = List.of(NODE, CANDIDATE, "amqp://election-test-c");
+    private static final List<String> CLUSTER = List.of("amqp://cluster-a", "amqp://cluster-b", "amqp://cluster-c");
+
+    @TempDir
+    Path dir;
+
+    private BrokerTransport previousTransport;
+    private final List<ElectionManager> participants = new ArrayList<>();
+    private RabbitMQUtil candidate;
+    private ConsumerGroupMember candidateInbox;
+    private final BlockingQueue<String> votes = new LinkedBlockingQueue<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        previousTransport = RabbitMQUtil.getTransport();
+        RabbitMQUtil.setTransport(new InProcessBroker());
+        candidate = new RabbitMQUtil(CANDIDATE);
+        candidateInbox = candidate.openInbox("raft.election.amqp___election-test-b", 10_000,
+                body -> votes.add(new String(body, StandardCharsets.UTF_8)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        participants.forEach(ElectionManager::close);
+        candidateInbox.close();
+        candidate.closeConnection();
+        RabbitMQUtil.setTransport(previousTransport);
+    }
+
+    private ElectionManager start(List<String> nodes, Path stateFile, long electionTimeoutMs) {
+        ElectionManager participant = new ElectionManager(NODE, nodes, stateFile, 10, electionTimeoutMs);
+        participants.add(participant);
+        return participant;
+    }
+
+    /** Starts every member of CLUSTER with its own state file. */
+    private List<ElectionManager> startCluster() {
+        List<ElectionManager> members = new ArrayList<>();
+        for (int i = 0; i < CLUSTER.size(); i++) {
+            ElectionManager member = new ElectionManager(CLUSTER.get(i), CLUSTER, dir.resolve("member-" + i + ".state"), 10, 100);
+            participants.add(member);
+            members.add(member);
+        }
+        return members;
+    }
+
+    /** Waits until every given member names the same leader, other than the one given, and returns it. */
+    private static String awaitAgreement(List<ElectionManager> members, String not) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() - deadline < 0) {
+            String leader = members.get(0).awaitLeader(100);
+            if (leader != null && !leader.equals(not) && members.stream().allMatch(m -> leader.equals(m.getLeader()))) {
+                return leader;
+            }
+            Thread.sleep(10);
+        }
+        fail("The members did not agree on a leader.");
+        return null;
+    }
+
+    /** A state file that cannot be written: its directory is a regular file. */
+    private Path unwritableStateFile() throws Exception {
+        return Files.createFile(dir.resolve("not-a-directory")).resolve("raft.state");
+    }
+
+    private String requestVote(long term) throws InterruptedException {
+        candidate.sendTransient("raft.election.amqp___election-test-a", "VOTE_REQ::Term=" + term + ",Candidate=" + CANDIDATE);
+        String vote = votes.poll(5, TimeUnit.SECONDS);
+        assertNotNull(vote, "The node did not answer.");
+        return vote;
+    }
+
+    /**
+     * Tests that a vote is granted once it is saved, and refused when the state file cannot be written.
+     */
+    @Test
+    void onVoteRequest_refusesVoteThatCannotBeSaved() throws Exception {
+        ElectionManager saving = start(NODES, dir.resolve("raft.state"), 60_000);
+        assertEquals("VOTE::Term=1,From=" + NODE + ",Granted=true", requestVote(1));
+        assertTrue(Files.exists(dir.resolve("raft.state")));
+        saving.close();
+
+        start(NODES, unwritableStateFile(), 60_000);
+        assertEquals("VOTE::Term=1,From=" + NODE + ",Granted=false", requestVote(1));
+        assertEquals("VOTE::Term=2,From=" + NODE + ",Granted=false", requestVote(2), "Nor in a later term.");
+    }
+
+    /**
+     * Tests that a node that cannot save a new term does not become a candidate, while one that
+     * can wins the election of a single-node cluster.
+     */
+    @Test
+    void startElection_staysFollowerWhenTermCannotBeSaved() throws Exception {
+        ElectionManager failing = start(List.of(NODE), unwritableStateFile(), 20);
+        Thread.sleep(300);
+        assertEquals(ElectionManager.Role.FOLLOWER, failing.getRole());
+        assertEquals(0, failing.getTerm());
+        failing.close();
+
+        ElectionManager saving = start(List.of(NODE), dir.resolve("raft.state"), 20);
+        assertEquals(NODE, saving.awaitLeader(5_000));
+        assertTrue(saving.getTerm() >= 1);
+    }
+
+    /**
+     * Tests that a three-node cluster elects exactly one leader, which all members name in the same term.
+     */
+    @Test
+    void tick_clusterElectsOneLeader() throws Exception {
+        List<ElectionManager> members = startCluster();
+
+        String leader = awaitAgreement(members, null);
+        long leaders = members.stream().filter(ElectionManager::isLeader).count();
+        assertEquals(1, leaders);
+        for (ElectionManager member : members) {
+            assertEquals(member.getNodeId().equals(leader) ? ElectionManager.Role.LEADER : ElectionManager.Role.FOLLOWER,
+                    member.getRole(), member.getNodeId());
+        }
+        assertEquals(1, members.stream().mapToLong(ElectionManager::getTerm).distinct().count(), "The members disagree on the term.");
+    }
+
+    /**
+     * Tests that the heartbeats keep the followers from starting elections, so the leader and the
+     * term stay the same for many election timeouts.
+     */
+    @Test
+    void onHeartbeat_keepsTheLeaderInOffice() throws Exception {
+        List<ElectionManager> members = startCluster();
+        String leader = awaitAgreement(members, null);
+        long term = members.get(0).getTerm();
+
+        Thread.sleep(1000); // Ten election timeouts
+        assertEquals(leader, awaitAgreement(members, null));
+        for (ElectionManager member : members) {
+            assertEquals(term, member.getTerm(), member.getNodeId() + " started an election.");
+        }
+    }
+
+    /**
+     * Tests that when the leader leaves, the two remaining members, still a majority, elect one of
+     * themselves in a later term.
+     */
+    @Test
+    void close_remainingMembersElectNewLeader() throws Exception {
+        List<ElectionManager> members = startCluster();
+        String leader = awaitAgreement(members, null);
+        long term = members.get(0).getTerm();
+
+        ElectionManager old = members.stream().filter(m -> m.getNodeId().equals(leader)).findFirst().orElseThrow();
+        old.close();
+        List<ElectionManager> remaining = new ArrayList<>(members);
+        remaining.remove(old);
+
+        awaitAgreement(remaining, leader);
+        for (ElectionManager member : remaining) {
+            assertTrue(member.getTerm() > term, "The new leader was elected in the old term.");
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.recommender;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for OccupancyForecast.
+ * This class tests the rates learned per zone and time-of-day bin, the pro rata sum over the bins
+ * a period covers, and training from the ParkingEvents history. The forecasts are built without
+ * background updates and fed directly.
+ */
+class OccupancyForecastTests {
+
+    private static final LocalDateTime MONDAY = LocalDateTime.of(2024, 3, 4, 0, 0);
+    private static final LocalDateTime TUESDAY = MONDAY.plusDays(1);
+
+    /**
+     * Records the same number of arrivals on each given day at a time of day.
+     */
+    private static void arrivals(OccupancyForecast forecast, int zoneId, int hour, int minute, int count, LocalDateTime... days) {
+        for (LocalDateTime day : days) {
+            for (int i = 0; i < count; i++) {
+                forecast.record(zoneId, day.withHour(hour).withMinute(minute), true);
+            }
+        }
+    }
+
+    /**
+     * Tests that a forecast predicts no change before it is trained, whatever it recorded.
+     */
+    @Test
+    void expectedNetArrivals_isZeroUntilTrained() {
+        OccupancyForecast forecast = new OccupancyForecast("node", 15);
+        arrivals(forecast, 1, 8, 0, 5, MONDAY);
+        assertFalse(forecast.isTrained());
+        assertEquals(0, forecast.expectedNetArrivals(1, MONDAY.withHour(8), 15));
+        assertEquals(4, forecast.predictFree(1, 4, 15, MONDAY.withHour(8)));
+    }
+
+    /**
+     * Tests that the rate of a bin is its net count per day observed, and that a period starting
+     * inside a bin takes the bins it covers pro rata.
+     */
+    @Test
+    void expectedNetArrivals_sumsCoveredBinsProRata() {
+        OccupancyForecast forecast = new OccupancyForecast("node", 15);
+        arrivals(forecast, 1, 8, 5, 4, MONDAY);
+        arrivals(forecast, 1, 8, 0, 2, TUESDAY);
+        forecast.record(1, TUESDAY.withHour(8).withMinute(20), false);
+        forecast.markTrained();
+
+        LocalDateTime eight = MONDAY.plusWeeks(1).withHour(8);
+        assertEquals(3.0, forecast.expectedNetArrivals(1, eight, 15), 1e-9);
+        assertEquals(2.5, forecast.expectedNetArrivals(1, eight, 30), 1e-9);
+        // A third of each bin: (6 / 3 - 1 / 3) / 2 days
+        assertEquals(5.0 / 6, forecast.expectedNetArrivals(1, eight.withMinute(10), 10), 1e-9);
+        assertEquals(0, forecast.expectedNetArrivals(2, eight, 15), "Another zone learned zone 1's arrivals.");
+        assertEquals(7, forecast.size());
+    }
+
+    /**
+     * Tests that a period running past midnight continues with the first bins of the day.
+     */
+    @Test
+    void expectedNetArrivals_wrapsAroundMidnight() {
+        OccupancyForecast forecast = new OccupancyForecast("node", 15);
+        arrivals(forecast, 3, 23, 50, 1, MONDAY);
+        arrivals(forecast, 3, 0, 5, 1, MONDAY);
+        forecast.markTrained();
+
+        assertEquals(2.0, forecast.expectedNetArrivals(3, TUESDAY.withHour(23).withMinute(45), 30), 1e-9);
+        assertEquals(1.0, forecast.expectedNetArrivals(3, TUESDAY.withHour(23).withMinute(45), 15), 1e-9);
+    }
+
+    /**
+     * Tests that a zone expected to take more cars than it has free spaces is predicted full, not
+     * negative, and that expected departures add free spaces.
+     */
+    @Test
+    void predictFree_isNeverNegative() {
+        OccupancyForecast forecast = new OccupancyForecast("node", 15);
+        arrivals(forecast, 1, 17, 0, 10, MONDAY);
+        forecast.record(2, MONDAY.withHour(17), false);
+        forecast.record(2, MONDAY.withHour(17), false);
+        forecast.markTrained();
+
+        LocalDateTime fivePm = TUESDAY.withHour(17);
+        assertEquals(0, forecast.predictFree(1, 3, 15, fivePm));
+        assertEquals(5, forecast.predictFree(2, 3, 15, fivePm), 1e-9);
+    }
+
+    /**
+     * Tests that training counts each start as an arrival and each end as a departure, but only
+     * those before the cut-off, which the live events cover from then on.
+     */
+    @Test
+    void train_countsHistoryBeforeCutOff() throws Exception {
+        LocalDateTime cutOff = TUESDAY.withHour(12);
+        List<Object[]> rows = List.of(
+                new Object[]{1, MONDAY.withHour(9), MONDAY.withHour(11)},
+                new Object[]{1, TUESDAY.withHour(9), null},                   // Still parked
+                new Object[]{1, TUESDAY.withHour(11), TUESDAY.withHour(13)},  // Leaves after the cut-off
+                new Object[]{2, TUESDAY.withHour(14), TUESDAY.withHour(15)}); // Entirely after it
+        OccupancyForecast forecast = new OccupancyForecast("node", 60);
+
+        assertEquals(4, forecast.train(history(rows), cutOff));
+        assertTrue(forecast.isTrained());
+        assertEquals(4, forecast.size());
+        assertEquals(1.0, forecast.expectedNetArrivals(1, cutOff.withHour(9), 60), 1e-9, "One arrival on each day.");
+        assertEquals(0, forecast.expectedNetArrivals(1, cutOff.withHour(11), 60), 1e-9, "One arrival, one departure.");
+        assertEquals(0, forecast.expectedNetArrivals(2, cutOff.withHour(14), 60));
+    }
+
+    /**
+     * A connection whose only query returns the given (ZoneID, StartTime, EndTime) rows.
+     */
+    private static Connection history(List<Object[]> rows) {
+        Iterator<Object[]> cursor = rows.iterator();
+        Object[][] current = new Object[1][];
+        ResultSet rs = (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (self, method, args) -> switch (method.getName()) {
+                    case "next" -> {
+                        current[0] = cursor.hasNext() ? cursor.next() : null;
+                        yield current[0] != null;
+                    }
+                    case "getInt" -> (Integer) current[0][0];
+                    case "getTimestamp" -> {
+                        Object at = current[0]["StartTime".equals(args[0]) ? 1 : 2];
+                        yield at == null ? null : Timestamp.valueOf((LocalDateTime) at);
+                    }
+                    case "close" -> null;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+        PreparedStatement stmt = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (self, method, args) -> switch (method.getName()) {
+                    case "executeQuery" -> rs;
+                    case "setFetchSize", "close" -> null;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (self, method, args) -> switch (method.getName()) {
+                    case "prepareStatement" -> stmt;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
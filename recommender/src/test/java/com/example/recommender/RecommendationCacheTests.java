@@ -0,0 +1,155 @@
+package com.example.recommender;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for RecommendationCache.
+ * This class tests that an entry is served until the occupancy of one of its zones or the
+ * citation counts change, or everything is invalidated, also while it is being computed.
+ */
+class RecommendationCacheTests {
+
+    // Space 105 lies in zone 1, space 205 in zone 2, and so on; space 999 has no zone
+    private static final String RECOMMENDATION = "SpaceID=205,Citations=1,Events=1,DistanceMeters=20";
+
+    private final AtomicLong citationVersion = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+    private RecommendationCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new RecommendationCache(100, 60_000, spaceId -> spaceId == 999 ? -1 : spaceId / 100, citationVersion::get);
+    }
+
+    private IntFunction<String> loader(String recommendation) {
+        return spaceId -> {
+            loads.incrementAndGet();
+            return recommendation;
+        };
+    }
+
+    /**
+     * Tests that a second request is answered from the cache while nothing changed, and that
+     * occupancy changes in unrelated zones do not matter.
+     */
+    @Test
+    void get_servesUnchangedEntry() {
+        assertEquals(RECOMMENDATION, cache.get(105, loader(RECOMMENDATION)));
+        cache.onOccupancyChanged(3);
+        assertEquals(RECOMMENDATION, cache.get(105, loader("other")));
+        assertEquals(1, loads.get());
+        assertEquals(new RecommendationCache.CacheStats(1, 1, 0, 0, 1), cache.getStats());
+    }
+
+    /**
+     * Tests that an occupancy change in the requested space's zone or in a recommended space's
+     * zone makes the entry stale.
+     */
+    @Test
+    void onOccupancyChanged_invalidatesDependentZones() {
+        cache.get(105, loader(RECOMMENDATION));
+        cache.onOccupancyChanged(1);
+        assertEquals("SpaceID=106", cache.get(105, loader("SpaceID=106")), "Zone 1 holds the requested space.");
+
+        cache.get(110, loader(RECOMMENDATION));
+        cache.onOccupancyChanged(2);
+        assertEquals("SpaceID=111", cache.get(110, loader("SpaceID=111")), "Zone 2 holds the recommended space.");
+        assertEquals(4, loads.get());
+        assertEquals(2, cache.getStats().stale());
+    }
+
+    /**
+     * Tests that a change of the citation counts makes every entry stale.
+     */
+    @Test
+    void get_citationChangeMakesEntryStale() {
+        cache.get(105, loader(RECOMMENDATION));
+        citationVersion.incrementAndGet();
+        cache.get(105, loader(RECOMMENDATION));
+        assertEquals(2, loads.get());
+    }
+
+    /**
+     * Tests that a result is not cached if its zone changed while it was being computed.
+     */
+    @Test
+    void get_changeDuringComputationIsNotCached() {
+        cache.get(105, spaceId -> {
+            cache.onOccupancyChanged(2);
+            return RECOMMENDATION;
+        });
+        assertEquals(0, cache.getStats().size());
+        cache.get(105, loader(RECOMMENDATION));
+        assertEquals(1, cache.getStats().size());
+    }
+
+    /**
+     * Tests that invalidateAll drops the cached entries and the one being computed.
+     */
+    @Test
+    void invalidateAll_dropsEntriesAndComputations() {
+        cache.get(105, loader(RECOMMENDATION));
+        cache.get(305, loader(RECOMMENDATION));
+        cache.invalidateAll();
+        assertEquals(0, cache.getStats().size());
+
+        cache.get(105, spaceId -> {
+            cache.invalidateAll();
+            return RECOMMENDATION;
+        });
+        assertEquals(0, cache.getStats().size(), "The result computed during invalidateAll is stale.");
+    }
+
+    /**
+     * Tests that no consensus and recommendations with a space of unknown zone are not cached.
+     */
+    @Test
+    void get_doesNotCacheNullOrUnknownZones() {
+        assertNull(cache.get(105, loader(null)));
+        cache.get(999, loader(RECOMMENDATION));
+        cache.get(106, loader("SpaceID=999"));
+        assertEquals(0, cache.getStats().size());
+        assertEquals(3, loads.get());
+    }
+
+    /**
+     * Tests that concurrent misses for the same space compute once and share the result.
+     */
+    @Test
+    void get_coalescesConcurrentMisses() throws Exception {
+        CountDownLatch computing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> cache.get(105, spaceId -> {
+            loads.incrementAndGet();
+            computing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return RECOMMENDATION;
+        }));
+        assertTrue(computing.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> cache.get(105, loader("other")));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.getStats().coalesced() == 0) {
+            assertTrue(System.nanoTime() < deadline, "The second request never waited.");
+            Thread.onSpinWait();
+        }
+        release.countDown();
+
+        assertEquals(RECOMMENDATION, first.get(5, TimeUnit.SECONDS));
+        assertEquals(RECOMMENDATION, second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+    }
+}
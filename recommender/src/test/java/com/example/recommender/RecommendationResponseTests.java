@@ -0,0 +1,91 @@
+package com.example.recommender;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for RecommendationResponse.
+ * This class tests parsing full responses and digest votes, and that a digest identifies a
+ * ranking.
+ */
+class RecommendationResponseTests {
+
+    private static final List<RankedCandidate> RANKING = List.of(
+            new RankedCandidate(12, 0, 0, 1), new RankedCandidate(15, 1, 1, 3));
+
+    /**
+     * Tests parsing a full response; its vote fields come from the ranking.
+     */
+    @Test
+    void parse_fullResponse() {
+        String ranking = RankedCandidate.formatRanking(RANKING).trim();
+        RecommendationResponse response = RecommendationResponse.parse("RESPONSE::Node=amqp://10.0.0.1,Rec=" + ranking);
+
+        assertNotNull(response);
+        assertEquals("amqp://10.0.0.1", response.getNodeId());
+        assertTrue(response.hasRanking());
+        assertEquals(RANKING.stream().map(RankedCandidate::spaceId).toList(),
+                response.getRanking().stream().map(RankedCandidate::spaceId).toList());
+        assertEquals(12, response.getTopChoice());
+        assertArrayEquals(new int[]{0, 1}, response.getCitations());
+        assertEquals(RecommendationResponse.digestOf(RANKING), response.getDigest());
+    }
+
+    /**
+     * Tests that a digest vote survives formatting and parsing.
+     */
+    @Test
+    void parse_digestVoteRoundTrips() {
+        String vote = RecommendationResponse.formatDigestVote("amqp://10.0.0.2", RANKING, new int[]{2, 0});
+        RecommendationResponse response = RecommendationResponse.parse(vote);
+
+        assertNotNull(response);
+        assertFalse(response.hasRanking());
+        assertEquals("amqp://10.0.0.2", response.getNodeId());
+        assertEquals(12, response.getTopChoice());
+        assertEquals(RecommendationResponse.digestOf(RANKING), response.getDigest());
+        assertArrayEquals(new int[]{2, 0}, response.getCitations());
+        assertEquals(vote, response.toString());
+    }
+
+    /**
+     * Tests that messages that are not a response, or a broken one, are refused.
+     */
+    @Test
+    void parse_rejectsMalformedMessages() {
+        assertNull(RecommendationResponse.parse("HEARTBEAT::Term=1,Leader=a"));
+        assertNull(RecommendationResponse.parse("RESPONSE::Rec=SpaceID=1,Citations=0"), "No node.");
+        assertNull(RecommendationResponse.parse("RESPONSE::Node=a,Top=12"), "A digest vote needs its digest.");
+        assertNull(RecommendationResponse.parse("RESPONSE::Node=a,Top=x,Digest=00"), "Top must be a number.");
+        assertNull(RecommendationResponse.parse("RESPONSE::Node=a,Top=12,Digest=00,Citations=1;y"));
+    }
+
+    /**
+     * Tests that a response that is not a ranking votes for nothing.
+     */
+    @Test
+    void getTopChoice_noRanking() {
+        RecommendationResponse response = RecommendationResponse.parse("RESPONSE::Node=a,Rec=No free parking spots");
+        assertNotNull(response);
+        assertEquals(-1, response.getTopChoice());
+        assertNull(response.getDigest());
+    }
+
+    /**
+     * Tests that rankings with the same top choice but different alternates or distances have
+     * different digests, and equal rankings equal ones.
+     */
+    @Test
+    void digestOf_identifiesTheRanking() {
+        List<RankedCandidate> otherAlternate = List.of(RANKING.get(0), new RankedCandidate(16, 1, 1, 3));
+        List<RankedCandidate> otherDistance = List.of(new RankedCandidate(12, 0, 0, 2), RANKING.get(1));
+
+        assertEquals(RecommendationResponse.digestOf(List.copyOf(RANKING)), RecommendationResponse.digestOf(RANKING));
+        assertNotEquals(RecommendationResponse.digestOf(RANKING), RecommendationResponse.digestOf(otherAlternate));
+        assertNotEquals(RecommendationResponse.digestOf(RANKING), RecommendationResponse.digestOf(otherDistance));
+        assertEquals(16, RecommendationResponse.digestOf(RANKING).length(), "8 bytes in hex.");
+    }
+}
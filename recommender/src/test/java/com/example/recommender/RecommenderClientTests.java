@@ -0,0 +1,141 @@
+package com.example.recommender;
+
+import com.example.shared.utils.BrokerTransport;
+import com.example.shared.utils.InProcessBroker;
+import com.example.shared.utils.RabbitMQUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for RecommenderClient.
+ * This class tests that one client serves many requests with the nodes and connections it made
+ * when it started, and that a node whose connection is down sits out the rounds. The election
+ * runs on the embedded broker with short timeouts; the nodes answer without a database.
+ */
+class RecommenderClientTests {
+
+    private static final List<String> NODES = List.of("amqp://client-a", "amqp://client-b", "amqp://client-c");
+
+    @TempDir
+    Path dir;
+
+    private final InProcessBroker broker = new InProcessBroker();
+    private BrokerTransport previousTransport;
+    private final List<ElectionManager> elections = new ArrayList<>();
+
+    // What the client asked of each node, by node ID
+    private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+    private final List<String> created = new ArrayList<>();
+
+    /**
+     * A node that recommends the next space and approves every proposal, counting what it was asked.
+     */
+    private final class CountingNode extends RaftNode {
+        private final RabbitMQUtil rabbitMQUtil;
+
+        CountingNode(String nodeId, RabbitMQUtil rabbitMQUtil) {
+            super(nodeId, rabbitMQUtil, null, null, null);
+            this.rabbitMQUtil = rabbitMQUtil;
+            created.add(nodeId);
+        }
+
+        private void count() {
+            calls.computeIfAbsent(getNodeId(), id -> new AtomicInteger()).incrementAndGet();
+        }
+
+        @Override
+        public String proposeRecommendation(int requestedSpaceID) {
+            count();
+            return "SpaceID=" + (requestedSpaceID + 1) + ",Citations=0\n";
+        }
+
+        @Override
+        public boolean sendValidation(int requestedSpaceID, String proposal, String replyQueue, String correlationId) {
+            count();
+            List<RankedCandidate> ranking = RankedCandidate.parseRanking(proposal);
+            return rabbitMQUtil.sendReply(replyQueue, correlationId,
+                    RecommendationResponse.formatDigestVote(getNodeId(), ranking, new int[ranking.size()]));
+        }
+
+        @Override
+        public boolean sendRecommendation(int requestedSpaceID, String replyQueue, String correlationId) {
+            count();
+            return rabbitMQUtil.sendReply(replyQueue, correlationId,
+                    "RESPONSE::Node=" + getNodeId() + ",Rec=SpaceID=" + (requestedSpaceID + 1) + ",Citations=0");
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        previousTransport = RabbitMQUtil.getTransport();
+        RabbitMQUtil.setTransport(broker);
+        for (String node : NODES) {
+            elections.add(new ElectionManager(node, NODES, dir.resolve(node.substring(7) + ".state"), 10, 100));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        elections.forEach(ElectionManager::close);
+        RabbitMQUtil.setTransport(previousTransport);
+    }
+
+    private int callsTo(String node) {
+        AtomicInteger count = calls.get(node);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Tests that requests after the first reuse the client's nodes, and no longer pay for
+     * connecting or for the first election.
+     */
+    @Test
+    void recommend_reusesNodesAcrossRequests() {
+        try (RecommenderClient client = new RecommenderClient(NODES, CountingNode::new, false)) {
+            String first = client.recommend(10, 3000);
+            assertNotNull(first, "No consensus with every node up.");
+            assertTrue(first.startsWith("SpaceID=11"), first);
+
+            for (int i = 0; i < 5; i++) {
+                long start = System.nanoTime();
+                assertEquals(first, client.recommend(10, 3000));
+                long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                assertTrue(elapsedMs < 500, "A warm request took " + elapsedMs + " ms.");
+            }
+            assertEquals(NODES, created, "The client made nodes for a request.");
+            // A round ends once a majority agrees, so the last node may not have been heard from
+            assertTrue(NODES.stream().mapToInt(this::callsTo).sum() >= 2 * 6, "Too few nodes took part: " + calls);
+        }
+    }
+
+    /**
+     * Tests that a node whose connection is down is not asked, and the other two still decide.
+     */
+    @Test
+    void recommend_disconnectedNodeSitsOut() {
+        try (RecommenderClient client = new RecommenderClient(NODES, CountingNode::new, false)) {
+            assertNotNull(client.recommend(20, 3000));
+
+            broker.setNodeDown("amqp://client-c", true);
+            int before = callsTo("amqp://client-c");
+            String decision = client.recommend(20, 3000);
+
+            assertNotNull(decision, "Two of three nodes are a majority.");
+            assertTrue(decision.startsWith("SpaceID=21"), decision);
+            assertEquals(before, callsTo("amqp://client-c"), "The disconnected node was asked.");
+            assertEquals(NODES, created);
+        }
+    }
+}
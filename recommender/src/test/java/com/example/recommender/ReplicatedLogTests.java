@@ -0,0 +1,158 @@
+package com.example.recommender;
+
+import com.example.shared.utils.BrokerTransport;
+import com.example.shared.utils.ConsumerGroupMember;
+import com.example.shared.utils.InProcessBroker;
+import com.example.shared.utils.RabbitMQUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ReplicatedLog.
+ * This class runs one follower on the embedded broker and plays its leader: it tests that the
+ * follower only accepts entries that continue its log, drops conflicting ones, and commits no
+ * further than the leader says and it stored.
+ */
+class ReplicatedLogTests {
+
+    private static final String LEADER = "amqp://log-test-a";
+    private static final String FOLLOWER = "amqp://log-test-b";
+    private static final List<String> NODES = List.of(LEADER, FOLLOWER, "amqp://log-test-c");
+
+    @TempDir
+    Path dir;
+
+    private BrokerTransport previousTransport;
+    private ElectionManager election;
+    private ReplicatedLog log;
+    private RabbitMQUtil leader;
+    private ConsumerGroupMember leaderInbox;
+    private final BlockingQueue<String> acks = new LinkedBlockingQueue<>();
+    private final List<Integer> applied = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        previousTransport = RabbitMQUtil.getTransport();
+        RabbitMQUtil.setTransport(new InProcessBroker());
+        // The other members never run, and the timeout is long, so the follower stays a follower
+        election = new ElectionManager(FOLLOWER, NODES, null, 60_000, 300_000);
+        startFollower();
+        leader = new RabbitMQUtil(LEADER);
+        leaderInbox = leader.openInbox("raft.log.amqp___log-test-a", 10_000,
+                body -> acks.add(new String(body, StandardCharsets.UTF_8)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        leaderInbox.close();
+        leader.closeConnection();
+        log.close();
+        election.close();
+        RabbitMQUtil.setTransport(previousTransport);
+    }
+
+    private void startFollower() {
+        log = new ReplicatedLog(FOLLOWER, NODES, election, dir, 10, 10_000, 100_000, false);
+        log.subscribe(new ReplicatedLog.Listener() {
+            @Override
+            public void onReset(ReplicatedState state) {
+            }
+
+            @Override
+            public void onCommitted(byte type, int spaceId, int partition, long value) {
+                applied.add(spaceId);
+            }
+        });
+    }
+
+    /**
+     * Sends an append as the leader and returns the follower's answer.
+     *
+     * @param entries The entries as {term, SpaceID}; each marks the space occupied.
+     * @return The acknowledgement's fields after the term, e.g. "From=...,Match=3,Success=true".
+     */
+    private String append(long term, long prev, long prevTerm, long commit, long[]... entries) throws InterruptedException {
+        ByteBuffer buffer = ByteBuffer.allocate(entries.length * (8 + 1 + 4 + 4 + 8));
+        for (long[] entry : entries) {
+            buffer.putLong(entry[0]).put(ReplicatedLog.OCCUPANCY).putInt((int) entry[1]).putInt(0).putLong(1);
+        }
+        leader.sendTransient("raft.log.amqp___log-test-b", "APPEND::Term=" + term + ",Leader=" + LEADER + ",Prev=" + prev
+                + ",PrevTerm=" + prevTerm + ",Commit=" + commit + ",Entries=" + Base64.getEncoder().encodeToString(buffer.array()));
+        String ack = acks.poll(5, TimeUnit.SECONDS);
+        assertNotNull(ack, "The follower did not answer.");
+        return ack.substring(ack.indexOf(",From=") + 1);
+    }
+
+    private static String ack(long match, boolean success) {
+        return "From=" + FOLLOWER + ",Match=" + match + ",Success=" + success;
+    }
+
+    /**
+     * Tests that the follower stores the entries and commits up to the leader's commit index, but
+     * never past the entries the append confirmed.
+     */
+    @Test
+    void append_commitsUpToLeaderCommit() throws Exception {
+        assertEquals(ack(3, true), append(1, 0, 0, 1, new long[]{1, 101}, new long[]{1, 102}, new long[]{1, 103}));
+        assertEquals(3, log.getLastIndex());
+        assertEquals(1, log.getCommitIndex());
+        assertEquals(List.of(101), applied);
+
+        assertEquals(ack(2, true), append(1, 1, 1, 10, new long[]{1, 102}));
+        assertEquals(2, log.getCommitIndex(), "Entry 3 was not confirmed by this append.");
+        assertEquals(3, log.getLastIndex(), "A repeated entry does not truncate the log.");
+        assertEquals(ack(3, true), append(1, 3, 1, 10));
+        assertTrue(log.awaitApplied(3, 5_000));
+        assertEquals(List.of(101, 102, 103), applied);
+    }
+
+    /**
+     * Tests that entries of an old term that conflict with the new leader's are dropped, in memory
+     * and in the log file, before the new ones are stored.
+     */
+    @Test
+    void append_truncatesConflictingEntries() throws Exception {
+        append(1, 0, 0, 1, new long[]{1, 101}, new long[]{1, 102}, new long[]{1, 103});
+
+        assertEquals(ack(2, true), append(2, 1, 1, 1, new long[]{2, 109}));
+        assertEquals(2, log.getLastIndex());
+        assertEquals(ack(2, true), append(2, 2, 2, 2));
+        assertEquals(List.of(101, 109), applied, "The dropped entries are never applied.");
+
+        log.close();
+        applied.clear();
+        startFollower();
+        assertEquals(2, log.getLastIndex(), "The truncation reached the log file.");
+        assertEquals(ack(2, true), append(2, 2, 2, 2), "Entry 2 is still the new leader's.");
+        assertEquals(List.of(101, 109), applied);
+    }
+
+    /**
+     * Tests that entries that do not continue the log are refused, with the index the leader should
+     * go back to.
+     */
+    @Test
+    void append_refusesGapsAndMismatches() throws Exception {
+        append(1, 0, 0, 0, new long[]{1, 101}, new long[]{1, 102});
+
+        assertEquals(ack(2, false), append(1, 5, 1, 0, new long[]{1, 106}), "The log ends at 2.");
+        assertEquals(ack(1, false), append(2, 2, 2, 2, new long[]{2, 103}), "Entry 2 is of term 1.");
+        assertEquals(2, log.getLastIndex());
+        assertEquals(0, log.getCommitIndex(), "A refused append commits nothing.");
+        assertEquals(List.of(), applied);
+    }
+}
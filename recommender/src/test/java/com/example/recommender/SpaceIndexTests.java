@@ -0,0 +1,151 @@
+package com.example.recommender;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SpaceIndex.
+ * This class compares the nearest free spaces found in the tree with a scan over every space,
+ * also after occupancy changes, and tests the free-space counts per zone.
+ */
+class SpaceIndexTests {
+
+    private static final double EARTH_RADIUS_M = 6_371_000;
+
+    private final Random random = new Random(7);
+    private int n;
+    private int[] ids;
+    private double[] lats;
+    private double[] lons;
+    private int[] zones;
+    private boolean[] occupied;
+
+    /**
+     * Fills the arrays with random spaces in a few square kilometers, about a third occupied.
+     */
+    private SpaceIndex randomIndex(int count) {
+        n = count;
+        ids = new int[n];
+        lats = new double[n];
+        lons = new double[n];
+        zones = new int[n];
+        occupied = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = 1000 + 3 * i;
+            lats[i] = 32.08 + random.nextDouble() * 0.02;
+            lons[i] = 34.78 + random.nextDouble() * 0.02;
+            zones[i] = random.nextInt(5);
+            occupied[i] = random.nextInt(3) == 0;
+        }
+        return new SpaceIndex(ids, lats, lons, zones, occupied, n);
+    }
+
+    /**
+     * Returns the positions of the k free spaces nearest to a coordinate, by scanning all of them,
+     * with the index's projection.
+     */
+    private int[] scan(double latitude, double longitude, int k) {
+        double cosLat0 = Math.cos(Math.toRadians(Arrays.stream(lats, 0, n).sum() / n));
+        double[] dist = new double[n];
+        for (int i = 0; i < n; i++) {
+            double dx = Math.toRadians(lons[i] - longitude) * cosLat0 * EARTH_RADIUS_M;
+            double dy = Math.toRadians(lats[i] - latitude) * EARTH_RADIUS_M;
+            dist[i] = Math.sqrt(dx * dx + dy * dy);
+        }
+        return IntStream.range(0, n)
+                .filter(i -> !occupied[i])
+                .boxed()
+                .sorted(Comparator.comparingDouble(i -> dist[i]))
+                .limit(k)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private void assertNearestMatchesScan(SpaceIndex index, int queries) {
+        int[] outIds = new int[16];
+        double[] outDist = new double[16];
+        for (int q = 0; q < queries; q++) {
+            int from = random.nextInt(n);
+            int k = 1 + random.nextInt(outIds.length);
+            int found = index.nearestFree(ids[from], k, outIds, outDist);
+
+            int[] expected = scan(lats[from], lons[from], k);
+            assertEquals(expected.length, found, "Query " + q + " (k=" + k + ")");
+            for (int i = 0; i < found; i++) {
+                assertEquals(ids[expected[i]], outIds[i], "Query " + q + ", rank " + i);
+            }
+            for (int i = 1; i < found; i++) {
+                assertTrue(outDist[i - 1] <= outDist[i], "Nearest first.");
+            }
+        }
+    }
+
+    /**
+     * Tests that the tree finds the same nearest free spaces, in the same order, as a scan.
+     */
+    @Test
+    void nearestFree_matchesScan() {
+        assertNearestMatchesScan(randomIndex(500), 200);
+    }
+
+    /**
+     * Tests that occupancy updates keep the tree's free counts right, including for spaces that
+     * become free again and subtrees that fill up completely.
+     */
+    @Test
+    void setOccupied_keepsNearestFreeInSyncWithScan() {
+        SpaceIndex index = randomIndex(300);
+        for (int round = 0; round < 20; round++) {
+            for (int change = 0; change < 25; change++) {
+                int i = random.nextInt(n);
+                occupied[i] = random.nextInt(4) != 0; // Fill the lot up over the rounds
+                assertTrue(index.setOccupied(ids[i], occupied[i]));
+            }
+            assertNearestMatchesScan(index, 10);
+        }
+    }
+
+    /**
+     * Tests that a full lot has nothing to offer, and that unknown spaces are reported as such.
+     */
+    @Test
+    void nearestFree_fullOrUnknown() {
+        SpaceIndex index = randomIndex(50);
+        for (int i = 0; i < n; i++) {
+            index.setOccupied(ids[i], true);
+        }
+        int[] outIds = new int[4];
+        double[] outDist = new double[4];
+        assertEquals(0, index.nearestFree(ids[0], 4, outIds, outDist));
+        assertEquals(-1, index.nearestFree(1001, 4, outIds, outDist), "1001 is not a SpaceID of the index.");
+        assertFalse(index.setOccupied(1001, false));
+        assertFalse(index.contains(1001));
+        assertTrue(index.contains(ids[49]));
+    }
+
+    /**
+     * Tests that the free spaces per zone follow occupancy updates, and that setting the same
+     * occupancy twice counts once.
+     */
+    @Test
+    void freeInZone_followsOccupancy() {
+        SpaceIndex index = new SpaceIndex(new int[]{1, 2, 3}, new double[]{32.08, 32.081, 32.082},
+                new double[]{34.78, 34.78, 34.78}, new int[]{7, 7, 8}, new boolean[]{false, true, false}, 3);
+        assertEquals(1, index.freeInZone(7));
+        assertEquals(1, index.freeInZone(8));
+        assertEquals(-1, index.freeInZone(9), "No spaces in zone 9.");
+
+        index.setOccupied(2, false);
+        index.setOccupied(2, false);
+        assertEquals(2, index.freeInZone(7));
+        index.setOccupied(3, true);
+        assertEquals(0, index.freeInZone(8));
+        assertEquals(7, index.zoneOf(2));
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.recommender;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for TopK.
+ * This class compares the heap selection with sorting the whole input.
+ */
+class TopKTests {
+
+    /**
+     * Tests that random inputs give the same k best, in the same order, as a full sort.
+     */
+    @Test
+    void toSortedList_matchesFullSort() {
+        Random random = new Random(42);
+        for (int run = 0; run < 200; run++) {
+            int k = 1 + random.nextInt(8);
+            List<RankedCandidate> all = new ArrayList<>();
+            TopK<RankedCandidate> top = new TopK<>(k, RankedCandidate.ORDER);
+            int n = random.nextInt(40);
+            for (int i = 0; i < n; i++) {
+                int citations = random.nextInt(4);
+                RankedCandidate candidate = new RankedCandidate(i, citations, citations, random.nextInt(10));
+                all.add(candidate);
+                top.offer(candidate);
+            }
+            all.sort(RankedCandidate.ORDER);
+            assertEquals(all.subList(0, Math.min(k, n)), top.toSortedList(), "Run " + run + " (k=" + k + ", n=" + n + ")");
+        }
+    }
+
+    /**
+     * Tests that offer reports whether the element is among the k best so far.
+     */
+    @Test
+    void offer_reportsWhetherElementIsKept() {
+        TopK<Integer> top = new TopK<>(2, Comparator.naturalOrder());
+        assertTrue(top.offer(5));
+        assertTrue(top.offer(3));
+        assertFalse(top.offer(7), "Worse than both kept elements.");
+        assertFalse(top.offer(5), "A tie with the worst kept element does not replace it.");
+        assertTrue(top.offer(1));
+        assertEquals(List.of(1, 3), top.toSortedList());
+        assertEquals(2, top.size());
+    }
+
+    /**
+     * Tests that k below 1 keeps one element.
+     */
+    @Test
+    void constructor_keepsAtLeastOne() {
+        TopK<Integer> top = new TopK<>(0, Comparator.naturalOrder());
+        top.offer(4);
+        top.offer(2);
+        assertEquals(List.of(2), top.toSortedList());
+    }
+}
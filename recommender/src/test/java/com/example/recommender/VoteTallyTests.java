@@ -0,0 +1,145 @@
+package com.example.recommender;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for VoteTally.
+ * This class tests deciding a round as soon as a majority of the cluster agrees, detecting a
+ * round that can no longer be decided, listing the dissenters, and counting digest votes only
+ * for the ranking they endorse.
+ */
+class VoteTallyTests {
+
+    static String ranking(int... spaceIds) {
+        StringBuilder ranking = new StringBuilder();
+        for (int i = 0; i < spaceIds.length; i++) {
+            ranking.append(new RankedCandidate(spaceIds[i], 0, 0, i).format()).append("\n");
+        }
+        return ranking.toString();
+    }
+
+    static RecommendationResponse full(String node, int... spaceIds) {
+        return new RecommendationResponse(node, ranking(spaceIds));
+    }
+
+    static RecommendationResponse digestVote(String node, int... spaceIds) {
+        List<RankedCandidate> candidates = RankedCandidate.parseRanking(ranking(spaceIds));
+        return RecommendationResponse.parse(RecommendationResponse.formatDigestVote(node, candidates, new int[spaceIds.length]));
+    }
+
+    /**
+     * Tests that the vote completing a majority of the cluster decides, with the first ranking
+     * voted for the winning space.
+     */
+    @Test
+    void add_decidesOnMajorityOfCluster() {
+        VoteTally tally = new VoteTally(5);
+        assertEquals(3, tally.getQuorum());
+        assertNull(tally.add(full("a", 12, 13)));
+        assertNull(tally.add(full("b", 7)));
+        assertNull(tally.add(full("c", 12, 14)));
+        assertEquals(ranking(12, 13), tally.add(full("d", 12)), "The third vote for 12 decides, with a's ranking.");
+        assertEquals(12, tally.getDecidedSpace());
+
+        assertEquals(ranking(12, 13), tally.add(full("e", 7)), "Later votes do not change the decision.");
+    }
+
+    /**
+     * Tests that only a node's first vote counts.
+     */
+    @Test
+    void add_countsEachNodeOnce() {
+        VoteTally tally = new VoteTally(3);
+        tally.add(full("a", 12));
+        assertNull(tally.add(full("a", 12)), "A second vote of the same node must not count.");
+        assertEquals(1, tally.getResponses().size());
+        assertNotNull(tally.add(full("b", 12)));
+    }
+
+    /**
+     * Tests that a round is hopeless once no space can reach the quorum with the votes still
+     * outstanding, and that a response that is not a ranking agrees with nobody.
+     */
+    @Test
+    void isHopeless_whenNoSpaceCanReachQuorum() {
+        VoteTally tally = new VoteTally(5);
+        tally.add(full("a", 12));
+        tally.add(full("b", 7));
+        tally.add(new RecommendationResponse("c", "No free parking spots"));
+        assertFalse(tally.isHopeless(2), "12 could still get 3 votes.");
+        tally.add(full("d", 9));
+        assertTrue(tally.isHopeless(1));
+        assertNull(tally.getDecision());
+    }
+
+    /**
+     * Tests that the dissenters are the nodes that voted for another space, or for nothing.
+     */
+    @Test
+    void getDissenters_listsNodesAgainstTheDecision() {
+        VoteTally tally = new VoteTally(4);
+        assertEquals(List.of(), tally.getDissenters(), "No dissenters without a decision.");
+        tally.add(full("a", 12));
+        tally.add(full("b", 7));
+        tally.add(new RecommendationResponse("c", "garbage"));
+        tally.add(full("d", 12));
+        tally.add(full("e", 12, 99));
+        assertEquals(12, tally.getDecidedSpace());
+        assertEquals(List.of("b", "c"), tally.getDissenters());
+    }
+
+    /**
+     * Tests that digest votes endorsing the leader's ranking decide with it.
+     */
+    @Test
+    void add_digestVotesMatchingTheRankingDecide() {
+        VoteTally tally = new VoteTally(3);
+        tally.add(full("leader", 12, 13));
+        assertEquals(ranking(12, 13), tally.add(digestVote("b", 12, 13)));
+        assertEquals(List.of(), tally.getDissenters());
+    }
+
+    /**
+     * Tests that a digest vote for the same top choice but another ranking does not count for it,
+     * and dissents.
+     */
+    @Test
+    void add_digestVoteForAnotherRankingDissents() {
+        VoteTally tally = new VoteTally(3);
+        tally.add(full("leader", 12, 13));
+        assertNull(tally.add(digestVote("b", 12, 14)), "b endorsed a ranking nobody shipped.");
+        assertTrue(tally.isHopeless(0));
+        assertEquals(ranking(12, 13), tally.add(digestVote("c", 12, 13)));
+        assertEquals(List.of("b"), tally.getDissenters());
+    }
+
+    /**
+     * Tests that digest votes alone never decide, and count once a matching ranking arrives.
+     */
+    @Test
+    void add_digestVotesWaitForTheRanking() {
+        VoteTally tally = new VoteTally(3);
+        assertNull(tally.add(digestVote("a", 12, 13)));
+        assertNull(tally.add(digestVote("b", 12, 13)), "No ranking was shipped for 12 yet.");
+        assertFalse(tally.isHopeless(1), "The waiting votes may still count.");
+        assertEquals(ranking(12, 13), tally.add(full("c", 12, 13)), "The ranking completes the majority.");
+        assertEquals(12, tally.getDecidedSpace());
+    }
+
+    /**
+     * Tests that waiting digest votes that do not match the ranking, when it arrives, stay uncounted.
+     */
+    @Test
+    void add_waitingDigestVotesForAnotherRankingDoNotCount() {
+        VoteTally tally = new VoteTally(3);
+        tally.add(digestVote("a", 12, 14));
+        assertNull(tally.add(full("b", 12, 13)));
+        assertTrue(tally.isHopeless(0));
+        assertEquals(ranking(12, 13), tally.add(full("c", 12, 15)), "Full responses still agree on the space.");
+        assertEquals(List.of("a"), tally.getDissenters());
+    }
+}